@@ -0,0 +1,207 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.segdep;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import corbit.commons.dict.CTB5TagDictionary;
+import corbit.commons.dict.TagDictionary;
+import corbit.commons.io.Console;
+import corbit.commons.io.MaltReader;
+import corbit.commons.ml.WeightVector;
+import corbit.commons.transition.SDAction;
+import corbit.commons.util.Pair;
+import corbit.commons.word.IndexWord;
+import corbit.commons.word.ParsedSentence;
+import corbit.commons.word.UnsegmentedSentence;
+import corbit.segdep.handler.SRParserCharBasedHandler;
+import corbit.segdep.transition.SRParserCharBasedTransition;
+import corbit.segdep.transition.SRParserTransition;
+import corbit.segdep.transition.SRParserTransition.SRParserTransitionParameter;
+
+/**
+ * A model trained on a synthetic corpus, shared by the benchmarks in a JVM.
+ * The corpus, the dictionary and the model are written to a temporary
+ * directory that is removed on exit.
+ */
+public class BenchmarkFixture
+{
+	static final int TRAIN_SENTENCES = 300;
+	static final int DEV_SENTENCES = 30;
+	static final int TEST_SENTENCES = 50;
+	static final int TRAIN_BEAM = 4;
+	static final int TRAIN_ITERATIONS = 2;
+
+	private static BenchmarkFixture m_instance = null;
+
+	final SRParser parser;
+	final String sTrainFile;
+	final Map<SyntheticCorpus.Length,String> testFiles;
+	final Map<SyntheticCorpus.Length,List<ParsedSentence>> testSentences;
+
+	public static synchronized BenchmarkFixture get() throws IOException
+	{
+		if (m_instance == null)
+		{
+			Console.open();
+			m_instance = new BenchmarkFixture();
+		}
+		return m_instance;
+	}
+
+	private BenchmarkFixture() throws IOException
+	{
+		File dir = File.createTempFile("corbit-bench", "");
+		if (!dir.delete() || !dir.mkdir())
+			throw new IOException("Cannot create a directory: " + dir);
+		dir.deleteOnExit();
+
+		SyntheticCorpus corpus = new SyntheticCorpus(1L, 3000);
+		sTrainFile = createFile(dir, "train.malt");
+		String sDevFile = createFile(dir, "dev.malt");
+		String sDictFile = createFile(dir, "dict.txt");
+		String sModelFile = createFile(dir, "bench.model");
+		corpus.write(sTrainFile, TRAIN_SENTENCES, SyntheticCorpus.Length.MEDIUM);
+		corpus.write(sDevFile, DEV_SENTENCES, SyntheticCorpus.Length.MEDIUM);
+
+		testFiles = new EnumMap<SyntheticCorpus.Length,String>(SyntheticCorpus.Length.class);
+		testSentences = new EnumMap<SyntheticCorpus.Length,List<ParsedSentence>>(SyntheticCorpus.Length.class);
+		for (SyntheticCorpus.Length l: SyntheticCorpus.Length.values())
+		{
+			String sFile = createFile(dir, "test-" + l.name().toLowerCase() + ".malt");
+			corpus.write(sFile, TEST_SENTENCES, l);
+			testFiles.put(l, sFile);
+			testSentences.put(l, readCorpus(sFile));
+		}
+
+		TagDictionary.createCountDict(new MaltReader(sTrainFile, new CTB5TagDictionary(true)), sDictFile, CTB5TagDictionary.ssCtbTags);
+
+		parser = new SRParser();
+		parser.m_iBeam = TRAIN_BEAM;
+		parser.loadDictFromFile(sDictFile, 0);
+		parser.train(sTrainFile, sDevFile, sModelFile, TRAIN_ITERATIONS);
+	}
+
+	private static String createFile(File dir, String sName)
+	{
+		File f = new File(dir, sName);
+		f.deleteOnExit();
+		return f.getPath();
+	}
+
+	static List<ParsedSentence> readCorpus(String sFile)
+	{
+		List<ParsedSentence> l = new ArrayList<ParsedSentence>();
+		MaltReader mr = new MaltReader(sFile, new CTB5TagDictionary(true));
+		for (ParsedSentence s: mr)
+			l.add(s);
+		mr.shutdown();
+		return l;
+	}
+
+	static String toRawText(ParsedSentence gsent)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (IndexWord w: gsent)
+			sb.append(w.form);
+		return sb.toString();
+	}
+
+	/**
+	 * the components of a decoder, set up in the same way as the sentence
+	 * parser of SRParser, to drive the transitions one at a time
+	 */
+	class Pipeline
+	{
+		final SRParserCharBasedHandler handler;
+		final SRParserStateGenerator generator;
+		final SRParserTransition trans;
+		final WeightVector weight;
+
+		Pipeline(WeightVector weight, boolean bLogFeatures)
+		{
+			SRParser p = parser;
+			this.weight = weight;
+			handler = new SRParserCharBasedHandler(p.m_fvocab, p.m_bParse, p.m_bLemmaFilter, p.m_bCharType, p.m_dParserWeight);
+			handler.setTagDictionary(p.m_dict);
+			generator = new SRParserStateGenerator(handler, p.m_bDP, p.m_bEvalDelay);
+			SRParserTransitionParameter params = new SRParserTransitionParameter(
+					p.m_bAssignGoldSeg, p.m_bAssignGoldTag, p.m_bGoldArc, p.m_bParse, p.m_bUseFeatureCache, p.m_bValidateTag, bLogFeatures);
+			trans = new SRParserCharBasedTransition(generator, handler, weight, p.m_dict, new SRParserStats(), params, p.m_bAlignArcChar);
+		}
+
+		SRParserState createState(ParsedSentence gsent)
+		{
+			return generator.create(new UnsegmentedSentence(toRawText(gsent).toCharArray()), null);
+		}
+
+		/**
+		 * @return the states on the gold derivation of the sentence paired
+		 *         with the actions taken from them, and the final state
+		 */
+		List<Pair<SRParserState,SDAction>> goldDerivation(ParsedSentence gsent)
+		{
+			List<Pair<SRParserState,SDAction>> l = new ArrayList<Pair<SRParserState,SDAction>>();
+			SRParserState s = createState(gsent);
+			while (!trans.isEnd(s))
+			{
+				Pair<SDAction,SRParserState> p = trans.moveNextGold(s, gsent, false);
+				l.add(new Pair<SRParserState,SDAction>(s, p.first));
+				s = p.second;
+			}
+			l.add(new Pair<SRParserState,SDAction>(s, SDAction.END_STATE));
+			return l;
+		}
+
+		List<SRParserState> expand(SRParserState s)
+		{
+			List<SRParserState> l = new ArrayList<SRParserState>();
+			for (Pair<SDAction,SRParserState> p: trans.moveNext(s, null, false))
+				l.add(p.second);
+			return l;
+		}
+	}
+
+	Pipeline createPipeline(WeightVector weight, boolean bLogFeatures)
+	{
+		return new Pipeline(weight, bLogFeatures);
+	}
+
+	WeightVector getDecodingWeight()
+	{
+		return parser.getDecodingWeight();
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.segdep;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import corbit.commons.transition.SDAction;
+import corbit.commons.util.Pair;
+import corbit.commons.word.ParsedSentence;
+
+/**
+ * Filling a chart with the candidate states of a step and pruning it to the
+ * beam. The candidates of a step are the states reached from the gold states
+ * in one or two moves, grouped by their step; each invocation processes one
+ * group, whose states merge when their signatures are equal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChartBenchmark
+{
+	private static final int NUM_SENTENCES = 10;
+
+	@Param({ "1", "4", "16", "64" })
+	public int beam;
+
+	private DPParserChart m_chart;
+	private SRParserState[][] m_groups;
+	private int m_iNext = 0;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		BenchmarkFixture f = BenchmarkFixture.get();
+		BenchmarkFixture.Pipeline p = f.createPipeline(f.getDecodingWeight(), false);
+
+		List<SRParserState[]> lg = new ArrayList<SRParserState[]>();
+		List<ParsedSentence> lsent = f.testSentences.get(SyntheticCorpus.Length.MEDIUM);
+		for (ParsedSentence gsent: lsent.subList(0, Math.min(NUM_SENTENCES, lsent.size())))
+		{
+			Map<Integer,List<SRParserState>> steps = new TreeMap<Integer,List<SRParserState>>();
+			for (Pair<SRParserState,SDAction> q: p.goldDerivation(gsent))
+			{
+				if (p.trans.isEnd(q.first))
+					continue;
+				for (SRParserState s1: p.expand(q.first))
+				{
+					add(steps, s1);
+					if (!p.trans.isEnd(s1))
+						for (SRParserState s2: p.expand(s1))
+							add(steps, s2);
+				}
+			}
+			for (List<SRParserState> l: steps.values())
+				if (l.size() > 1)
+					lg.add(l.toArray(new SRParserState[l.size()]));
+		}
+		m_groups = lg.toArray(new SRParserState[lg.size()][]);
+		m_chart = new DPParserChart(f.parser.m_bDP, p.generator, 0.0d, beam);
+	}
+
+	private static void add(Map<Integer,List<SRParserState>> steps, SRParserState s)
+	{
+		List<SRParserState> l = steps.get(s.curstep);
+		if (l == null)
+			steps.put(s.curstep, l = new ArrayList<SRParserState>());
+		l.add(s);
+	}
+
+	private SRParserState[] nextGroup()
+	{
+		int i = m_iNext;
+		m_iNext = i + 1 < m_groups.length ? i + 1 : 0;
+		return m_groups[i];
+	}
+
+	@Benchmark
+	public int updateEntry()
+	{
+		m_chart.clear();
+		for (SRParserState s: nextGroup())
+			m_chart.updateEntry(s);
+		return m_chart.size();
+	}
+
+	@Benchmark
+	public int updateEntryAndPrune()
+	{
+		m_chart.clear();
+		for (SRParserState s: nextGroup())
+			m_chart.updateEntry(s);
+		m_chart.prune(beam);
+		return m_chart.size();
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.segdep;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import corbit.commons.word.ParsedSentence;
+
+/**
+ * Parsing raw sentences end to end, in the same way as the parsing server
+ * does, at each beam width and range of sentence lengths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecoderBenchmark
+{
+	@Param({ "1", "4", "16" })
+	public int beam;
+
+	@Param({ "SHORT", "MEDIUM", "LONG" })
+	public SyntheticCorpus.Length length;
+
+	@Param({ "false", "true" })
+	public boolean lazy;
+
+	private SRParserServer.Decoder m_decoder;
+	private String[] m_lines;
+	private int m_iNext = 0;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		BenchmarkFixture f = BenchmarkFixture.get();
+		f.parser.m_iBeam = beam;
+		f.parser.m_bLazyExpansion = lazy;
+		m_decoder = f.parser.createDecoder();
+
+		List<ParsedSentence> l = f.testSentences.get(length);
+		m_lines = new String[l.size()];
+		for (int i = 0; i < m_lines.length; ++i)
+			m_lines[i] = BenchmarkFixture.toRawText(l.get(i));
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		m_decoder.shutdown();
+	}
+
+	@Benchmark
+	public ParsedSentence parseSentence()
+	{
+		int i = m_iNext;
+		m_iNext = i + 1 < m_lines.length ? i + 1 : 0;
+		return m_decoder.parse(m_lines[i]);
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.segdep;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import corbit.commons.ml.IntFeatVector;
+import corbit.commons.ml.WeightVector;
+import corbit.commons.transition.SDAction;
+import corbit.commons.util.Pair;
+import corbit.commons.word.ParsedSentence;
+import corbit.segdep.handler.SRParserCharBasedHandler;
+
+/**
+ * Feature extraction for each type of action, on the states of the gold
+ * derivations of the test sentences. Without logging only the score is
+ * computed, as in decoding; with logging the feature vector is built as well,
+ * as in training.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerBenchmark
+{
+	public static enum ActionType
+	{
+		SHIFT, APPEND, REDUCE_LEFT, REDUCE_RIGHT;
+
+		static ActionType of(SDAction act)
+		{
+			if (act.isShiftTagAction() || act == SDAction.SHIFT)
+				return SHIFT;
+			else if (act == SDAction.APPEND)
+				return APPEND;
+			else if (act.isLabeledReduceLeft() || act == SDAction.REDUCE_LEFT)
+				return REDUCE_LEFT;
+			else if (act.isLabeledReduceRight() || act == SDAction.REDUCE_RIGHT)
+				return REDUCE_RIGHT;
+			else
+				return null;
+		}
+	}
+
+	@Param({ "SHIFT", "APPEND", "REDUCE_LEFT", "REDUCE_RIGHT" })
+	public ActionType action;
+
+	@Param({ "false", "true" })
+	public boolean log;
+
+	private SRParserCharBasedHandler m_handler;
+	private WeightVector m_weight;
+	private SRParserState[] m_states;
+	private SDAction[] m_acts;
+	private int m_iNext = 0;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		BenchmarkFixture f = BenchmarkFixture.get();
+		m_weight = f.getDecodingWeight();
+		BenchmarkFixture.Pipeline p = f.createPipeline(m_weight, false);
+		m_handler = p.handler;
+
+		List<SRParserState> ls = new ArrayList<SRParserState>();
+		List<SDAction> la = new ArrayList<SDAction>();
+		for (ParsedSentence gsent: f.testSentences.get(SyntheticCorpus.Length.MEDIUM))
+			for (Pair<SRParserState,SDAction> q: p.goldDerivation(gsent))
+				if (ActionType.of(q.second) == action)
+				{
+					ls.add(q.first);
+					la.add(q.second);
+				}
+		if (ls.isEmpty())
+			throw new IllegalStateException("No gold action of type " + action + " found.");
+		m_states = ls.toArray(new SRParserState[ls.size()]);
+		m_acts = la.toArray(new SDAction[la.size()]);
+	}
+
+	@Benchmark
+	public Pair<IntFeatVector,Double> getFeatures()
+	{
+		int i = m_iNext;
+		m_iNext = i + 1 < m_states.length ? i + 1 : 0;
+		return m_handler.getFeatures(m_states[i], m_acts[i], null, false, log, m_weight, null);
+	}
+}
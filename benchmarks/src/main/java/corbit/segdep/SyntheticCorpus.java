@@ -0,0 +1,171 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.segdep;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import corbit.commons.dict.CTB5TagDictionary;
+
+/**
+ * Generates a corpus of random sentences with projective dependency trees in
+ * the malt format, over a fixed vocabulary of CJK words with a skewed
+ * frequency distribution and a few ambiguous tags. The output is determined
+ * by the seed.
+ */
+public class SyntheticCorpus
+{
+	public static enum Length
+	{
+		SHORT(4, 12), MEDIUM(20, 40), LONG(60, 100);
+
+		/* the range of the number of characters of a sentence */
+		final int min;
+		final int max;
+
+		Length(int min, int max)
+		{
+			this.min = min;
+			this.max = max;
+		}
+	}
+
+	private static final String[] ssTags = { "AD", "AS", "CC", "CD", "DEC", "DEG", "JJ", "LC",
+			"M", "NN", "NN", "NN", "NR", "NT", "P", "PN", "VA", "VV", "VV" };
+	private static final String[] ssPunct = { "，", "、" };
+	private static final String sPeriod = "。";
+
+	private final Random m_rand;
+	private final String[] m_words;
+	private final String[][] m_tags;
+	private final String[] m_labels;
+
+	public SyntheticCorpus(long lSeed, int iVocabSize)
+	{
+		m_rand = new Random(lSeed);
+		m_words = new String[iVocabSize];
+		m_tags = new String[iVocabSize][];
+
+		for (int i = 0; i < iVocabSize; ++i)
+		{
+			int r = m_rand.nextInt(20);
+			int iLength = r < 6 ? 1 : r < 16 ? 2 : r < 19 ? 3 : 4;
+			StringBuilder sb = new StringBuilder();
+			for (int j = 0; j < iLength; ++j)
+				sb.append((char)(0x4e00 + m_rand.nextInt(1000)));
+			m_words[i] = sb.toString();
+			m_tags[i] = m_rand.nextInt(5) == 0 ?
+					new String[] { randomTag(), randomTag() } :
+					new String[] { randomTag() };
+		}
+
+		String[] labels = CTB5TagDictionary.arcLabels;
+		m_labels = new String[labels.length - 1];
+		int k = 0;
+		for (String s: labels)
+			if (!s.equals("ROOT"))
+				m_labels[k++] = s;
+	}
+
+	private String randomTag()
+	{
+		return ssTags[m_rand.nextInt(ssTags.length)];
+	}
+
+	/**
+	 * writes the given number of sentences whose lengths are within the range
+	 */
+	public void write(String sFile, int numSentences, Length length) throws IOException
+	{
+		PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(sFile), "UTF-8"));
+		for (int i = 0; i < numSentences; ++i)
+			writeSentence(pw, length);
+		pw.close();
+	}
+
+	private void writeSentence(PrintWriter pw, Length length)
+	{
+		int iTarget = length.min + m_rand.nextInt(length.max - length.min + 1);
+		int iChars = 1; // the period
+		String[] forms = new String[iTarget];
+		String[] tags = new String[iTarget];
+		int n = 0;
+
+		while (iChars < iTarget)
+		{
+			if (n > 0 && m_rand.nextInt(8) == 0)
+			{
+				forms[n] = ssPunct[m_rand.nextInt(ssPunct.length)];
+				tags[n] = "PU";
+			}
+			else
+			{
+				/* cubing a uniform variate skews the frequencies toward the first words */
+				double u = m_rand.nextDouble();
+				int w = (int)(u * u * u * m_words.length);
+				forms[n] = m_words[w];
+				tags[n] = m_tags[w][m_rand.nextInt(m_tags[w].length)];
+			}
+			iChars += forms[n].length();
+			++n;
+		}
+		forms[n] = sPeriod;
+		tags[n] = "PU";
+		++n;
+
+		int[] heads = new int[n];
+		attach(heads, 0, n, -1);
+
+		for (int i = 0; i < n; ++i)
+		{
+			String sLabel = heads[i] < 0 ? "ROOT" : m_labels[m_rand.nextInt(m_labels.length)];
+			pw.println(forms[i] + "\t" + tags[i] + "\t" + (heads[i] + 1) + "\t" + sLabel);
+		}
+		pw.println();
+	}
+
+	/**
+	 * attaches the words in [begin, end) to the given head by choosing the
+	 * head of the span at random, which keeps the tree projective
+	 */
+	private void attach(int[] heads, int begin, int end, int head)
+	{
+		if (begin >= end)
+			return;
+		int h = begin + m_rand.nextInt(end - begin);
+		heads[h] = head;
+		attach(heads, begin, h, h);
+		attach(heads, h + 1, end, h);
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.segdep;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import corbit.commons.Vocab;
+
+/**
+ * Looking up the features of the model in a vocabulary of each kind, and
+ * building such a vocabulary from scratch. The keys are copied before each
+ * lookup so that their hash codes are computed every time, as for the feature
+ * strings built during feature extraction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VocabBenchmark
+{
+	public static enum Kind
+	{
+		HASHMAP, TRIE, CONCURRENT, HASHED
+	}
+
+	private static final int HASH_BITS = 20;
+
+	@Param({ "HASHMAP", "TRIE", "CONCURRENT", "HASHED" })
+	public Kind kind;
+
+	private String[] m_keys;
+	private Vocab m_vocab;
+	private int m_iNext = 0;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		List<String> l = new ArrayList<String>(BenchmarkFixture.get().parser.m_fvocab.getKeys());
+		Collections.shuffle(l, new Random(0));
+		m_keys = l.toArray(new String[l.size()]);
+		m_vocab = fill();
+	}
+
+	private Vocab createVocab()
+	{
+		Vocab v = new Vocab();
+		switch (kind)
+		{
+		case TRIE:
+			v.setUseTrie();
+			break;
+		case CONCURRENT:
+			v.setConcurrent();
+			break;
+		case HASHED:
+			v.setHashed(HASH_BITS, false);
+			break;
+		default:
+			break;
+		}
+		return v;
+	}
+
+	@Benchmark
+	public int getIndex()
+	{
+		int i = m_iNext;
+		m_iNext = i + 1 < m_keys.length ? i + 1 : 0;
+		return m_vocab.getIndex(new String(m_keys[i]));
+	}
+
+	/**
+	 * adds all the features of the model to an empty vocabulary
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Vocab fill()
+	{
+		Vocab v = createVocab();
+		for (String s: m_keys)
+			v.getIndex(new String(s));
+		return v;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.segdep;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import corbit.commons.ml.IntFeatVector;
+import corbit.commons.ml.WeightStorage;
+import corbit.commons.ml.WeightVector;
+import corbit.commons.transition.SDAction;
+import corbit.commons.util.Pair;
+import corbit.commons.word.ParsedSentence;
+
+/**
+ * Scoring the feature vectors of single actions, taken from the gold
+ * derivations of the test sentences, with the averaged weight of the model in
+ * each storage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeightVectorBenchmark
+{
+	@Param({ "DOUBLE", "FLOAT", "INT16", "INT8", "DIRECT" })
+	public WeightStorage storage;
+
+	private WeightVector m_weight;
+	private IntFeatVector[] m_vectors;
+	private int m_iNext = 0;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		BenchmarkFixture f = BenchmarkFixture.get();
+		WeightVector w = f.getDecodingWeight();
+		BenchmarkFixture.Pipeline p = f.createPipeline(w, false);
+
+		List<IntFeatVector> l = new ArrayList<IntFeatVector>();
+		for (ParsedSentence gsent: f.testSentences.get(SyntheticCorpus.Length.MEDIUM))
+			for (Pair<SRParserState,SDAction> q: p.goldDerivation(gsent))
+				if (q.second != SDAction.END_STATE)
+					l.add(p.handler.getFeatures(q.first, q.second, null, false, true, w, null).first);
+		m_vectors = l.toArray(new IntFeatVector[l.size()]);
+		m_weight = storage.convert(w);
+	}
+
+	@Benchmark
+	public double score()
+	{
+		int i = m_iNext;
+		m_iNext = i + 1 < m_vectors.length ? i + 1 : 0;
+		return m_weight.score(m_vectors[i]);
+	}
+}
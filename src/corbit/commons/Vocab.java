@@ -39,26 +39,93 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.ardverk.collection.PatriciaTrie;
 import org.ardverk.collection.StringKeyAnalyzer;
 
+import corbit.commons.io.BinaryModelFile;
 import corbit.commons.io.Console;
 import corbit.commons.ml.AveragedWeight;
+import corbit.commons.ml.FeatureKey;
 import corbit.commons.ml.WeightVector;
+import corbit.commons.util.MurmurHash;
 
 public class Vocab
 {
 	Map<String,Integer> m_index;
 	List<String> m_rindex;
-	int m_size = 0;
+	volatile int m_size = 0;
+
+	/*
+	 * open-addressing index from FeatureKey hashes to indices; built lazily for
+	 * decoding. A published index is never written again: new entries go into
+	 * a copy that replaces it, so lookups read it without locking.
+	 */
+	volatile HashIndex m_hindex = null;
+
+	/* number of entries that may be missing from the index before it is rebuilt */
+	static final int HASH_INDEX_MIN_LAG = 1024;
+
+	private static final class HashIndex
+	{
+		final long[] keys;
+		final int[] vals; // index + 1; 0 for an empty slot
+		final int mask;
+		final int count;
+
+		HashIndex(int capacity, int count)
+		{
+			keys = new long[capacity];
+			vals = new int[capacity];
+			mask = capacity - 1;
+			this.count = count;
+		}
+
+		HashIndex(HashIndex hi, int count)
+		{
+			keys = hi.keys.clone();
+			vals = hi.vals.clone();
+			mask = hi.mask;
+			this.count = count;
+		}
+	}
+
+	/*
+	 * hashed-feature mode: indices are computed from the hash of a feature
+	 * into [0, 2^m_iHashBits) and no feature strings are kept
+	 */
+	static final String HASHED_HEADER = "#hashed";
+	static final int HASH_SEED = 0x2f3c81a5;
+	int m_iHashBits = 0;
+	int m_iHashMask = 0;
+	long[] m_hbucket = null; // the first key hashed into each index; only for the collision report
+	int m_numHashed = 0;
+	Set<Long> m_hcollided = null;
+
+	/*
+	 * read-only mode backed by a mapped binary model: FeatureKey hashes sorted
+	 * for binary search with their indices, and the feature strings by index
+	 */
+	LongBuffer m_mkeys = null;
+	IntBuffer m_mvals = null;
+	IntBuffer m_moffsets = null;
+	ByteBuffer m_mstrings = null;
 
 	public Vocab()
 	{
@@ -95,7 +162,103 @@ public class Vocab
 
 	public Set<String> getKeys()
 	{
-		return m_index.keySet();
+		if (isMapped())
+		{
+			Set<String> keys = new LinkedHashSet<String>();
+			for (int i = 0; i < m_size; ++i)
+				keys.add(get(i));
+			return keys;
+		}
+		return isHashed() ? Collections.<String>emptySet() : m_index.keySet();
+	}
+
+	public boolean isMapped()
+	{
+		return m_mkeys != null;
+	}
+
+	/**
+	 * @return the index of the feature with the hash h in the mapped table, or -1
+	 */
+	private int findMapped(long h)
+	{
+		final LongBuffer keys = m_mkeys;
+		int lo = 0;
+		int hi = keys.limit() - 1;
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			long k = keys.get(mid);
+			if (k < h)
+				lo = mid + 1;
+			else if (k > h)
+				hi = mid - 1;
+			else
+				return m_mvals.get(mid);
+		}
+		return -1;
+	}
+
+	/**
+	 * switches to the hashed-feature mode, where each feature is mapped to an
+	 * index in [0, 2^iBits) by its hash value; the vocabulary must be empty.
+	 * 
+	 * @param iBits
+	 *            the number of bits of the feature index
+	 * @param bReport
+	 *            keep track of hash collisions (requires a long per index)
+	 */
+	public void setHashed(int iBits, boolean bReport)
+	{
+		if (m_size > 0)
+			throw new IllegalStateException("The vocabulary must be empty to enable feature hashing.");
+		if (iBits < 1 || iBits > 30)
+			throw new IllegalArgumentException("The number of hash bits must be in [1, 30]: " + iBits);
+		m_iHashBits = iBits;
+		m_iHashMask = (1 << iBits) - 1;
+		m_hbucket = bReport ? new long[1 << iBits] : null;
+		m_hcollided = bReport ? new HashSet<Long>() : null;
+		m_numHashed = 0;
+		Console.writeLine(String.format("Feature hashing enabled with 2^%d dimensions.", iBits));
+	}
+
+	public boolean isHashed()
+	{
+		return m_iHashBits > 0;
+	}
+
+	private int getHashedIndex(long h, boolean bRecord)
+	{
+		int idx = MurmurHash.hash(h, HASH_SEED) & m_iHashMask;
+		if (bRecord && m_hbucket != null)
+			recordHashed(h, idx);
+		return idx;
+	}
+
+	private synchronized void recordHashed(long h, int idx)
+	{
+		long _h = h == 0L ? 1L : h; // 0 denotes an empty bucket
+		long b = m_hbucket[idx];
+		if (b == 0L)
+		{
+			m_hbucket[idx] = _h;
+			++m_numHashed;
+		}
+		else if (b != _h && m_hcollided.add(_h))
+			++m_numHashed;
+	}
+
+	/**
+	 * @return a summary of the hash collisions observed since setHashed(),
+	 *         or null if the collision report is not enabled
+	 */
+	public String getCollisionReport()
+	{
+		if (m_hbucket == null)
+			return null;
+		int nCollided = m_hcollided.size();
+		return String.format("%d features hashed into 2^%d dimensions; %d collided (%.3f%%).",
+				m_numHashed, m_iHashBits, nCollided, m_numHashed > 0 ? 100.0 * nCollided / m_numHashed : 0.0);
 	}
 
 	/**
@@ -106,11 +269,17 @@ public class Vocab
 	 */
 	public void rebuild(AveragedWeight w)
 	{
+		if (isHashed() || isMapped())
+			return; // indices are fixed by the hash function or the mapped file
+
 		Map<String,Integer> oldIndex = m_index;
 		m_index = (m_index instanceof HashMap)
 				? new HashMap<String,Integer>()
+				: (m_index instanceof ConcurrentHashMap)
+				? new ConcurrentHashMap<String,Integer>()
 				: new PatriciaTrie<String,Integer>(StringKeyAnalyzer.INSTANCE);
 		m_rindex.clear();
+		clearHashIndex();
 		WeightVector ww = new WeightVector(w);
 		WeightVector wa = new WeightVector(w.getAverageWeight());
 		WeightVector wwNew = w;
@@ -136,58 +305,190 @@ public class Vocab
 		}
 		m_size = iNewSize;
 		assert (m_size == m_index.size());
+		w.trimToSize();
 
 		Console.writeLine(String.format("Vocab and AveragedWeight rebuilt: size %d => %d.", oldIndex.size(), m_rindex.size()));
 	}
 
 	public void setUseTrie()
 	{
-		if (m_index instanceof HashMap)
+		if (!isHashed() && !isMapped() && m_index instanceof HashMap)
 		{
 			Console.writeLine("HashMap converted to PatriciaTrie.");
 			m_index = new PatriciaTrie<String,Integer>(StringKeyAnalyzer.INSTANCE, m_index);
 		}
 	}
 
+	/**
+	 * makes the vocabulary safe for threads that add and look up features at
+	 * the same time, as in training with parameter mixing. A lookup that races
+	 * with the addition of the same feature by another thread may miss it.
+	 */
+	public void setConcurrent()
+	{
+		if (isHashed() || isMapped() || m_index instanceof ConcurrentHashMap)
+			return;
+		if (!(m_index instanceof HashMap))
+			throw new IllegalStateException("The Patricia trie index cannot be shared among threads.");
+		m_index = new ConcurrentHashMap<String,Integer>(m_index);
+	}
+
 	public void clear()
 	{
 		m_index.clear();
 		m_rindex.clear();
 		m_size = 0;
+		clearHashIndex();
+		clearMapped();
+		if (m_hbucket != null)
+		{
+			Arrays.fill(m_hbucket, 0L);
+			m_hcollided.clear();
+			m_numHashed = 0;
+		}
 	}
 
 	public boolean contains(String s)
 	{
-		return m_index.containsKey(s);
+		if (isMapped())
+			return findMapped(FeatureKey.hash(s)) >= 0;
+		return isHashed() || m_index.containsKey(s);
 	}
 
 	public int get(String s)
 	{
-		return m_index.get(s);
+		return getBoxed(s);
 	}
 
 	public Integer getBoxed(String s)
 	{
+		if (isMapped())
+		{
+			int idx = findMapped(FeatureKey.hash(s));
+			return idx >= 0 ? idx : null;
+		}
+		if (isHashed())
+			return getHashedIndex(FeatureKey.hash(s), false);
 		return m_index.get(s);
 	}
 
 	public String get(int i)
 	{
-		return m_rindex.get(i);
+		if (isMapped())
+		{
+			int iBegin = m_moffsets.get(i);
+			return StandardCharsets.UTF_8.decode(BinaryModelFile.slice(m_mstrings, iBegin, m_moffsets.get(i + 1) - iBegin)).toString();
+		}
+		return isHashed() ? "#" + i : m_rindex.get(i);
+	}
+
+	/**
+	 * looks up the index of the feature represented by the given key without
+	 * creating its string; never adds a new entry. While features are being
+	 * added, the index is rebuilt only after a number of them have accumulated,
+	 * and a miss is checked against the string index until then.
+	 * 
+	 * @return the index, or -1 if the feature is not in the vocabulary
+	 */
+	public int lookup(FeatureKey k)
+	{
+		if (isHashed())
+			return getHashedIndex(k.hash(), false);
+		if (isMapped())
+			return findMapped(k.hash());
+		HashIndex hi = m_hindex;
+		if (isStale(hi, m_size))
+			hi = updateHashIndex();
+		final long h = k.hash();
+		final long[] keys = hi.keys;
+		final int[] vals = hi.vals;
+		for (int slot = mix(h) & hi.mask; vals[slot] != 0; slot = (slot + 1) & hi.mask)
+			if (keys[slot] == h)
+				return vals[slot] - 1;
+		if (hi.count < m_size)
+		{
+			Integer i = m_index.get(k.toString());
+			return i != null ? i.intValue() : -1;
+		}
+		return -1;
+	}
+
+	private static boolean isStale(HashIndex hi, int n)
+	{
+		return hi == null || n - hi.count > Math.max(HASH_INDEX_MIN_LAG, hi.count >>> 4);
+	}
+
+	private static int mix(long h)
+	{
+		int x = (int)(h ^ (h >>> 32)) * 0x9E3779B9;
+		return x ^ (x >>> 16);
+	}
+
+	private synchronized HashIndex updateHashIndex()
+	{
+		final int n = m_size;
+		HashIndex hi = m_hindex;
+		if (!isStale(hi, n))
+			return hi;
+		int from = hi != null ? hi.count : 0;
+		if (hi == null || hi.keys.length < n * 2)
+		{
+			int cap = 1024;
+			while (cap < n * 2)
+				cap <<= 1;
+			hi = new HashIndex(cap, n);
+			from = 0;
+		}
+		else
+			hi = new HashIndex(hi, n);
+		for (int i = from; i < n; ++i)
+		{
+			long h = FeatureKey.hash(m_rindex.get(i));
+			int slot = mix(h) & hi.mask;
+			while (hi.vals[slot] != 0 && hi.keys[slot] != h)
+				slot = (slot + 1) & hi.mask;
+			if (hi.vals[slot] == 0)
+			{
+				hi.keys[slot] = h;
+				hi.vals[slot] = i + 1;
+			}
+		}
+		m_hindex = hi;
+		return hi;
+	}
+
+	private void clearHashIndex()
+	{
+		m_hindex = null;
 	}
 
 	public int getIndex(String s)
 	{
 		assert (s != null);
+		if (isHashed())
+			return getHashedIndex(FeatureKey.hash(s), true);
+		if (isMapped())
+		{
+			int idx = findMapped(FeatureKey.hash(s));
+			if (idx < 0)
+				throw new UnsupportedOperationException("The vocabulary of a mapped model is read-only.");
+			return idx;
+		}
 		Integer i;
 		if ((i = m_index.get(s)) != null)
 			return i.intValue();
 		else
-		{
-			m_index.put(s, m_size);
-			m_rindex.add(s);
-			return m_size++;
-		}
+			return addEntry(s);
+	}
+
+	private synchronized int addEntry(String s)
+	{
+		Integer i;
+		if ((i = m_index.get(s)) != null)
+			return i.intValue();
+		m_rindex.add(s);
+		m_index.put(s, m_size);
+		return m_size++;
 	}
 
 	public void save(String sFile) throws FileNotFoundException, UnsupportedEncodingException
@@ -199,10 +500,16 @@ public class Vocab
 
 	public void save(PrintWriter sw)
 	{
-		int n = m_rindex.size();
+		if (isHashed())
+		{
+			sw.println(HASHED_HEADER + "\t" + m_iHashBits);
+			Console.writeLine("Hashed vocabulary saved: 2^" + m_iHashBits + " dimensions.");
+			return;
+		}
+		int n = m_size;
 		sw.println(n);
 		for (int i = 0; i < n; ++i)
-			sw.println(m_rindex.get(i));
+			sw.println(get(i));
 		Console.writeLine(n + " vocabulary entries saved.");
 	}
 
@@ -227,7 +534,13 @@ public class Vocab
 
 	public void load(BufferedReader sr) throws NumberFormatException, IOException
 	{
-		m_size = Integer.parseInt(sr.readLine());
+		String sHeader = sr.readLine();
+		if (sHeader.startsWith(HASHED_HEADER))
+		{
+			setHashed(Integer.parseInt(sHeader.split("\t")[1]), false);
+			return;
+		}
+		m_size = Integer.parseInt(sHeader);
 		for (int i = 0; i < m_size; ++i)
 		{
 			String s = sr.readLine();
@@ -237,4 +550,147 @@ public class Vocab
 		}
 		System.err.println(m_size + " vocabulary entries loaded from the model.");
 	}
+
+	/**
+	 * writes the vocabulary as a section of a binary model: the number of hash
+	 * bits, the number of entries, a table of FeatureKey hashes sorted with
+	 * their indices, and the offsets and UTF-8 bytes of the feature strings.
+	 */
+	public void saveBinary(BinaryModelFile.Writer out) throws IOException
+	{
+		final int n = isHashed() ? 0 : m_size;
+		long[] keys = new long[n];
+		int[] vals = new int[n];
+		for (int i = 0; i < n; ++i)
+		{
+			keys[i] = FeatureKey.hash(get(i));
+			vals[i] = i;
+		}
+		sortByKey(keys, vals);
+
+		/* keep the smallest index for each hash, as the hash index for lookup() does */
+		int nTable = 0;
+		for (int i = 0; i < n; ++i)
+		{
+			if (nTable > 0 && keys[nTable - 1] == keys[i])
+				vals[nTable - 1] = Math.min(vals[nTable - 1], vals[i]);
+			else
+			{
+				keys[nTable] = keys[i];
+				vals[nTable++] = vals[i];
+			}
+		}
+		if (nTable < n)
+			Console.writeLine(String.format("Warning: %d features share a hash with another feature.", n - nTable));
+
+		out.beginSection();
+		out.putInt(m_iHashBits);
+		out.putInt(n);
+		out.putInt(nTable);
+		out.putInt(0);
+		for (int i = 0; i < nTable; ++i)
+			out.putLong(keys[i]);
+		for (int i = 0; i < nTable; ++i)
+			out.putInt(vals[i]);
+		int iOffset = 0;
+		out.putInt(iOffset);
+		for (int i = 0; i < n; ++i)
+		{
+			iOffset += get(i).getBytes(StandardCharsets.UTF_8).length;
+			out.putInt(iOffset);
+		}
+		for (int i = 0; i < n; ++i)
+			out.putBytes(get(i).getBytes(StandardCharsets.UTF_8));
+		out.endSection();
+		Console.writeLine(n + " vocabulary entries saved.");
+	}
+
+	/**
+	 * reads a section written by saveBinary(). If bMapped is true, the section
+	 * is used as it is and the vocabulary becomes read-only; otherwise the
+	 * entries are loaded into the ordinary index.
+	 */
+	public void loadBinary(ByteBuffer b, boolean bMapped)
+	{
+		clear();
+		m_iHashBits = 0;
+		m_iHashMask = 0;
+		int iHashBits = b.getInt(0);
+		int n = b.getInt(4);
+		int nTable = b.getInt(8);
+		if (iHashBits > 0)
+		{
+			setHashed(iHashBits, false);
+			return;
+		}
+		int iKeys = 16;
+		int iVals = iKeys + 8 * nTable;
+		int iOffsets = iVals + 4 * nTable;
+		int iStrings = iOffsets + 4 * (n + 1);
+		m_mkeys = BinaryModelFile.slice(b, iKeys, 8 * nTable).asLongBuffer();
+		m_mvals = BinaryModelFile.slice(b, iVals, 4 * nTable).asIntBuffer();
+		m_moffsets = BinaryModelFile.slice(b, iOffsets, 4 * (n + 1)).asIntBuffer();
+		m_mstrings = BinaryModelFile.slice(b, iStrings, m_moffsets.get(n));
+		m_size = n;
+		if (!bMapped)
+		{
+			for (int i = 0; i < n; ++i)
+			{
+				String s = get(i);
+				m_rindex.add(s);
+				m_index.put(s, i);
+			}
+			clearMapped();
+		}
+		System.err.println(m_size + " vocabulary entries " + (bMapped ? "mapped" : "loaded") + " from the model.");
+	}
+
+	private void clearMapped()
+	{
+		m_mkeys = null;
+		m_mvals = null;
+		m_moffsets = null;
+		m_mstrings = null;
+	}
+
+	/**
+	 * heap sort of keys in ascending order, permuting vals along with them
+	 */
+	private static void sortByKey(long[] keys, int[] vals)
+	{
+		final int n = keys.length;
+		for (int i = n / 2 - 1; i >= 0; --i)
+			siftDown(keys, vals, i, n);
+		for (int end = n - 1; end > 0; --end)
+		{
+			swap(keys, vals, 0, end);
+			siftDown(keys, vals, 0, end);
+		}
+	}
+
+	private static void siftDown(long[] keys, int[] vals, int i, int n)
+	{
+		while (true)
+		{
+			int c = 2 * i + 1;
+			if (c >= n)
+				break;
+			if (c + 1 < n && keys[c + 1] > keys[c])
+				++c;
+			if (keys[i] >= keys[c])
+				break;
+			swap(keys, vals, i, c);
+			i = c;
+		}
+	}
+
+	private static void swap(long[] keys, int[] vals, int i, int j)
+	{
+		long k = keys[i];
+		keys[i] = keys[j];
+		keys[j] = k;
+		int v = vals[i];
+		vals[i] = vals[j];
+		vals[j] = v;
+	}
 }
@@ -96,6 +96,9 @@ public abstract class TagDictionary implements Serializable
 	// tentative (not saved)
 	protected Map<String,Integer> m_frequencies;
 
+	// compiled index; built on demand and discarded when the dictionary changes
+	private transient volatile TagTrie m_trie;
+
 	private static final String[] emptyStrArray = new String[0];
 
 	// constructor
@@ -142,6 +145,15 @@ public abstract class TagDictionary implements Serializable
 		Arrays.fill(m_tagWordLength, 0);
 		for (int i = 0; i < m_openTagsByLen.length; ++i)
 			Statics.fillArray(m_openTagsByLen[i], null);
+		m_trie = null;
+	}
+
+	public TagTrie getTrie()
+	{
+		TagTrie t = m_trie;
+		if (t == null)
+			m_trie = t = new TagTrie(this);
+		return t;
 	}
 
 	public boolean isFrequent(String sForm)
@@ -328,6 +340,7 @@ public abstract class TagDictionary implements Serializable
 		m_openTagsByLen = new String[maxWordLength][m_tagIndex.size()];
 		for (int i = 0; i < maxWordLength; ++i)
 			m_openTagsByLen[i] = _openTagsByLen.get(i).toArray(new String[0]);
+		m_trie = null;
 	}
 
 	public void loadFromFile(String sFile, int iThreshold) throws IOException
@@ -0,0 +1,220 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.dict;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiled index of a TagDictionary: a character trie over the words that have
+ * their own tag candidates, with the candidates stored as bitmasks of tag
+ * indices. A CandidateTable built from it for each sentence gives the
+ * candidates of the words starting at each position by array lookups, with
+ * the same results as TagDictionary.getTagCandidatesForSequence() and
+ * validateTagForSequence().
+ */
+public class TagTrie
+{
+	private static final byte NONE = 0;
+	private static final byte FREQUENT = 1; // tags of the word replace the open tags
+	private static final byte CLOSED = 2; // closed tags of the word are added to the open tags
+
+	private static final long[] NO_MASKS = new long[0];
+
+	private final Trie m_trie;
+	private final byte[] m_kind;
+	private final long[] m_mask;
+	private final long[] m_openMask; // open tags by word length - 1
+	private final Map<String,Integer> m_tagIndex;
+	private final String[] m_tagList;
+	private final Integer[] m_sortedTags; // tag indices in the order of the tag names
+	private final String[] m_openTagList;
+	private final boolean m_bLoaded;
+
+	TagTrie(TagDictionary dict)
+	{
+		m_tagIndex = dict.m_tagIndex;
+		m_tagList = dict.m_tagList;
+		if (m_tagIndex.size() > Long.SIZE)
+			throw new IllegalStateException("Too many tags to be indexed: " + m_tagIndex.size());
+
+		m_sortedTags = new Integer[m_tagList.length];
+		for (int i = 0; i < m_sortedTags.length; ++i)
+			m_sortedTags[i] = i;
+		Arrays.sort(m_sortedTags, new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2)
+			{
+				return m_tagList[o1].compareTo(m_tagList[o2]);
+			}
+		});
+
+		m_openTagList = dict.m_openTagList;
+		m_bLoaded = dict.m_freqTagDict.size() > 0;
+
+		// the rows are nested, since a tag is open for all the lengths up to the longest one
+		m_openMask = new long[TagDictionary.maxWordLength];
+		for (int i = 0; i < m_openMask.length; ++i)
+			m_openMask[i] = getMask(dict.m_openTagsByLen[i]);
+
+		final boolean bClosed = dict.m_closedTagSet != null;
+		Set<String> words = new HashSet<String>(dict.m_freqTagDict.keySet());
+		if (bClosed)
+			words.addAll(dict.m_closedTagDict.keySet());
+
+		m_trie = new Trie(words);
+		final int nNodes = m_trie.size();
+		m_kind = new byte[nNodes];
+		m_mask = new long[nNodes];
+		for (int v = 0; v < nNodes; ++v)
+		{
+			if (m_trie.m_word[v] < 0) continue;
+			final String w = m_trie.m_words[m_trie.m_word[v]];
+			String[] tags = dict.m_freqTagDict.get(w);
+			if (tags != null)
+				m_kind[v] = FREQUENT;
+			else
+			{
+				tags = dict.m_closedTagDict.get(w);
+				m_kind[v] = CLOSED;
+			}
+			m_mask[v] = getMask(tags);
+		}
+	}
+
+	private long getMask(String[] tags)
+	{
+		long m = 0L;
+		for (String t: tags)
+		{
+			if (t == null) continue;
+			Integer i = m_tagIndex.get(t);
+			if (i == null)
+				throw new IllegalStateException("Unknown tag '" + t + "' is found in the dictionary.");
+			m |= 1L << i;
+		}
+		return m;
+	}
+
+	private String[] getTags(long mask)
+	{
+		String[] ss = new String[Long.bitCount(mask)];
+		int k = 0;
+		for (Integer i: m_sortedTags)
+			if ((mask & (1L << i)) != 0)
+				ss[k++] = m_tagList[i];
+		return ss;
+	}
+
+	public CandidateTable getCandidateTable(CharSequence sent)
+	{
+		return new CandidateTable(sent);
+	}
+
+	/**
+	 * tag candidates of the words starting at each position of a sentence
+	 */
+	public final class CandidateTable
+	{
+		private final long[][] m_masks; // tags of the words in the trie by length - 1
+		private final int[] m_maxLength;
+		private final String[][] m_cands;
+
+		private CandidateTable(CharSequence sent)
+		{
+			final int n = sent.length();
+			final Trie t = m_trie;
+			m_masks = new long[n][];
+			m_maxLength = new int[n];
+			m_cands = new String[n][];
+
+			long[] ms = new long[TagDictionary.maxWordLength];
+			for (int i = 0; i < n; ++i)
+			{
+				final int maxLength = Math.min(n - i, TagDictionary.maxWordLength);
+				int d = 0;
+				for (int v = 0; d < maxLength && (v = t.next(v, sent.charAt(i + d))) >= 0; ++d)
+				{
+					final long open = m_openMask[d];
+					ms[d] = m_kind[v] == FREQUENT ? m_mask[v] : m_kind[v] == CLOSED ? open | m_mask[v] : open;
+				}
+				m_masks[i] = d > 0 ? Arrays.copyOf(ms, d) : NO_MASKS;
+				m_maxLength[i] = maxLength;
+
+				if (m_bLoaded)
+				{
+					long m = d < maxLength ? m_openMask[d] : 0L;
+					for (int l = 0; l < d; ++l)
+						m |= ms[l];
+					m_cands[i] = getTags(m);
+				}
+				else
+					m_cands[i] = m_openTagList;
+			}
+		}
+
+		/**
+		 * @return the trie the candidates were looked up in
+		 */
+		public TagTrie getTrie()
+		{
+			return TagTrie.this;
+		}
+
+		/**
+		 * @see TagDictionary#getTagCandidatesForSequence(String)
+		 */
+		public String[] getTagCandidates(int begin)
+		{
+			return m_cands[begin];
+		}
+
+		/**
+		 * @see TagDictionary#validateTagForSequence(String, String, int)
+		 */
+		public boolean validateTag(int begin, String tag, int startLength)
+		{
+			Integer i = m_tagIndex.get(tag);
+			if (i == null) return false;
+			final long bit = 1L << i;
+			final long[] ms = m_masks[begin];
+			final int maxLength = m_maxLength[begin];
+			int l = startLength;
+			for (; l <= Math.min(ms.length, maxLength); ++l)
+				if ((ms[l - 1] & bit) != 0)
+					return true;
+			l = Math.max(l, ms.length + 1);
+			return l <= maxLength && (m_openMask[l - 1] & bit) != 0;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.dict;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Character trie over a fixed set of words, laid out in breadth-first order
+ * with the children of each node stored contiguously and sorted by their
+ * labels. Node 0 is the root.
+ */
+final class Trie
+{
+	final String[] m_words; // distinct non-empty words in sorted order
+	final char[] m_label; // label of the edge from the parent
+	final int[] m_child; // index of the first child
+	final int[] m_numChild;
+	final int[] m_depth;
+	final int[] m_parent;
+	final int[] m_word; // index of the word ending at the node, or -1
+
+	Trie(Collection<String> words)
+	{
+		List<String> lw = new ArrayList<String>(words.size());
+		int nChars = 0;
+		for (String w: words)
+		{
+			if (w.length() == 0) continue;
+			lw.add(w);
+			nChars += w.length();
+		}
+		String[] ws = lw.toArray(new String[lw.size()]);
+		Arrays.sort(ws);
+
+		final int nMax = nChars + 1;
+		char[] label = new char[nMax];
+		int[] child = new int[nMax];
+		int[] numChild = new int[nMax];
+		int[] depth = new int[nMax];
+		int[] parent = new int[nMax];
+		int[] word = new int[nMax];
+		int[] lo = new int[nMax]; // range of the words having the prefix
+		int[] hi = new int[nMax];
+
+		int nNodes = 1;
+		lo[0] = 0;
+		hi[0] = ws.length;
+		parent[0] = -1;
+		for (int v = 0; v < nNodes; ++v)
+		{
+			final int d = depth[v];
+			int i = lo[v];
+			word[v] = -1;
+			while (i < hi[v] && ws[i].length() == d)
+				word[v] = i++; // duplicates are adjacent
+			child[v] = nNodes;
+			while (i < hi[v])
+			{
+				final char c = ws[i].charAt(d);
+				int j = i + 1;
+				while (j < hi[v] && ws[j].charAt(d) == c)
+					++j;
+				label[nNodes] = c;
+				depth[nNodes] = d + 1;
+				parent[nNodes] = v;
+				lo[nNodes] = i;
+				hi[nNodes] = j;
+				++nNodes;
+				i = j;
+			}
+			numChild[v] = nNodes - child[v];
+		}
+
+		m_words = ws;
+		m_label = Arrays.copyOf(label, nNodes);
+		m_child = Arrays.copyOf(child, nNodes);
+		m_numChild = Arrays.copyOf(numChild, nNodes);
+		m_depth = Arrays.copyOf(depth, nNodes);
+		m_parent = Arrays.copyOf(parent, nNodes);
+		m_word = Arrays.copyOf(word, nNodes);
+	}
+
+	int size()
+	{
+		return m_label.length;
+	}
+
+	/**
+	 * @return the child of v labeled with c, or -1 if not found
+	 */
+	int next(int v, char c)
+	{
+		int lo = m_child[v];
+		int hi = lo + m_numChild[v] - 1;
+		while (lo <= hi)
+		{
+			final int mid = (lo + hi) >>> 1;
+			final char cm = m_label[mid];
+			if (cm < c)
+				lo = mid + 1;
+			else if (cm > c)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+}
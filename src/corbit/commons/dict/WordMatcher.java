@@ -0,0 +1,112 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.dict;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import corbit.commons.util.Pair;
+
+/**
+ * Aho-Corasick automaton over a fixed set of words, finding all the
+ * occurrences of the words in a string in a single pass.
+ */
+public class WordMatcher
+{
+	private final Trie m_trie;
+	private final int[] m_fail; // failure link
+	private final int[] m_output; // nearest node on the failure chain where a word ends, or -1
+
+	public WordMatcher(Collection<String> words)
+	{
+		final Trie t = new Trie(words);
+		final int nNodes = t.size();
+		m_trie = t;
+		m_fail = new int[nNodes];
+		m_output = new int[nNodes];
+
+		/*
+		 * failure links; those of shallower nodes are computed first
+		 */
+
+		m_output[0] = -1;
+		for (int v = 1; v < nNodes; ++v)
+		{
+			final int p = t.m_parent[v];
+			int f = 0;
+			if (p != 0)
+			{
+				final char c = t.m_label[v];
+				for (int u = m_fail[p]; ; u = m_fail[u])
+				{
+					int g = t.next(u, c);
+					if (g >= 0)
+					{
+						f = g;
+						break;
+					}
+					if (u == 0) break;
+				}
+			}
+			m_fail[v] = f;
+			m_output[v] = t.m_word[v] >= 0 ? v : m_output[f];
+		}
+	}
+
+	public int size()
+	{
+		return m_trie.size();
+	}
+
+	/**
+	 * @return the beginning and ending indices of all the occurrences of the
+	 *         words not longer than maxLength, ordered by the ending indices
+	 */
+	public List<Pair<Integer,Integer>> findAll(CharSequence s, int maxLength)
+	{
+		final Trie t = m_trie;
+		List<Pair<Integer,Integer>> l = new ArrayList<Pair<Integer,Integer>>();
+		int v = 0;
+		for (int j = 0; j < s.length(); ++j)
+		{
+			final char c = s.charAt(j);
+			int g;
+			while ((g = t.next(v, c)) < 0 && v != 0)
+				v = m_fail[v];
+			v = g >= 0 ? g : 0;
+			for (int u = m_output[v]; u > 0; u = m_output[m_fail[u]])
+				if (t.m_depth[u] <= maxLength)
+					l.add(new Pair<Integer,Integer>(j + 1 - t.m_depth[u], j + 1));
+		}
+		return l;
+	}
+}
@@ -0,0 +1,297 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A binary model file consisting of sections that can be mapped into memory
+ * and used without parsing. The file starts with a magic number and a version,
+ * followed by sections, each of which is a long of its byte length and the
+ * content padded to a multiple of 8 bytes, so that the arrays in a section
+ * are aligned when the section is mapped.
+ */
+public class BinaryModelFile
+{
+	public static final int MAGIC = 0x43424d46; // "CBMF"
+	public static final int VERSION = 2;
+
+	/**
+	 * @return true if the file starts with the magic number of a binary model
+	 */
+	public static boolean isBinaryModel(String sFile) throws IOException
+	{
+		FileInputStream is = new FileInputStream(sFile);
+		try
+		{
+			byte[] b = new byte[4];
+			return is.read(b) == 4 && ByteBuffer.wrap(b).getInt() == MAGIC;
+		} finally
+		{
+			is.close();
+		}
+	}
+
+	/**
+	 * @return true if the file is a binary model of the version that the
+	 *         reader can read, e.g. to make a cache again if it is older
+	 */
+	public static boolean isCurrentVersion(String sFile) throws IOException
+	{
+		FileInputStream is = new FileInputStream(sFile);
+		try
+		{
+			byte[] b = new byte[8];
+			return is.read(b) == 8 && ByteBuffer.wrap(b).getInt(0) == MAGIC && ByteBuffer.wrap(b).getInt(4) == VERSION;
+		} finally
+		{
+			is.close();
+		}
+	}
+
+	public static class Writer implements Closeable
+	{
+		private final FileChannel m_channel;
+		private final ByteBuffer m_buf;
+		private long m_sectionStart = -1;
+
+		public Writer(File f) throws IOException
+		{
+			m_channel = new RandomAccessFile(f, "rw").getChannel();
+			m_channel.truncate(0);
+			m_buf = ByteBuffer.allocateDirect(1 << 20);
+			putInt(MAGIC);
+			putInt(VERSION);
+		}
+
+		private long position() throws IOException
+		{
+			return m_channel.position() + m_buf.position();
+		}
+
+		private void ensure(int n) throws IOException
+		{
+			if (m_buf.remaining() < n)
+				flush();
+		}
+
+		private void flush() throws IOException
+		{
+			m_buf.flip();
+			while (m_buf.hasRemaining())
+				m_channel.write(m_buf);
+			m_buf.clear();
+		}
+
+		public void beginSection() throws IOException
+		{
+			if (m_sectionStart >= 0)
+				throw new IllegalStateException("The previous section is not ended.");
+			m_sectionStart = position();
+			putLong(0L); // patched in endSection()
+		}
+
+		public void endSection() throws IOException
+		{
+			while (position() % 8 != 0)
+				putByte((byte)0);
+			flush();
+			long lLength = m_channel.position() - m_sectionStart - 8;
+			ByteBuffer b = ByteBuffer.allocate(8);
+			b.putLong(lLength).flip();
+			m_channel.write(b, m_sectionStart);
+			m_sectionStart = -1;
+		}
+
+		public void putByte(byte b) throws IOException
+		{
+			ensure(1);
+			m_buf.put(b);
+		}
+
+		public void putBytes(byte[] b) throws IOException
+		{
+			for (int i = 0; i < b.length;)
+			{
+				ensure(1);
+				int n = Math.min(m_buf.remaining(), b.length - i);
+				m_buf.put(b, i, n);
+				i += n;
+			}
+		}
+
+		public void putInt(int i) throws IOException
+		{
+			ensure(4);
+			m_buf.putInt(i);
+		}
+
+		public void putLong(long l) throws IOException
+		{
+			ensure(8);
+			m_buf.putLong(l);
+		}
+
+		public void putDouble(double d) throws IOException
+		{
+			ensure(8);
+			m_buf.putDouble(d);
+		}
+
+		/**
+		 * writes a section consisting of the length and UTF-8 bytes of a text
+		 */
+		public void putTextSection(String s) throws IOException
+		{
+			byte[] b = s.getBytes(StandardCharsets.UTF_8);
+			beginSection();
+			putInt(b.length);
+			putBytes(b);
+			endSection();
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			flush();
+			m_channel.force(false);
+			m_channel.close();
+		}
+	}
+
+	public static class Reader implements Closeable
+	{
+		private final FileChannel m_channel;
+		private long m_position;
+
+		public Reader(String sFile) throws IOException
+		{
+			m_channel = new RandomAccessFile(sFile, "r").getChannel();
+			ByteBuffer b = ByteBuffer.allocate(8);
+			readFully(b, 0L);
+			if (b.getInt(0) != MAGIC)
+				throw new IOException("Not a binary model file: " + sFile);
+			if (b.getInt(4) != VERSION)
+				throw new IOException(String.format("Unsupported model version %d (expected %d): %s", b.getInt(4), VERSION, sFile));
+			m_position = 8L;
+		}
+
+		private void readFully(ByteBuffer b, long lPos) throws IOException
+		{
+			while (b.hasRemaining())
+			{
+				if (m_channel.read(b, lPos + b.position()) < 0)
+					throw new IOException("Unexpected end of the model file.");
+			}
+		}
+
+		private long nextLength() throws IOException
+		{
+			ByteBuffer b = ByteBuffer.allocate(8);
+			readFully(b, m_position);
+			return b.getLong(0);
+		}
+
+		/**
+		 * maps the next section read-only; the mapping remains valid after
+		 * the reader is closed
+		 */
+		public ByteBuffer nextSection() throws IOException
+		{
+			long lLength = nextLength();
+			if (lLength > Integer.MAX_VALUE)
+				throw new IOException("The section is too large to be mapped at once: " + lLength + " bytes");
+			ByteBuffer section = m_channel.map(FileChannel.MapMode.READ_ONLY, m_position + 8, lLength);
+			m_position += 8 + lLength;
+			return section;
+		}
+
+		/**
+		 * maps the next section read-only in chunks of lChunk bytes, except
+		 * for the last one which may be shorter, so that a section larger
+		 * than a single buffer can hold is mapped
+		 */
+		public ByteBuffer[] nextSection(long lChunk) throws IOException
+		{
+			if (lChunk <= 0 || lChunk > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Invalid chunk size: " + lChunk);
+			long lLength = nextLength();
+			ByteBuffer[] chunks = new ByteBuffer[(int)((lLength + lChunk - 1) / lChunk)];
+			for (int k = 0; k < chunks.length; ++k)
+			{
+				long lOffset = k * lChunk;
+				chunks[k] = m_channel.map(FileChannel.MapMode.READ_ONLY, m_position + 8 + lOffset, Math.min(lChunk, lLength - lOffset));
+			}
+			m_position += 8 + lLength;
+			return chunks;
+		}
+
+		/**
+		 * skips the next section without mapping it
+		 */
+		public void skipSection() throws IOException
+		{
+			m_position += 8 + nextLength();
+		}
+
+		public String nextTextSection() throws IOException
+		{
+			ByteBuffer b = nextSection();
+			int iLength = b.getInt();
+			b.limit(4 + iLength);
+			return StandardCharsets.UTF_8.decode(b).toString();
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			m_channel.close();
+		}
+	}
+
+	/**
+	 * @return a view of n bytes of b starting from the given offset
+	 */
+	public static ByteBuffer slice(ByteBuffer b, int iOffset, int n)
+	{
+		ByteBuffer d = b.duplicate();
+		d.position(iOffset);
+		d.limit(iOffset + n);
+		return d.slice();
+	}
+}
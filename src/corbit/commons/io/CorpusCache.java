@@ -0,0 +1,226 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * A pre-tokenized copy of a corpus, saved in a cache directory given by the user
+ * as a binary model file (see BinaryModelFile) so that it can be loaded by a mapped read
+ * instead of parsing the corpus again. The cache consists of a key section, a
+ * section of the strings separated by newlines, and a section of int-coded
+ * sentences: [#sentences] and for each sentence [n][forms][tags][labels][heads],
+ * where forms, tags and labels are indices of the strings (-1 for null).
+ * The key is made of the checksum of the corpus file and a variant string
+ * that identifies the reader, so a stale or foreign cache is never used.
+ */
+public class CorpusCache
+{
+	public static final class Sentence
+	{
+		public final String[] forms;
+		public final String[] tags;
+		public final String[] labels;
+		public final int[] heads;
+
+		public Sentence(int n)
+		{
+			forms = new String[n];
+			tags = new String[n];
+			labels = new String[n];
+			heads = new int[n];
+		}
+
+		public int size()
+		{
+			return forms.length;
+		}
+	}
+
+	/* checksums of the files already seen by this process, keyed by path, length and modification time */
+	private static final Map<String,String> s_checksums = new ConcurrentHashMap<String,String>();
+
+	/**
+	 * @return the cache of the file in the directory, named after both the
+	 *         name and the path of the file so that files of the same name in
+	 *         different directories do not share one
+	 */
+	public static String getCacheFile(String sDir, String sFile) throws IOException
+	{
+		File f = new File(sFile).getCanonicalFile();
+		return new File(sDir, String.format("%s.%08x.cache", f.getName(), f.getPath().hashCode())).getPath();
+	}
+
+	public static String getKey(String sFile, String sVariant) throws IOException
+	{
+		File f = new File(sFile).getCanonicalFile();
+		String sId = f.getPath() + "\t" + f.length() + "\t" + f.lastModified();
+		String sChecksum = s_checksums.get(sId);
+		if (sChecksum == null)
+		{
+			CRC32 crc = new CRC32();
+			byte[] buf = new byte[1 << 16];
+			InputStream is = new FileInputStream(f);
+			try
+			{
+				int n;
+				while ((n = is.read(buf)) > 0)
+					crc.update(buf, 0, n);
+			}
+			finally
+			{
+				is.close();
+			}
+			sChecksum = String.format("%d\t%08x", f.length(), crc.getValue());
+			s_checksums.put(sId, sChecksum);
+		}
+		return sVariant + "\t" + sChecksum;
+	}
+
+	/**
+	 * @return the sentences in the cache of the file, or null if there is no
+	 *         cache for the file with the given key
+	 */
+	public static List<Sentence> load(String sDir, String sFile, String sKey) throws IOException
+	{
+		String sCacheFile = getCacheFile(sDir, sFile);
+		if (!new File(sCacheFile).isFile() || !BinaryModelFile.isCurrentVersion(sCacheFile))
+			return null;
+
+		BinaryModelFile.Reader in = new BinaryModelFile.Reader(sCacheFile);
+		try
+		{
+			if (!sKey.equals(in.nextTextSection()))
+				return null;
+			String[] symbols = in.nextTextSection().split("\n", -1);
+			IntBuffer b = in.nextSection().asIntBuffer();
+
+			int nSent = b.get();
+			List<Sentence> l = new ArrayList<Sentence>(nSent);
+			for (int i = 0; i < nSent; ++i)
+			{
+				int n = b.get();
+				Sentence s = new Sentence(n);
+				for (int j = 0; j < n; ++j)
+					s.forms[j] = symbol(symbols, b.get());
+				for (int j = 0; j < n; ++j)
+					s.tags[j] = symbol(symbols, b.get());
+				for (int j = 0; j < n; ++j)
+					s.labels[j] = symbol(symbols, b.get());
+				b.get(s.heads);
+				l.add(s);
+			}
+			return l;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static String symbol(String[] symbols, int i)
+	{
+		return i >= 0 ? symbols[i] : null;
+	}
+
+	public static void save(String sDir, String sFile, String sKey, List<Sentence> l) throws IOException
+	{
+		Map<String,Integer> ids = new HashMap<String,Integer>();
+		StringBuilder sb = new StringBuilder();
+		for (Sentence s : l)
+		{
+			intern(s.forms, ids, sb);
+			intern(s.tags, ids, sb);
+			intern(s.labels, ids, sb);
+		}
+
+		/* write to a temporary file and move it so that a reader never sees a partial cache */
+		File f = new File(getCacheFile(sDir, sFile)).getAbsoluteFile();
+		f.getParentFile().mkdirs();
+		File ftmp = File.createTempFile("~corpus", ".tmp", f.getParentFile());
+		ftmp.deleteOnExit();
+		BinaryModelFile.Writer out = new BinaryModelFile.Writer(ftmp);
+		try
+		{
+			out.putTextSection(sKey);
+			out.putTextSection(sb.toString());
+			out.beginSection();
+			out.putInt(l.size());
+			for (Sentence s : l)
+			{
+				out.putInt(s.size());
+				putSymbols(out, s.forms, ids);
+				putSymbols(out, s.tags, ids);
+				putSymbols(out, s.labels, ids);
+				for (int h : s.heads)
+					out.putInt(h);
+			}
+			out.endSection();
+		}
+		finally
+		{
+			out.close();
+		}
+		Files.move(ftmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void intern(String[] ss, Map<String,Integer> ids, StringBuilder sb)
+	{
+		for (String s : ss)
+		{
+			if (s == null || ids.containsKey(s))
+				continue;
+			if (s.indexOf('\n') >= 0)
+				throw new IllegalArgumentException("A string in the corpus contains a newline.");
+			if (ids.size() > 0) sb.append('\n');
+			sb.append(s);
+			ids.put(s, ids.size());
+		}
+	}
+
+	private static void putSymbols(BinaryModelFile.Writer out, String[] ss, Map<String,Integer> ids) throws IOException
+	{
+		for (String s : ss)
+			out.putInt(s != null ? ids.get(s) : -1);
+	}
+}
@@ -34,29 +34,79 @@ import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
-import corbit.commons.util.Generator;
-
-public class FileEnum extends Generator<String>
+/**
+ * Enumerates the lines of a UTF-8 file. The lines are read on the calling
+ * thread as they are requested.
+ */
+public class FileEnum implements Iterator<String>, Iterable<String>
 {
 	String sFile = null;
 
+	private BufferedReader br = null;
+	private String nextLine = null;
+	private boolean finished = false;
+
 	public FileEnum(String s)
 	{
 		sFile = s;
 	}
 
 	@Override
-	protected void iterate() throws InterruptedException
+	public Iterator<String> iterator()
+	{
+		return this;
+	}
+
+	@Override
+	public boolean hasNext()
 	{
-		BufferedReader br = null;
+		if (nextLine != null)
+			return true;
+		if (finished)
+			return false;
+
 		try
 		{
-			br = new BufferedReader(new InputStreamReader(new FileInputStream(sFile), "UTF-8"));
-			String s = null;
+			if (br == null)
+				br = new BufferedReader(new InputStreamReader(new FileInputStream(sFile), "UTF-8"));
+			nextLine = br.readLine();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		if (nextLine == null)
+			shutdown();
+		return nextLine != null;
+	}
 
-			while ((s = br.readLine()) != null)
-				yieldReturn(s);
+	@Override
+	public String next()
+	{
+		if (!hasNext())
+			throw new NoSuchElementException();
+		String s = nextLine;
+		nextLine = null;
+		return s;
+	}
+
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	public void shutdown()
+	{
+		finished = true;
+		nextLine = null;
+		try
+		{
+			if (br != null)
+				br.close();
 		}
 		catch (IOException e)
 		{
@@ -64,20 +114,7 @@ public class FileEnum extends Generator<String>
 		}
 		finally
 		{
-			try
-			{
-				if (br != null)
-					br.close();
-			}
-			catch (IOException e)
-			{
-				e.printStackTrace();
-			}
-			finally
-			{
-				shutdown();
-			}
+			br = null;
 		}
 	}
-
 }
@@ -32,15 +32,20 @@ package corbit.commons.io;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.text.Normalizer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import corbit.commons.dict.TagDictionary;
+import corbit.commons.util.OrderedPipeline;
+import corbit.commons.util.Pair;
 import corbit.commons.util.Statics;
 import corbit.commons.word.ArcLabel;
 import corbit.commons.word.IndexWord;
@@ -49,51 +54,76 @@ import corbit.commons.word.SentenceBuilder;
 
 public class MaltReader extends ParseReader
 {
+	private static final Pattern LINE = Pattern.compile("(.*?)\t(.*?)\t(.*?)\t(.*?)");
+
+	private static final int PARALLEL_WINDOW_PER_THREAD = 64;
+
+	private int m_iParallel = 1;
+	private int m_iLine = 0;
+
 	public MaltReader(String sFile, TagDictionary dict)
 	{
 		super(sFile, dict.generateTagSet(), new TreeSet<String>(Arrays.asList(dict.getArcLabels())));
 	}
 
+	/**
+	 * parses the sentences on the given number of threads, while a single
+	 * thread reads the lines of the file; the order of the sentences is kept
+	 */
+	public void setParallel(int iParallel)
+	{
+		m_iParallel = iParallel;
+	}
+
 	@Override protected void iterate() throws InterruptedException
 	{
-		int iLine = 0;
-		FileEnum fe = new FileEnum(m_sFile);
+		final FileEnum fe = new FileEnum(m_sFile);
 
 		try
 		{
-			while (fe.hasNext())
+			if (m_iParallel <= 1)
 			{
-				SentenceBuilder sb = new SentenceBuilder(m_posSet, m_labelSet);
-				int index = 0;
-
-				while (true)
+				Pair<Integer,List<String>> p;
+				while ((p = readSentence(fe)) != null)
+				{
+					ParsedSentence s = parseSentence(p.first, p.second);
+					if (s != null) yieldReturn(s);
+				}
+			}
+			else
+			{
+				new OrderedPipeline<Pair<Integer,List<String>>,ParsedSentence>(m_iParallel, m_iParallel * PARALLEL_WINDOW_PER_THREAD)
 				{
-					String l = Statics.trimSpecial(fe.next());
-					++iLine;
-					if (l.length() == 0)
-						break;
+					@Override
+					protected Pair<Integer,List<String>> read()
+					{
+						return readSentence(fe);
+					}
 
-					Pattern re = Pattern.compile("(.*?)\t(.*?)\t(.*?)\t(.*?)");
-					Matcher mc = re.matcher(l);
-					
-					if (!mc.matches() || mc.groupCount() < 4)
+					@Override
+					protected ParsedSentence process(Pair<Integer,List<String>> p)
 					{
-						System.err.println(String.format("Error found at line %d. Skipping.", iLine));
-						sb = null;
-						break;
+						return parseSentence(p.first, p.second);
 					}
-					String sForm = mc.group(1); //no need to normalize for English //Normalizer.normalize(mc.group(1), Normalizer.Form.NFKC);
-					String sPos = mc.group(2);
-					int iHead = Integer.parseInt(mc.group(3)) - 1;
-					ArcLabel label = ArcLabel.getLabel(mc.group(4));
-					sb.addWord(index, sForm, sPos, iHead, label);
-					index++;
-				}
 
-				if (sb != null)
-					yieldReturn(sb.compile());
+					@Override
+					protected void write(Pair<Integer,List<String>> p, ParsedSentence s) throws IOException
+					{
+						try
+						{
+							if (s != null) yieldReturn(s);
+						}
+						catch (InterruptedException e)
+						{
+							throw new InterruptedIOException();
+						}
+					}
+				}.run();
 			}
-		} catch (Exception e)
+		} catch (InterruptedIOException e)
+		{
+			throw new InterruptedException();
+		} catch (IOException e)
 		{
 			e.printStackTrace();
 		} finally
@@ -102,6 +132,56 @@ public class MaltReader extends ParseReader
 		}
 	}
 
+	/**
+	 * @return the line number of the first line and the lines of the next
+	 *         sentence, or null at the end of the file
+	 */
+	private Pair<Integer,List<String>> readSentence(FileEnum fe)
+	{
+		List<String> l = new ArrayList<String>();
+		int iFirst = m_iLine + 1;
+		while (fe.hasNext())
+		{
+			String s = Statics.trimSpecial(fe.next());
+			++m_iLine;
+			if (s.length() == 0)
+			{
+				if (l.isEmpty())
+				{
+					iFirst = m_iLine + 1;
+					continue;
+				}
+				break;
+			}
+			l.add(s);
+		}
+		return l.isEmpty() ? null : new Pair<Integer,List<String>>(iFirst, l);
+	}
+
+	private ParsedSentence parseSentence(int iFirstLine, List<String> l)
+	{
+		SentenceBuilder sb = new SentenceBuilder(m_posSet, m_labelSet);
+		for (int i = 0; i < l.size(); ++i)
+		{
+			Matcher mc = LINE.matcher(l.get(i));
+			try
+			{
+				if (!mc.matches() || mc.groupCount() < 4)
+					throw new IllegalArgumentException();
+				String sForm = mc.group(1); //no need to normalize for English //Normalizer.normalize(mc.group(1), Normalizer.Form.NFKC);
+				String sPos = mc.group(2);
+				int iHead = Integer.parseInt(mc.group(3)) - 1;
+				ArcLabel label = ArcLabel.getLabel(mc.group(4));
+				sb.addWord(i, sForm, sPos, iHead, label);
+			} catch (IllegalArgumentException e)
+			{
+				System.err.println(String.format("Error found at line %d. Skipping.", iFirstLine + i));
+				return null;
+			}
+		}
+		return sb.compile();
+	}
+
 	public static void maltToDep(String sFile, String sOutFile, TagDictionary dict) throws IOException
 	{
 		PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(sOutFile), "UTF-8"));
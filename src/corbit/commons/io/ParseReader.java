@@ -33,7 +33,10 @@ package corbit.commons.io;
 import java.util.Set;
 
 import corbit.commons.util.Generator;
+import corbit.commons.word.ArcLabel;
+import corbit.commons.word.IndexWord;
 import corbit.commons.word.ParsedSentence;
+import corbit.commons.word.SentenceBuilder;
 
 public abstract class ParseReader extends Generator<ParsedSentence>
 {
@@ -49,4 +52,30 @@ public abstract class ParseReader extends Generator<ParsedSentence>
 		m_posSet = setPos;
 		m_labelSet = setLabel;
 	}
+
+	public static CorpusCache.Sentence toCache(ParsedSentence s)
+	{
+		CorpusCache.Sentence c = new CorpusCache.Sentence(s.size());
+		for (int i = 0; i < s.size(); ++i)
+		{
+			IndexWord w = s.get(i);
+			c.forms[i] = w.form;
+			c.tags[i] = w.tag;
+			c.labels[i] = w.arclabel != null ? w.arclabel.toString() : null;
+			c.heads[i] = w.head;
+		}
+		return c;
+	}
+
+	/**
+	 * rebuilds a sentence from the cache; the tags in the cache are already
+	 * normalized by the reader that made it
+	 */
+	public static ParsedSentence fromCache(CorpusCache.Sentence c)
+	{
+		SentenceBuilder sb = new SentenceBuilder();
+		for (int i = 0; i < c.size(); ++i)
+			sb.addWord(i, c.forms[i], c.tags[i], c.heads[i], c.labels[i] != null ? ArcLabel.getLabel(c.labels[i]) : null);
+		return sb.compile();
+	}
 }
@@ -0,0 +1,181 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values with buckets of powers of two. Each
+ * bucket is a striped counter, so that threads recording values at the same
+ * time do not contend. Nothing is recorded while the metrics are disabled.
+ */
+public class Histogram implements HistogramMXBean
+{
+	public static final String NANOSECONDS = "ns";
+
+	/* bucket i holds the values of i significant bits, i.e. [2^(i-1), 2^i) */
+	private static final int NUM_BUCKETS = 64;
+
+	private final String m_sName;
+	private final String m_sUnit;
+	private final LongAdder[] m_buckets;
+	private final LongAdder m_count;
+	private final LongAdder m_total;
+	private final AtomicLong m_max;
+
+	Histogram(String sName, String sUnit)
+	{
+		m_sName = sName;
+		m_sUnit = sUnit;
+		m_buckets = new LongAdder[NUM_BUCKETS];
+		for (int i = 0; i < NUM_BUCKETS; ++i)
+			m_buckets[i] = new LongAdder();
+		m_count = new LongAdder();
+		m_total = new LongAdder();
+		m_max = new AtomicLong();
+	}
+
+	public String getName()
+	{
+		return m_sName;
+	}
+
+	public String getUnit()
+	{
+		return m_sUnit;
+	}
+
+	public void record(long v)
+	{
+		if (!Metrics.isEnabled())
+			return;
+		if (v < 0)
+			v = 0;
+		m_buckets[64 - Long.numberOfLeadingZeros(v)].increment();
+		m_count.increment();
+		m_total.add(v);
+		long max;
+		while (v > (max = m_max.get()) && !m_max.compareAndSet(max, v))
+			;
+	}
+
+	/**
+	 * records the time elapsed since t0 given by Metrics.start(), which is
+	 * zero if the metrics were disabled then
+	 */
+	public void recordSince(long t0)
+	{
+		if (t0 != 0L)
+			record(System.nanoTime() - t0);
+	}
+
+	public long getCount()
+	{
+		return m_count.sum();
+	}
+
+	public long getTotal()
+	{
+		return m_total.sum();
+	}
+
+	public double getMean()
+	{
+		long n = m_count.sum();
+		return n > 0 ? (double)m_total.sum() / n : 0.0d;
+	}
+
+	public long getMax()
+	{
+		return m_max.get();
+	}
+
+	/**
+	 * @return the upper bound of the bucket holding the q-quantile
+	 */
+	public long getPercentile(double q)
+	{
+		long[] counts = new long[NUM_BUCKETS];
+		long n = 0;
+		for (int i = 0; i < NUM_BUCKETS; ++i)
+			n += counts[i] = m_buckets[i].sum();
+		if (n == 0)
+			return 0;
+		long rank = Math.max(1, (long)Math.ceil(q * n));
+		long cum = 0;
+		for (int i = 0; i < NUM_BUCKETS; ++i)
+		{
+			cum += counts[i];
+			if (cum >= rank)
+				return Math.min((1L << i) - 1, m_max.get());
+		}
+		return m_max.get();
+	}
+
+	public long getPercentile50()
+	{
+		return getPercentile(0.5d);
+	}
+
+	public long getPercentile90()
+	{
+		return getPercentile(0.9d);
+	}
+
+	public long getPercentile99()
+	{
+		return getPercentile(0.99d);
+	}
+
+	public void reset()
+	{
+		for (LongAdder a: m_buckets)
+			a.reset();
+		m_count.reset();
+		m_total.reset();
+		m_max.set(0);
+	}
+
+	@Override
+	public String toString()
+	{
+		long n = getCount();
+		if (m_sUnit.equals(NANOSECONDS))
+			return String.format("%-28s %,12d  total %,12.1f ms  mean %,10.2f us  p50 %,10.1f  p90 %,10.1f  p99 %,10.1f  max %,10.1f us",
+					m_sName, n, getTotal() / 1e6, getMean() / 1e3,
+					getPercentile50() / 1e3, getPercentile90() / 1e3, getPercentile99() / 1e3, getMax() / 1e3);
+		else
+			return String.format("%-28s %,12d  total %,12d %s  mean %,10.2f  p50 %,8d  p90 %,8d  p99 %,8d  max %,8d",
+					m_sName, n, getTotal(), m_sUnit, getMean(),
+					getPercentile50(), getPercentile90(), getPercentile99(), getMax());
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The registry of the histograms of a process. The histograms are created
+ * once, typically in static fields of the classes measured, and record values
+ * only while the metrics are enabled, so that the measurement costs a single
+ * volatile read otherwise.
+ * 
+ * Once enabled, the registry and each histogram are exposed as MXBeans under
+ * the domain "corbit", and the report can be dumped to the standard error
+ * periodically.
+ */
+public class Metrics
+{
+	private static final String DOMAIN = "corbit";
+
+	private static volatile boolean m_bEnabled = false;
+	private static boolean m_bRegistered = false;
+	private static Thread m_reporter = null;
+
+	private static final Map<String,Histogram> m_histograms = new ConcurrentSkipListMap<String,Histogram>();
+
+	private static final MetricsMXBean m_bean = new MetricsMXBean()
+	{
+		public boolean isEnabled()
+		{
+			return Metrics.isEnabled();
+		}
+
+		public void setEnabled(boolean bEnabled)
+		{
+			m_bEnabled = bEnabled;
+		}
+
+		public String getReport()
+		{
+			return report();
+		}
+
+		public void reset()
+		{
+			Metrics.reset();
+		}
+	};
+
+	public static boolean isEnabled()
+	{
+		return m_bEnabled;
+	}
+
+	/**
+	 * @return the current time in nanoseconds to be given to
+	 *         Histogram.recordSince(), or zero if the metrics are disabled
+	 */
+	public static long start()
+	{
+		return m_bEnabled ? System.nanoTime() : 0L;
+	}
+
+	/**
+	 * @return the histogram of elapsed times in nanoseconds with the name
+	 */
+	public static Histogram timer(String sName)
+	{
+		return histogram(sName, Histogram.NANOSECONDS);
+	}
+
+	public static synchronized Histogram histogram(String sName, String sUnit)
+	{
+		Histogram h = m_histograms.get(sName);
+		if (h == null)
+		{
+			h = new Histogram(sName, sUnit);
+			m_histograms.put(sName, h);
+			if (m_bRegistered)
+				register(h);
+		}
+		else if (!h.getUnit().equals(sUnit))
+			throw new IllegalArgumentException("The unit of " + sName + " is " + h.getUnit() + ", not " + sUnit + ".");
+		return h;
+	}
+
+	/**
+	 * enables the metrics and registers them to the platform MBean server
+	 * 
+	 * @param iInterval
+	 *            the interval in seconds to dump the report to the standard
+	 *            error; 0 not to dump it periodically
+	 */
+	public static synchronized void enable(int iInterval)
+	{
+		m_bEnabled = true;
+		if (!m_bRegistered)
+		{
+			m_bRegistered = true;
+			register(m_bean, "type=Metrics");
+			for (Histogram h: m_histograms.values())
+				register(h);
+		}
+		if (iInterval > 0 && m_reporter == null)
+		{
+			final long lInterval = iInterval * 1000L;
+			m_reporter = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						while (true)
+						{
+							Thread.sleep(lInterval);
+							dump();
+						}
+					}
+					catch (InterruptedException e)
+					{
+					}
+				}
+			}, "metrics-reporter");
+			m_reporter.setDaemon(true);
+			m_reporter.start();
+		}
+	}
+
+	/**
+	 * stops recording and the periodic dump; the report is dumped once more
+	 * if the metrics were enabled
+	 */
+	public static synchronized void disable()
+	{
+		if (m_reporter != null)
+		{
+			m_reporter.interrupt();
+			m_reporter = null;
+		}
+		if (m_bEnabled)
+		{
+			m_bEnabled = false;
+			dump();
+		}
+	}
+
+	public static void reset()
+	{
+		for (Histogram h: m_histograms.values())
+			h.reset();
+	}
+
+	public static String report()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (Histogram h: m_histograms.values())
+			if (h.getCount() > 0)
+				sb.append(h.toString()).append(System.getProperty("line.separator"));
+		return sb.toString();
+	}
+
+	static void dump()
+	{
+		System.err.println(String.format("[%s] metrics:", DateFormat.getInstance().format(new Date())));
+		System.err.print(report());
+		System.err.flush();
+	}
+
+	private static void register(Histogram h)
+	{
+		register(h, "type=Histogram,name=" + h.getName());
+	}
+
+	private static void register(Object bean, String sKeys)
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(DOMAIN + ":" + sKeys);
+			if (!server.isRegistered(name))
+				server.registerMBean(bean, name);
+		}
+		catch (JMException e)
+		{
+			System.err.println("Failed to register the metrics " + sKeys + ": " + e.getMessage());
+		}
+	}
+}
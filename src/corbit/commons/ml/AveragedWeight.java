@@ -34,11 +34,23 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 
+import corbit.commons.io.BinaryModelFile;
+import corbit.commons.util.Pair;
+
+/**
+ * Averaged perceptron weights with the trick of Daume III (2006): wa accumulates
+ * each update multiplied by the step at which it is made, so that the averaged
+ * weight is obtained as (w - wa / step) without touching unchanged features.
+ */
 public class AveragedWeight extends WeightVector
 {
-	WeightVector wa = new WeightVector();
+	WeightVector wa;
 	int iStep = 0;
 
+	/* the averaged weight, shared until the next update */
+	private WeightVector m_averaged = null;
+	private volatile boolean m_bAveragedValid = false;
+
 	public AveragedWeight(AveragedWeight v)
 	{
 		super(v);
@@ -49,6 +61,7 @@ public class AveragedWeight extends WeightVector
 	public void nextStep()
 	{
 		++iStep;
+		m_bAveragedValid = false;
 	}
 
 	public int getStep()
@@ -58,6 +71,7 @@ public class AveragedWeight extends WeightVector
 
 	public WeightVector getAverageWeight()
 	{
+		m_bAveragedValid = false; // the caller may modify it
 		return wa;
 	}
 
@@ -65,14 +79,39 @@ public class AveragedWeight extends WeightVector
 	public void append(IntFeatVector v)
 	{
 		super.append(v);
-		wa.append(IntFeatVector.multiply(v, (double)iStep));
+		wa.append(v, (double)iStep);
+		m_bAveragedValid = false;
 	}
 
 	@Override
 	public void subtract(IntFeatVector v)
 	{
 		super.subtract(v);
-		wa.subtract(IntFeatVector.multiply(v, (double)iStep));
+		wa.append(v, -(double)iStep);
+		m_bAveragedValid = false;
+	}
+
+	@Override
+	public void put(int i, double d)
+	{
+		super.put(i, d);
+		m_bAveragedValid = false;
+	}
+
+	@Override
+	public void clear()
+	{
+		super.clear();
+		m_bAveragedValid = false;
+	}
+
+	@Override
+	public void trimToSize()
+	{
+		super.trimToSize();
+		wa.trimToSize();
+		m_averaged = null;
+		m_bAveragedValid = false;
 	}
 
 	public AveragedWeight()
@@ -80,17 +119,82 @@ public class AveragedWeight extends WeightVector
 		wa = new WeightVector();
 	}
 
-	public WeightVector getAveragedWeight()
+	public AveragedWeight(int iCapacity)
+	{
+		super(iCapacity);
+		wa = new WeightVector(iCapacity);
+	}
+
+	/**
+	 * Returns the averaged weight. The result is computed only over the used
+	 * part of the vector, and the same instance is returned until the weight
+	 * is updated, so it must be treated as read-only. A new instance is made
+	 * after an update, since decoders may still be reading the previous one.
+	 */
+	public synchronized WeightVector getAveragedWeight()
 	{
+		if (m_bAveragedValid)
+			return m_averaged;
+
 //    	Stopwatch sw = new Stopwatch("Averaging weight...");
-		double dStep = (double)iStep;
-		WeightVector v = new WeightVector(this);
-		for (int i = 0; i < wa.capacity; ++i)
-			v.put(i, v.get(i) - wa.get(i) / dStep);
+		final int n = Math.max(usedSize(), wa.usedSize());
+		WeightVector v = new WeightVector(n);
+		System.arraycopy(vector, 0, v.vector, 0, usedSize());
+		v.maxIndex = maxIndex;
+		if (iStep > 0)
+		{
+			final double dStep = (double)iStep;
+			for (int i = 0; i < n; ++i)
+				v.put(i, v.get(i) - wa.getWithCheck(i) / dStep);
+		}
 //      sw.lap();
+		m_averaged = v;
+		m_bAveragedValid = true;
 		return v;
 	}
 
+	/**
+	 * drops the cached averaged weight, e.g. once a compact copy of it is made
+	 */
+	public synchronized void releaseAveragedWeight()
+	{
+		m_averaged = null;
+		m_bAveragedValid = false;
+	}
+
+	/**
+	 * Iterative parameter mixing (McDonald et al., 2010): returns the uniform
+	 * average of weights trained on separate shards from the same starting
+	 * point. The shards advance their steps in parallel, so the accumulated
+	 * updates and the step are averaged in the same way as the weights.
+	 */
+	public static AveragedWeight mix(AveragedWeight[] vs)
+	{
+		int n = 0;
+		long lStep = 0;
+		for (AveragedWeight v : vs)
+		{
+			n = Math.max(n, Math.max(v.usedSize(), v.wa.usedSize()));
+			lStep += v.iStep;
+		}
+		final double d = 1.0 / vs.length;
+		AveragedWeight m = new AveragedWeight(n);
+		for (int i = 0; i < n; ++i)
+		{
+			double w = 0.0;
+			double a = 0.0;
+			for (AveragedWeight v : vs)
+			{
+				w += v.getWithCheck(i);
+				a += v.wa.getWithCheck(i);
+			}
+			if (w != 0.0) m.put(i, w * d);
+			if (a != 0.0) m.wa.put(i, a * d);
+		}
+		m.iStep = (int)Math.round(lStep * d);
+		return m;
+	}
+
 	public void save(PrintWriter sw)
 	{
 		sw.println(iStep);
@@ -98,10 +202,58 @@ public class AveragedWeight extends WeightVector
 		wa.save(sw);
 	}
 
+	/**
+	 * writes the weights as sections of a binary model: the step and the size,
+	 * the weights for decoding (averaged if bAveraged), and then the raw
+	 * weights and the accumulated updates to resume training. Each array has
+	 * its own section, which is mapped in chunks if it is too large for a
+	 * single buffer.
+	 */
+	public void saveBinary(BinaryModelFile.Writer out, boolean bAveraged) throws IOException
+	{
+		final int n = Math.max(usedSize(), wa.usedSize());
+		out.beginSection();
+		out.putInt(iStep);
+		out.putInt(n);
+		out.endSection();
+		MappedWeightVector.saveSection(out, bAveraged ? getAveragedWeight() : this, n);
+		MappedWeightVector.saveSection(out, this, n);
+		MappedWeightVector.saveSection(out, wa, n);
+	}
+
+	/**
+	 * @return the weights for decoding and the raw weights in the sections
+	 *         written by saveBinary(), used directly from the mapped file
+	 */
+	public static Pair<WeightVector,WeightVector> mapBinary(BinaryModelFile.Reader in) throws IOException
+	{
+		in.nextSection();
+		WeightVector v = new MappedWeightVector(MappedWeightVector.mapSection(in));
+		WeightVector w = new MappedWeightVector(MappedWeightVector.mapSection(in));
+		in.skipSection();
+		return new Pair<WeightVector,WeightVector>(v, w);
+	}
+
+	/**
+	 * loads the raw weights and the accumulated updates in the sections
+	 * written by saveBinary() to resume training
+	 */
+	public void loadBinary(BinaryModelFile.Reader in) throws IOException
+	{
+		int iStepNew = in.nextSection().getInt(0);
+		in.skipSection();
+		load(MappedWeightVector.mapSection(in));
+		wa.load(MappedWeightVector.mapSection(in));
+		iStep = iStepNew;
+		m_bAveragedValid = false;
+		System.err.println(String.format("%d weights loaded.", Math.max(usedSize(), wa.usedSize())));
+	}
+
 	public void load(BufferedReader sr) throws IOException
 	{
 		iStep = Integer.parseInt(sr.readLine());
 		super.load(sr);
 		wa.load(sr);
+		m_bAveragedValid = false;
 	}
 }
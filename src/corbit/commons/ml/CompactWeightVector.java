@@ -0,0 +1,125 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.ml;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Base of the read-only weight vectors used only for decoding. The weights are
+ * copied from a trained vector into a smaller representation sized to its
+ * used part, so any attempt to update them is an error.
+ */
+public abstract class CompactWeightVector extends WeightVector
+{
+	protected final int length;
+
+	protected CompactWeightVector(WeightVector v)
+	{
+		this(v.usedSize());
+	}
+
+	protected CompactWeightVector(int iLength)
+	{
+		super(0);
+		length = iLength;
+		maxIndex = length - 1;
+	}
+
+	@Override
+	public int usedSize()
+	{
+		return length;
+	}
+
+	@Override
+	public abstract double get(int i);
+
+	@Override
+	public double getWithCheck(int i)
+	{
+		return (i < length) ? get(i) : 0.0;
+	}
+
+	@Override
+	public double score(IntFeatVector v)
+	{
+		double dScore = 0;
+		for (int j = 0; j < v.size(); ++j)
+		{
+			int i = v.keyAt(j);
+			if (i < length)
+				dScore += get(i) * v.valueAt(j);
+		}
+		return dScore;
+	}
+
+	@Override
+	public void trimToSize()
+	{
+	}
+
+	@Override
+	public void clear()
+	{
+		throw new UnsupportedOperationException("read-only weight vector");
+	}
+
+	@Override
+	public void put(int i, double d)
+	{
+		throw new UnsupportedOperationException("read-only weight vector");
+	}
+
+	@Override
+	public void append(IntFeatVector v)
+	{
+		throw new UnsupportedOperationException("read-only weight vector");
+	}
+
+	@Override
+	public void append(IntFeatVector v, double d)
+	{
+		throw new UnsupportedOperationException("read-only weight vector");
+	}
+
+	@Override
+	public void subtract(IntFeatVector v)
+	{
+		throw new UnsupportedOperationException("read-only weight vector");
+	}
+
+	@Override
+	public void load(BufferedReader sr) throws IOException
+	{
+		throw new UnsupportedOperationException("read-only weight vector");
+	}
+}
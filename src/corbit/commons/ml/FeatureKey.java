@@ -0,0 +1,134 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.ml;
+
+import java.util.Arrays;
+
+/**
+ * Reusable builder of feature keys. The key is hashed incrementally as its
+ * parts are appended, so that a feature can be looked up at decoding time
+ * without materializing the concatenated feature string.
+ * The hash of a key is identical to hash(String) of the equivalent string.
+ * Instances are not thread-safe.
+ */
+public class FeatureKey
+{
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private char[] buf = new char[64];
+	private int len = 0;
+	private long hash = FNV_OFFSET;
+
+	public FeatureKey begin(String s)
+	{
+		len = 0;
+		hash = FNV_OFFSET;
+		return append(s);
+	}
+
+	public FeatureKey append(String s)
+	{
+		if (s == null)
+			s = "null"; // as string concatenation does
+		final int n = s.length();
+		if (len + n > buf.length)
+			buf = Arrays.copyOf(buf, Math.max(buf.length << 1, len + n));
+		s.getChars(0, n, buf, len);
+		long h = hash;
+		for (int i = len; i < len + n; ++i)
+			h = (h ^ buf[i]) * FNV_PRIME;
+		hash = h;
+		len += n;
+		return this;
+	}
+
+	public FeatureKey append(char c)
+	{
+		if (len == buf.length)
+			buf = Arrays.copyOf(buf, buf.length << 1);
+		buf[len++] = c;
+		hash = (hash ^ c) * FNV_PRIME;
+		return this;
+	}
+
+	/**
+	 * appends the decimal representation of i, as string concatenation does
+	 */
+	public FeatureKey append(int i)
+	{
+		if (i < 0)
+		{
+			if (i == Integer.MIN_VALUE)
+				return append(Integer.toString(i));
+			append('-');
+			i = -i;
+		}
+		int d = 1;
+		while (d <= i / 10)
+			d *= 10;
+		for (; d > 0; d /= 10)
+			append((char)('0' + (i / d) % 10));
+		return this;
+	}
+
+	public long hash()
+	{
+		return hash;
+	}
+
+	public int length()
+	{
+		return len;
+	}
+
+	/**
+	 * copies the characters of the key into dst, as String.getChars() does
+	 */
+	public void getChars(char[] dst, int dstBegin)
+	{
+		System.arraycopy(buf, 0, dst, dstBegin, len);
+	}
+
+	@Override
+	public String toString()
+	{
+		return new String(buf, 0, len);
+	}
+
+	public static long hash(CharSequence s)
+	{
+		long h = FNV_OFFSET;
+		for (int i = 0; i < s.length(); ++i)
+			h = (h ^ s.charAt(i)) * FNV_PRIME;
+		return h;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.ml;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import corbit.commons.Vocab;
+
+/**
+ * Immutable log of the features of a partial derivation, recorded during
+ * decoding so that the features of a derivation need not be extracted again
+ * for an update. A log refers to the logs of the sub-derivations instead of
+ * copying them, so it takes constant time and space per state. Features that
+ * were not in the vocabulary when they were logged are kept as characters and
+ * indexed only when the log is used for an update.
+ */
+public final class FeatureLog
+{
+	private static final int[] NO_KEYS = new int[0];
+	private static final char[] NO_CHARS = new char[0];
+	private static final FeatureLog[] NO_PARTS = new FeatureLog[0];
+
+	public static final FeatureLog EMPTY = new FeatureLog(null, NO_PARTS);
+
+	private final int[] m_keys;
+	private final double[] m_values; // null if all the values are 1.0
+	private final char[] m_pendingChars; // pending features concatenated
+	private final int[] m_pendingEnds;
+	private final double[] m_pendingValues; // null if all the values are 1.0
+	private final FeatureLog[] m_parts;
+
+	/**
+	 * copies the entries of v, which may be reused by the caller afterwards
+	 */
+	private FeatureLog(IntFeatVector v, FeatureLog[] parts)
+	{
+		final int n = v != null ? v.size() : 0;
+		final int np = v != null ? v.pendingSize() : 0;
+
+		int[] keys = n > 0 ? new int[n] : NO_KEYS;
+		double[] values = null;
+		for (int i = 0; i < n; ++i)
+		{
+			keys[i] = v.keyAt(i);
+			if (v.valueAt(i) != 1.0d && values == null)
+			{
+				values = new double[n];
+				for (int j = 0; j < n; ++j)
+					values[j] = v.valueAt(j);
+			}
+		}
+
+		int[] pendingEnds = np > 0 ? new int[np] : NO_KEYS;
+		double[] pendingValues = null;
+		for (int i = 0; i < np; ++i)
+		{
+			pendingEnds[i] = v.pendingEndAt(i);
+			if (v.pendingValueAt(i) != 1.0d && pendingValues == null)
+			{
+				pendingValues = new double[np];
+				for (int j = 0; j < np; ++j)
+					pendingValues[j] = v.pendingValueAt(j);
+			}
+		}
+
+		m_keys = keys;
+		m_values = values;
+		m_pendingChars = np > 0 ? Arrays.copyOf(v.pendingChars(), v.pendingCharLength()) : NO_CHARS;
+		m_pendingEnds = pendingEnds;
+		m_pendingValues = pendingValues;
+		m_parts = parts;
+	}
+
+	public static FeatureLog of(IntFeatVector v)
+	{
+		return new FeatureLog(v, NO_PARTS);
+	}
+
+	/**
+	 * @return the concatenation of the given logs
+	 */
+	public static FeatureLog join(FeatureLog... parts)
+	{
+		return new FeatureLog(null, parts);
+	}
+
+	public FeatureLog append(IntFeatVector v)
+	{
+		return new FeatureLog(v, new FeatureLog[] { this });
+	}
+
+	/**
+	 * adds all the features in the log to fv, indexing the features that were
+	 * not in the vocabulary when they were logged
+	 */
+	public void appendTo(IntFeatVector fv, Vocab vocab)
+	{
+		Deque<FeatureLog> stack = new ArrayDeque<FeatureLog>();
+		stack.push(this);
+		while (!stack.isEmpty())
+		{
+			FeatureLog l = stack.pop();
+			for (int i = 0; i < l.m_keys.length; ++i)
+				fv.add(l.m_keys[i], l.m_values != null ? l.m_values[i] : 1.0d);
+			for (int i = 0; i < l.m_pendingEnds.length; ++i)
+			{
+				final int begin = i > 0 ? l.m_pendingEnds[i - 1] : 0;
+				String sFeature = new String(l.m_pendingChars, begin, l.m_pendingEnds[i] - begin);
+				fv.add(vocab.getIndex(sFeature), l.m_pendingValues != null ? l.m_pendingValues[i] : 1.0d);
+			}
+			for (int i = l.m_parts.length - 1; i >= 0; --i)
+				stack.push(l.m_parts[i]);
+		}
+	}
+}
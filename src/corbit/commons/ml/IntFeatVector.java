@@ -30,43 +30,333 @@
 
 package corbit.commons.ml;
 
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
 
 import corbit.commons.Vocab;
 import corbit.commons.io.Console;
 
-public class IntFeatVector extends HashMap<Integer, Double>
+/**
+ * Sparse feature vector with primitive int keys and double values.
+ * Entries are kept in insertion order in parallel arrays and located through
+ * an open-addressing table of positions, so neither keys nor values are boxed.
+ */
+public class IntFeatVector
 {
-	private static final long serialVersionUID = 1L;
+	private static final int DEFAULT_CAPACITY = 8;
+
+	private int[] keys;
+	private double[] values;
+	private int size;
+
+	private int[] table; // open-addressing slots storing (position + 1); 0 means empty; null if not indexed yet
+	private int mask;
+	private final boolean lazyIndex;
+
+	/* features without an index yet, concatenated in pendingChars; see addPending() */
+	private char[] pendingChars = null;
+	private int[] pendingEnds = null; // end offset of each feature in pendingChars
+	private double[] pendingValues = null;
+	private int pendingSize = 0;
 
 	public IntFeatVector(IntFeatVector v) {
-		super(v);
+		keys = Arrays.copyOf(v.keys, v.keys.length);
+		values = Arrays.copyOf(v.values, v.values.length);
+		table = v.table != null ? Arrays.copyOf(v.table, v.table.length) : null;
+		size = v.size;
+		mask = v.mask;
+		lazyIndex = v.lazyIndex;
+		if (v.pendingSize > 0)
+		{
+			pendingChars = Arrays.copyOf(v.pendingChars, v.pendingCharLength());
+			pendingEnds = Arrays.copyOf(v.pendingEnds, v.pendingSize);
+			pendingValues = Arrays.copyOf(v.pendingValues, v.pendingSize);
+			pendingSize = v.pendingSize;
+		}
 	}
 
 	public IntFeatVector() {
-		super();
+		this(DEFAULT_CAPACITY);
 	}
 
-	public void append(IntFeatVector v)
+	public IntFeatVector(int capacity) {
+		this(capacity, true);
+	}
+
+	/**
+	 * @param bIndexed
+	 *            if false, entries are appended without looking up the existing
+	 *            ones until the vector is first accessed by key, which is faster
+	 *            for a vector that is filled and then read through once; until
+	 *            then, keyAt() may return the same key more than once, which does
+	 *            not matter to linear operations such as scoring
+	 */
+	public IntFeatVector(int capacity, boolean bIndexed) {
+		int n = DEFAULT_CAPACITY;
+		while (n < capacity)
+			n <<= 1;
+		keys = new int[n];
+		values = new double[n];
+		table = bIndexed ? new int[n << 1] : null;
+		mask = (n << 1) - 1;
+		size = 0;
+		lazyIndex = !bIndexed;
+	}
+
+	private static int hash(int k)
+	{
+		int h = k * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private int find(int k)
 	{
-		Iterator<Integer> it = v.keySet().iterator();
-		while (it.hasNext())
+		if (table == null)
+			buildIndex();
+		int slot = hash(k) & mask;
+		int p;
+		while ((p = table[slot]) != 0)
 		{
-			int i = it.next();
-			double val = containsKey(i) ? get(i) : 0.0d;
-			put(i, val + v.get(i));
+			if (keys[p - 1] == k)
+				return p - 1;
+			slot = (slot + 1) & mask;
 		}
+		return -1;
 	}
 
-	public void subtract(IntFeatVector v)
+	private void insert(int k, double d)
+	{
+		if (size == keys.length)
+			grow();
+		keys[size] = k;
+		values[size] = d;
+		++size;
+		int slot = hash(k) & mask;
+		while (table[slot] != 0)
+			slot = (slot + 1) & mask;
+		table[slot] = size;
+	}
+
+	/* merges the entries with the same key and builds the table */
+	private void buildIndex()
+	{
+		final int n = size;
+		table = new int[keys.length << 1];
+		mask = (keys.length << 1) - 1;
+		size = 0;
+		for (int i = 0; i < n; ++i)
+		{
+			final int k = keys[i];
+			int slot = hash(k) & mask;
+			int p;
+			while ((p = table[slot]) != 0 && keys[p - 1] != k)
+				slot = (slot + 1) & mask;
+			if (p != 0)
+				values[p - 1] += values[i];
+			else
+			{
+				keys[size] = k;
+				values[size] = values[i];
+				++size;
+				table[slot] = size;
+			}
+		}
+	}
+
+	private void grow()
+	{
+		int n = keys.length << 1;
+		keys = Arrays.copyOf(keys, n);
+		values = Arrays.copyOf(values, n);
+		if (table == null)
+			return;
+		table = new int[n << 1];
+		mask = (n << 1) - 1;
+		for (int i = 0; i < size; ++i)
+		{
+			int slot = hash(keys[i]) & mask;
+			while (table[slot] != 0)
+				slot = (slot + 1) & mask;
+			table[slot] = i + 1;
+		}
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public void clear()
+	{
+		if (lazyIndex)
+			table = null;
+		else
+			Arrays.fill(table, 0);
+		size = 0;
+		pendingSize = 0;
+	}
+
+	public boolean containsKey(int k)
+	{
+		return find(k) >= 0;
+	}
+
+	public double get(int k)
+	{
+		int p = find(k);
+		return p >= 0 ? values[p] : 0.0d;
+	}
+
+	public void put(int k, double d)
+	{
+		int p = find(k);
+		if (p >= 0)
+			values[p] = d;
+		else
+			insert(k, d);
+	}
+
+	public void add(int k, double d)
+	{
+		if (table == null)
+		{
+			if (size == keys.length)
+				grow();
+			keys[size] = k;
+			values[size] = d;
+			++size;
+			return;
+		}
+		int p = find(k);
+		if (p >= 0)
+			values[p] += d;
+		else
+			insert(k, d);
+	}
+
+	/**
+	 * @return the key of the i-th entry in insertion order (0 <= i < size())
+	 */
+	public int keyAt(int i)
+	{
+		return keys[i];
+	}
+
+	/**
+	 * @return the value of the i-th entry in insertion order (0 <= i < size())
+	 */
+	public double valueAt(int i)
+	{
+		return values[i];
+	}
+
+	/**
+	 * records a feature that has no index in the vocabulary yet, so that the
+	 * vocabulary need not grow for vectors that may never be used for an update;
+	 * the characters of the feature are copied without creating a string
+	 */
+	public void addPending(FeatureKey k, double d)
+	{
+		final int begin = reservePending(k.length());
+		k.getChars(pendingChars, begin);
+		commitPending(begin + k.length(), d);
+	}
+
+	public void addPending(String sFeature, double d)
+	{
+		final int begin = reservePending(sFeature.length());
+		sFeature.getChars(0, sFeature.length(), pendingChars, begin);
+		commitPending(begin + sFeature.length(), d);
+	}
+
+	private void addPending(char[] chars, int begin, int end, double d)
+	{
+		final int dst = reservePending(end - begin);
+		System.arraycopy(chars, begin, pendingChars, dst, end - begin);
+		commitPending(dst + end - begin, d);
+	}
+
+	/* makes room for a pending feature of n characters and returns its offset */
+	private int reservePending(int n)
 	{
-		Iterator<Integer> it = v.keySet().iterator();
-		while (it.hasNext()) {
-			int i = it.next();
-			double val = containsKey(i) ? get(i) : 0.0d;
-			put(i, val - v.get(i));
+		if (pendingChars == null)
+		{
+			pendingChars = new char[Math.max(n, 64)];
+			pendingEnds = new int[DEFAULT_CAPACITY];
+			pendingValues = new double[DEFAULT_CAPACITY];
+		}
+		final int begin = pendingCharLength();
+		if (begin + n > pendingChars.length)
+			pendingChars = Arrays.copyOf(pendingChars, Math.max(pendingChars.length << 1, begin + n));
+		if (pendingSize == pendingEnds.length)
+		{
+			pendingEnds = Arrays.copyOf(pendingEnds, pendingSize << 1);
+			pendingValues = Arrays.copyOf(pendingValues, pendingSize << 1);
 		}
+		return begin;
+	}
+
+	private void commitPending(int end, double d)
+	{
+		pendingEnds[pendingSize] = end;
+		pendingValues[pendingSize] = d;
+		++pendingSize;
+	}
+
+	public int pendingSize()
+	{
+		return pendingSize;
+	}
+
+	/**
+	 * @return the i-th pending feature (0 <= i < pendingSize())
+	 */
+	public String pendingKeyAt(int i)
+	{
+		final int begin = i > 0 ? pendingEnds[i - 1] : 0;
+		return new String(pendingChars, begin, pendingEnds[i] - begin);
+	}
+
+	public double pendingValueAt(int i)
+	{
+		return pendingValues[i];
+	}
+
+	/* raw access to the pending features for FeatureLog */
+
+	char[] pendingChars()
+	{
+		return pendingChars;
+	}
+
+	int pendingCharLength()
+	{
+		return pendingSize > 0 ? pendingEnds[pendingSize - 1] : 0;
+	}
+
+	int pendingEndAt(int i)
+	{
+		return pendingEnds[i];
+	}
+
+	public void append(IntFeatVector v)
+	{
+		for (int i = 0; i < v.size; ++i)
+			add(v.keys[i], v.values[i]);
+		for (int i = 0; i < v.pendingSize; ++i)
+			addPending(v.pendingChars, i > 0 ? v.pendingEnds[i - 1] : 0, v.pendingEnds[i], v.pendingValues[i]);
+	}
+
+	public void subtract(IntFeatVector v)
+	{
+		for (int i = 0; i < v.size; ++i)
+			add(v.keys[i], -v.values[i]);
+		for (int i = 0; i < v.pendingSize; ++i)
+			addPending(v.pendingChars, i > 0 ? v.pendingEnds[i - 1] : 0, v.pendingEnds[i], -v.pendingValues[i]);
 	}
 
 	public static IntFeatVector append(IntFeatVector v1, IntFeatVector v2)
@@ -86,51 +376,36 @@ public class IntFeatVector extends HashMap<Integer, Double>
 	public static IntFeatVector multiply(IntFeatVector v, double d)
 	{
 		IntFeatVector r = new IntFeatVector(v);
-		Iterator<Integer> it = v.keySet().iterator();
-		while (it.hasNext()) {
-			int i = it.next();
-			r.put(i, r.get(i) * d);
-		}
+		r.multiplyBy(d);
 		return r;
 	}
 
 	public static IntFeatVector divide(IntFeatVector v, double d)
 	{
 		IntFeatVector r = new IntFeatVector(v);
-		Iterator<Integer> it = v.keySet().iterator();
-		while (it.hasNext()) {
-			int i = it.next();
-			r.put(i, r.get(i) / d);
-		}
+		r.divideBy(d);
 		return r;
 	}
 
 	public void multiplyBy(double d)
 	{
-		Iterator<Integer> it = keySet().iterator();
-		while (it.hasNext()) {
-			int i = it.next();
-			put(i, get(i) * d);
-		}
+		for (int i = 0; i < size; ++i)
+			values[i] *= d;
 	}
 
 	public void divideBy(double d)
 	{
-		Iterator<Integer> it = keySet().iterator();
-		while (it.hasNext()) {
-			int i = it.next();
-			put(i, get(i) / d);
-		}
+		for (int i = 0; i < size; ++i)
+			values[i] /= d;
 	}
 
 	public void print(Vocab voc)
 	{
-		Iterator<Integer> it = keySet().iterator();
-		while (it.hasNext()) {
-			int i = it.next();
-			double d = this.get(i);
+		for (int i = 0; i < size; ++i)
+		{
+			double d = values[i];
 			if (d != 0.0d)
-				Console.writeLine(voc.get(i) + "\t" + d);
+				Console.writeLine(voc.get(keys[i]) + "\t" + d);
 		}
 		Console.writeLine();
 	}
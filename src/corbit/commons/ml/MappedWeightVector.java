@@ -0,0 +1,127 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.ml;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+
+import corbit.commons.io.BinaryModelFile;
+
+/**
+ * Read-only weights backed by buffers, typically a section of a binary model
+ * mapped into memory, so that processes sharing the file share the pages. A
+ * buffer cannot hold more than 2GB, so the weights are split into chunks of
+ * CHUNK_SIZE weights, each held by its own buffer.
+ */
+public class MappedWeightVector extends CompactWeightVector
+{
+	public static final int CHUNK_SHIFT = 27;
+	public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final DoubleBuffer[] bufs;
+
+	/**
+	 * @param bs
+	 *            the weights in chunks of CHUNK_SIZE weights, except for the
+	 *            last one which may be shorter
+	 */
+	public MappedWeightVector(DoubleBuffer[] bs)
+	{
+		super(length(bs));
+		bufs = new DoubleBuffer[bs.length];
+		for (int k = 0; k < bs.length; ++k)
+		{
+			if (k < bs.length - 1 && bs[k].remaining() != CHUNK_SIZE)
+				throw new IllegalArgumentException("Only the last chunk may be shorter than CHUNK_SIZE.");
+			bufs[k] = bs[k].slice();
+		}
+	}
+
+	private static int length(DoubleBuffer[] bs)
+	{
+		long n = 0;
+		for (DoubleBuffer b: bs)
+			n += b.remaining();
+		if (n > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many weights: " + n);
+		return (int)n;
+	}
+
+	/**
+	 * @return a copy of v in direct buffers outside the Java heap
+	 */
+	public static MappedWeightVector allocateDirect(WeightVector v)
+	{
+		final int n = v.usedSize();
+		DoubleBuffer[] bs = new DoubleBuffer[(int)(((long)n + CHUNK_SIZE - 1) >> CHUNK_SHIFT)];
+		for (int k = 0; k < bs.length; ++k)
+		{
+			final int iBegin = k << CHUNK_SHIFT;
+			final int m = Math.min(CHUNK_SIZE, n - iBegin);
+			bs[k] = ByteBuffer.allocateDirect(8 * m).asDoubleBuffer();
+			for (int i = 0; i < m; ++i)
+				bs[k].put(i, v.get(iBegin + i));
+		}
+		return new MappedWeightVector(bs);
+	}
+
+	/**
+	 * writes the first n weights of v as a section of a binary model
+	 */
+	public static void saveSection(BinaryModelFile.Writer out, WeightVector v, int n) throws IOException
+	{
+		out.beginSection();
+		for (int i = 0; i < n; ++i)
+			out.putDouble(v.getWithCheck(i));
+		out.endSection();
+	}
+
+	/**
+	 * @return the chunks of the next section of the reader, written by
+	 *         saveSection()
+	 */
+	public static DoubleBuffer[] mapSection(BinaryModelFile.Reader in) throws IOException
+	{
+		ByteBuffer[] bs = in.nextSection(8L * CHUNK_SIZE);
+		DoubleBuffer[] ds = new DoubleBuffer[bs.length];
+		for (int k = 0; k < bs.length; ++k)
+			ds[k] = bs[k].asDoubleBuffer();
+		return ds;
+	}
+
+	@Override
+	public double get(int i)
+	{
+		return bufs[i >>> CHUNK_SHIFT].get(i & CHUNK_MASK);
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.ml;
+
+/**
+ * Read-only weights linearly quantized to 8 or 16 bits. Each weight is stored
+ * as round(w / scale) with a single scale chosen so that the weight of the
+ * largest magnitude maps to the largest representable value.
+ */
+public class QuantizedWeightVector extends CompactWeightVector
+{
+	private final byte[] bvector;
+	private final short[] svector;
+	private final double scale;
+
+	public QuantizedWeightVector(WeightVector v, int iBits)
+	{
+		super(v);
+		if (iBits != 8 && iBits != 16)
+			throw new IllegalArgumentException("Quantization must be either 8 or 16 bits: " + iBits);
+
+		double dMax = 0.0d;
+		for (int i = 0; i < length; ++i)
+			dMax = Math.max(dMax, Math.abs(v.get(i)));
+		final int iRange = iBits == 8 ? Byte.MAX_VALUE : Short.MAX_VALUE;
+		scale = dMax > 0.0d ? dMax / iRange : 1.0d;
+
+		bvector = iBits == 8 ? new byte[length] : null;
+		svector = iBits == 16 ? new short[length] : null;
+		for (int i = 0; i < length; ++i)
+		{
+			long q = Math.round(v.get(i) / scale);
+			if (bvector != null)
+				bvector[i] = (byte)q;
+			else
+				svector[i] = (short)q;
+		}
+	}
+
+	public double getScale()
+	{
+		return scale;
+	}
+
+	@Override
+	public double get(int i)
+	{
+		return (bvector != null ? bvector[i] : svector[i]) * scale;
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.ml;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import corbit.commons.io.BinaryModelFile;
+
+/**
+ * A read-only snapshot of the weights for decoding in a file, which is mapped
+ * by every decoder so that the threads and processes using the same model
+ * share one copy through the page cache. The snapshot records the model file
+ * it was made from and which of its weights were exported, and is made again
+ * when either is changed.
+ */
+public class WeightSnapshot
+{
+	/**
+	 * @param sFile
+	 *            the snapshot file; created if it does not exist or is stale
+	 * @param sModelFile
+	 *            the model file the weights come from
+	 * @param sSource
+	 *            which weights of the model are exported, e.g. the averaged
+	 *            or the raw ones
+	 * @param w
+	 *            the weights to export if the snapshot needs to be made
+	 * @return the weights mapped from the snapshot
+	 */
+	public static WeightVector open(String sFile, String sModelFile, String sSource, WeightVector w) throws IOException
+	{
+		String sKey = getKey(sModelFile, sSource);
+		WeightVector v = map(sFile, sKey);
+		if (v != null)
+		{
+			System.err.println("Weight snapshot mapped from " + sFile + ".");
+			return v;
+		}
+
+		/* write to a temporary file and move it so that other processes never see a partial file */
+		File f = new File(sFile).getAbsoluteFile();
+		File ftmp = File.createTempFile("~snapshot", ".tmp", f.getParentFile());
+		ftmp.deleteOnExit();
+		BinaryModelFile.Writer out = new BinaryModelFile.Writer(ftmp);
+		out.putTextSection(sKey);
+		MappedWeightVector.saveSection(out, w, w.usedSize());
+		out.close();
+		Files.move(ftmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		System.err.println("Weight snapshot exported to " + sFile + ".");
+
+		v = map(sFile, sKey);
+		if (v == null)
+			throw new IOException("Failed to map the weight snapshot: " + sFile);
+		return v;
+	}
+
+	private static String getKey(String sModelFile, String sSource) throws IOException
+	{
+		File f = new File(sModelFile);
+		return f.getCanonicalPath() + "\t" + f.length() + "\t" + f.lastModified() + "\t" + sSource;
+	}
+
+	private static WeightVector map(String sFile, String sKey) throws IOException
+	{
+		if (!new File(sFile).exists() || !BinaryModelFile.isCurrentVersion(sFile))
+			return null;
+		BinaryModelFile.Reader in = new BinaryModelFile.Reader(sFile);
+		try
+		{
+			if (!in.nextTextSection().equals(sKey))
+				return null;
+			return new MappedWeightVector(MappedWeightVector.mapSection(in));
+		} finally
+		{
+			in.close();
+		}
+	}
+}
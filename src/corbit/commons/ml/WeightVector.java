@@ -33,8 +33,8 @@ package corbit.commons.ml;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.DoubleBuffer;
 import java.util.Arrays;
-import java.util.Iterator;
 
 import corbit.commons.util.Statics;
 
@@ -43,6 +43,7 @@ public class WeightVector
 	protected static final int DEFAULT_CAPACITY = 1 << 24;
 	protected double[] vector;
 	protected int capacity;
+	protected int maxIndex = -1; // the largest index ever written; all weights above are zero
 
 	public WeightVector()
 	{
@@ -50,15 +51,48 @@ public class WeightVector
 		capacity = DEFAULT_CAPACITY;
 	}
 
+	/**
+	 * creates a dense vector with the given initial capacity; a vocabulary of
+	 * known size (e.g. after Vocab.rebuild) needs no more than that
+	 */
+	public WeightVector(int iCapacity)
+	{
+		vector = new double[iCapacity];
+		capacity = iCapacity;
+	}
+
+	/**
+	 * copies only the used part of v; the copy grows again as needed
+	 */
 	public WeightVector(WeightVector v)
 	{
-		vector = Arrays.copyOf(v.vector, v.vector.length);
-		capacity = v.capacity;
+		vector = Arrays.copyOf(v.vector, v.usedSize());
+		capacity = vector.length;
+		maxIndex = v.maxIndex;
 	}
 
 	public void clear()
 	{
-		Arrays.fill(vector, 0.0d);
+		Arrays.fill(vector, 0, maxIndex + 1, 0.0d);
+		maxIndex = -1;
+	}
+
+	/**
+	 * @return the number of leading elements that may hold non-zero weights
+	 */
+	public int usedSize()
+	{
+		return maxIndex + 1;
+	}
+
+	/**
+	 * shrinks the storage to the used part of the vector; it grows again as
+	 * needed when a larger index is written
+	 */
+	public void trimToSize()
+	{
+		if (usedSize() < capacity)
+			resize(usedSize());
 	}
 
 	public double getWithCheck(int i)
@@ -79,9 +113,11 @@ public class WeightVector
 
 	private void ensureCapacity(int i)
 	{
+		if (i > maxIndex)
+			maxIndex = i;
 		if (i >= capacity)
 		{
-			int newCapacity = capacity << 1;
+			int newCapacity = Math.max(capacity, 1) << 1;
 			while (newCapacity <= i)
 				newCapacity = newCapacity << 1;
 			resize(newCapacity);
@@ -97,35 +133,45 @@ public class WeightVector
 
 	public void append(IntFeatVector v)
 	{
-		Iterator<Integer> it = v.keySet().iterator();
-		while (it.hasNext())
+		for (int j = 0; j < v.size(); ++j)
 		{
-			int i = it.next();
+			int i = v.keyAt(j);
 			ensureCapacity(i);
-			vector[i] = vector[i] + v.get(i);
+			vector[i] = vector[i] + v.valueAt(j);
 		}
 	}
 
 	public void subtract(IntFeatVector v)
 	{
-		Iterator<Integer> it = v.keySet().iterator();
-		while (it.hasNext())
+		for (int j = 0; j < v.size(); ++j)
+		{
+			int i = v.keyAt(j);
+			ensureCapacity(i);
+			vector[i] = vector[i] - v.valueAt(j);
+		}
+	}
+
+	/**
+	 * adds v multiplied by d, without creating a scaled copy of v
+	 */
+	public void append(IntFeatVector v, double d)
+	{
+		for (int j = 0; j < v.size(); ++j)
 		{
-			int i = it.next();
+			int i = v.keyAt(j);
 			ensureCapacity(i);
-			vector[i] = vector[i] - v.get(i);
+			vector[i] = vector[i] + v.valueAt(j) * d;
 		}
 	}
 
 	public double score(IntFeatVector v)
 	{
 		double dScore = 0;
-		Iterator<Integer> it = v.keySet().iterator();
-		while (it.hasNext())
+		for (int j = 0; j < v.size(); ++j)
 		{
-			int i = it.next();
+			int i = v.keyAt(j);
 			if (i < capacity)
-				dScore += get(i) * v.get(i);
+				dScore += vector[i] * v.valueAt(j);
 		}
 		return dScore;
 	}
@@ -134,7 +180,7 @@ public class WeightVector
 	{
 //		int iNumElem = 0;
 		int iMaxIndex = 0;
-		for (int i = 0; i < capacity; ++i)
+		for (int i = 0; i <= maxIndex; ++i)
 		{
 			double d = get(i);
 			if (d != 0.0d)
@@ -149,6 +195,30 @@ public class WeightVector
 //		System.err.println(String.format("Number of non-zero feature weights: %d/%d.", iNumElem, iMaxIndex));
 	}
 
+	/**
+	 * replaces the weights with the contents of the buffers, one after another
+	 */
+	public void load(DoubleBuffer[] bs)
+	{
+		clear();
+		long n = 0;
+		for (DoubleBuffer b: bs)
+			n += b.remaining();
+		if (n > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many weights: " + n);
+		if (n > 0)
+		{
+			ensureCapacity((int)n - 1);
+			int k = 0;
+			for (DoubleBuffer b: bs)
+			{
+				int m = b.remaining();
+				b.duplicate().get(vector, k, m);
+				k += m;
+			}
+		}
+	}
+
 	public void load(BufferedReader sr) throws IOException
 	{
 		int iNumElem = 0;
@@ -31,27 +31,43 @@
 package corbit.commons.util;
 
 import java.lang.Thread.State;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.Semaphore;
 
+/**
+ * Runs iterate() on a separate thread and returns the values passed to
+ * yieldReturn() in order. The values are handed over in batches of up to
+ * BATCH_SIZE, so the two threads synchronize once per batch rather than once
+ * per value; the generator runs ahead of the consumer by at most
+ * MAX_PENDING_BATCHES batches.
+ */
 public abstract class Generator<T> implements Iterator<T>, Iterable<T>
 {
+	private static final int BATCH_SIZE = 256;
+
+	private static final int MAX_PENDING_BATCHES = 2;
+
 	private static final Object NULL = new Object();
 
-	private static final Object END_OF_QUEUE = new Object();
+	private static final List<Object> END_OF_QUEUE = new ArrayList<Object>(0);
 
-	private static final Object NOT_PREPARED = new Object();
+	private final BlockingQueue<List<Object>> queue = new ArrayBlockingQueue<List<Object>>(MAX_PENDING_BATCHES);
 
-	private final BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>(1);
+	private volatile RuntimeException thrown = null;
 
-	private final Semaphore lock = new Semaphore(0);
+	/* accessed only by the generator thread */
+	private List<Object> outBatch = new ArrayList<Object>(BATCH_SIZE);
 
-	private RuntimeException thrown = null;
+	/* accessed only by the consumer */
+	private List<Object> inBatch = null;
+	private int inPos = 0;
+	private boolean finished = false;
 
-	private Object nextValue = NOT_PREPARED;
+	private volatile boolean stopped = false;
 
 	private final Thread thread = new Thread(new Runnable()
 	{
@@ -63,7 +79,6 @@ public abstract class Generator<T> implements Iterator<T>, Iterable<T>
 			}
 			catch (InterruptedException e)
 			{
-				e.printStackTrace();
 			}
 			catch (RuntimeException e)
 			{
@@ -71,11 +86,29 @@ public abstract class Generator<T> implements Iterator<T>, Iterable<T>
 			}
 			finally
 			{
-				queue.add(END_OF_QUEUE);
+				try
+				{
+					/* nobody waits for the rest after shutdown(), so never block then */
+					if (stopped)
+						queue.offer(END_OF_QUEUE);
+					else
+					{
+						flush();
+						queue.put(END_OF_QUEUE);
+					}
+				}
+				catch (InterruptedException e)
+				{
+				}
 			}
 		}
 	});
 
+	public Generator()
+	{
+		thread.setDaemon(true);
+	}
+
 	@Override
 	public Iterator<T> iterator()
 	{
@@ -99,7 +132,7 @@ public abstract class Generator<T> implements Iterator<T>, Iterable<T>
 	public boolean hasNext()
 	{
 		prepareNext();
-		return nextValue != END_OF_QUEUE;
+		return !finished;
 	}
 
 	@Override
@@ -110,20 +143,18 @@ public abstract class Generator<T> implements Iterator<T>, Iterable<T>
 
 		prepareNext();
 
-		if (thrown != null)
+		if (finished && thrown != null)
 		{
 			RuntimeException t = thrown;
 			thrown = null;
 			throw t;
 		}
 
-		if (!hasNext())
+		if (finished)
 			throw new NoSuchElementException();
 
-		@SuppressWarnings("unchecked") T val = (T)nextValue;
-
-		nextValue = NOT_PREPARED;
-
+		Object value = inBatch.get(inPos++);
+		@SuppressWarnings("unchecked") T val = (T)(value != NULL ? value : null);
 		return val;
 	}
 
@@ -137,6 +168,7 @@ public abstract class Generator<T> implements Iterator<T>, Iterable<T>
 
 	public void shutdown()
 	{
+		stopped = true;
 		thread.interrupt();
 	}
 
@@ -145,10 +177,9 @@ public abstract class Generator<T> implements Iterator<T>, Iterable<T>
 		if (thread != Thread.currentThread())
 			throw new IllegalStateException("Illegal call");
 
-		if (!queue.offer(value != null ? value : NULL))
-			throw new AssertionError();
-
-		lock.acquire();
+		outBatch.add(value != null ? value : NULL);
+		if (outBatch.size() >= BATCH_SIZE)
+			flush();
 	}
 
 	protected void yieldBreak() throws InterruptedException
@@ -156,23 +187,29 @@ public abstract class Generator<T> implements Iterator<T>, Iterable<T>
 		throw new UnsupportedOperationException("to be implemented");
 	}
 
+	private void flush() throws InterruptedException
+	{
+		if (outBatch.isEmpty())
+			return;
+		queue.put(outBatch);
+		outBatch = new ArrayList<Object>(BATCH_SIZE);
+	}
+
 	private void prepareNext()
 	{
-		if (nextValue != NOT_PREPARED)
+		if (finished || (inBatch != null && inPos < inBatch.size()))
 			return;
 
 		if (thread.getState() == State.NEW)
 			thread.start();
-		else
-			lock.release();
 
-		Object value;
+		List<Object> batch;
 		boolean interrupted = false;
 		while (true)
 		{
 			try
 			{
-				value = queue.take();
+				batch = queue.take();
 				break;
 			}
 			catch (InterruptedException e)
@@ -182,6 +219,16 @@ public abstract class Generator<T> implements Iterator<T>, Iterable<T>
 		}
 		if (interrupted)
 			Thread.currentThread().interrupt();
-		nextValue = (value != NULL) ? value : null;
+
+		if (batch == END_OF_QUEUE)
+		{
+			finished = true;
+			inBatch = null;
+		}
+		else
+		{
+			inBatch = batch;
+			inPos = 0;
+		}
 	}
 }
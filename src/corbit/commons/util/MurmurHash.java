@@ -50,4 +50,31 @@ public class MurmurHash
 
 		return h;
 	}
+
+	/**
+	 * equivalent to hash(byte[], int) applied to the eight little-endian bytes of key
+	 */
+	public static int hash(long key, int seed)
+	{
+		int m = 0x5bd1e995;
+		int r = 24;
+
+		int h = seed ^ 8;
+
+		for (int i = 0; i < 2; i++)
+		{
+			int k = (int)(key >>> (i << 5));
+			k *= m;
+			k ^= k >>> r;
+			k *= m;
+			h *= m;
+			h ^= k;
+		}
+
+		h ^= h >>> 13;
+		h *= m;
+		h ^= h >>> 15;
+
+		return h;
+	}
 }
@@ -0,0 +1,162 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.util;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reader -> worker pool -> in-order writer pipeline for unbounded input streams.
+ * Inputs are read on a separate thread and processed by a fixed pool, while the
+ * results are written on the calling thread in the order of the inputs. At most
+ * iWindow inputs are in flight, so reading blocks when the writer falls behind.
+ */
+public abstract class OrderedPipeline<I,O>
+{
+	private static final Object END_OF_QUEUE = new Object();
+
+	private final int m_iThreads;
+	private final BlockingQueue<Object> m_queue;
+
+	private volatile Throwable m_thrown = null;
+
+	public OrderedPipeline(int iThreads, int iWindow)
+	{
+		m_iThreads = Math.max(1, iThreads);
+		m_queue = new ArrayBlockingQueue<Object>(Math.max(1, iWindow));
+	}
+
+	/*
+	 * returns null at the end of the input
+	 */
+	protected abstract I read() throws IOException;
+
+	protected abstract O process(I input) throws Exception;
+
+	protected abstract void write(I input, O output) throws IOException;
+
+	/*
+	 * called instead of write() when process() fails; the default just reports the error
+	 */
+	protected void fail(I input, Throwable t) throws IOException
+	{
+		t.printStackTrace();
+	}
+
+	public void run() throws IOException
+	{
+		final ExecutorService exec = Executors.newFixedThreadPool(m_iThreads);
+
+		Thread reader = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					I input;
+					while ((input = read()) != null)
+					{
+						final I _input = input;
+						Future<O> f = exec.submit(new Callable<O>()
+						{
+							public O call() throws Exception
+							{
+								return process(_input);
+							}
+						});
+						m_queue.put(new Pair<I,Future<O>>(_input, f));
+					}
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				catch (Throwable t)
+				{
+					m_thrown = t;
+				}
+				finally
+				{
+					try
+					{
+						m_queue.put(END_OF_QUEUE);
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}, "pipeline-reader");
+		reader.setDaemon(true);
+		reader.start();
+
+		try
+		{
+			while (true)
+			{
+				Object o = m_queue.take();
+				if (o == END_OF_QUEUE) break;
+				@SuppressWarnings("unchecked") Pair<I,Future<O>> p = (Pair<I,Future<O>>)o;
+				try
+				{
+					write(p.first, p.second.get());
+				}
+				catch (ExecutionException e)
+				{
+					fail(p.first, e.getCause());
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			reader.interrupt();
+			exec.shutdownNow();
+		}
+
+		if (m_thrown instanceof IOException)
+			throw (IOException)m_thrown;
+		else if (m_thrown instanceof RuntimeException)
+			throw (RuntimeException)m_thrown;
+		else if (m_thrown != null)
+			throw new RuntimeException(m_thrown);
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Immutable sequence built by appending elements and concatenating other
+ * sequences, both in constant time; the parts are shared rather than copied.
+ */
+public final class PersistentSeq<T>
+{
+	@SuppressWarnings("rawtypes")
+	private static final PersistentSeq EMPTY = new PersistentSeq<Object>(null, null, null, 0);
+
+	// the sequence is m_prefix + m_infix + [m_last]; empty parts are null
+	private final PersistentSeq<T> m_prefix;
+	private final PersistentSeq<T> m_infix;
+	private final T m_last;
+	private final int m_size;
+
+	private PersistentSeq(PersistentSeq<T> prefix, PersistentSeq<T> infix, T last, int size)
+	{
+		m_prefix = prefix;
+		m_infix = infix;
+		m_last = last;
+		m_size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> PersistentSeq<T> empty()
+	{
+		return (PersistentSeq<T>)EMPTY;
+	}
+
+	public static <T> PersistentSeq<T> of(T t)
+	{
+		return new PersistentSeq<T>(null, null, t, 1);
+	}
+
+	/**
+	 * @return the sequence s1 + s2 + [t]
+	 */
+	public static <T> PersistentSeq<T> concat(PersistentSeq<T> s1, PersistentSeq<T> s2, T t)
+	{
+		return new PersistentSeq<T>(
+				s1.m_size > 0 ? s1 : null,
+				s2.m_size > 0 ? s2 : null,
+				t, s1.m_size + s2.m_size + 1);
+	}
+
+	public PersistentSeq<T> append(T t)
+	{
+		return new PersistentSeq<T>(m_size > 0 ? this : null, null, t, m_size + 1);
+	}
+
+	public int size()
+	{
+		return m_size;
+	}
+
+	public boolean isEmpty()
+	{
+		return m_size == 0;
+	}
+
+	/**
+	 * adds the elements to c in order; takes time linear in the length
+	 */
+	public void addTo(Collection<? super T> c)
+	{
+		if (m_size == 0) return;
+		Deque<PersistentSeq<T>> stack = new ArrayDeque<PersistentSeq<T>>();
+		stack.push(this);
+		while (!stack.isEmpty())
+		{
+			PersistentSeq<T> s = stack.pop();
+			if (s.m_prefix == null && s.m_infix == null)
+			{
+				c.add(s.m_last);
+				continue;
+			}
+			stack.push(of(s.m_last));
+			if (s.m_infix != null) stack.push(s.m_infix);
+			if (s.m_prefix != null) stack.push(s.m_prefix);
+		}
+	}
+
+	public List<T> toList()
+	{
+		List<T> l = new ArrayList<T>(m_size);
+		addTo(l);
+		return l;
+	}
+
+	@Override
+	public String toString()
+	{
+		return toList().toString();
+	}
+}
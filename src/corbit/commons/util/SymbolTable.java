@@ -0,0 +1,110 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.commons.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe table that maps strings to integer ids, so that atomic features
+ * can be compared by a few integer comparisons instead of string equality.
+ * The ids are given in generations: a decoder acquires the current generation
+ * for each sentence and keeps using it until the sentence is decoded, so that
+ * equal strings get equal ids within a sentence. Once the current generation
+ * grows beyond the limit, a new one is made for the sentences that follow, and
+ * the old one is dropped with the last sentence holding it. Ids are unique
+ * across the generations, so two different strings never get the same id.
+ */
+public class SymbolTable
+{
+	public static final long NULL = 0L;
+
+	public final class Generation
+	{
+		private final ConcurrentHashMap<String,Long> m_ids = new ConcurrentHashMap<String,Long>();
+
+		public long getId(String s)
+		{
+			if (s == null)
+				return NULL;
+			Long id = m_ids.get(s);
+			if (id != null)
+				return id;
+			Long idNew = m_next.incrementAndGet();
+			id = m_ids.putIfAbsent(s, idNew);
+			return id != null ? id : idNew;
+		}
+
+		public int size()
+		{
+			return m_ids.size();
+		}
+	}
+
+	private final AtomicLong m_next;
+	private final int m_iMaxSize;
+	private volatile Generation m_current;
+
+	public SymbolTable(int iMaxSize)
+	{
+		m_next = new AtomicLong(NULL);
+		m_iMaxSize = iMaxSize;
+		m_current = new Generation();
+	}
+
+	/**
+	 * @return the current generation, which is replaced with a new one first
+	 *         if it has grown beyond the limit; called before decoding a
+	 *         sentence
+	 */
+	public Generation acquire()
+	{
+		Generation g = m_current;
+		if (g.size() < m_iMaxSize)
+			return g;
+		synchronized (this)
+		{
+			if (m_current == g)
+				m_current = new Generation();
+			return m_current;
+		}
+	}
+
+	public int size()
+	{
+		return m_current.size();
+	}
+
+	public void clear()
+	{
+		m_current = new Generation();
+	}
+}
@@ -31,6 +31,8 @@
 package corbit.commons.word;
 
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import corbit.commons.util.Statics;
 
@@ -38,10 +40,17 @@ public class UnsegmentedSentence
 {
 	int hash = 0;
 	final char[] chars;
+	final int[] charTypes;
+
+	/* annotations computed once per sentence by the components that decode it */
+	private volatile Map<Object,Object> annotations = null;
 
 	public UnsegmentedSentence(char[] _chars)
 	{
 		chars = _chars;
+		charTypes = new int[chars.length];
+		for (int i = 0; i < chars.length; ++i)
+			charTypes[i] = Statics.getCharType(chars[i]);
 	}
 
 	public int length()
@@ -87,11 +96,42 @@ public class UnsegmentedSentence
 	public int charTypeAt(int index)
 	{
 		if (index >= 0 && index < chars.length)
-			return Statics.getCharType(chars[index]);
+			return charTypes[index];
 		else
 			return 0;
 	}
 
+	/**
+	 * @return the annotation set by the owner, or null if absent
+	 */
+	public Object getAnnotation(Object owner)
+	{
+		Map<Object,Object> m = annotations;
+		return m != null ? m.get(owner) : null;
+	}
+
+	public void setAnnotation(Object owner, Object annotation)
+	{
+		if (annotations == null)
+		{
+			synchronized (this)
+			{
+				if (annotations == null)
+					annotations = new ConcurrentHashMap<Object,Object>(4);
+			}
+		}
+		annotations.put(owner, annotation);
+	}
+
+	/**
+	 * drops all the annotations, so that a sentence kept after decoding does
+	 * not hold them nor the components that set them
+	 */
+	public void clearAnnotations()
+	{
+		annotations = null;
+	}
+
 	@Override
 	public String toString()
 	{
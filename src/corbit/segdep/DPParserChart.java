@@ -31,16 +31,24 @@
 package corbit.segdep;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.NoSuchElementException;
 
+import corbit.commons.metrics.Metrics;
 import corbit.commons.util.Pair;
-import corbit.commons.util.Statics;
 
+/**
+ * A chart of the states at one step of the beam. States with the same DP
+ * signature (see SRParserDPState) are merged on insertion. When the chart is
+ * given a beam size, the best states are kept in a bounded min-heap as they
+ * are inserted, so that pruning only has to drop the states outside the heap.
+ * All inserted states stay in the signature index until pruning, so that a
+ * state can still be merged with one that has fallen out of the beam.
+ */
 public class DPParserChart
 {
 	int m_iTotalState = 0;
@@ -48,10 +56,57 @@ public class DPParserChart
 	int m_iEvaluatedState = 0;
 	double m_dMargin = 0.0d;
 	boolean m_dp = true;
-	LinkedHashMap<SRParserState,Pair<SRParserState,double[]>> m_entries;
 
 	SRParserStateGenerator m_generator;
 
+	/* signature index and insertion order of the states */
+	final HashMap<SRParserState,Entry> m_index;
+	final ArrayList<Entry> m_list;
+	int m_iLive = 0;
+	int m_iNextSeq = 0;
+
+	/* min-heap of the best m_iBeam entries (the worst at the root); unused if m_iBeam <= 0 */
+	int m_iBeam;
+	Entry[] m_heap;
+	int m_iHeapSize = 0;
+	boolean m_bHeapStale = false; // a state was removed from the heap while others were outside it
+	boolean m_bPruned = true; // no state has been added or removed since the last pruning
+
+	static final class Entry
+	{
+		final SRParserState state;
+		final double score; // prefix score (with the margin for gold states)
+		final double inside;
+		int seq; // insertion order, to break ties as a stable sort does
+		int pos = -1; // position in the heap, or -1 if outside the beam
+		boolean removed = false;
+
+		Entry(SRParserState state, double score, double inside, int seq)
+		{
+			this.state = state;
+			this.score = score;
+			this.inside = inside;
+			this.seq = seq;
+		}
+	}
+
+	/**
+	 * @return true if e1 ranks higher than e2 in the beam
+	 */
+	static boolean isBetter(Entry e1, Entry e2)
+	{
+		return e1.score > e2.score
+				|| e1.score == e2.score && (e1.inside > e2.inside || e1.inside == e2.inside && e1.seq < e2.seq);
+	}
+
+	static final Comparator<Entry> BEST_FIRST = new Comparator<Entry>()
+	{
+		public int compare(Entry e1, Entry e2)
+		{
+			return isBetter(e1, e2) ? -1 : isBetter(e2, e1) ? 1 : 0;
+		}
+	};
+
 	public int numTotalState()
 	{
 		return m_iTotalState;
@@ -79,7 +134,7 @@ public class DPParserChart
 
 	public int size()
 	{
-		return m_entries.size();
+		return m_iLive;
 	}
 
 	public DPParserChart(boolean dp, SRParserStateGenerator generator)
@@ -88,16 +143,67 @@ public class DPParserChart
 	}
 
 	public DPParserChart(boolean dp, SRParserStateGenerator generator, double margin)
+	{
+		this(dp, generator, margin, 0);
+	}
+
+	/**
+	 * @param iBeam
+	 *            the beam size the chart is pruned to; 0 for no bound
+	 */
+	public DPParserChart(boolean dp, SRParserStateGenerator generator, double margin, int iBeam)
 	{
 		m_dp = dp;
-		m_entries = new LinkedHashMap<SRParserState,Pair<SRParserState,double[]>>();
+		m_index = new HashMap<SRParserState,Entry>();
+		m_list = new ArrayList<Entry>();
 		m_generator = generator;
 		m_dMargin = margin;
+		m_iBeam = iBeam;
+		m_heap = iBeam > 0 ? new Entry[iBeam] : null;
 	}
 
-	public Set<SRParserState> keySet()
+	/**
+	 * @return the states in the chart in the order of insertion, or in the
+	 *         order of the scores after pruning
+	 */
+	public Iterable<SRParserState> states()
 	{
-		return m_entries.keySet();
+		return new Iterable<SRParserState>()
+		{
+			public Iterator<SRParserState> iterator()
+			{
+				return new Iterator<SRParserState>()
+				{
+					int i = skip(0);
+
+					int skip(int j)
+					{
+						while (j < m_list.size() && m_list.get(j).removed)
+							++j;
+						return j;
+					}
+
+					public boolean hasNext()
+					{
+						return i < m_list.size();
+					}
+
+					public SRParserState next()
+					{
+						if (i >= m_list.size())
+							throw new NoSuchElementException();
+						SRParserState s = m_list.get(i).state;
+						i = skip(i + 1);
+						return s;
+					}
+
+					public void remove()
+					{
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
 	}
 
 	@Override
@@ -111,136 +217,382 @@ public class DPParserChart
 
 	public void remove(SRParserState s)
 	{
-		m_entries.remove(s);
+		Entry e = m_index.remove(s);
+		if (e != null)
+			removeEntry(e, false);
+	}
+
+	/**
+	 * @param bReplaced
+	 *            e is to be replaced by a state that is at least as good
+	 */
+	private void removeEntry(Entry e, boolean bReplaced)
+	{
+		if (e.pos >= 0)
+		{
+			if (!bReplaced && m_iLive > m_iHeapSize)
+				m_bHeapStale = true;
+			heapRemove(e);
+		}
+		e.removed = true;
+		--m_iLive;
+		m_bPruned = false;
 	}
 
 	public List<Pair<SRParserState,double[]>> entries()
 	{
 		List<Pair<SRParserState,double[]>> l = new ArrayList<Pair<SRParserState,double[]>>();
-		for (Entry<SRParserState,Pair<SRParserState,double[]>> p: m_entries.entrySet())
-			l.add(new Pair<SRParserState,double[]>(p.getValue().first, p.getValue().second));
+		for (Entry e: m_list)
+			if (!e.removed)
+				l.add(new Pair<SRParserState,double[]>(e.state, new double[] { e.score, e.inside }));
 		return l;
 	}
 
 	public void clear()
 	{
-		m_entries.clear();
+		m_index.clear();
+		m_list.clear();
+		m_iLive = 0;
+		m_iNextSeq = 0;
+		if (m_heap != null)
+			Arrays.fill(m_heap, 0, m_iHeapSize, null);
+		m_iHeapSize = 0;
+		m_bHeapStale = false;
+		m_bPruned = true;
 		m_iEvaluatedState = 0;
 	}
 
 	public SRParserState getKey(SRParserState s)
 	{
-		return m_entries.get(s).first;
+		return m_index.get(s).state;
 	}
 
-	public synchronized SRParserState updateEntry(SRParserState s)
+	/**
+	 * Inserts a state, merging it with the state of the same signature if any.
+	 * A chart is not thread-safe; parallel expansion gives each thread its own
+	 * partition to be merged with mergeFrom().
+	 */
+	public SRParserState updateEntry(SRParserState s)
 	{
 		assert (s != null);
 		++m_iTotalState;
-		if (m_dp && m_entries.containsKey(s))
+		Entry e = m_dp ? m_index.get(s) : null;
+		if (e != null)
 		{
-			SRParserState _s = m_entries.get(s).first;
+			final long t0 = Metrics.start();
+			SRParserState _s = e.state;
 			SRParserState sMerged = m_generator.merge(_s, s);
-			m_entries.remove(s);
-			m_entries.put(sMerged, new Pair<SRParserState,double[]>(sMerged, new double[] { sMerged.gold ? sMerged.scprf - m_dMargin : sMerged.scprf, sMerged.scins }));
+			m_index.remove(_s);
+			removeEntry(e, true);
+			add(sMerged);
 			++m_iMergedState;
 			if (_s.preds.size() == 1 && sMerged.preds.size() == 2)
 				++m_iMergedState;
 			m_iEvaluatedState += sMerged.nstates;
+			SRParserMetrics.MERGE.recordSince(t0);
 			return sMerged;
 		}
 		else
 		{
-			m_entries.put(s, new Pair<SRParserState,double[]>(s, new double[] { s.gold ? s.scprf - m_dMargin : s.scprf, s.scins }));
+			add(s);
 			++m_iEvaluatedState;
 			return s;
 		}
 	}
 
-	public static Pair<SRParserState,SRParserState> horizontalPrune(DPParserChart[] charts, int curidx, int goldidx, int iBeam)
+	/**
+	 * moves the states in a partition into this chart in the order of their
+	 * insertion, merging states with the same signature
+	 */
+	public void mergeFrom(DPParserChart part)
 	{
-		List<Entry<SRParserState,Pair<SRParserState,double[]>>> l = new ArrayList<Entry<SRParserState,Pair<SRParserState,double[]>>>();
+		int iTotal = m_iTotalState;
+		for (Entry e: part.m_list)
+			if (!e.removed)
+				updateEntry(e.state);
+		m_iTotalState = iTotal + part.m_iTotalState;
+		m_iMergedState += part.m_iMergedState;
+		part.m_iTotalState = 0;
+		part.m_iMergedState = 0;
+	}
 
-		for (int i = 0; i < charts.length; ++i)
+	/**
+	 * @return whether a state of the given scores could be in the beam if
+	 *         inserted now; the beam only gets better as states are inserted
+	 */
+	public boolean admits(double scprf, double scins, boolean gold)
+	{
+		if (m_heap == null || m_iHeapSize < m_heap.length)
+			return true;
+		final double score = gold ? scprf - m_dMargin : scprf;
+		final Entry e = m_heap[0];
+		return score > e.score || score == e.score && scins > e.inside;
+	}
+
+	/**
+	 * counts a state that is not inserted since it would fall out of the beam
+	 */
+	public void skipEntry()
+	{
+		++m_iTotalState;
+		++m_iEvaluatedState;
+	}
+
+	private void add(SRParserState s)
+	{
+		Entry e = new Entry(s, s.gold ? s.scprf - m_dMargin : s.scprf, s.scins, m_iNextSeq);
+		Entry old = m_index.put(s, e);
+		if (old != null)
+			removeEntry(old, false);
+		append(e);
+	}
+
+	private void append(Entry e)
+	{
+		e.seq = m_iNextSeq++;
+		e.pos = -1;
+		m_index.put(e.state, e);
+		m_list.add(e);
+		++m_iLive;
+		m_bPruned = false;
+		if (m_heap != null)
+			heapOffer(e);
+	}
+
+	/*
+	 * heap operations; the root is the worst entry in the beam
+	 */
+
+	private void heapOffer(Entry e)
+	{
+		if (m_iHeapSize < m_heap.length)
+		{
+			e.pos = m_iHeapSize;
+			m_heap[m_iHeapSize++] = e;
+			siftUp(e.pos);
+		}
+		else if (isBetter(e, m_heap[0]))
 		{
-			for (Entry<SRParserState,Pair<SRParserState,double[]>> p: charts[i].m_entries.entrySet())
-				l.add(p);
-			charts[i].m_entries.clear();
+			m_heap[0].pos = -1;
+			e.pos = 0;
+			m_heap[0] = e;
+			siftDown(0);
 		}
-		sort(l);
-		double[] dLastScore = new double[] { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
-		for (int i = 0; i < l.size(); ++i)
+	}
+
+	private void heapRemove(Entry e)
+	{
+		int i = e.pos;
+		e.pos = -1;
+		Entry last = m_heap[--m_iHeapSize];
+		m_heap[m_iHeapSize] = null;
+		if (last != e)
 		{
-			SRParserState state = l.get(i).getKey();
-			Pair<SRParserState,double[]> value = l.get(i).getValue();
-			if (i >= iBeam && !Statics.arrayEquals(value.second, dLastScore))
+			last.pos = i;
+			m_heap[i] = last;
+			siftDown(i);
+			siftUp(last.pos);
+		}
+	}
+
+	private void siftUp(int i)
+	{
+		Entry e = m_heap[i];
+		while (i > 0)
+		{
+			int p = (i - 1) >>> 1;
+			if (!isBetter(m_heap[p], e))
 				break;
-			charts[state.curstep].m_entries.put(state, value);
+			m_heap[i] = m_heap[p];
+			m_heap[i].pos = i;
+			i = p;
 		}
-		SRParserState _sref = null;
-		return new Pair<SRParserState,SRParserState>(l.get(0).getKey(), _sref);
+		m_heap[i] = e;
+		e.pos = i;
 	}
 
-	public void prune(int iBeam)
+	private void siftDown(int i)
 	{
-		List<Entry<SRParserState,Pair<SRParserState,double[]>>> l = new ArrayList<Entry<SRParserState,Pair<SRParserState,double[]>>>();
-		for (Entry<SRParserState,Pair<SRParserState,double[]>> p: m_entries.entrySet())
-			l.add(p);
-		m_entries.clear();
-		sort(l);
-		double[] dLastScore = new double[] { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
-		for (int i = 0; i < l.size(); ++i)
-		{
-			SRParserState state = l.get(i).getKey();
-			Pair<SRParserState,double[]> value = l.get(i).getValue();
-			if (i >= iBeam && !Statics.arrayEquals(value.second, dLastScore))
+		Entry e = m_heap[i];
+		while (true)
+		{
+			int c = 2 * i + 1;
+			if (c >= m_iHeapSize)
+				break;
+			if (c + 1 < m_iHeapSize && isBetter(m_heap[c], m_heap[c + 1]))
+				++c;
+			if (!isBetter(e, m_heap[c]))
 				break;
-			m_entries.put(state, value);
+			m_heap[i] = m_heap[c];
+			m_heap[i].pos = i;
+			i = c;
 		}
+		m_heap[i] = e;
+		e.pos = i;
 	}
 
-	static void sort(List<Entry<SRParserState,Pair<SRParserState,double[]>>> l)
+	/**
+	 * keeps the given entries, ordered best first, as the only states of this chart
+	 */
+	private void reset(Entry[] es, int n)
 	{
-		Collections.sort(l, new Comparator<Entry<SRParserState,Pair<SRParserState,double[]>>>()
+		clearEntries();
+		for (int i = 0; i < n; ++i)
+			append(es[i]);
+		m_bPruned = true;
+	}
+
+	private void clearEntries()
+	{
+		int iEvaluated = m_iEvaluatedState;
+		clear();
+		m_iEvaluatedState = iEvaluated;
+	}
+
+	public static Pair<SRParserState,SRParserState> horizontalPrune(DPParserChart[] charts, int curidx, int goldidx, int iBeam)
+	{
+		final long t0 = Metrics.start();
+		final SRParserEvents.Prune ev = SRParserEvents.prune();
+		int n = 0;
+		for (int i = 0; i < charts.length; ++i)
+			n += charts[i].size();
+		SRParserMetrics.STATES_PER_STEP.record(n);
+		Entry[] es = new Entry[n];
+		n = 0;
+		for (int i = 0; i < charts.length; ++i)
+			for (Entry e: charts[i].m_list)
+				if (!e.removed)
+				{
+					e.seq = n; // the order of the charts, then the order of insertion
+					es[n++] = e;
+				}
+		int k = Math.min(iBeam, n);
+		selectBest(es, k);
+		Arrays.sort(es, 0, k, BEST_FIRST);
+
+		for (int i = 0; i < charts.length; ++i)
+			charts[i].clearEntries();
+		for (int i = 0; i < k; ++i)
+			charts[es[i].state.curstep].append(es[i]);
+		for (int i = 0; i < charts.length; ++i)
+			charts[i].m_bPruned = true;
+		SRParserState _sref = null;
+		SRParserMetrics.PRUNE.recordSince(t0);
+		if (ev != null)
+			ev.commit(k > 0 ? es[0].state.curstep : -1, iBeam, n, k);
+		return new Pair<SRParserState,SRParserState>(k > 0 ? es[0].state : null, _sref);
+	}
+
+	/**
+	 * moves the best k entries to the beginning of es, in no particular order
+	 */
+	private static void selectBest(Entry[] es, int k)
+	{
+		if (k <= 0 || k >= es.length)
+			return;
+		/* a min-heap of the best k in es[0..k) */
+		for (int i = k / 2 - 1; i >= 0; --i)
+			siftDown(es, i, k);
+		for (int i = k; i < es.length; ++i)
 		{
-			public int compare(Entry<SRParserState,Pair<SRParserState,double[]>> p1,
-					Entry<SRParserState,Pair<SRParserState,double[]>> p2)
+			if (isBetter(es[i], es[0]))
 			{
-				double[] d1 = p1.getValue().second;
-				double[] d2 = p2.getValue().second;
-				return d1[0] < d2[0] ? 1 : (d1[0] == d2[0] ? (d1[1] < d2[1] ? 1 : d1[1] == d2[1] ? 0 : -1) : -1);
+				Entry t = es[0];
+				es[0] = es[i];
+				es[i] = t;
+				siftDown(es, 0, k);
 			}
-		});
+		}
+	}
+
+	private static void siftDown(Entry[] h, int i, int n)
+	{
+		while (true)
+		{
+			int c = 2 * i + 1;
+			if (c >= n)
+				break;
+			if (c + 1 < n && isBetter(h[c], h[c + 1]))
+				++c;
+			if (!isBetter(h[i], h[c]))
+				break;
+			Entry t = h[i];
+			h[i] = h[c];
+			h[c] = t;
+			i = c;
+		}
+	}
+
+	public void prune(int iBeam)
+	{
+		if (m_bPruned)
+			return;
+		final long t0 = Metrics.start();
+		final SRParserEvents.Prune ev = SRParserEvents.prune();
+		final int iLive = m_iLive;
+		SRParserMetrics.STATES_PER_STEP.record(iLive);
+		Entry[] es;
+		int k;
+		if (iBeam != m_iBeam || m_bHeapStale)
+		{
+			/* the heap does not hold the beam; select it from all the states */
+			es = liveEntries();
+			k = Math.min(iBeam, es.length);
+			selectBest(es, k);
+		}
+		else
+		{
+			/* the heap already holds the beam; just drop the rest */
+			es = Arrays.copyOf(m_heap, m_iHeapSize);
+			k = es.length;
+		}
+		Arrays.sort(es, 0, k, BEST_FIRST);
+		reset(es, k);
+		SRParserMetrics.PRUNE.recordSince(t0);
+		if (ev != null)
+			ev.commit(k > 0 ? es[0].state.curstep : -1, iBeam, iLive, k);
+	}
+
+	private Entry[] liveEntries()
+	{
+		Entry[] es = new Entry[m_iLive];
+		int n = 0;
+		for (Entry e: m_list)
+			if (!e.removed)
+				es[n++] = e;
+		return es;
 	}
 
 	public SRParserState getBestEntry()
 	{
-		SRParserState sBest = null;
-		double[] dBest = new double[] { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
-		for (Pair<SRParserState,double[]> p: entries())
+		Entry best = null;
+		if (m_heap != null)
 		{
-			if (p.second[0] > dBest[0] || p.second[0] == dBest[0] && p.second[1] > dBest[1])
+			for (int i = 0; i < m_iHeapSize; ++i)
+				if (best == null || isBetter(m_heap[i], best))
+					best = m_heap[i];
+		}
+		else
+		{
+			for (int i = 0; i < m_list.size(); ++i)
 			{
-				sBest = p.first;
-				dBest = p.second;
+				Entry e = m_list.get(i);
+				if (!e.removed && (best == null || isBetter(e, best)))
+					best = e;
 			}
 		}
-
-		return sBest;
+		return best != null ? best.state : null;
 	}
 
 	public boolean containsGoldState()
 	{
-		boolean bFound = false;
-		for (SRParserState s: keySet())
+		for (int i = 0; i < m_list.size(); ++i)
 		{
-			if (s.gold)
-			{
-				bFound = true;
-				break;
-			}
+			Entry e = m_list.get(i);
+			if (!e.removed && e.state.gold)
+				return true;
 		}
-		return bFound;
+		return false;
 	}
 
 }
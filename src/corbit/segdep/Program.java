@@ -44,6 +44,8 @@ import corbit.commons.io.CTBReader;
 import corbit.commons.io.Console;
 import corbit.commons.io.MaltReader;
 import corbit.commons.io.ParseReader;
+import corbit.commons.metrics.Metrics;
+import corbit.commons.ml.WeightStorage;
 import corbit.commons.util.GlobalConf;
 
 class Program
@@ -125,6 +127,11 @@ class Program
 			lArgs.remove(i);
 			parser.m_bInfreqAsOOV = true;
 		}
+		else if (lArgs.get(i).equals("--text-model"))
+		{
+			lArgs.remove(i);
+			parser.m_bTextModel = true;
+		}
 		else if (lArgs.get(i).equals("--no-compress"))
 		{
 			lArgs.remove(i);
@@ -135,12 +142,35 @@ class Program
 			lArgs.remove(i);
 			parser.m_bShowStats = true;
 		}
+		else if (lArgs.get(i).equals("--weight-snapshot"))
+		{
+			lArgs.remove(i);
+			parser.m_sWeightSnapshot = lArgs.get(i);
+			lArgs.remove(i);
+		}
+		else if (lArgs.get(i).equals("--weight-storage"))
+		{
+			lArgs.remove(i);
+			parser.m_weightStorage = WeightStorage.valueOf(lArgs.get(i).toUpperCase());
+			lArgs.remove(i);
+		}
 		else if (lArgs.get(i).equals("--parallel"))
 		{
 			lArgs.remove(i);
 			parser.m_iParallel = Integer.parseInt(lArgs.get(i));
 			lArgs.remove(i);
 		}
+		else if (lArgs.get(i).equals("--corpus-cache"))
+		{
+			lArgs.remove(i);
+			parser.m_sCorpusCacheDir = lArgs.get(i);
+			lArgs.remove(i);
+		}
+		else if (lArgs.get(i).equals("--lazy-expansion"))
+		{
+			lArgs.remove(i);
+			parser.m_bLazyExpansion = true;
+		}
 		else if (lArgs.get(i).equals("--gold-arc"))
 		{
 			lArgs.remove(i);
@@ -175,6 +205,17 @@ class Program
 			parser.loadPreprocWords(lArgs.get(i));
 			lArgs.remove(i);
 		}
+		else if (lArgs.get(i).equals("--metrics"))
+		{
+			lArgs.remove(i);
+			Metrics.enable(Integer.parseInt(lArgs.get(i)));
+			lArgs.remove(i);
+		}
+		else if (lArgs.get(i).equals("--jfr-events"))
+		{
+			lArgs.remove(i);
+			SRParserEvents.setEnabled(true);
+		}
 		else
 			return false;
 		return true;
@@ -204,6 +245,8 @@ class Program
 			int iDictThreshold = 0;
 			boolean bResume = false;
 			boolean bPrintParams = false;
+			int iHashBits = 0;
+			boolean bHashReport = false;
 
 			for (int i = 5; i < lArgs.size();)
 			{
@@ -283,6 +326,17 @@ class Program
 					parser.m_bUseTrie = true;
 					parser.setUseTrie();
 				}
+				else if (lArgs.get(i).equals("--hash-features"))
+				{
+					lArgs.remove(i);
+					iHashBits = Integer.parseInt(lArgs.get(i));
+					lArgs.remove(i);
+				}
+				else if (lArgs.get(i).equals("--hash-report"))
+				{
+					lArgs.remove(i);
+					bHashReport = true;
+				}
 				else if (lArgs.get(i).equals("--no-rebuild-vocab"))
 				{
 					lArgs.remove(i);
@@ -293,6 +347,12 @@ class Program
 					lArgs.remove(i);
 					parser.m_bShuffle = false;
 				}
+				else if (lArgs.get(i).equals("--mix-shards"))
+				{
+					lArgs.remove(i);
+					parser.m_iMixShards = Integer.parseInt(lArgs.get(i));
+					lArgs.remove(i);
+				}
 				else if (evalCommonOpt(parser, i, lArgs))
 					;
 				else if (evalExperimentalOpt(conf, i, lArgs))
@@ -323,6 +383,8 @@ class Program
 				else
 					System.err.println(sModelFile + " already exists. Will be overwritten.");
 			}
+			if (iHashBits > 0 && !bResume)
+				parser.setFeatureHashing(iHashBits, bHashReport);
 			if (sDictFile == null) usage("Error: dictionary file must be specified.", true);
 			if (sDictFile != null && !bResume)
 				parser.loadDictFromFile(sDictFile, iDictThreshold);
@@ -336,7 +398,7 @@ class Program
 				usage();
 			else
 			{
-				parser.loadModel(lArgs.get(1));
+				parser.loadModel(lArgs.get(1), true);
 
 				String sParseFile = null;
 				boolean bPrintParams = false;
@@ -389,20 +451,25 @@ class Program
 				// TENTATIVE: for use of frequency map in dictionary
 				if (sDictFile != null)
 					parser.loadDictFromFile(sDictFile, iDictThreshold);
+				parser.shareDecodingWeight(lArgs.get(1));
 				parser.test(lArgs.get(2), sParseFile);
 			}
 		}
-		else if (lArgs.get(0).equals("Run"))
+		else if (lArgs.get(0).equals("Run") || lArgs.get(0).equals("Serve"))
 		{
 			if (lArgs.size() < 2)
 				usage();
 			else
 			{
-				parser.loadModel(lArgs.get(1));
+				boolean bServe = lArgs.get(0).equals("Serve");
+				parser.loadModel(lArgs.get(1), true);
 				// parser.printDictFeatureWeights();
 				boolean bPrintParams = false;
 				String sDictFile = null;
 				int iDictThreshold = 0;
+				int iPort = 8321;
+				int iBatchWindow = 5;
+				int iMaxBatch = 64;
 				for (int i = 2; i < lArgs.size();)
 				{
 					if (lArgs.get(i).equals("--print-params"))
@@ -410,6 +477,24 @@ class Program
 						lArgs.remove(i);
 						bPrintParams = true;
 					}
+					else if (bServe && lArgs.get(i).equals("--port"))
+					{
+						lArgs.remove(i);
+						iPort = Integer.parseInt(lArgs.get(i));
+						lArgs.remove(i);
+					}
+					else if (bServe && lArgs.get(i).equals("--batch-window"))
+					{
+						lArgs.remove(i);
+						iBatchWindow = Integer.parseInt(lArgs.get(i));
+						lArgs.remove(i);
+					}
+					else if (bServe && lArgs.get(i).equals("--max-batch"))
+					{
+						lArgs.remove(i);
+						iMaxBatch = Integer.parseInt(lArgs.get(i));
+						lArgs.remove(i);
+					}
 					else if (lArgs.get(i).equals("--dict"))
 					{
 						lArgs.remove(i);
@@ -431,8 +516,12 @@ class Program
 				}
 				if (bPrintParams) parser.printProperties();
 				if (sDictFile != null) parser.loadDictFromFile(sDictFile, iDictThreshold);
+				parser.shareDecodingWeight(lArgs.get(1));
 				System.err.println("Ready.");
-				parser.run();
+				if (bServe)
+					parser.serve(iPort, iBatchWindow, iMaxBatch);
+				else
+					parser.run();
 			}
 			System.err.println("done.");
 		}
@@ -466,6 +555,25 @@ class Program
 			parser.loadModel(lArgs.get(1));
 			parser.printWeights();
 		}
+		else if (lArgs.get(0).equals("ConvertModel"))
+		{
+			if (lArgs.size() < 3) usage();
+			else
+			{
+				parser.loadModel(lArgs.get(1));
+				for (int i = 3; i < lArgs.size();)
+				{
+					if (evalCommonOpt(parser, i, lArgs));
+					else if (lArgs.get(i).startsWith("-"))
+					{
+						System.err.println("Unknown option: " + lArgs.get(i));
+						System.exit(-1);
+					}
+					else ++i;
+				}
+				parser.saveModel(lArgs.get(2));
+			}
+		}
 		else if (lArgs.get(0).equals("MaltToDep"))
 		{
 			if (lArgs.size() < 3) usage();
@@ -474,6 +582,7 @@ class Program
 		else
 			usage();
 
+		Metrics.disable();
 		Console.close();
 	}
 
@@ -485,6 +594,12 @@ class Program
 		System.err.println("Run (model-file-to-load) [options..] < (input-file) > (output-file)");
 		System.err.println("  --print-params       print the list of model and program parameters");
 		System.err.println();
+		System.err.println("Serve (model-file-to-load) [options..]");
+		System.err.println("                       answer raw sentences sent line by line to a TCP port on localhost with JSON lines");
+		System.err.println("  --port (int)         set the port to listen on (default: 8321)");
+		System.err.println("  --batch-window (ms)  set the time to wait for a request batch to fill up (default: 5)");
+		System.err.println("  --max-batch (int)    set the maximum number of requests decoded in a batch (default: 64)");
+		System.err.println();
 		System.err.println("Train (train-file) (dev-file) (#iteration) (model-file-to-save) --dict (dict-file) (threshold) [options..]");
 		System.err.println("  --dict (file) (int)  use the file (made using CreateDict command) as a POS tag dictionary");
 		System.err.println("                       and set the threshold frequency to use the set of POS tags in the dictionary");
@@ -502,9 +617,14 @@ class Program
 		System.err.println("  --no-lemma-filter    use all lexical information (default: only words with >2 frequencies)");
 		System.err.println("  --no-shuffle         disable shuffling of training instances");
 		System.err.println("  --use-trie           use Patricia trie to store the feature index (default: HashMap)");
+		System.err.println("  --mix-shards (num)   train the shards of the training data on separate threads and average their weights");
+		System.err.println("                       after each iteration (iterative parameter mixing; cannot be used with --use-trie)");
+		System.err.println("  --hash-features (b)  hash features into 2^b dimensions instead of storing feature strings");
+		System.err.println("  --hash-report        report the rate of hash collisions after each iteration");
 		System.err.println("  --load (file)        load a model file and continue training");
 		System.err.println("  --resume             resume training if a temporary file is availale");
 		System.err.println("  --save-each          always save the model file of the last iteration so it can be used to resume training");
+		System.err.println("  --text-model         save the model in the text format (default: binary format that can be mapped into memory)");
 		System.err.println("  --no-early           disable early update");
 		System.err.println("  --no-parse           disable dependency parsing (i.e. segmentation and POS tagging only)");
 		System.err.println("  --no-average         disable averaged perceptron (i.e. non-averaged perceptron)");
@@ -512,14 +632,30 @@ class Program
 		System.err.println();
 		System.err.println("  (options below can also be used for Test command)");
 		System.err.println("  --parallel (num)     specified the number of CPUs to use for decoding");
+		System.err.println("  --corpus-cache (dir) save and load the pre-tokenized cache of the training and test files in the directory");
+		System.err.println("                       (default: the files are parsed every time)");
+		System.err.println("  --lazy-expansion     build only the successors entering the beam also with DP, where those outside the beam");
+		System.err.println("                       are then not merged into the states in the beam (always done without DP)");
+		System.err.println("  --weight-storage <double|float|int16|int8|direct>");
+		System.err.println("                       store the weights for decoding in a compact form (default: double)");
+		System.err.println("  --weight-snapshot (file)");
+		System.err.println("                       share the weights for decoding among processes through the file, which is made if absent;");
+		System.err.println("                       only with the double weight storage");
 		System.err.println("  --print-params       print the list of model and program parameters");
 		System.err.println("  --show-stats         show statistics during decoding");
 		System.err.println("  --show-output        print outputs");
+		System.err.println("  --metrics (sec)      record the time spent in each phase and expose it through JMX (domain \"corbit\");");
+		System.err.println("                       the report is dumped to stderr at the interval (0: only at the end)");
+		System.err.println("  --jfr-events         emit flight recorder events of sentences, beam steps, pruning, merges and updates;");
+		System.err.println("                       record them with -XX:StartFlightRecording");
 		System.err.println();
 		System.err.println("Test (model-file-to-load) (test-file) [options..]");
 		System.err.println("  --save-pos (file)    save the output POS tags to the file");
 		System.err.println("  --save-parse (file)  save the output POS tags and parse trees to the file");
 		System.err.println();
+		System.err.println("ConvertModel (model-file-to-load) (model-file-to-save) [--text-model] [--no-compress]");
+		System.err.println("  convert a model between the binary and the text format");
+		System.err.println();
 		// System.err.println("CreateDict <ctb5|ctb7> (target-file) (dict-file-to-save)");
 	}
 
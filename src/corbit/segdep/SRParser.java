@@ -36,6 +36,8 @@ import java.io.InputStreamReader;
 import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -47,13 +49,16 @@ import corbit.commons.SRParserEvaluator;
 import corbit.commons.dict.TagDictionary;
 import corbit.commons.io.CTBReader;
 import corbit.commons.io.Console;
+import corbit.commons.io.CorpusCache;
 import corbit.commons.io.MaltReader;
 import corbit.commons.io.ParseReader;
 import corbit.commons.io.ParseWriter;
+import corbit.commons.metrics.Metrics;
 import corbit.commons.ml.AveragedWeight;
 import corbit.commons.ml.IntFeatVector;
 import corbit.commons.ml.WeightVector;
 import corbit.commons.transition.SDAction;
+import corbit.commons.util.OrderedPipeline;
 import corbit.commons.util.Pair;
 import corbit.commons.util.Statics;
 import corbit.commons.util.StepCounter;
@@ -69,6 +74,8 @@ import corbit.segdep.transition.SRParserTransition.SRParserTransitionParameter;
 
 public class SRParser extends SRParserModel
 {
+	private static final int RUN_WINDOW_PER_THREAD = 16; // sentences in flight per worker in run()
+
 	private class ParseResult
 	{
 		final SRParserState parsedState;
@@ -98,6 +105,11 @@ public class SRParser extends SRParserModel
 		private final boolean bTrain;
 
 		private SentenceParser(boolean bTrain)
+		{
+			this(bTrain, bTrain ? m_weight : getDecodingWeight(), bTrain && m_iParallel > 1);
+		}
+
+		private SentenceParser(boolean bTrain, WeightVector weight, boolean bParallelMove)
 		{
 			this.bTrain = bTrain;
 
@@ -106,13 +118,13 @@ public class SRParser extends SRParserModel
 			handler.setTagDictionary(m_dict);
 			if (m_wordlists != null) handler.setWordList(m_wordlists);
 			generator = new SRParserStateGenerator(handler, m_bDP, m_bEvalDelay);
-			weight = (!bTrain && m_bAveraged) ? m_weight.getAveragedWeight() : m_weight;
+			this.weight = weight;
 			SRParserTransitionParameter params = new SRParserTransitionParameter(
-					m_bAssignGoldSeg, m_bAssignGoldTag, m_bGoldArc, m_bParse, m_bUseFeatureCache, m_bValidateTag);
+					m_bAssignGoldSeg, m_bAssignGoldTag, m_bGoldArc, m_bParse, m_bUseFeatureCache, m_bValidateTag, bTrain);
 			trans = new SRParserCharBasedTransition(generator, handler, weight, m_dict, stats, params, m_bAlignArcChar);
 
-			bParallelMove = bTrain && m_iParallel > 1;
-			execMove = bParallelMove ? Executors.newCachedThreadPool() : null;
+			this.bParallelMove = bParallelMove;
+			execMove = bParallelMove ? Executors.newFixedThreadPool(m_iParallel) : null;
 		}
 
 		private SRParserStats stats()
@@ -132,28 +144,23 @@ public class SRParser extends SRParserModel
 
 		private SRParserTransition.Decision[] preprocess(UnsegmentedSentence sent)
 		{
-			if (m_preprocWords == null || sent.length() < 2) return null;
+			if (m_preprocMatcher == null || sent.length() < 2) return null;
 
 			final int maxWordLength = TagDictionary.getMaxWordLength();
 			final int length = sent.length();
 			SRParserTransition.Decision[] decision = new SRParserTransition.Decision[length + 1];
 
-			// TODO: Tentative inefficient implementation
-
-			for (int i = 0; i < length; ++i)
+			// the result does not depend on the order of the matches
+			for (Pair<Integer,Integer> m: m_preprocMatcher.findAll(sent.toString(), maxWordLength))
 			{
-				for (int l = 1; l <= Math.min(maxWordLength, length - i); ++l)
-				{
-					if (m_preprocWords.contains(sent.substring(i, i + l)))
-					{
-						if (decision[i] != SRParserTransition.Decision.IN_WORD)
-							decision[i] = SRParserTransition.Decision.SEGMENT;
-						for (int k = i + 1; k < i + l; ++k)
-							decision[k] = SRParserTransition.Decision.IN_WORD;
-						if (decision[i + l] != SRParserTransition.Decision.IN_WORD)
-							decision[i + l] = SRParserTransition.Decision.SEGMENT;
-					}
-				}
+				final int i = m.first;
+				final int j = m.second;
+				if (decision[i] != SRParserTransition.Decision.IN_WORD)
+					decision[i] = SRParserTransition.Decision.SEGMENT;
+				for (int k = i + 1; k < j; ++k)
+					decision[k] = SRParserTransition.Decision.IN_WORD;
+				if (decision[j] != SRParserTransition.Decision.IN_WORD)
+					decision[j] = SRParserTransition.Decision.SEGMENT;
 			}
 
 			return Arrays.copyOfRange(decision, 1, length);
@@ -161,7 +168,24 @@ public class SRParser extends SRParserModel
 
 		public ParseResult parseSentence(UnsegmentedSentence sent, ParsedSentence gsent)
 		{
+			handler.beginSentence(sent);
+			try
+			{
+				return decode(sent, gsent);
+			}
+			finally
+			{
+				sent.clearAnnotations();
+			}
+		}
+
+		private ParseResult decode(UnsegmentedSentence sent, ParsedSentence gsent)
+		{
+			final long t0 = Metrics.start();
+			final SRParserEvents.SentenceParse evSent = SRParserEvents.sentenceParse();
 			SRParserTransition.Decision[] decision = preprocess(sent);
+			/* the successors are built lazily for a bounded beam per step; exact unless merged with DP */
+			final boolean bLazy = (m_bLazyExpansion || !m_bDP) && !m_bSingleBeam && m_iBeam > 0;
 
 			/*
 			 * Initialization
@@ -178,14 +202,25 @@ public class SRParser extends SRParserModel
 
 			for (int i = 0; i < iNumChart; ++i)
 			{
-				charts1[i] = new DPParserChart(m_bDP, generator, 0.0d);
-				charts2[i] = new DPParserChart(m_bDP, generator, 0.0d);
+				charts1[i] = new DPParserChart(m_bDP, generator, 0.0d, m_iBeam);
+				charts2[i] = new DPParserChart(m_bDP, generator, 0.0d, m_iBeam);
+			}
+
+			/* per-thread partitions of charts2 for parallel expansion; never pruned by themselves */
+			DPParserChart[][] parts = null;
+			if (bParallelMove)
+			{
+				parts = new DPParserChart[m_iParallel][iNumChart];
+				for (int k = 0; k < m_iParallel; ++k)
+					for (int i = 0; i < iNumChart; ++i)
+						parts[k][i] = new DPParserChart(m_bDP, generator, 0.0d);
 			}
 
 			charts1[0].updateEntry(sr);
 
 			boolean bStopped = false;
 			int curstep = 0;
+			int iSteps = 0;
 			SRParserState bestHP = null;
 			SRParserState sref = null;
 
@@ -215,9 +250,23 @@ public class SRParser extends SRParserModel
 				 */
 				ParsedSentence _gsent = (bTrain || m_bShowStats || m_bAssignGoldSeg || m_bAssignGoldTag || m_bGoldArc)
 					? gsent : null;
+				final SRParserEvents.BeamStep evStep = SRParserEvents.beamStep();
+				final SRParserEvents.MergeBurst evMerge = SRParserEvents.mergeBurst();
+				final int iOccupancy = evStep != null ? numStates(charts1, m_bSingleBeam ? -1 : curstep) : 0;
+				final long iTotal0 = evStep != null ? numTotalStates(charts2) : 0;
+				final long iMerged0 = evStep != null ? numMergedStates(charts2) : 0;
 				boolean bResult = bParallelMove ?
-						parallelProceedOneStep(charts1, charts2, curstep, trans, weight, _gsent, false, m_bSingleBeam, execMove) :
+						parallelProceedOneStep(charts1, charts2, parts, curstep, trans, weight, _gsent, false, m_bSingleBeam, execMove) :
+						bLazy ? lazyProceedOneStep(charts1, charts2, curstep, trans, _gsent, false) :
 						proceedOneStep(charts1, charts2, curstep, trans, weight, _gsent, false, m_bSingleBeam);
+				++iSteps;
+				if (evStep != null)
+				{
+					long iTotal = numTotalStates(charts2) - iTotal0;
+					long iMerged = numMergedStates(charts2) - iMerged0;
+					evMerge.commit(sent.length(), curstep, iMerged, iTotal);
+					evStep.commit(sent.length(), curstep, iOccupancy, iTotal, iMerged);
+				}
 
 				assert (m_bSingleBeam || curstep < iLastStep || !bResult);
 				
@@ -284,17 +333,50 @@ public class SRParser extends SRParserModel
 			/*
 			 * Update statistics
 			 */
-			stats.numSentencesProcessed++;
-			stats.numStatesMerged += nchart.numMergedState();
-			stats.numStatesEvaluated += nchart.numTotalState();
-			if (bStopped) stats.numSentencesStopped++;
+			stats.numSentencesProcessed.increment();
+			stats.numStatesMerged.add(nchart.numMergedState());
+			stats.numStatesEvaluated.add(nchart.numTotalState());
+			if (bStopped) stats.numSentencesStopped.increment();
 
 			assert (so != null);
 			boolean bGoldSurvive = m_bShowStats && !bTrain && charts2[iLastStep].containsGoldState();
+			SRParserMetrics.sentenceLatency(sent.length()).recordSince(t0);
+			if (evSent != null)
+				evSent.commit(sent.length(), m_iBeam, iSteps, bTrain, bStopped,
+						nchart.numTotalState(), nchart.numMergedState());
 			return new ParseResult(so, sg, sref, bGoldSurvive);
 		}
 	}
 
+	/**
+	 * the number of live states in the chart of a step, or in all the charts if step < 0
+	 */
+	static int numStates(DPParserChart[] charts, int step)
+	{
+		if (step >= 0)
+			return charts[step].size();
+		int n = 0;
+		for (DPParserChart c: charts)
+			n += c.size();
+		return n;
+	}
+
+	static long numTotalStates(DPParserChart[] charts)
+	{
+		long n = 0;
+		for (DPParserChart c: charts)
+			n += c.numTotalState();
+		return n;
+	}
+
+	static long numMergedStates(DPParserChart[] charts)
+	{
+		long n = 0;
+		for (DPParserChart c: charts)
+			n += c.numMergedState();
+		return n;
+	}
+
 	/*
 	 * Beginning of main
 	 */
@@ -390,16 +472,23 @@ public class SRParser extends SRParserModel
 				/*
 				 * Evaluate the parsed output and show statistics
 				 */
-				if (pw != null) pw.writeParse(osent, gsent, false, !m_bParse || m_bSaveOnlyPos);
+				if (pw != null)
+				{
+					final long t0 = Metrics.start();
+					pw.writeParse(osent, gsent, false, !m_bParse || m_bSaveOnlyPos);
+					SRParserMetrics.IO.recordSince(t0);
+				}
 //				eval.evalAction(so, sg);
 				boolean bResult = eval.evalSentence(osent, gsent);
 	
 				if (bTrain && !bResult)
 				{
+					final long t0 = Metrics.start();
 					IntFeatVector vg = handler.getPrefixFeatures(sg);
 					IntFeatVector vo = handler.getPrefixFeatures(sr == null ? so : sr);
 					IntFeatVector vd = IntFeatVector.subtract(vg, vo);
 					vdTotal.append(vd);
+					SRParserMetrics.UPDATE.recordSince(t0);
 				}
 				
 				/*
@@ -409,13 +498,13 @@ public class SRParser extends SRParserModel
 				{
 					boolean bHigher = sg.scprf >= so.scprf;
 					boolean bInBeam = result.bGoldSurvive;
-					if (bHigher && !bInBeam) stats.numGoldOutOfBeamHigher++;
-					if (!bHigher && !bInBeam) stats.numGoldOutOfBeamLower++;
-					if (bHigher && bInBeam) stats.numGoldInBeamHigher++;
-					if (!bHigher && bInBeam) stats.numGoldInBeamLower++;
+					if (bHigher && !bInBeam) stats.numGoldOutOfBeamHigher.increment();
+					if (!bHigher && !bInBeam) stats.numGoldOutOfBeamLower.increment();
+					if (bHigher && bInBeam) stats.numGoldInBeamHigher.increment();
+					if (!bHigher && bInBeam) stats.numGoldInBeamLower.increment();
 				}
 				
-				stats.totalScore += so.scprf;
+				stats.totalScore.add(so.scprf);
 				
 				cnt.increment();
 			}
@@ -425,10 +514,15 @@ public class SRParser extends SRParserModel
 			 */
 			if (bTrain)
 			{
+				final long t0 = Metrics.start();
+				final SRParserEvents.PerceptronUpdate ev = SRParserEvents.perceptronUpdate();
 				if (vdTotal.size() > 0)
 					m_weight.append(vdTotal);
 				for (int i = 0; i < iTasks; ++i)
 					m_weight.nextStep();
+				SRParserMetrics.UPDATE.recordSince(t0);
+				if (ev != null)
+					ev.commit(vdTotal.size(), iTasks, m_weight.getStep());
 			}
 			
 			if (bLastLoop) break;
@@ -445,18 +539,108 @@ public class SRParser extends SRParserModel
 			
 			// eval.evalPosConfusion();
 			
-			Console.writeLine("#GoldOutOfBeamHigher: " + stats.numGoldOutOfBeamHigher);
-			Console.writeLine("#GoldOutOfBeamLower:  " + stats.numGoldOutOfBeamLower);
-			Console.writeLine("#GoldInBeamHigher:    " + stats.numGoldInBeamHigher);
-			Console.writeLine("#GoldInBeamLower:     " + stats.numGoldInBeamLower);
+			Console.writeLine("#GoldOutOfBeamHigher: " + stats.numGoldOutOfBeamHigher.sum());
+			Console.writeLine("#GoldOutOfBeamLower:  " + stats.numGoldOutOfBeamLower.sum());
+			Console.writeLine("#GoldInBeamHigher:    " + stats.numGoldInBeamHigher.sum());
+			Console.writeLine("#GoldInBeamLower:     " + stats.numGoldInBeamLower.sum());
 		}
 
 		return eval.evalTotal();
 	}
 
+	/**
+	 * Trains one epoch with iterative parameter mixing (McDonald et al., 2010):
+	 * the sentences are split into m_iMixShards shards, each of which is trained
+	 * on its own thread starting from the current weights, and the weights of
+	 * the shards are then averaged.
+	 */
+	private void mixIterateOnce(final List<ParsedSentence> gsents)
+	{
+		final int nShards = Math.max(1, Math.min(m_iMixShards, gsents.size()));
+		final AveragedWeight[] ws = new AveragedWeight[nShards];
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(nShards);
+		for (int k = 0; k < nShards; ++k)
+		{
+			final AveragedWeight w = ws[k] = new AveragedWeight(m_weight);
+			final List<ParsedSentence> shard = gsents.subList(gsents.size() * k / nShards, gsents.size() * (k + 1) / nShards);
+			tasks.add(new Callable<Integer>()
+			{
+				public Integer call()
+				{
+					return trainShard(shard, w);
+				}
+			});
+		}
+
+		ExecutorService exec = Executors.newFixedThreadPool(nShards);
+		int nUpdated = 0;
+		try
+		{
+			for (Future<Integer> f : exec.invokeAll(tasks))
+				nUpdated += f.get();
+		}
+		catch (InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+		finally
+		{
+			exec.shutdown();
+		}
+
+		m_weight = AveragedWeight.mix(ws);
+		Console.writeLine(String.format("%d/%d sentences updated in %d shards.", nUpdated, gsents.size(), nShards));
+	}
+
+	/**
+	 * @return the number of sentences that caused an update of w
+	 */
+	private int trainShard(List<ParsedSentence> gsents, AveragedWeight w)
+	{
+		SentenceParser parser = new SentenceParser(true, w, false);
+		SRParserEvaluator eval = new SRParserEvaluator(m_dict, m_bParse, false, false, m_bInfreqAsOOV, false);
+		int nUpdated = 0;
+
+		for (ParsedSentence gsent : gsents)
+		{
+			ParseResult result = parser.parseSentence(createSentenceToProcess(gsent), gsent);
+			SRParserState so = result.parsedState;
+			SRParserState sg = result.goldState;
+			SRParserState sr = result.refState;
+			if (so == null) continue;
+
+			if (!eval.evalSentence(SRParserState.getParsedResult(so), gsent))
+			{
+				final long t0 = Metrics.start();
+				final SRParserEvents.PerceptronUpdate ev = SRParserEvents.perceptronUpdate();
+				IntFeatVector vd = IntFeatVector.subtract(parser.getPrefixFeatures(sg), parser.getPrefixFeatures(sr == null ? so : sr));
+				if (vd.size() > 0) w.append(vd);
+				SRParserMetrics.UPDATE.recordSince(t0);
+				if (ev != null)
+					ev.commit(vd.size(), 1, w.getStep());
+				++nUpdated;
+			}
+			w.nextStep();
+		}
+
+		parser.shutdown();
+		return nUpdated;
+	}
+
+	/**
+	 * Expands the states in parallel. The states are split into contiguous
+	 * slices, one for each partition in parts; each thread inserts the new
+	 * states into its own partition charts, which are merged into charts2 in
+	 * the order of the slices at the end of the step.
+	 */
 	public boolean parallelProceedOneStep(
 			DPParserChart[] charts1,
 			DPParserChart[] charts2,
+			DPParserChart[][] parts,
 			int curstep,
 			final SRParserTransition trans,
 			WeightVector w,
@@ -466,7 +650,6 @@ public class SRParser extends SRParserModel
 			ExecutorService exec)
 	{
 		boolean bAnyUpdated = false;
-		List<Future<List<Pair<SDAction, SRParserState>>>> outs = new ArrayList<Future<List<Pair<SDAction, SRParserState>>>>();
 
 		if (!bSingleBeam)
 			for (int i = curstep + 1; i < charts1.length; ++i)
@@ -475,37 +658,40 @@ public class SRParser extends SRParserModel
 		int begin = bSingleBeam ? 0 : curstep;
 		int end = bSingleBeam ? charts1.length : curstep + 1;
 
+		final List<SRParserState> states = new ArrayList<SRParserState>();
 		for (int i = begin; i < end; ++i)
+			for (SRParserState s : charts1[i].states())
+				states.add(s);
+
+		final int nParts = Math.min(parts.length, states.size());
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(nParts);
+		for (int k = 0; k < nParts; ++k)
 		{
-			for (final SRParserState s : charts1[i].keySet())
+			final DPParserChart[] part = parts[k];
+			final int from = states.size() * k / nParts;
+			final int to = states.size() * (k + 1) / nParts;
+			tasks.add(new Callable<Boolean>()
 			{
-				outs.add(exec.submit(new Callable<List<Pair<SDAction, SRParserState>>>()
+				public Boolean call()
 				{
-					public List<Pair<SDAction, SRParserState>> call()
+					boolean bUpdated = false;
+					for (int j = from; j < to; ++j)
 					{
-						List<Pair<SDAction, SRParserState>> l = new ArrayList<Pair<SDAction, SRParserState>>();
-						for (Pair<SDAction, SRParserState> p : trans.moveNext(s, gsent, bAdd))
-							l.add(p);
-						return l;
+						for (Pair<SDAction, SRParserState> p : trans.moveNext(states.get(j), gsent, bAdd))
+						{
+							bUpdated = bUpdated || p.first != SDAction.END_STATE;
+							part[p.second.curstep].updateEntry(p.second);
+						}
 					}
-				}));
-			}
+					return bUpdated;
+				}
+			});
 		}
 
 		try
 		{
-			for (int i = 0; i < outs.size(); ++i)
-			{
-				List<Pair<SDAction, SRParserState>> l = outs.get(i).get();
-				for (int j = 0; j < l.size(); ++j)
-				{
-					Pair<SDAction, SRParserState> p = l.get(j);
-					SDAction sk = p.first;
-					SRParserState pv = p.second;
-					bAnyUpdated = bAnyUpdated || sk != SDAction.END_STATE;
-					charts2[pv.curstep].updateEntry(pv);
-				}
-			}
+			for (Future<Boolean> f : exec.invokeAll(tasks))
+				bAnyUpdated = f.get() || bAnyUpdated;
 		}
 		catch (InterruptedException e)
 		{
@@ -516,6 +702,16 @@ public class SRParser extends SRParserModel
 			e.printStackTrace();
 		}
 
+		for (int k = 0; k < nParts; ++k)
+		{
+			for (int i = 0; i < parts[k].length; ++i)
+			{
+				if (parts[k][i].size() > 0)
+					charts2[i].mergeFrom(parts[k][i]);
+				parts[k][i].clear();
+			}
+		}
+
 		return bAnyUpdated;
 	}
 
@@ -540,7 +736,7 @@ public class SRParser extends SRParserModel
 
 		for (int i = begin; i < end; ++i)
 		{
-			for (SRParserState s : charts1[i].keySet())
+			for (SRParserState s : charts1[i].states())
 			{
 				for (Pair<SDAction, SRParserState> p : trans.moveNext(s, gsent, bAdd))
 				{
@@ -555,6 +751,56 @@ public class SRParser extends SRParserModel
 		return bAnyUpdated;
 	}
 
+	private static final Comparator<SRParserTransition.Candidate> BEST_CANDIDATE_FIRST =
+		new Comparator<SRParserTransition.Candidate>()
+		{
+			public int compare(SRParserTransition.Candidate c1, SRParserTransition.Candidate c2)
+			{
+				return c1.scprf > c2.scprf ? -1 : c1.scprf < c2.scprf ? 1
+						: c1.scins > c2.scins ? -1 : c1.scins < c2.scins ? 1 : 0;
+			}
+		};
+
+	/**
+	 * Proceeds a step as proceedOneStep() does, scoring all the successors
+	 * first and building only those that can enter the beam of their chart,
+	 * in the order of their scores; gold successors are always built. The
+	 * beam is the same as with proceedOneStep() unless states are merged with
+	 * DP, since the successors that are not built are not merged either.
+	 */
+	public boolean lazyProceedOneStep(
+			DPParserChart[] charts1,
+			DPParserChart[] charts2,
+			int curstep,
+			SRParserTransition trans,
+			ParsedSentence gsent,
+			boolean bAdd)
+	{
+		for (int i = curstep + 1; i < charts1.length; ++i)
+			Statics.swap(charts1, charts2, i);
+
+		boolean bAnyUpdated = false;
+
+		List<SRParserTransition.Candidate> lc = new ArrayList<SRParserTransition.Candidate>();
+		for (SRParserState s : charts1[curstep].states())
+			lc.addAll(trans.scoreNext(s, gsent, bAdd));
+
+		// stable, so that the successors of the same scores are inserted in the order of generation
+		Collections.sort(lc, BEST_CANDIDATE_FIRST);
+
+		for (SRParserTransition.Candidate c : lc)
+		{
+			bAnyUpdated = bAnyUpdated || c.act != SDAction.END_STATE;
+			DPParserChart chart = charts2[c.curstep];
+			if (c.gold || chart.admits(c.scprf, c.scins, c.gold))
+				chart.updateEntry(trans.build(c));
+			else
+				chart.skipEntry();
+		}
+
+		return bAnyUpdated;
+	}
+
 	public void test(String sTestFile, String sParseFile) throws IOException
 	{
 		List<ParsedSentence> lt = loadCorpus(sTestFile);
@@ -566,61 +812,73 @@ public class SRParser extends SRParserModel
 	
 	public void run() throws IOException
 	{
-		BufferedReader br = new BufferedReader(new InputStreamReader(System.in, "UTF8"));
+		final BufferedReader br = new BufferedReader(new InputStreamReader(System.in, "UTF8"));
 		final SentenceParser sp = new SentenceParser(false);
 		
-		final ExecutorService execSent = Executors.newFixedThreadPool(m_iParallel);
-		List<Future<ParseResult>> lOuts = new ArrayList<Future<ParseResult>>();
-
-		String buf = "";
-		
-		while (buf != null)
+		new OrderedPipeline<String,ParsedSentence>(m_iParallel, m_iParallel * RUN_WINDOW_PER_THREAD)
 		{
-			lOuts.clear();
-			int nSent = 0;
-			
-			do {
-				buf = br.readLine();
-				if (buf == null) break;
-				
-				final String _buf = buf;
-				lOuts.add(execSent.submit(new Callable<ParseResult>() {
-					public ParseResult call() {
-						String buf = Normalizer.normalize(_buf, Normalizer.Form.NFKC);
-						UnsegmentedSentence sent = new UnsegmentedSentence(buf.toCharArray());
-						return sp.parseSentence(sent, null);
-					}
-				}));
-			} while (br.ready() && nSent++ < 10000);
-			
-			for (int i=0; i<lOuts.size(); ++i)
+			@Override
+			protected String read() throws IOException
+			{
+				return br.readLine();
+			}
+
+			@Override
+			protected ParsedSentence process(String line)
+			{
+				return parseLine(sp, line);
+			}
+
+			@Override
+			protected void write(String line, ParsedSentence osent)
 			{
-				try
+				if (m_bParse)
 				{
-					ParseResult pr = lOuts.get(i).get();
-					ParsedSentence osent = SRParserState.getParsedResult(pr.parsedState);
-					if (m_bParse)
-					{
-						for (IndexWord w : osent)
-							Console.writeLine(String.format("%d\t%s\t%s\t%d", w.index, w.form, w.tag, w.head));
-						Console.writeLine();
-					}
-					else
-					{
-						for (IndexWord iw: osent)
-							Console.write(iw.form + "/" + iw.tag + " ");
-						Console.writeLine();
-					}
+					for (IndexWord w : osent)
+						Console.writeLine(String.format("%d\t%s\t%s\t%d", w.index, w.form, w.tag, w.head));
+					Console.writeLine();
+				}
+				else
+				{
+					for (IndexWord iw: osent)
+						Console.write(iw.form + "/" + iw.tag + " ");
+					Console.writeLine();
 				}
-				catch (InterruptedException e) { e.printStackTrace(); }
-				catch (ExecutionException e) { e.printStackTrace(); }
 			}
-		}
+		}.run();
 		
-		if (execSent != null) execSent.shutdown();
 		sp.shutdown();
 	}
 
+	private ParsedSentence parseLine(SentenceParser sp, String line)
+	{
+		String buf = Normalizer.normalize(line, Normalizer.Form.NFKC);
+		UnsegmentedSentence sent = new UnsegmentedSentence(buf.toCharArray());
+		return SRParserState.getParsedResult(sp.parseSentence(sent, null).parsedState);
+	}
+
+	SRParserServer.Decoder createDecoder()
+	{
+		final SentenceParser sp = new SentenceParser(false);
+		return new SRParserServer.Decoder()
+		{
+			public ParsedSentence parse(String line)
+			{
+				return parseLine(sp, line);
+			}
+
+			public void shutdown()
+			{
+				sp.shutdown();
+			}
+		};
+	}
+
+	public void serve(int iPort, int iBatchWindow, int iMaxBatch) throws IOException
+	{
+		new SRParserServer(this, iPort, iBatchWindow, iMaxBatch).serve();
+	}
+
 	public void train(String sTrainFile, String sDevFile, String sSaveFile, int iMaxPerceptIt) throws IOException
 	{
 		Stopwatch swTotal = new Stopwatch("Training");
@@ -629,6 +887,7 @@ public class SRParser extends SRParserModel
 		List<ParsedSentence> ld = loadCorpus(sDevFile);
 		
 		if (m_bShuffle) Statics.shuffle(lt);
+		if (m_iMixShards > 1) m_fvocab.setConcurrent();
 
 		if (++m_iTrainIteration > 1)
 			Console.writeLine("resumed from iteration #" + m_iTrainIteration);
@@ -642,9 +901,13 @@ public class SRParser extends SRParserModel
 			 * Training
 			 */
 			sw = new Stopwatch("Perceptron training: loop " + m_iTrainIteration);
-			parallelIterateOnce(lt, true, null);
+			if (m_iMixShards > 1)
+				mixIterateOnce(lt);
+			else
+				parallelIterateOnce(lt, true, null);
 			sw.lap();
 			if (m_bRebuildVocab) m_fvocab.rebuild(m_weight);
+			if (m_fvocab.getCollisionReport() != null) Console.writeLine(m_fvocab.getCollisionReport());
 			gc();
 
 			/*
@@ -677,13 +940,40 @@ public class SRParser extends SRParserModel
 		swTotal.lap();
 	}
 
-	private List<ParsedSentence> loadCorpus(String sFile)
+	private List<ParsedSentence> loadCorpus(String sFile) throws IOException
+	{
+		final long t0 = Metrics.start();
+		List<ParsedSentence> lt = readCorpus(sFile);
+		SRParserMetrics.IO.recordSince(t0);
+		return lt;
+	}
+
+	private List<ParsedSentence> readCorpus(String sFile) throws IOException
 	{
+		/* the tags are normalized by the reader with the tag set, so the cache depends on it */
+		String sKey = null;
+		if (m_sCorpusCacheDir != null)
+		{
+			sKey = CorpusCache.getKey(sFile, "segdep\t" + m_inputFileFormat.name() + "\t" + m_dict.generateTagSet().hashCode());
+			List<CorpusCache.Sentence> lc = CorpusCache.load(m_sCorpusCacheDir, sFile, sKey);
+			if (lc != null)
+			{
+				List<ParsedSentence> lt = new ArrayList<ParsedSentence>(lc.size());
+				for (CorpusCache.Sentence c: lc)
+					lt.add(ParseReader.fromCache(c));
+				return lt;
+			}
+		}
+
 		ParseReader ct;
 		if (m_inputFileFormat == ParseReader.Format.CTB)
 			ct = new CTBReader(sFile, m_dict);
 		else if (m_inputFileFormat == ParseReader.Format.MALT)
-			ct = new MaltReader(sFile, m_dict);
+		{
+			MaltReader mr = new MaltReader(sFile, m_dict);
+			mr.setParallel(m_iParallel);
+			ct = mr;
+		}
 		else
 			throw new IllegalArgumentException("Unsupported format: " + m_inputFileFormat.name());
 		
@@ -691,6 +981,20 @@ public class SRParser extends SRParserModel
 		for (ParsedSentence p: ct)
 			if (p != null) lt.add(p);
 		ct.shutdown();
+
+		if (m_sCorpusCacheDir != null)
+		{
+			List<CorpusCache.Sentence> lc = new ArrayList<CorpusCache.Sentence>(lt.size());
+			for (ParsedSentence p: lt)
+				lc.add(ParseReader.toCache(p));
+			try
+			{
+				CorpusCache.save(m_sCorpusCacheDir, sFile, sKey, lc);
+			} catch (IOException e)
+			{
+				Console.writeLine("Failed to save the corpus cache: " + e.getMessage());
+			}
+		}
 		return lt;
 	}
 	
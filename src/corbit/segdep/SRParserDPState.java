@@ -34,9 +34,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import corbit.commons.ml.IntFeatVector;
+import corbit.commons.ml.FeatureLog;
 import corbit.commons.transition.SDAction;
 import corbit.commons.util.Pair;
+import corbit.commons.util.PersistentSeq;
 import corbit.commons.word.DepChunkTree;
 import corbit.commons.word.UnsegmentedSentence;
 import corbit.segdep.handler.DelayedFeature;
@@ -53,13 +54,13 @@ class SRParserDPState extends SRParserState
 			int idend,
 			double scprf,
 			double scins,
-			List<IntFeatVector> fvins,
+			FeatureLog fvins,
 			List<DelayedFeature> fvdelay,
 			Set<SRParserState> preds,
 			SRParserState pred0,
-			Map<SRParserState,Pair<List<IntFeatVector>,Double>> trans,
+			Map<SRParserState,Pair<FeatureLog,Double>> trans,
 			SRParserTransition.Decision[] decision,
-			List<SDAction> lstact,
+			PersistentSeq<SDAction> lstact,
 			boolean gold,
 			long states)
 	{
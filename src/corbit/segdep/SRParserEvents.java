@@ -0,0 +1,270 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.segdep;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder events of decoding and training, emitted only while enabled
+ * (--jfr-events option) and recorded only while a recording is running, e.g.
+ * with -XX:StartFlightRecording. When disabled, the decoder does not even
+ * create the events, so that they cost a single read of a static field.
+ * 
+ * The events require the jdk.jfr API (JDK 11, or JDK 8u262 and later).
+ */
+public class SRParserEvents
+{
+	private static volatile boolean m_bEnabled = false;
+
+	public static boolean isEnabled()
+	{
+		return m_bEnabled;
+	}
+
+	public static void setEnabled(boolean bEnabled)
+	{
+		m_bEnabled = bEnabled;
+	}
+
+	/*
+	 * Each of the following begins an event, or returns null when disabled.
+	 */
+
+	public static SentenceParse sentenceParse()
+	{
+		return m_bEnabled ? begin(new SentenceParse()) : null;
+	}
+
+	public static BeamStep beamStep()
+	{
+		return m_bEnabled ? begin(new BeamStep()) : null;
+	}
+
+	public static Prune prune()
+	{
+		return m_bEnabled ? begin(new Prune()) : null;
+	}
+
+	public static MergeBurst mergeBurst()
+	{
+		return m_bEnabled ? begin(new MergeBurst()) : null;
+	}
+
+	public static PerceptronUpdate perceptronUpdate()
+	{
+		return m_bEnabled ? begin(new PerceptronUpdate()) : null;
+	}
+
+	private static <T extends Event> T begin(T e)
+	{
+		e.begin();
+		return e;
+	}
+
+	@Name("corbit.segdep.SentenceParse")
+	@Label("Sentence Parse")
+	@Category({ "Corbit", "Decoder" })
+	@Description("Decoding of a sentence, including the moves of the gold state in training")
+	public static class SentenceParse extends Event
+	{
+		@Label("Length")
+		@Description("The number of characters of the sentence")
+		public int length;
+
+		@Label("Beam")
+		public int beam;
+
+		@Label("Steps")
+		@Description("The number of steps proceeded")
+		public int steps;
+
+		@Label("Training")
+		public boolean train;
+
+		@Label("Stopped")
+		@Description("Whether decoding was stopped for an early update")
+		public boolean stopped;
+
+		@Label("States Evaluated")
+		public long statesEvaluated;
+
+		@Label("States Merged")
+		public long statesMerged;
+
+		public void commit(int length, int beam, int steps, boolean train, boolean stopped, long evaluated, long merged)
+		{
+			end();
+			if (!shouldCommit())
+				return;
+			this.length = length;
+			this.beam = beam;
+			this.steps = steps;
+			this.train = train;
+			this.stopped = stopped;
+			this.statesEvaluated = evaluated;
+			this.statesMerged = merged;
+			commit();
+		}
+	}
+
+	@Name("corbit.segdep.BeamStep")
+	@Label("Beam Step")
+	@Category({ "Corbit", "Decoder" })
+	@Description("Expansion of the states in the beam by one step")
+	public static class BeamStep extends Event
+	{
+		@Label("Length")
+		public int length;
+
+		@Label("Step")
+		public int step;
+
+		@Label("Occupancy")
+		@Description("The number of states in the beam expanded")
+		public int occupancy;
+
+		@Label("Candidates")
+		@Description("The number of states generated by the expansion")
+		public long candidates;
+
+		@Label("Merges")
+		public long merges;
+
+		public void commit(int length, int step, int occupancy, long candidates, long merges)
+		{
+			end();
+			if (!shouldCommit())
+				return;
+			this.length = length;
+			this.step = step;
+			this.occupancy = occupancy;
+			this.candidates = candidates;
+			this.merges = merges;
+			commit();
+		}
+	}
+
+	@Name("corbit.segdep.Prune")
+	@Label("Prune")
+	@Category({ "Corbit", "Decoder" })
+	@Description("Pruning of a chart, or of all the charts of a single beam, to the beam size")
+	public static class Prune extends Event
+	{
+		@Label("Step")
+		@Description("The step of the best state kept, or -1 if none")
+		public int step;
+
+		@Label("Beam")
+		public int beam;
+
+		@Label("States Before")
+		public int before;
+
+		@Label("States After")
+		public int after;
+
+		public void commit(int step, int beam, int before, int after)
+		{
+			end();
+			if (!shouldCommit())
+				return;
+			this.step = step;
+			this.beam = beam;
+			this.before = before;
+			this.after = after;
+			commit();
+		}
+	}
+
+	@Name("corbit.segdep.MergeBurst")
+	@Label("Merge Burst")
+	@Category({ "Corbit", "Decoder" })
+	@Description("The merges of the states of the same signature during a step, emitted for steps with any merge")
+	public static class MergeBurst extends Event
+	{
+		@Label("Length")
+		public int length;
+
+		@Label("Step")
+		public int step;
+
+		@Label("Merges")
+		public long merges;
+
+		@Label("Candidates")
+		public long candidates;
+
+		public void commit(int length, int step, long merges, long candidates)
+		{
+			end();
+			if (merges == 0 || !shouldCommit())
+				return;
+			this.length = length;
+			this.step = step;
+			this.merges = merges;
+			this.candidates = candidates;
+			commit();
+		}
+	}
+
+	@Name("corbit.segdep.PerceptronUpdate")
+	@Label("Perceptron Update")
+	@Category({ "Corbit", "Training" })
+	@Description("An update of the weights by the features of the gold and the predicted derivations")
+	public static class PerceptronUpdate extends Event
+	{
+		@Label("Features")
+		@Description("The number of features in the update vector")
+		public int features;
+
+		@Label("Sentences")
+		@Description("The number of sentences the update covers")
+		public int sentences;
+
+		@Label("Weight Step")
+		public long weightStep;
+
+		public void commit(int features, int sentences, long weightStep)
+		{
+			end();
+			if (!shouldCommit())
+				return;
+			this.features = features;
+			this.sentences = sentences;
+			this.weightStep = weightStep;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.segdep;
+
+import corbit.commons.metrics.Histogram;
+import corbit.commons.metrics.Metrics;
+
+/**
+ * The metrics of decoding and training, recorded while the metrics are
+ * enabled (--metrics option). The phases are measured separately and do not
+ * nest, so that their totals can be compared.
+ */
+public class SRParserMetrics
+{
+	public static final Histogram FEATURES = Metrics.timer("segdep.phase.features");
+	public static final Histogram GENERATION = Metrics.timer("segdep.phase.generation");
+	public static final Histogram MERGE = Metrics.timer("segdep.phase.merge");
+	public static final Histogram PRUNE = Metrics.timer("segdep.phase.prune");
+	public static final Histogram UPDATE = Metrics.timer("segdep.phase.update");
+	public static final Histogram IO = Metrics.timer("segdep.phase.io");
+
+	/* the number of states in the chart of a step when it is pruned */
+	public static final Histogram STATES_PER_STEP = Metrics.histogram("segdep.step.states", "states");
+
+	/* the upper bounds of the sentence lengths of the latency buckets */
+	private static final int[] LENGTH_BOUNDS = { 10, 20, 40, 80, Integer.MAX_VALUE };
+	private static final Histogram[] SENTENCE_LATENCY = new Histogram[LENGTH_BOUNDS.length];
+
+	static
+	{
+		int lower = 1;
+		for (int i = 0; i < LENGTH_BOUNDS.length; ++i)
+		{
+			String sRange = LENGTH_BOUNDS[i] < Integer.MAX_VALUE ?
+					String.format("%03d-%03d", lower, LENGTH_BOUNDS[i]) :
+					String.format("%03d-", lower);
+			SENTENCE_LATENCY[i] = Metrics.timer("segdep.sentence.len" + sRange);
+			lower = LENGTH_BOUNDS[i] + 1;
+		}
+	}
+
+	/**
+	 * @return the histogram of the latencies of the sentences of the length
+	 *         in characters
+	 */
+	public static Histogram sentenceLatency(int iLength)
+	{
+		int i = 0;
+		while (iLength > LENGTH_BOUNDS[i])
+			++i;
+		return SENTENCE_LATENCY[i];
+	}
+}
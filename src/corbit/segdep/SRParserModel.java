@@ -41,6 +41,8 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.HashSet;
@@ -52,20 +54,35 @@ import corbit.commons.Vocab;
 import corbit.commons.dict.CTB5TagDictionary;
 import corbit.commons.dict.CTB7TagDictionary;
 import corbit.commons.dict.TagDictionary;
+import corbit.commons.dict.WordMatcher;
+import corbit.commons.io.BinaryModelFile;
 import corbit.commons.io.Console;
 import corbit.commons.io.FileEnum;
 import corbit.commons.io.ParseReader;
+import corbit.commons.metrics.Metrics;
 import corbit.commons.ml.AveragedWeight;
+import corbit.commons.ml.WeightStorage;
+import corbit.commons.ml.WeightSnapshot;
 import corbit.commons.ml.WeightVector;
+import corbit.commons.util.Pair;
 import corbit.commons.util.Stopwatch;
 
 public class SRParserModel
 {
 	protected final Vocab m_fvocab;
 	protected AveragedWeight m_weight;
+	protected WeightVector m_mappedWeight; // weights for decoding mapped from a binary model
+	protected WeightVector m_mappedRawWeight; // raw weights mapped from a binary model, used if averaging is disabled
+	protected WeightVector m_sharedWeight; // weights for decoding shared by all decoders
+
+	/* the compact weights for decoding, converted once for each step of m_weight */
+	private WeightVector m_compactWeight = null;
+	private AveragedWeight m_compactSource = null;
+	private int m_iCompactStep = -1;
 	protected TagDictionary m_dict;
 	protected Vocab[] m_wordlists;
 	protected Set<String> m_preprocWords;
+	protected WordMatcher m_preprocMatcher; // built from m_preprocWords
 
 	/*
 	 * beginning of main
@@ -80,6 +97,7 @@ public class SRParserModel
 		m_preprocWords = new HashSet<String>();
 		m_preprocWords.add(" "); // half-width space
 		m_preprocWords.add("　"); // full-width space
+		m_preprocMatcher = new WordMatcher(m_preprocWords);
 
 		initTagDictionary(0);
 	}
@@ -102,6 +120,8 @@ public class SRParserModel
 
 	public void printWeights()
 	{
+		if (m_fvocab.isHashed())
+			Console.writeLine("Feature strings are not available for a hashed model.");
 		for (String s: m_fvocab.getKeys())
 			Console.writeLine(s + "\t" + m_weight.get(m_fvocab.get(s)));
 	}
@@ -111,6 +131,73 @@ public class SRParserModel
 		m_fvocab.setUseTrie();
 	}
 
+	public void setFeatureHashing(int iBits, boolean bReport)
+	{
+		m_fvocab.setHashed(iBits, bReport);
+	}
+
+	/**
+	 * @return the full-precision weights for decoding, mapped from a binary
+	 *         model if so, and averaged unless averaging is disabled
+	 */
+	private WeightVector getSourceWeight()
+	{
+		if (m_mappedWeight != null)
+			return m_bAveraged ? m_mappedWeight : m_mappedRawWeight;
+		return m_bAveraged ? m_weight.getAveragedWeight() : m_weight;
+	}
+
+	/**
+	 * @return the weight to be used for decoding, in the storage given by the
+	 *         program option; a compact copy is made once for each weight
+	 *         step and shared by the decoders, and the full-precision averaged
+	 *         weight is released afterwards
+	 */
+	protected synchronized WeightVector getDecodingWeight()
+	{
+		if (m_sharedWeight != null)
+			return m_sharedWeight;
+		if (m_weightStorage == WeightStorage.DOUBLE)
+			return getSourceWeight();
+		if (m_compactWeight == null || m_compactSource != m_weight || m_iCompactStep != m_weight.getStep())
+		{
+			WeightVector w = getSourceWeight();
+			m_compactWeight = m_weightStorage.convert(w);
+			m_compactSource = m_weight;
+			m_iCompactStep = m_weight.getStep();
+			m_weight.releaseAveragedWeight();
+		}
+		return m_compactWeight;
+	}
+
+	/**
+	 * makes all decoders share one read-only copy of the weights for decoding,
+	 * mapped from the snapshot file if given, and releases the weights kept
+	 * for training; training cannot be continued afterwards. The snapshot
+	 * holds the weights in double precision, and is used as it is mapped.
+	 */
+	public void shareDecodingWeight(String sModelFile) throws IOException
+	{
+		WeightVector w;
+		if (m_sWeightSnapshot != null)
+		{
+			if (m_weightStorage != WeightStorage.DOUBLE)
+				throw new IllegalArgumentException("The weight snapshot cannot be used with the weight storage: " + m_weightStorage);
+			w = WeightSnapshot.open(m_sWeightSnapshot, sModelFile, m_bAveraged ? "averaged" : "raw", getSourceWeight());
+		}
+		else
+			w = getDecodingWeight();
+		if (w != m_weight)
+		{
+			m_weight.clear();
+			m_weight.getAverageWeight().clear();
+			m_weight.trimToSize();
+		}
+		m_mappedWeight = null;
+		m_mappedRawWeight = null;
+		m_sharedWeight = w;
+	}
+
 	public void loadDictFromFile(String sFile, int iThreshold) throws IOException
 	{
 		m_dict.clear();
@@ -127,6 +214,7 @@ public class SRParserModel
 			++nLine;
 		}
 		fe.shutdown();
+		m_preprocMatcher = new WordMatcher(m_preprocWords);
 		System.err.println(nLine + " words to pre-segment loaded.");
 	}
 
@@ -134,6 +222,7 @@ public class SRParserModel
 	{
 		Stopwatch sw = new Stopwatch("Saving model...");
 		sw.start();
+		final long t0 = Metrics.start();
 
 		/*
 		 * create a temporary file to write
@@ -146,6 +235,26 @@ public class SRParserModel
 		 * save model components
 		 */
 
+		if (m_bTextModel)
+			saveTextModel(ftmp);
+		else
+			saveBinaryModel(ftmp);
+
+		/*
+		 * rename the temporary file
+		 */
+
+		File fout = new File(sFile);
+		if (fout.exists())
+			fout.delete();
+		if (!ftmp.renameTo(fout))
+			throw new IOException("Failed to rename the temporary file: " + ftmp.getName());
+		SRParserMetrics.IO.recordSince(t0);
+		sw.lap();
+	}
+
+	private void saveTextModel(File ftmp) throws IOException
+	{
 		OutputStream os = m_bCompressedModel ?
 				new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(ftmp))) :
 				new BufferedOutputStream(new FileOutputStream(ftmp));
@@ -162,22 +271,54 @@ public class SRParserModel
 			for (int i = 0; i < m_wordlists.length; ++i)
 				m_wordlists[i].save(pw);
 		pw.close();
+	}
 
-		/*
-		 * rename the temporary file
-		 */
+	/**
+	 * saves the model in the binary format, where the vocabulary and the
+	 * weights are laid out to be mapped and used without parsing
+	 */
+	private void saveBinaryModel(File ftmp) throws IOException
+	{
+		StringWriter s = new StringWriter();
+		PrintWriter pw = new PrintWriter(s);
+		saveProperties(pw);
+		pw.println(m_dict != null);
+		if (m_dict != null)
+			m_dict.saveToStream(pw);
+		pw.println(m_wordlists == null ? 0 : m_wordlists.length);
+		if (m_wordlists != null)
+			for (int i = 0; i < m_wordlists.length; ++i)
+				m_wordlists[i].save(pw);
+		pw.close();
 
-		File fout = new File(sFile);
-		if (fout.exists())
-			fout.delete();
-		if (!ftmp.renameTo(fout))
-			throw new IOException("Failed to rename the temporary file: " + ftmp.getName());
-		sw.lap();
+		BinaryModelFile.Writer out = new BinaryModelFile.Writer(ftmp);
+		out.putTextSection(s.toString());
+		m_fvocab.saveBinary(out);
+		m_weight.saveBinary(out, m_bAveraged);
+		out.close();
 	}
 
 	public void loadModel(String sFile) throws IOException, ClassNotFoundException
+	{
+		loadModel(sFile, false);
+	}
+
+	/**
+	 * @param bReadOnly
+	 *            if the model is binary, map the vocabulary and the weights
+	 *            for decoding instead of loading them; training cannot be
+	 *            resumed from a model loaded in this way
+	 */
+	public void loadModel(String sFile, boolean bReadOnly) throws IOException, ClassNotFoundException
 	{
 		System.err.println("Loading model..");
+		if (BinaryModelFile.isBinaryModel(sFile))
+		{
+			loadBinaryModel(sFile, bReadOnly);
+			return;
+		}
+		m_mappedWeight = null;
+		m_mappedRawWeight = null;
 		InputStream is = m_bCompressedModel ?
 				new GZIPInputStream(new FileInputStream(sFile)) :
 				new FileInputStream(sFile);
@@ -190,6 +331,7 @@ public class SRParserModel
 		if (Boolean.parseBoolean(sr.readLine()) == true)
 			m_dict.loadFromStream(sr);
 		m_weight.load(sr);
+		m_weight.trimToSize();
 		int nWordLists = Integer.parseInt(sr.readLine());
 		if (nWordLists > 0)
 		{
@@ -200,6 +342,45 @@ public class SRParserModel
 		sr.close();
 	}
 
+	private void loadBinaryModel(String sFile, boolean bReadOnly) throws IOException
+	{
+		BinaryModelFile.Reader in = new BinaryModelFile.Reader(sFile);
+		BufferedReader sr = new BufferedReader(new StringReader(in.nextTextSection()));
+		loadProperties(sr);
+		initTagDictionary(m_iTagSet);
+		if (Boolean.parseBoolean(sr.readLine()) == true)
+			m_dict.loadFromStream(sr);
+		int nWordLists = Integer.parseInt(sr.readLine());
+		m_wordlists = null;
+		if (nWordLists > 0)
+		{
+			m_wordlists = new Vocab[nWordLists];
+			for (int i = 0; i < nWordLists; ++i)
+				m_wordlists[i] = new Vocab(sr);
+		}
+
+		m_fvocab.loadBinary(in.nextSection(), bReadOnly);
+		if (m_bUseTrie && !bReadOnly)
+			setUseTrie();
+		if (bReadOnly)
+		{
+			m_weight.clear();
+			m_weight.getAverageWeight().clear();
+			m_weight.trimToSize();
+			Pair<WeightVector,WeightVector> p = AveragedWeight.mapBinary(in);
+			m_mappedWeight = p.first;
+			m_mappedRawWeight = p.second;
+		}
+		else
+		{
+			m_weight.loadBinary(in);
+			m_weight.trimToSize();
+			m_mappedWeight = null;
+			m_mappedRawWeight = null;
+		}
+		in.close();
+	}
+
 	public void printDictFeatureWeights()
 	{
 		if (m_wordlists != null)
@@ -278,17 +459,23 @@ public class SRParserModel
 	 */
 
 	transient int m_iParallel = 1;
+	transient int m_iMixShards = 1;
+	transient String m_sCorpusCacheDir = null;
 	transient ParseReader.Format m_inputFileFormat = ParseReader.Format.MALT;
+	transient WeightStorage m_weightStorage = WeightStorage.DOUBLE;
+	transient String m_sWeightSnapshot = null;
 	transient boolean m_bShowOutput = false;
 	transient boolean m_bLoadOnMemory = true;
 	transient boolean m_bSaveEach = false;
 	transient boolean m_bCheckOpts = false;
 	transient boolean m_bCompressedModel = true;
+	transient boolean m_bTextModel = false;
 	transient boolean m_bSaveOnlyPos = false;
 	transient boolean m_bShowStats = false;
 	transient boolean m_bRebuildVocab = false;
 	transient boolean m_bInfreqAsOOV = false;
 	transient boolean m_bUseFeatureCache = true;
+	transient boolean m_bLazyExpansion = false; // affect the result with DP
 
 	transient int m_iLimitSent = 0; // affect the result
 	transient boolean m_bGoldArc = false; // affect the result
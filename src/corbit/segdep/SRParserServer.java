@@ -0,0 +1,397 @@
+/*
+ * Corbit, a text analyzer
+ * 
+ * Copyright (c) 2010-2012, Jun Hatori
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the names of the authors nor the names of its contributors
+ *       may be used to endorse or promote products derived from this
+ *       software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package corbit.segdep;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import corbit.commons.word.IndexWord;
+import corbit.commons.word.ParsedSentence;
+
+/**
+ * Line-based TCP server on localhost. Each input line is a raw sentence and each
+ * output line is its analysis in JSON, written in the order of the input lines of
+ * the connection. Requests from all connections are grouped into micro-batches:
+ * the dispatcher waits at most m_iBatchWindow milliseconds for up to m_iMaxBatch
+ * requests, and the batch is then decoded by a pool of warmed decoders. The
+ * dispatcher hands the batch over without waiting for it, so that the next batch
+ * is gathered and started while a long sentence of the last one is decoded.
+ */
+public class SRParserServer
+{
+	interface Decoder
+	{
+		ParsedSentence parse(String line);
+
+		void shutdown();
+	}
+
+	private static final class Request
+	{
+		final String line;
+		final CountDownLatch done = new CountDownLatch(1);
+		volatile String response;
+
+		Request(String line)
+		{
+			this.line = line;
+		}
+	}
+
+	private static final Request END_OF_QUEUE = new Request(null);
+
+	private static final int PENDING_PER_CONNECTION = 256;
+
+	private final SRParser m_parser;
+	private final int m_iPort;
+	private final int m_iBatchWindow;
+	private final int m_iMaxBatch;
+	private final int m_iWorkers;
+
+	private final BlockingQueue<Request> m_requests = new LinkedBlockingQueue<Request>();
+	private final BlockingQueue<Decoder> m_decoders = new LinkedBlockingQueue<Decoder>();
+
+	public SRParserServer(SRParser parser, int iPort, int iBatchWindow, int iMaxBatch)
+	{
+		m_parser = parser;
+		m_iPort = iPort;
+		m_iBatchWindow = iBatchWindow;
+		m_iMaxBatch = Math.max(1, iMaxBatch);
+		m_iWorkers = Math.max(1, parser.m_iParallel);
+	}
+
+	public void serve() throws IOException
+	{
+		for (int i = 0; i < m_iWorkers; ++i)
+		{
+			Decoder d = m_parser.createDecoder();
+			d.parse("。"); // warm up
+			m_decoders.add(d);
+		}
+
+		Thread dispatcher = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				dispatch();
+			}
+		}, "server-dispatcher");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+
+		ServerSocket ss = new ServerSocket(m_iPort, 50, InetAddress.getLoopbackAddress());
+		System.err.println("Listening on " + ss.getLocalSocketAddress());
+		try
+		{
+			while (true)
+			{
+				final Socket sock = ss.accept();
+				Thread t = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						handle(sock);
+					}
+				}, "server-connection");
+				t.setDaemon(true);
+				t.start();
+			}
+		}
+		finally
+		{
+			ss.close();
+			dispatcher.interrupt();
+			for (Decoder d: m_decoders)
+				d.shutdown();
+		}
+	}
+
+	private void handle(final Socket sock)
+	{
+		final BlockingQueue<Request> pending = new ArrayBlockingQueue<Request>(PENDING_PER_CONNECTION);
+
+		Thread writer = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					Writer w = new BufferedWriter(new OutputStreamWriter(sock.getOutputStream(), "UTF-8"));
+					Request r;
+					while ((r = pending.take()) != END_OF_QUEUE)
+					{
+						r.done.await();
+						if (w == null) continue; // drain the requests of a broken connection
+						try
+						{
+							w.write(r.response);
+							w.write('\n');
+							if (pending.isEmpty()) w.flush();
+						}
+						catch (IOException e)
+						{
+							System.err.println("Connection closed: " + e.getMessage());
+							close(sock);
+							w = null;
+						}
+					}
+					if (w != null) w.flush();
+				}
+				catch (IOException e)
+				{
+					System.err.println("Connection closed: " + e.getMessage());
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				finally
+				{
+					close(sock);
+				}
+			}
+		}, "server-writer");
+		writer.setDaemon(true);
+		writer.start();
+
+		try
+		{
+			BufferedReader br = new BufferedReader(new InputStreamReader(sock.getInputStream(), "UTF-8"));
+			String line;
+			while ((line = br.readLine()) != null)
+			{
+				Request r = new Request(line);
+				pending.put(r);
+				m_requests.put(r);
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Connection closed: " + e.getMessage());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			try
+			{
+				pending.put(END_OF_QUEUE);
+			}
+			catch (InterruptedException e)
+			{
+				writer.interrupt();
+			}
+		}
+	}
+
+	private void dispatch()
+	{
+		ExecutorService exec = Executors.newFixedThreadPool(m_iWorkers);
+		List<Request> batch = new ArrayList<Request>();
+		try
+		{
+			while (true)
+			{
+				batch.clear();
+				batch.add(m_requests.take());
+				long lDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_iBatchWindow);
+				while (batch.size() < m_iMaxBatch)
+				{
+					long lWait = lDeadline - System.nanoTime();
+					Request r = lWait > 0 ? m_requests.poll(lWait, TimeUnit.NANOSECONDS) : m_requests.poll();
+					if (r == null) break;
+					batch.add(r);
+				}
+				for (Slice s: partition(batch))
+					exec.execute(s);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			for (Runnable s: exec.shutdownNow())
+				((Slice)s).abort();
+		}
+	}
+
+	/*
+	 * splits a batch into contiguous slices, one for each decoder
+	 */
+	private List<Slice> partition(List<Request> batch)
+	{
+		int n = Math.min(m_iWorkers, batch.size());
+		List<Slice> slices = new ArrayList<Slice>(n);
+		for (int k = 0; k < n; ++k)
+			slices.add(new Slice(new ArrayList<Request>(batch.subList(batch.size() * k / n, batch.size() * (k + 1) / n))));
+		return slices;
+	}
+
+	/*
+	 * a part of a batch decoded by one decoder; every request of it is
+	 * answered, with an error if it could not be decoded
+	 */
+	private final class Slice implements Runnable
+	{
+		final List<Request> requests;
+
+		Slice(List<Request> requests)
+		{
+			this.requests = requests;
+		}
+
+		public void run()
+		{
+			Decoder d = null;
+			try
+			{
+				d = m_decoders.take();
+				for (Request r: requests)
+				{
+					try
+					{
+						r.response = toJson(d.parse(r.line));
+					}
+					catch (Throwable e)
+					{
+						r.response = toError(e);
+					}
+					finally
+					{
+						r.done.countDown();
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			finally
+			{
+				if (d != null) m_decoders.add(d);
+				abort();
+			}
+		}
+
+		/*
+		 * answers the requests not decoded yet with an error
+		 */
+		void abort()
+		{
+			for (Request r: requests)
+			{
+				if (r.done.getCount() > 0)
+				{
+					r.response = toError(new InterruptedException("the server is shutting down"));
+					r.done.countDown();
+				}
+			}
+		}
+	}
+
+	private static String toError(Throwable e)
+	{
+		return "{\"error\":" + quote(String.valueOf(e)) + "}";
+	}
+
+	private String toJson(ParsedSentence sent)
+	{
+		StringBuilder sb = new StringBuilder("{\"words\":[");
+		for (int i = 0; i < sent.size(); ++i)
+		{
+			IndexWord w = sent.get(i);
+			if (i > 0) sb.append(',');
+			sb.append("{\"index\":").append(w.index);
+			sb.append(",\"form\":").append(quote(w.form));
+			sb.append(",\"tag\":").append(quote(w.tag));
+			if (m_parser.m_bParse)
+				sb.append(",\"head\":").append(w.head);
+			sb.append('}');
+		}
+		return sb.append("]}").toString();
+	}
+
+	private static String quote(String s)
+	{
+		StringBuilder sb = new StringBuilder(s.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < s.length(); ++i)
+		{
+			char c = s.charAt(i);
+			switch (c)
+			{
+			case '"': sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			default:
+				if (c < 0x20)
+					sb.append(String.format("\\u%04x", (int)c));
+				else
+					sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	private static void close(Socket sock)
+	{
+		try
+		{
+			sock.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+}
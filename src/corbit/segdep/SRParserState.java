@@ -33,14 +33,14 @@ package corbit.segdep;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import corbit.commons.ml.IntFeatVector;
+import corbit.commons.ml.FeatureLog;
 import corbit.commons.transition.SDAction;
 import corbit.commons.util.Pair;
+import corbit.commons.util.PersistentSeq;
 import corbit.commons.word.DepChunk;
 import corbit.commons.word.DepChunkTree;
 import corbit.commons.word.ParsedSentence;
@@ -75,7 +75,7 @@ public class SRParserState implements Comparable<SRParserState>
 	public final double scins;
 
 	/** inside feature vector */
-	public final List<IntFeatVector> fvins;
+	public final FeatureLog fvins;
 	/** delayed feature vector */
 	public final List<DelayedFeature> fvdelay;
 
@@ -84,7 +84,7 @@ public class SRParserState implements Comparable<SRParserState>
 	/** predictor state with the highest prefix score */
 	public final SRParserState pred0;
 	/** transition score and vector cache from its predictor states */
-	public final Map<SRParserState,Pair<List<IntFeatVector>,Double>> trans;
+	public final Map<SRParserState,Pair<FeatureLog,Double>> trans;
 	/** preprocessing and pruning decisions forced during decoding */
 	public final SRParserTransition.Decision[] decision;
 
@@ -92,7 +92,7 @@ public class SRParserState implements Comparable<SRParserState>
 	public SRParserHandler.AtomicFeatures atoms;
 
 	/** inside action sequence */
-	public final List<SDAction> lstact;
+	public final PersistentSeq<SDAction> lstact;
 
 	/** whether or not the state contains the gold derivation in its graph-structured stack*/
 	public boolean gold;
@@ -108,13 +108,13 @@ public class SRParserState implements Comparable<SRParserState>
 			int idend,
 			double scprf,
 			double scins,
-			List<IntFeatVector> fvins,
+			FeatureLog fvins,
 			List<DelayedFeature> fvdelay,
 			Set<SRParserState> preds,
 			SRParserState pred0,
-			Map<SRParserState,Pair<List<IntFeatVector>,Double>> trans,
+			Map<SRParserState,Pair<FeatureLog,Double>> trans,
 			SRParserTransition.Decision[] decision,
-			List<SDAction> lstact,
+			PersistentSeq<SDAction> lstact,
 			boolean gold,
 			long states)
 	{
@@ -147,11 +147,14 @@ public class SRParserState implements Comparable<SRParserState>
 		return _pstck;
 	}
 
-	public DepChunkTree[] cloneStack()
+	/**
+	 * The trees on the stack are never modified once pushed, so the other
+	 * elements are shared with this state.
+	 */
+	public DepChunkTree[] replaceStackTop(DepChunkTree t)
 	{
-		DepChunkTree[] _pstck = new DepChunkTree[pstck.length];
-		for (int i = 0; i < pstck.length; ++i)
-			_pstck[i] = (i == 0 && pstck[i] != null) ? new DepChunkTree(pstck[i]) : pstck[i];
+		DepChunkTree[] _pstck = pstck.clone();
+		_pstck[0] = t;
 		return _pstck;
 	}
 
@@ -172,9 +175,12 @@ public class SRParserState implements Comparable<SRParserState>
 
 	public static List<SDAction> getActionSequence(SRParserState s)
 	{
-		List<SDAction> l = new LinkedList<SDAction>();
+		List<SRParserState> ls = new ArrayList<SRParserState>();
 		for (; s != null; s = s.pred0)
-			l.addAll(0, s.lstact);
+			ls.add(s);
+		List<SDAction> l = new ArrayList<SDAction>();
+		for (int i = ls.size() - 1; i >= 0; --i)
+			ls.get(i).lstact.addTo(l);
 		return l;
 	}
 
@@ -38,9 +38,11 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.Map.Entry;
 
-import corbit.commons.ml.IntFeatVector;
+import corbit.commons.metrics.Metrics;
+import corbit.commons.ml.FeatureLog;
 import corbit.commons.transition.SDAction;
 import corbit.commons.util.Pair;
+import corbit.commons.util.PersistentSeq;
 import corbit.commons.word.DepChunkTree;
 import corbit.commons.word.UnsegmentedSentence;
 import corbit.segdep.handler.DelayedFeature;
@@ -70,24 +72,24 @@ public class SRParserStateGenerator
 						sent,
 						new DepChunkTree[m_szStack],
 						0, 0, -1, -1, 0.0d, 0.0d,
-						new LinkedList<IntFeatVector>(),
+						FeatureLog.EMPTY,
 						m_bEvalDelay ? new LinkedList<DelayedFeature>() : null, new TreeSet<SRParserState>(),
 						null,
-						new LinkedHashMap<SRParserState,Pair<List<IntFeatVector>,Double>>(),
+						new LinkedHashMap<SRParserState,Pair<FeatureLog,Double>>(),
 						decision,
-						new LinkedList<SDAction>(),
+						PersistentSeq.<SDAction>empty(),
 						true,
 						1) :
 				new SRParserState(
 						sent,
 						new DepChunkTree[m_szStack],
 						0, 0, -1, -1, 0.0d, 0.0d,
-						new LinkedList<IntFeatVector>(),
+						FeatureLog.EMPTY,
 						m_bEvalDelay ? new LinkedList<DelayedFeature>() : null, new TreeSet<SRParserState>(),
 						null,
-						new LinkedHashMap<SRParserState,Pair<List<IntFeatVector>,Double>>(),
+						new LinkedHashMap<SRParserState,Pair<FeatureLog,Double>>(),
 						decision,
-						new LinkedList<SDAction>(),
+						PersistentSeq.<SDAction>empty(),
 						true, 1);
 
 		s.pstck[0] = new DepChunkTree(s.sent, -1, -1, DepChunkTree.rootTag, -2, -2, null);
@@ -100,30 +102,34 @@ public class SRParserStateGenerator
 		return s;
 	}
 
+	/**
+	 * copies the predictor states and transitions to be merged with another
+	 * state; the other components are immutable and shared
+	 */
 	SRParserState copy(SRParserState s)
 	{
 		SRParserState sNew = m_bDP ?
 				new SRParserDPState(
 						s.sent,
-						s.cloneStack(),
+						s.pstck,
 						s.curidx, s.curstep, s.idbgn, s.idend, s.scprf, s.scins,
-						s.fvins != null ? new LinkedList<IntFeatVector>(s.fvins) : null,
-						m_bEvalDelay ? new LinkedList<DelayedFeature>(s.fvdelay) : null, new TreeSet<SRParserState>(s.preds),
+						s.fvins,
+						s.fvdelay, new TreeSet<SRParserState>(s.preds),
 						s.pred0,
-						new LinkedHashMap<SRParserState,Pair<List<IntFeatVector>,Double>>(s.trans),
+						new LinkedHashMap<SRParserState,Pair<FeatureLog,Double>>(s.trans),
 						s.decision,
-						new LinkedList<SDAction>(s.lstact), s.gold,
+						s.lstact, s.gold,
 						s.nstates) :
 				new SRParserState(
 						s.sent,
-						s.cloneStack(),
+						s.pstck,
 						s.curidx, s.curstep, s.idbgn, s.idend, s.scprf, s.scins,
-						s.fvins != null ? new LinkedList<IntFeatVector>(s.fvins) : null,
-						m_bEvalDelay ? new LinkedList<DelayedFeature>(s.fvdelay) : null, new TreeSet<SRParserState>(s.preds),
+						s.fvins,
+						s.fvdelay, new TreeSet<SRParserState>(s.preds),
 						s.pred0,
-						new LinkedHashMap<SRParserState,Pair<List<IntFeatVector>,Double>>(s.trans),
+						new LinkedHashMap<SRParserState,Pair<FeatureLog,Double>>(s.trans),
 						s.decision,
-						new LinkedList<SDAction>(s.lstact),
+						s.lstact,
 						s.gold,
 						s.nstates);
 
@@ -140,16 +146,17 @@ public class SRParserStateGenerator
 			int idend,
 			double scprf,
 			double scins,
-			List<IntFeatVector> fvins,
+			FeatureLog fvins,
 			List<DelayedFeature> fvdelay,
 			Set<SRParserState> preds,
 			SRParserState pred0,
-			Map<SRParserState,Pair<List<IntFeatVector>,Double>> trans,
+			Map<SRParserState,Pair<FeatureLog,Double>> trans,
 			SRParserTransition.Decision[] decision,
-			List<SDAction> lstact,
+			PersistentSeq<SDAction> lstact,
 			boolean gold,
 			long states)
 	{
+		final long t0 = Metrics.start();
 		SRParserState s = m_bDP ?
 				new SRParserDPState(
 						sent, stack,
@@ -160,6 +167,7 @@ public class SRParserStateGenerator
 						curidx, curstep, idbgn, idend, scprf, scins,
 						fvins, fvdelay, preds, pred0, trans, decision, lstact, gold, states);
 		s.calcAtomicFeatures(m_fhandler);
+		SRParserMetrics.GENERATION.recordSince(t0);
 		return s;
 	}
 
@@ -180,7 +188,7 @@ public class SRParserStateGenerator
 			if (!ps.preds.contains(_ps))
 				ps.preds.add(_ps);
 
-		for (Entry<SRParserState,Pair<List<IntFeatVector>,Double>> p: ps2.trans.entrySet())
+		for (Entry<SRParserState,Pair<FeatureLog,Double>> p: ps2.trans.entrySet())
 		{
 			SRParserState sk = p.getKey();
 			if (!ps.trans.containsKey(sk))
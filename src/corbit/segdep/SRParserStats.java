@@ -30,47 +30,69 @@
 
 package corbit.segdep;
 
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
 import corbit.commons.io.Console;
 
 public class SRParserStats
 {
 	/**
-	 * Even with volatile declaration, these variables are not thread-safe.
-	 * However, it is practically ok for getting rough statistics.
+	 * The counters are striped, so that the threads decoding in parallel can
+	 * update them without contention or lost updates.
 	 */
 
-	public volatile double totalScore = 0.0;
+	public final DoubleAdder totalScore = new DoubleAdder();
 
-	public volatile int numSentencesProcessed = 0;
-	public volatile int numSentencesStopped = 0;
+	public final LongAdder numSentencesProcessed = new LongAdder();
+	public final LongAdder numSentencesStopped = new LongAdder();
 
-	public volatile long numNonDPStatesEvaluated = 0;
-	public volatile int numStatesEvaluated = 0;
-	public volatile int numStatesMerged = 0;
+	public final LongAdder numNonDPStatesEvaluated = new LongAdder();
+	public final LongAdder numStatesEvaluated = new LongAdder();
+	public final LongAdder numStatesMerged = new LongAdder();
 
-	public volatile int numSegCandidates = 0;
-	public volatile int numSegsPruned = 0;
-	public volatile int numSegsEvaluated = 0;
+	public final LongAdder numSegCandidates = new LongAdder();
+	public final LongAdder numSegsPruned = new LongAdder();
+	public final LongAdder numSegsEvaluated = new LongAdder();
 
-	public volatile int numTagCandidates = 0;
-	public volatile int numTagsConsidered = 0;
-	public volatile int numTagsPruned = 0;
-	public volatile int numTagsEvaluated = 0;
+	public final LongAdder numTagCandidates = new LongAdder();
+	public final LongAdder numTagsConsidered = new LongAdder();
+	public final LongAdder numTagsPruned = new LongAdder();
+	public final LongAdder numTagsEvaluated = new LongAdder();
 
-	public volatile int numGoldMoves = 0;
-	public volatile int numGoldMovesSegCovered = 0;
-	public volatile int numGoldMovesCovered = 0;
+	public final LongAdder numGoldMoves = new LongAdder();
+	public final LongAdder numGoldMovesSegCovered = new LongAdder();
+	public final LongAdder numGoldMovesCovered = new LongAdder();
 
-	public volatile int numSegsIncorrectlyPruned = 0;
-	public volatile int numSegsPrematurelyPruned = 0;
+	public final LongAdder numSegsIncorrectlyPruned = new LongAdder();
+	public final LongAdder numSegsPrematurelyPruned = new LongAdder();
 
-	public volatile int numGoldOutOfBeamHigher = 0;
-	public volatile int numGoldOutOfBeamLower = 0;
-	public volatile int numGoldInBeamHigher = 0;
-	public volatile int numGoldInBeamLower = 0;
+	public final LongAdder numGoldOutOfBeamHigher = new LongAdder();
+	public final LongAdder numGoldOutOfBeamLower = new LongAdder();
+	public final LongAdder numGoldInBeamHigher = new LongAdder();
+	public final LongAdder numGoldInBeamLower = new LongAdder();
 
 	public void print()
 	{
+		final double totalScore = this.totalScore.sum();
+		final long numSentencesProcessed = this.numSentencesProcessed.sum();
+		final long numSentencesStopped = this.numSentencesStopped.sum();
+		final long numNonDPStatesEvaluated = this.numNonDPStatesEvaluated.sum();
+		final long numStatesEvaluated = this.numStatesEvaluated.sum();
+		final long numStatesMerged = this.numStatesMerged.sum();
+		final long numSegCandidates = this.numSegCandidates.sum();
+		final long numSegsPruned = this.numSegsPruned.sum();
+		final long numSegsEvaluated = this.numSegsEvaluated.sum();
+		final long numTagCandidates = this.numTagCandidates.sum();
+		final long numTagsConsidered = this.numTagsConsidered.sum();
+		final long numTagsPruned = this.numTagsPruned.sum();
+		final long numTagsEvaluated = this.numTagsEvaluated.sum();
+		final long numGoldMoves = this.numGoldMoves.sum();
+		final long numGoldMovesSegCovered = this.numGoldMovesSegCovered.sum();
+		final long numGoldMovesCovered = this.numGoldMovesCovered.sum();
+		final long numSegsIncorrectlyPruned = this.numSegsIncorrectlyPruned.sum();
+		final long numSegsPrematurelyPruned = this.numSegsPrematurelyPruned.sum();
+
 		/* evaluated sentences and states */
 
 		if (numSentencesStopped > 0)
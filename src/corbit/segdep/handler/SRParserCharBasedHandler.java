@@ -30,17 +30,21 @@
 
 package corbit.segdep.handler;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
 
 import corbit.commons.Vocab;
+import corbit.commons.dict.TagDictionary;
+import corbit.commons.metrics.Metrics;
+import corbit.commons.ml.FeatureKey;
 import corbit.commons.ml.IntFeatVector;
 import corbit.commons.ml.WeightVector;
 import corbit.commons.transition.SDAction;
 import corbit.commons.util.Pair;
-import corbit.commons.util.Statics;
+import corbit.commons.util.SymbolTable;
 import corbit.commons.word.DepChunkTree;
+import corbit.commons.word.UnsegmentedSentence;
+import corbit.segdep.SRParserMetrics;
 import corbit.segdep.SRParserState;
 import corbit.segdep.handler.DelayedFeature.DelayedFeatureType;
 import corbit.segdep.transition.SRParserTransition;
@@ -49,10 +53,13 @@ public class SRParserCharBasedHandler extends SRParserHandler
 {
 	/*
 	 * See Huang and Sagae (2010) for a detailed description of how the atomic (kernel) features work.
+	 * The string values are kept for feature extraction, while the equivalence of states is decided
+	 * over a signature of integers: positions are packed in pairs, and strings are interned in the symbols of the sentence.
 	 */
 	private class AtomicTaggingFeatures implements AtomicFeatures
 	{
-		private final int curstep;
+		static final int NUM_SIG = 6;
+
 		final int curidx;
 		final int spanbgn;
 		final int spanend;
@@ -61,12 +68,18 @@ public class SRParserCharBasedHandler extends SRParserHandler
 		final String spqp1;
 		final String spqp2;
 
-		private final int hash1;
+		final long[] sig;
+		int hash;
 		
-		public AtomicTaggingFeatures(int curstep, int curidx, int spanbgn, int spanend,
+		public AtomicTaggingFeatures(SymbolTable.Generation symbols, int curstep, int curidx, int spanbgn, int spanend,
 				String sfqp1, String sfqp2, String spqp1, String spqp2)
 		{
-			this.curstep = curstep;
+			this(symbols, curstep, curidx, spanbgn, spanend, sfqp1, sfqp2, spqp1, spqp2, NUM_SIG);
+		}
+
+		protected AtomicTaggingFeatures(SymbolTable.Generation symbols, int curstep, int curidx, int spanbgn, int spanend,
+				String sfqp1, String sfqp2, String spqp1, String spqp2, int iSigSize)
+		{
 			this.curidx = curidx;
 			this.spanbgn = spanbgn;
 			this.spanend = spanend;
@@ -74,27 +87,20 @@ public class SRParserCharBasedHandler extends SRParserHandler
 			this.sfqp2 = sfqp2;
 			this.spqp1 = spqp1;
 			this.spqp2 = spqp2;
-			this.hash1 = hash1();
-		}
-
-		private int hash1()
-		{
-			int hash = 13;
-			hash = hash * 31 + curstep;
-			hash = hash * 31 + curidx;
-			hash = hash * 31 + spanbgn;
-			hash = hash * 31 + spanend;
-			hash = hash * 31 + sfqp1.hashCode();
-			hash = hash * 31 + sfqp2.hashCode();
-			hash = hash * 31 + spqp1.hashCode();
-			hash = hash * 31 + spqp2.hashCode();
-			return hash;
+			this.sig = new long[iSigSize];
+			sig[0] = pack(curstep, curidx);
+			sig[1] = pack(spanbgn, spanend);
+			sig[2] = symbols.getId(sfqp1);
+			sig[3] = symbols.getId(sfqp2);
+			sig[4] = symbols.getId(spqp1);
+			sig[5] = symbols.getId(spqp2);
+			this.hash = Arrays.hashCode(sig);
 		}
 
 		@Override
 		public int hashCode()
 		{
-			return hash1;
+			return hash;
 		}
 
 		@Override
@@ -104,28 +110,19 @@ public class SRParserCharBasedHandler extends SRParserHandler
 			if (!(obj instanceof AtomicTaggingFeatures)) throw new ClassCastException();
 			
 			AtomicTaggingFeatures atoms = (AtomicTaggingFeatures)obj;
-			if (hash1 != atoms.hash1) return false; // to improve efficiency
-			if (!(	curstep == atoms.curstep &&
-					curidx == atoms.curidx &&
-					spanbgn == atoms.spanbgn &&
-					spanend == atoms.spanend &&
-					sfqp1.equals(atoms.sfqp1) &&
-					sfqp2.equals(atoms.sfqp2) && 
-					spqp1.equals(atoms.spqp1) &&
-					spqp2.equals(atoms.spqp2)
-					)) return false;
-			else return true;
+			if (hash != atoms.hash) return false; // to improve efficiency
+			return Arrays.equals(sig, atoms.sig);
 		}
 	}
 	
 	/*
 	 * See Huang and Sagae (2010) for a detailed description of how the atomic (kernel) features work.
+	 * Delayed features take part in the signature through their distinct hash codes.
 	 */
 	private class AtomicParsingFeatures extends AtomicTaggingFeatures
 	{
-		private final int st0bgn;
-		private final int st1bgn;
-		
+		static final int NUM_SIG = AtomicTaggingFeatures.NUM_SIG + 12;
+
 		final String sfst0;
 		final String sfst1;
 		final String spst0;
@@ -137,21 +134,16 @@ public class SRParserCharBasedHandler extends SRParserHandler
 		final String spst1lc;
 		final String punct;
 		final boolean adjoin;
-		
-		final TreeSet<DelayedFeature> fvdelay; // must be ordered
 	
-		private final int hash2;
-		
-		public AtomicParsingFeatures(
+		public AtomicParsingFeatures(SymbolTable.Generation symbols,
 				int curstep, int curidx, int spanbgn, int spanend, int st0bgn, int st1bgn, int st1sbgn,
 				String sfst0, String sfst1, String sfqp1, String sfqp2,
 				String spst0, String spst1, String spst2, String spqp1, String spqp2,
 				String spst0rc, String spst0lc, String spst1rc, String spst1lc,
-				String sPunct, boolean bAdjoin, List<DelayedFeature> fvdelay)
+				String sPunct, boolean bAdjoin, int[] fvdelay)
 		{
-			super(curstep, curidx, spanbgn, spanend, sfqp1, sfqp2, spqp1, spqp2);
-			this.st0bgn = st0bgn;
-			this.st1bgn = st1bgn;
+			super(symbols, curstep, curidx, spanbgn, spanend, sfqp1, sfqp2, spqp1, spqp2,
+					NUM_SIG + (fvdelay != null ? fvdelay.length : 0));
 			this.sfst0 = sfst0;
 			this.sfst1 = sfst1;
 			this.spst0 = spst0;
@@ -163,76 +155,53 @@ public class SRParserCharBasedHandler extends SRParserHandler
 			this.spst1lc = spst1lc;
 			this.punct = sPunct;
 			this.adjoin = bAdjoin;
-			
-			this.fvdelay = fvdelay != null ? new TreeSet<DelayedFeature>(fvdelay) : null;
-			this.hash2 = hash2();
-		}
 
-		private int hash2()
-		{
-			int hash = super.hashCode();
-			hash = hash * 31 + st0bgn;
-			hash = hash * 31 + st1bgn;
-			hash = hash * 31 + sfst0.hashCode();
-			hash = hash * 31 + sfst1.hashCode();
-			hash = hash * 31 + spst0.hashCode();
-			hash = hash * 31 + spst1.hashCode();
-			hash = hash * 31 + spst2.hashCode();
-			hash = hash * 31 + spst0rc.hashCode();
-			hash = hash * 31 + spst0lc.hashCode();
-			hash = hash * 31 + spst1rc.hashCode();
-			hash = hash * 31 + spst1lc.hashCode();
-			hash = hash * 31 + punct.hashCode();
-			hash = hash * 31 + (adjoin ? 1 : 0);
+			int i = AtomicTaggingFeatures.NUM_SIG;
+			sig[i++] = pack(st0bgn, st1bgn);
+			sig[i++] = symbols.getId(sfst0);
+			sig[i++] = symbols.getId(sfst1);
+			sig[i++] = symbols.getId(spst0);
+			sig[i++] = symbols.getId(spst1);
+			sig[i++] = symbols.getId(spst2);
+			sig[i++] = symbols.getId(spst0rc);
+			sig[i++] = symbols.getId(spst0lc);
+			sig[i++] = symbols.getId(spst1rc);
+			sig[i++] = symbols.getId(spst1lc);
+			sig[i++] = symbols.getId(sPunct);
+			sig[i++] = pack(bAdjoin ? 1 : 0, fvdelay != null ? fvdelay.length : -1);
 			if (fvdelay != null)
-				for (DelayedFeature s: fvdelay)
-					hash = hash * 31 + s.hashCode();
-			return hash;
+				for (int h: fvdelay)
+					sig[i++] = h;
+			this.hash = Arrays.hashCode(sig);
 		}
+	}
 
-		@Override
-		public int hashCode()
-		{
-			return hash2;
-		}
+	/*
+	 * end of AtomicParsingFeatures
+	 */
 
-		@Override
-		public boolean equals(Object obj)
-		{
-			if (obj == null) throw new NullPointerException();
-			if (!(obj instanceof AtomicTaggingFeatures)) throw new ClassCastException();
-			
-			AtomicParsingFeatures atoms = (AtomicParsingFeatures)obj;
-			if (hash2 != atoms.hash2) return false; // to improve efficiency
-			if (!super.equals(atoms)) return false;
-			if (!(	st0bgn == atoms.st0bgn &&
-					st1bgn == atoms.st1bgn &&
-					sfst0.equals(atoms.sfst0) &&
-					sfst1.equals(atoms.sfst1) &&
-					spst0.equals(atoms.spst0) &&
-					spst1.equals(atoms.spst1) &&
-					spst2.equals(atoms.spst2) &&
-					spst0rc.equals(atoms.spst0rc) &&
-					spst0lc.equals(atoms.spst0lc) &&
-					spst1rc.equals(atoms.spst1rc) &&
-					spst1lc.equals(atoms.spst1lc) &&
-					punct.equals(atoms.punct) &&
-					adjoin == atoms.adjoin
-					)) return false;
-			Set<DelayedFeature> _fvdelay = atoms.fvdelay;
-			if (fvdelay != null)
-			{
-				if (fvdelay == null) return false;
-				else return Statics.setEquals(fvdelay, _fvdelay);
-			}
-			else if (_fvdelay != null) return false;
-			else return true;
-		}
+	private static long pack(int i1, int i2)
+	{
+		return ((long)i1 << 32) | (i2 & 0xffffffffL);
 	}
 
 	/*
-	 * end of AtomicParsingFeatures
+	 * returns the distinct hash codes of the delayed features in ascending order
 	 */
+	private static int[] getDelayedSignature(List<DelayedFeature> fvdelay)
+	{
+		if (fvdelay == null) return null;
+		int[] hs = new int[fvdelay.size()];
+		int n = 0;
+		for (DelayedFeature df: fvdelay)
+			hs[n++] = df.hashCode();
+		Arrays.sort(hs);
+		int m = 0;
+		for (int i = 0; i < n; ++i)
+			if (m == 0 || hs[m - 1] != hs[i])
+				hs[m++] = hs[i];
+		return m == n ? hs : Arrays.copyOf(hs, m);
+	}
 	
 	@Override
 	public AtomicFeatures getAtomicFeatures(SRParserState s0)
@@ -257,7 +226,7 @@ public class SRParserCharBasedHandler extends SRParserHandler
 		
 		if (!m_bParse)
 		{
-			return new AtomicTaggingFeatures(s0.curstep, curidx, s0.idbgn, s0.idend, sfqp1, sfqp2, spqp1, spqp2);
+			return new AtomicTaggingFeatures(getSymbols(s0.sent), s0.curstep, curidx, s0.idbgn, s0.idend, sfqp1, sfqp2, spqp1, spqp2);
 		}
 		else
 		{
@@ -282,12 +251,83 @@ public class SRParserCharBasedHandler extends SRParserHandler
 	
 			int st1bgn = wst1 != null ? wst1.begin : -2;
 			int st1sbgn = wst1 != null ? wst1.getSpanBeginIndex() : -2;
-			return new AtomicParsingFeatures(s0.curstep, curidx, s0.idbgn, s0.idend, wst0.begin, st1bgn, st1sbgn, 
+			return new AtomicParsingFeatures(getSymbols(s0.sent), s0.curstep, curidx, s0.idbgn, s0.idend, wst0.begin, st1bgn, st1sbgn, 
 					sfst0, sfst1, sfqp1, sfqp2, spst0, spst1, spst2, spqp1, spqp2,
-					spst0rc, spst0lc, spst1rc, spst1lc, sPunct, bAdjoin, s0.fvdelay);
+					spst0rc, spst0lc, spst1rc, spst1lc, sPunct, bAdjoin, getDelayedSignature(s0.fvdelay));
 		}
 	}
 
+	/*
+	 * Per-sentence annotations that depend on the dictionary and word lists, attached to the
+	 * sentence on first use so that they are not looked up again for every state and action,
+	 * and dropped once the sentence is decoded.
+	 */
+	private static final class SentenceAnnotation
+	{
+		static final int COMPUTED = 1 << 31;
+
+		final TagDictionary dict;
+		final Vocab[] wordlists;
+		final String[] charTypes;
+		final int[][] wordlistFlags;
+
+		SentenceAnnotation(UnsegmentedSentence sent, TagDictionary dict, Vocab[] wordlists)
+		{
+			this.dict = dict;
+			this.wordlists = wordlists;
+			charTypes = new String[sent.length()];
+			for (int i = 0; i < charTypes.length; ++i)
+				charTypes[i] = dict.getCharType(sent.charAt(i));
+			wordlistFlags = new int[sent.length() + 1][];
+		}
+	}
+
+	private SentenceAnnotation getAnnotation(UnsegmentedSentence sent)
+	{
+		SentenceAnnotation a = (SentenceAnnotation)sent.getAnnotation(this);
+		if (a == null || a.dict != m_dict || a.wordlists != m_wordlists)
+		{
+			a = new SentenceAnnotation(sent, m_dict, m_wordlists);
+			sent.setAnnotation(this, a);
+		}
+		return a;
+	}
+
+	/**
+	 * @return the dictionary character type of the character at the index, which is
+	 *         c unless the index is out of the sentence
+	 */
+	private String getCharType(SentenceAnnotation a, int index, char c)
+	{
+		return index >= 0 && index < a.charTypes.length ? a.charTypes[index] : m_dict.getCharType(c);
+	}
+
+	/**
+	 * @return a bit mask of the word lists that contain the word ending at iEnd
+	 */
+	private int getWordlistFlags(SentenceAnnotation a, int iEnd, String sWord)
+	{
+		if (iEnd <= 0 || m_wordlists.length >= 31)
+			return lookupWordlists(sWord);
+
+		int[] flags = a.wordlistFlags[iEnd];
+		if (flags == null)
+			a.wordlistFlags[iEnd] = flags = new int[iEnd];
+		int f = flags[sWord.length() - 1];
+		if (f == 0)
+			flags[sWord.length() - 1] = f = lookupWordlists(sWord) | SentenceAnnotation.COMPUTED;
+		return f;
+	}
+
+	private int lookupWordlists(String sWord)
+	{
+		int f = 0;
+		for (int i = 0; i < m_wordlists.length; ++i)
+			if (m_wordlists[i].contains(sWord))
+				f |= 1 << i;
+		return f;
+	}
+
 	/*
 	 * beginning of main
 	 */
@@ -306,19 +346,29 @@ public class SRParserCharBasedHandler extends SRParserHandler
 		m_dParserWeight = dParserWeight;
 	}
 
+	@Override
+	public Pair<IntFeatVector, Double> getFeatures(SRParserState s0, SDAction act, List<DelayedFeature> vd, boolean bAdd, boolean bLog, WeightVector w, SRParserTransition.SRParserCache cache)
+	{
+		final long t0 = Metrics.start();
+		Pair<IntFeatVector, Double> p = m_bParse ?
+				getParsingFeatures(s0, act, vd, bAdd, bLog, w, cache) :
+				getTaggingFeatures(s0, act, vd, bAdd, bLog, w, cache);
+		SRParserMetrics.FEATURES.recordSince(t0);
+		return p;
+	}
+
 	/**
 	 * This function should be executed with a VM option that enables efficient concatenation of strings (such as --XX:AggressiveOpts) 
 	 */
-	@Override
-	public Pair<IntFeatVector, Double> getFeatures(SRParserState s0, SDAction act, List<DelayedFeature> vd, boolean bAdd, WeightVector w, SRParserTransition.SRParserCache cache)
+	private Pair<IntFeatVector, Double> getParsingFeatures(SRParserState s0, SDAction act, List<DelayedFeature> vd, boolean bAdd, boolean bLog, WeightVector w, SRParserTransition.SRParserCache cache)
 	{
-		if (!m_bParse) return getTaggingFeatures(s0, act, vd, bAdd, w, cache);
-		
-		IntFeatVector v = bAdd ? new IntFeatVector() : null;
+		IntFeatVector v = bAdd ? new IntFeatVector() : bLog ? getLogVector() : null;
+		FeatureKey k = getFeatureKey();
 		double sc = 0.0;
 		
 		AtomicParsingFeatures atoms = (AtomicParsingFeatures)s0.atoms;
 		final int szSent = s0.sent.length();
+		final SentenceAnnotation annot = getAnnotation(s0.sent);
 		
 		int curidx = atoms.curidx;
 		int spanbgn = atoms.spanbgn;
@@ -339,11 +389,11 @@ public class SRParserCharBasedHandler extends SRParserHandler
 		
 		int ln_sfqp1 = sfqp1.equals(OOR) ? 0 : sfqp1.length();
 		int ln_sfqp2 = sfqp2.equals(OOR) ? 0 : sfqp2.length();
-		String ln_sfqp1s = Integer.toString(Math.min(ln_sfqp1, wordNormLength));
-		String ln_sfqp2s = Integer.toString(Math.min(ln_sfqp2, wordNormLength));
-		String c_sfqp1_b = sfqp1.substring(0, 1);
-		String c_sfqp1_e = ln_sfqp1 > 0 ? sfqp1.substring(ln_sfqp1 - 1, ln_sfqp1) : OOR;
-		String c_sfqp2_e = ln_sfqp2 > 0 ? sfqp2.substring(ln_sfqp2 - 1, ln_sfqp2) : OOR;
+		int ln_sfqp1s = Math.min(ln_sfqp1, wordNormLength);
+		int ln_sfqp2s = Math.min(ln_sfqp2, wordNormLength);
+		char c_sfqp1_b = sfqp1.charAt(0);
+		char c_sfqp1_e = ln_sfqp1 > 0 ? sfqp1.charAt(ln_sfqp1 - 1) : OOR_CHAR;
+		char c_sfqp2_e = ln_sfqp2 > 0 ? sfqp2.charAt(ln_sfqp2 - 1) : OOR_CHAR;
 		
 		AtomicParsingFeatures atoms2 = (AtomicParsingFeatures)atoms;
 		String sfst0 = atoms2.sfst0;
@@ -358,7 +408,7 @@ public class SRParserCharBasedHandler extends SRParserHandler
 		String sPunct = atoms2.punct;
 		boolean bAdjoin = atoms2.adjoin;
 		
-		String c0 = curidx < szSent ? s0.sent.substring(curidx, curidx + 1) : OOR;
+		char c0 = curidx < szSent ? s0.sent.charAt(curidx) : OOR_CHAR;
 
 		/*
 		 * balancing features (original)
@@ -366,9 +416,9 @@ public class SRParserCharBasedHandler extends SRParserHandler
 		
 		{
 			if (act == SDAction.APPEND || act.isShiftTagAction())
-				sc += addFeature(v, "SH00-" + c_sfqp1_e + spqp1, "", 1.0, bAdd, w);
-			sc += addFeature(v, "SH001-" + c_sfqp1_e, act.toString(), 1.0, bAdd, w);
-			sc += addFeature(v, "SH002-" + c_sfqp1_e + spqp1, act.toString(), 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH00-").append(c_sfqp1_e).append(spqp1), "", 1.0, bAdd, w);
+			sc += addFeature(v, k.begin("SH001-").append(c_sfqp1_e), act.toString(), 1.0, bAdd, w);
+			sc += addFeature(v, k.begin("SH002-").append(c_sfqp1_e).append(spqp1), act.toString(), 1.0, bAdd, w);
 		}
 
 		/*
@@ -382,22 +432,22 @@ public class SRParserCharBasedHandler extends SRParserHandler
 				
 				double _sc = 0.0;
 				
-				String c1 = curidx - 1 >= 0 ? Character.toString(s0.sent.charAtIgnoreRange(curidx - 1)) : OOR;
+				char c1 = curidx - 1 >= 0 ? s0.sent.charAtIgnoreRange(curidx - 1) : OOR_CHAR;
 				
 				/* character bigrams within the word */
-				sc += addFeature(v, "SH07-" + c0 + c1, sLabel, 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH07-").append(c0).append(c1), sLabel, 1.0, bAdd, w);
 				/* tag on a word containing char */
 //				sc += addFeature(v, "SH25a-" + spqp1 + c0, sLabel, 1.0, bAdd, w);
 				if (act == SDAction.APPEND)
-					sc += addFeature(v, "SH25-" + spqp1 + c0, "", 1.0, bAdd, w); // shared with shift-tag action
+					sc += addFeature(v, k.begin("SH25-").append(spqp1).append(c0), "", 1.0, bAdd, w); // shared with shift-tag action
 				/* tag on a word starting with char and containing char */
-				sc += addFeature(v, "SH26-" + spqp1 + c0 + c_sfqp1_b, sLabel, 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH26-").append(spqp1).append(c0).append(c_sfqp1_b), sLabel, 1.0, bAdd, w);
 				/* tag on a word ending with char and containing char */
 //				for (String s: m_dict.getSeenTags(c_sfqp1_b))
 //					sc += addFeature(v, "SH28a-" + spqp1 + c0 + SEP + s, sLabel, 1.0, bAdd, w);
-				sc += addFeature(v, "SH28-" + spqp1 + c0 + SEP + m_dict.getCharType(c_sfqp1_b.charAt(0)), sLabel, 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH28-").append(spqp1).append(c0).append(SEP).append(getCharType(annot, curidx > 0 ? curidx - sfqp1.length() : -1, c_sfqp1_b)), sLabel, 1.0, bAdd, w);
 				/* tag and character bigrams with in the word */
-				sc += addFeature(v, "SH31-" + spqp1 + c0 + c1, sLabel, 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH31-").append(spqp1).append(c0).append(c1), sLabel, 1.0, bAdd, w);
 
 				sc += _sc;
 			}
@@ -413,10 +463,14 @@ public class SRParserCharBasedHandler extends SRParserHandler
 				String sLabel = act == SDAction.APPEND ? SDAction.APPEND.toString() : SDAction.SHIFT.toString();
 			
 				if (cache != null && !bAdd && act != SDAction.APPEND && cache.wordScore().containsKey(s0))
+				{
 					sc += cache.wordScore().get(s0); // use cached information to improve speed
+					if (v != null) v.append(cache.wordFeatures().get(s0));
+				}
 				else
 				{
 					double _sc = 0.0;
+					IntFeatVector vw = v != null && cache != null && !bAdd && act != SDAction.APPEND ? new IntFeatVector(32, false) : v;
 					
 					/*
 					 * Features from external lexicon (original)
@@ -424,71 +478,72 @@ public class SRParserCharBasedHandler extends SRParserHandler
 					
 					if (m_wordlists != null)
 					{
-						for (int i=0; i<m_wordlists.length; ++i)
+						int iFlags = getWordlistFlags(annot, curidx, sfqp1);
+						for (int i = 0; i < m_wordlists.length; ++i)
 						{
-							if (m_wordlists[i].contains(sfqp1))
+							if ((iFlags & 1 << i) != 0)
 							{
-								_sc += addFeature(v, "DD00-" + (i + 1) + SEP + ln_sfqp1s, sLabel, 1.0, bAdd, w);
-								_sc += addFeature(v, "DD01-" + (i + 1) + SEP + ln_sfqp1s + SEP + spqp1, sLabel, 1.0, bAdd, w);
+								_sc += addFeature(vw, k.begin("DD00-").append(i + 1).append(SEP).append(ln_sfqp1s), sLabel, 1.0, bAdd, w);
+								_sc += addFeature(vw, k.begin("DD01-").append(i + 1).append(SEP).append(ln_sfqp1s).append(SEP).append(spqp1), sLabel, 1.0, bAdd, w);
 							}
 							else
 							{
-								_sc += addFeature(v, "DN00-" + (i + 1) + SEP + ln_sfqp1s, sLabel, 1.0, bAdd, w);
-								_sc += addFeature(v, "DN01-" + (i + 1) + SEP + ln_sfqp1s + SEP + spqp1, sLabel, 1.0, bAdd, w);
+								_sc += addFeature(vw, k.begin("DN00-").append(i + 1).append(SEP).append(ln_sfqp1s), sLabel, 1.0, bAdd, w);
+								_sc += addFeature(vw, k.begin("DN01-").append(i + 1).append(SEP).append(ln_sfqp1s).append(SEP).append(spqp1), sLabel, 1.0, bAdd, w);
 							}
 						}
 					}
 					
 					// (1) word unigram
-					_sc += addFeature(v, "SH01-" + sfqp1, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH01-").append(sfqp1), sLabel, 1.0, bAdd, w);
 					// (2) word bigram
-					_sc += addFeature(v, "SH02-" + sfqp2 + SEP + sfqp1, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH02-").append(sfqp2).append(SEP).append(sfqp1), sLabel, 1.0, bAdd, w);
 					// (3) single-character word
 					if (ln_sfqp1 == 1)
-						_sc += addFeature(v, "SH03-" + sfqp1, sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH03-").append(sfqp1), sLabel, 1.0, bAdd, w);
 					// (4) lemma and length with starting character
-					_sc += addFeature(v, "SH04-" + c_sfqp1_b + ln_sfqp1s, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH04-").append(c_sfqp1_b).append(ln_sfqp1s), sLabel, 1.0, bAdd, w);
 					// (5) lemma and length with ending character
-					_sc += addFeature(v, "SH05-" + c_sfqp1_e + ln_sfqp1s, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH05-").append(c_sfqp1_e).append(ln_sfqp1s), sLabel, 1.0, bAdd, w);
 					// (6) space-separated characters
-					_sc += addFeature(v, "SH06-" + c_sfqp1_e + c0, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH06-").append(c_sfqp1_e).append(c0), sLabel, 1.0, bAdd, w);
 					// (8) the first and last character of the word
-					_sc += addFeature(v, "SH08-" + c_sfqp1_b + c_sfqp1_e, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH08-").append(c_sfqp1_b).append(c_sfqp1_e), sLabel, 1.0, bAdd, w);
 					// (9) word and next character
-					_sc += addFeature(v, "SH09-" + sfqp1 + c0, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH09-").append(sfqp1).append(c0), sLabel, 1.0, bAdd, w);
 					// (10) word and previous character
-					_sc += addFeature(v, "SH10-" + c_sfqp2_e + sfqp1, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH10-").append(c_sfqp2_e).append(sfqp1), sLabel, 1.0, bAdd, w);
 					// (11) the starting characters of two consecutive words
-					_sc += addFeature(v, "SH11-" + c_sfqp1_b + c0, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH11-").append(c_sfqp1_b).append(c0), sLabel, 1.0, bAdd, w);
 					// (12) the ending characters of two consecutive words
-					_sc += addFeature(v, "SH12-" + c_sfqp2_e + c_sfqp1_e, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH12-").append(c_sfqp2_e).append(c_sfqp1_e), sLabel, 1.0, bAdd, w);
 					// (13) word length with previous word
-					_sc += addFeature(v, "SH13-" + sfqp2 + ln_sfqp1s, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH13-").append(sfqp2).append(ln_sfqp1s), sLabel, 1.0, bAdd, w);
 					// (14) word length with next word
-					_sc += addFeature(v, "SH14-" + ln_sfqp2s + sfqp1, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH14-").append(ln_sfqp2s).append(sfqp1), sLabel, 1.0, bAdd, w);
 					
 					// (15) tag and word
-					_sc += addFeature(v, "SH15-" + sfqp1 + SEP + spqp1, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH15-").append(sfqp1).append(SEP).append(spqp1), sLabel, 1.0, bAdd, w);
 					
 					if (!m_bLemmaFilter || ln_sfqp1 < 3)
 					{
-						_sc += addFeature(v, "SH19-" + spqp2 + SEP + sfqp1, sLabel, 1.0, bAdd, w);
-						_sc += addFeature(v, "SH20-" + sfqp1 + SEP + spqp1 + c_sfqp2_e, sLabel, 1.0, bAdd, w);
-						_sc += addFeature(v, "SH21-" + sfqp1 + SEP + spqp1 + c0, sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH19-").append(spqp2).append(SEP).append(sfqp1), sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH20-").append(sfqp1).append(SEP).append(spqp1).append(c_sfqp2_e), sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH21-").append(sfqp1).append(SEP).append(spqp1).append(c0), sLabel, 1.0, bAdd, w);
 					}
 					if (ln_sfqp1 == 1)
-						_sc += addFeature(v, "SH22-" + c_sfqp2_e + sfqp1 + c0 + spqp1, sLabel, 1.0, bAdd, w);
-					_sc += addFeature(v, "SH24-" + spqp1 + c_sfqp1_e, sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH22-").append(c_sfqp2_e).append(sfqp1).append(c0).append(spqp1), sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH24-").append(spqp1).append(c_sfqp1_e), sLabel, 1.0, bAdd, w);
 					
 					for (int i = 0; i < sfqp1.length() - 1; ++i)
-						_sc += addFeature(v, "SH27-" + spqp1 + sfqp1.charAt(i) + c_sfqp1_e, sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH27-").append(spqp1).append(sfqp1.charAt(i)).append(c_sfqp1_e), sLabel, 1.0, bAdd, w);
 
-					String sCat = m_dict.getCharType(c_sfqp1_e.charAt(0));
+					String sCat = getCharType(annot, curidx - 1, c_sfqp1_e);
 					for (int i = 0; i < sfqp1.length() - 1; ++i)
 					{
 //						for (String s: m_dict.getSeenTags(c_sfqp1_e))
-//							_sc += addFeature(v, "SH29a-" + spqp1 + sfqp1.charAt(i) + SEP + s, sLabel, 1.0, bAdd, w);
-						_sc += addFeature(v, "SH29-" + spqp1 + sfqp1.charAt(i) + SEP + sCat, sLabel, 1.0, bAdd, w);
+//							_sc += addFeature(vw, "SH29a-" + spqp1 + sfqp1.charAt(i) + SEP + s, sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH29-").append(spqp1).append(sfqp1.charAt(i)).append(SEP).append(sCat), sLabel, 1.0, bAdd, w);
 					}
 					
 					/*
@@ -497,7 +552,11 @@ public class SRParserCharBasedHandler extends SRParserHandler
 					
 					sc += _sc;
 					if (cache != null && !bAdd && act != SDAction.APPEND)
+					{
 						cache.wordScore().put(s0, _sc);
+						if (vw != v) cache.wordFeatures().put(s0, vw);
+					}
+					if (vw != v) v.append(vw);
 				}
 				
 				/*
@@ -520,18 +579,18 @@ public class SRParserCharBasedHandler extends SRParserHandler
 				String sLabel = "";
 				String spqf1 = act.getTag();
 				
-				sc += addFeature(v, "SH16-" + spqp1 + SEP + spqf1, sLabel, 1.0, bAdd, w);
-				sc += addFeature(v, "SH17-" + spqp2 + SEP + spqp1 + SEP + spqf1, sLabel, 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH16-").append(spqp1).append(SEP).append(spqf1), sLabel, 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH17-").append(spqp2).append(SEP).append(spqp1).append(SEP).append(spqf1), sLabel, 1.0, bAdd, w);
 				if (!m_bLemmaFilter || ln_sfqp1 < 3)
-					sc += addFeature(v, "SH18-" + sfqp1 + SEP + spqf1, sLabel, 1.0, bAdd, w);
-				sc += addFeature(v, "SH23-" + spqf1 + c0, sLabel, 1.0, bAdd, w);
+					sc += addFeature(v, k.begin("SH18-").append(sfqp1).append(SEP).append(spqf1), sLabel, 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH23-").append(spqf1).append(c0), sLabel, 1.0, bAdd, w);
 //				sc += addFeature(v, "SH25a-" + spqp1 + c0, sLabel, 1.0, bAdd, w);
-				sc += addFeature(v, "SH25-" + spqf1 + c0, "", 1.0, bAdd, w); // shared with append action
+				sc += addFeature(v, k.begin("SH25-").append(spqf1).append(c0), "", 1.0, bAdd, w); // shared with append action
 //				for (String s: m_dict.getSeenTags(c0))
 //					sc += addFeature(v, "SH28a-" + c0 + spqf1 + SEP + s, sLabel, 1.0, bAdd, w);
 //				for (String s: m_dict.getSeenTags(c0))
 //					sc += addFeature(v, "SH28b-" + c0 + spqf1 + SEP + s, sLabel, 1.0, bAdd, w);
-				sc += addFeature(v, "SH30-" + spqf1 + c0 + SEP + spqp1 + c_sfqp1_e, sLabel, 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH30-").append(spqf1).append(c0).append(SEP).append(spqp1).append(c_sfqp1_e), sLabel, 1.0, bAdd, w);
 
 				/*
 				 * Evaluated delayed features
@@ -571,6 +630,7 @@ public class SRParserCharBasedHandler extends SRParserHandler
 		double sc = 0.0;
 		
 		String sParseLabel = act.toString();
+		FeatureKey k = getFeatureKey();
 		
 		final double weight = m_dParserWeight;
 		
@@ -578,26 +638,26 @@ public class SRParserCharBasedHandler extends SRParserHandler
 		 * For all actions
 		 */
 		{
-			String sParseLabel1 = sParseLabel + "-" + (bWordLevel ? 1 : 0);
+			int iWordLevel = bWordLevel ? 1 : 0;
 
-			sc += addFeature(v, "FP01-" + sfst0, sParseLabel1, weight, bAdd, w);
-			sc += addFeature(v, "FP02-" + spst0, sParseLabel1, weight, bAdd, w);
-			sc += addFeature(v, "FP03-" + sfst0 + SEP + spst0, sParseLabel1, weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP01-").append(sfst0).append(SEP).append(sParseLabel).append('-').append(iWordLevel), weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP02-").append(spst0).append(SEP).append(sParseLabel).append('-').append(iWordLevel), weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP03-").append(sfst0).append(SEP).append(spst0).append(SEP).append(sParseLabel).append('-').append(iWordLevel), weight, bAdd, w);
 	
-			sc += addFeature(v, "FP04-" + sfst1, sParseLabel1, weight, bAdd, w);
-			sc += addFeature(v, "FP05-" + spst1, sParseLabel1, weight, bAdd, w);
-			sc += addFeature(v, "FP06-" + sfst1 + SEP + spst1, sParseLabel1, weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP04-").append(sfst1).append(SEP).append(sParseLabel).append('-').append(iWordLevel), weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP05-").append(spst1).append(SEP).append(sParseLabel).append('-').append(iWordLevel), weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP06-").append(sfst1).append(SEP).append(spst1).append(SEP).append(sParseLabel).append('-').append(iWordLevel), weight, bAdd, w);
 	
-			sc += addFeature(v, "FP10-" + sfst0 + SEP + sfst1, sParseLabel1, weight, bAdd, w);
-			sc += addFeature(v, "FP11-" + spst0 + SEP + spst1, sParseLabel1, weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP10-").append(sfst0).append(SEP).append(sfst1).append(SEP).append(sParseLabel).append('-').append(iWordLevel), weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP11-").append(spst0).append(SEP).append(spst1).append(SEP).append(sParseLabel).append('-').append(iWordLevel), weight, bAdd, w);
 			
 			if (act != SDAction.APPEND)
 			{
-				sc += addFeature(v, "FP13-" + sfst0 + SEP + spst0 + SEP + spst1, sParseLabel1, weight, bAdd, w);
-				sc += addFeature(v, "FP14-" + sfst0 + SEP + spst0 + SEP + sfst1, sParseLabel1, weight, bAdd, w);
-				sc += addFeature(v, "FP15-" + sfst0 + SEP + sfst1 + SEP + spst1, sParseLabel1, weight, bAdd, w);
-				sc += addFeature(v, "FP16-" + spst0 + SEP + sfst1 + SEP + spst1, sParseLabel1, weight, bAdd, w);
-				sc += addFeature(v, "FP17-" + sfst0 + SEP + spst0 + SEP + sfst1 + SEP + spst1, sParseLabel1, weight, bAdd, w);
+				sc += addFeature(v, k.begin("FP13-").append(sfst0).append(SEP).append(spst0).append(SEP).append(spst1).append(SEP).append(sParseLabel).append('-').append(iWordLevel), weight, bAdd, w);
+				sc += addFeature(v, k.begin("FP14-").append(sfst0).append(SEP).append(spst0).append(SEP).append(sfst1).append(SEP).append(sParseLabel).append('-').append(iWordLevel), weight, bAdd, w);
+				sc += addFeature(v, k.begin("FP15-").append(sfst0).append(SEP).append(sfst1).append(SEP).append(spst1).append(SEP).append(sParseLabel).append('-').append(iWordLevel), weight, bAdd, w);
+				sc += addFeature(v, k.begin("FP16-").append(spst0).append(SEP).append(sfst1).append(SEP).append(spst1).append(SEP).append(sParseLabel).append('-').append(iWordLevel), weight, bAdd, w);
+				sc += addFeature(v, k.begin("FP17-").append(sfst0).append(SEP).append(spst0).append(SEP).append(sfst1).append(SEP).append(spst1).append(SEP).append(sParseLabel).append('-').append(iWordLevel), weight, bAdd, w);
 			}
 		}
 
@@ -615,7 +675,7 @@ public class SRParserCharBasedHandler extends SRParserHandler
 					vd.add(new DelayedFeature("FP07-" + sParseLabel2, curidx, 1, 0, DelayedFeatureType.LEX, null, weight));
 				}
 				else
-					sc += addFeature(v, "FP07-" + sParseLabel2 + SEP + sfqf1, weight, bAdd, w);
+					sc += addFeature(v, k.begin("FP07-").append(sParseLabel2).append(SEP).append(sfqf1), weight, bAdd, w);
 				
 				if (spqf1 == null)
 				{
@@ -626,10 +686,10 @@ public class SRParserCharBasedHandler extends SRParserHandler
 				}
 				else
 				{
-					sc += addFeature(v, "FP08-" + sParseLabel2 + SEP + spqf1, weight, bAdd, w);
-					sc += addFeature(v, "FP12-" + sParseLabel2 + SEP + spst0 + SEP + spqf1, weight, bAdd, w);
-					sc += addFeature(v, "FP19-" + sParseLabel2 + SEP + spst0 + SEP + spst1 + SEP + spqf1, weight, bAdd, w);
-					sc += addFeature(v, "FP21-" + sParseLabel2 + SEP + sfst0 + SEP + spst1 + SEP + spqf1, weight, bAdd, w);
+					sc += addFeature(v, k.begin("FP08-").append(sParseLabel2).append(SEP).append(spqf1), weight, bAdd, w);
+					sc += addFeature(v, k.begin("FP12-").append(sParseLabel2).append(SEP).append(spst0).append(SEP).append(spqf1), weight, bAdd, w);
+					sc += addFeature(v, k.begin("FP19-").append(sParseLabel2).append(SEP).append(spst0).append(SEP).append(spst1).append(SEP).append(spqf1), weight, bAdd, w);
+					sc += addFeature(v, k.begin("FP21-").append(sParseLabel2).append(SEP).append(sfst0).append(SEP).append(spst1).append(SEP).append(spqf1), weight, bAdd, w);
 				}
 
 				if (spqf1 == null || sfqf1 == null)
@@ -640,7 +700,7 @@ public class SRParserCharBasedHandler extends SRParserHandler
 					vd.add(df);
 				}
 				else
-					sc += addFeature(v, "FP09-" + sParseLabel2 + SEP + sfqf1 + SEP + spqf1, weight, bAdd, w);
+					sc += addFeature(v, k.begin("FP09-").append(sParseLabel2).append(SEP).append(sfqf1).append(SEP).append(spqf1), weight, bAdd, w);
 				
 				if (spqf1 == null || spqf2 == null)
 				{
@@ -653,43 +713,43 @@ public class SRParserCharBasedHandler extends SRParserHandler
 				}
 				else
 				{
-					sc += addFeature(v, "FP18-" + sParseLabel2 + SEP + spst0 + SEP + spqf1 + SEP + spqf2, weight, bAdd, w);
-					sc += addFeature(v, "FP20-" + sParseLabel2 + SEP + sfst0 + SEP + spqf1 + SEP + spqf2, weight, bAdd, w);
+					sc += addFeature(v, k.begin("FP18-").append(sParseLabel2).append(SEP).append(spst0).append(SEP).append(spqf1).append(SEP).append(spqf2), weight, bAdd, w);
+					sc += addFeature(v, k.begin("FP20-").append(sParseLabel2).append(SEP).append(sfst0).append(SEP).append(spqf1).append(SEP).append(spqf2), weight, bAdd, w);
 				}
 			}
 			else
 			{
 				if (sfqf1 != null)
-					sc += addFeature(v, "FP07-" + sfqf1, sParseLabel2, weight, bAdd, w);
+					sc += addFeature(v, k.begin("FP07-").append(sfqf1), sParseLabel2, weight, bAdd, w);
 				
 				if (spqf1 != null)
 				{
-					sc += addFeature(v, "FP08-" + spqf1, sParseLabel2, weight, bAdd, w);
-					sc += addFeature(v, "FP09-" + sfqf1 + SEP + spqf1, sParseLabel2, weight, bAdd, w);
-					sc += addFeature(v, "FP12-" + spst0 + SEP + spqf1, sParseLabel2, weight, bAdd, w);
-					sc += addFeature(v, "FP19-" + spst0 + SEP + spst1 + SEP + spqf1, sParseLabel2, weight, bAdd, w);
-					sc += addFeature(v, "FP21-" + sfst0 + SEP + spst1 + SEP + spqf1, sParseLabel2, weight, bAdd, w);
+					sc += addFeature(v, k.begin("FP08-").append(spqf1), sParseLabel2, weight, bAdd, w);
+					sc += addFeature(v, k.begin("FP09-").append(sfqf1).append(SEP).append(spqf1), sParseLabel2, weight, bAdd, w);
+					sc += addFeature(v, k.begin("FP12-").append(spst0).append(SEP).append(spqf1), sParseLabel2, weight, bAdd, w);
+					sc += addFeature(v, k.begin("FP19-").append(spst0).append(SEP).append(spst1).append(SEP).append(spqf1), sParseLabel2, weight, bAdd, w);
+					sc += addFeature(v, k.begin("FP21-").append(sfst0).append(SEP).append(spst1).append(SEP).append(spqf1), sParseLabel2, weight, bAdd, w);
 	
 					if (spqf2 != null)
 					{
-						sc += addFeature(v, "FP18-" + spst0 + SEP + spqf1 + SEP + spqf2, sParseLabel2, weight, bAdd, w);
-						sc += addFeature(v, "FP20-" + sfst0 + SEP + spqf1 + SEP + spqf2, sParseLabel2, weight, bAdd, w);
+						sc += addFeature(v, k.begin("FP18-").append(spst0).append(SEP).append(spqf1).append(SEP).append(spqf2), sParseLabel2, weight, bAdd, w);
+						sc += addFeature(v, k.begin("FP20-").append(sfst0).append(SEP).append(spqf1).append(SEP).append(spqf2), sParseLabel2, weight, bAdd, w);
 					}
 				}
 			}
 	
-			sc += addFeature(v, "FP22-" + spst0 + SEP + spst1 + SEP + spst1lc, sParseLabel2, weight, bAdd, w);
-			sc += addFeature(v, "FP23-" + spst0 + SEP + spst1 + SEP + spst1rc, sParseLabel2, weight, bAdd, w);
-			sc += addFeature(v, "FP24-" + spst0 + SEP + spst0rc + SEP + spst1, sParseLabel2, weight, bAdd, w);
-			sc += addFeature(v, "FP25-" + spst0 + SEP + spst1lc + SEP + spst1, sParseLabel2, weight, bAdd, w);
-			sc += addFeature(v, "FP26-" + sfst0 + SEP + spst1 + SEP + spst1rc, sParseLabel2, weight, bAdd, w);
-			sc += addFeature(v, "FP27-" + sfst0 + SEP + spst1 + SEP + spst0lc, sParseLabel2, weight, bAdd, w);
-			sc += addFeature(v, "FP28-" + spst0 + SEP + spst1 + SEP + spst2, sParseLabel2, weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP22-").append(spst0).append(SEP).append(spst1).append(SEP).append(spst1lc), sParseLabel2, weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP23-").append(spst0).append(SEP).append(spst1).append(SEP).append(spst1rc), sParseLabel2, weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP24-").append(spst0).append(SEP).append(spst0rc).append(SEP).append(spst1), sParseLabel2, weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP25-").append(spst0).append(SEP).append(spst1lc).append(SEP).append(spst1), sParseLabel2, weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP26-").append(sfst0).append(SEP).append(spst1).append(SEP).append(spst1rc), sParseLabel2, weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP27-").append(sfst0).append(SEP).append(spst1).append(SEP).append(spst0lc), sParseLabel2, weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP28-").append(spst0).append(SEP).append(spst1).append(SEP).append(spst2), sParseLabel2, weight, bAdd, w);
 	
-			sc += addFeature(v, "FP29-", sParseLabel2, bAdjoin ? weight : 0.0, bAdd, w);
-			sc += addFeature(v, "FP30-" + spst0 + SEP + spst1, sParseLabel2, bAdjoin ? weight : 0.0, bAdd, w);
-			sc += addFeature(v, "FP31-" + sPunct, sParseLabel2, weight, bAdd, w);
-			sc += addFeature(v, "FP32-" + spst0 + SEP + spst1 + SEP + sPunct, sParseLabel2, weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP29-"), sParseLabel2, bAdjoin ? weight : 0.0, bAdd, w);
+			sc += addFeature(v, k.begin("FP30-").append(spst0).append(SEP).append(spst1), sParseLabel2, bAdjoin ? weight : 0.0, bAdd, w);
+			sc += addFeature(v, k.begin("FP31-").append(sPunct), sParseLabel2, weight, bAdd, w);
+			sc += addFeature(v, k.begin("FP32-").append(spst0).append(SEP).append(spst1).append(SEP).append(sPunct), sParseLabel2, weight, bAdd, w);
 		}
 		
 		return sc;
@@ -700,13 +760,15 @@ public class SRParserCharBasedHandler extends SRParserHandler
 	 * This function exactly follows their original implementation for comparison, 
 	 * and should not be modified.
 	 */
-	private Pair<IntFeatVector, Double> getTaggingFeatures(SRParserState s0, SDAction act, List<DelayedFeature> vd, boolean bAdd, WeightVector w, SRParserTransition.SRParserCache cache)
+	private Pair<IntFeatVector, Double> getTaggingFeatures(SRParserState s0, SDAction act, List<DelayedFeature> vd, boolean bAdd, boolean bLog, WeightVector w, SRParserTransition.SRParserCache cache)
 	{
-		IntFeatVector v = bAdd ? new IntFeatVector() : null;
+		IntFeatVector v = bAdd ? new IntFeatVector() : bLog ? getLogVector() : null;
+		FeatureKey k = getFeatureKey();
 		double sc = 0.0;
 		
 		AtomicTaggingFeatures atoms = (AtomicTaggingFeatures)s0.atoms;
 		final int szSent = s0.sent.length();
+		final SentenceAnnotation annot = getAnnotation(s0.sent);
 		
 		int curidx = atoms.curidx;
 		String sfqp1 = atoms.sfqp1;
@@ -725,37 +787,37 @@ public class SRParserCharBasedHandler extends SRParserHandler
 		
 		int ln_sfqp1 = sfqp1.equals(OOR) ? 0 : sfqp1.length();
 		int ln_sfqp2 = sfqp2.equals(OOR) ? 0 : sfqp2.length();
-		String ln_sfqp1s = Integer.toString(Math.min(ln_sfqp1, wordNormLength));
-		String ln_sfqp2s = Integer.toString(Math.min(ln_sfqp2, wordNormLength));
-		String c_sfqp1_b = sfqp1.substring(0, 1);
-		String c_sfqp1_e = ln_sfqp1 > 0 ? sfqp1.substring(ln_sfqp1 - 1, ln_sfqp1) : OOR;
-		String c_sfqp2_e = ln_sfqp2 > 0 ? sfqp2.substring(ln_sfqp2 - 1, ln_sfqp2) : OOR;
+		int ln_sfqp1s = Math.min(ln_sfqp1, wordNormLength);
+		int ln_sfqp2s = Math.min(ln_sfqp2, wordNormLength);
+		char c_sfqp1_b = sfqp1.charAt(0);
+		char c_sfqp1_e = ln_sfqp1 > 0 ? sfqp1.charAt(ln_sfqp1 - 1) : OOR_CHAR;
+		char c_sfqp2_e = ln_sfqp2 > 0 ? sfqp2.charAt(ln_sfqp2 - 1) : OOR_CHAR;
 		
-		String c0 = curidx < szSent ? s0.sent.substring(curidx, curidx + 1) : OOR;
+		char c0 = curidx < szSent ? s0.sent.charAt(curidx) : OOR_CHAR;
 		
 		if (act == SDAction.APPEND)
 		{
 			String sLabel = "";
 			
-			String c1 = s0.curidx - 1 >= 0 ? Character.toString(s0.sent.charAt(s0.curidx - 1)) : OOR;
+			char c1 = s0.curidx - 1 >= 0 ? s0.sent.charAt(s0.curidx - 1) : OOR_CHAR;
 			
 			// character bigrams within the word
-			sc += addFeature(v, "SH07-" + c0 + c1, sLabel, 1.0, bAdd, w);
+			sc += addFeature(v, k.begin("SH07-").append(c0).append(c1), sLabel, 1.0, bAdd, w);
 			// tag on a word containing char
-			sc += addFeature(v, "SH25-" + spqp1 + c0, "", 1.0, bAdd, w); // shared with shift-tag action
+			sc += addFeature(v, k.begin("SH25-").append(spqp1).append(c0), "", 1.0, bAdd, w); // shared with shift-tag action
 			// tag on a word starting with char and containing char
-			sc += addFeature(v, "SH26-" + spqp1 + c0 + c_sfqp1_b, sLabel, 1.0, bAdd, w);
+			sc += addFeature(v, k.begin("SH26-").append(spqp1).append(c0).append(c_sfqp1_b), sLabel, 1.0, bAdd, w);
 			// tag on a word ending with char and containing char
-			sc += addFeature(v, "SH28-" + spqp1 + c0 + SEP + m_dict.getCharType(c_sfqp1_b.charAt(0)), sLabel, 1.0, bAdd, w);
+			sc += addFeature(v, k.begin("SH28-").append(spqp1).append(c0).append(SEP).append(getCharType(annot, curidx > 0 ? curidx - sfqp1.length() : -1, c_sfqp1_b)), sLabel, 1.0, bAdd, w);
 			// tag and character bigrams with in the word
-			sc += addFeature(v, "SH31-" + spqp1 + c0 + c1, sLabel, 1.0, bAdd, w);
+			sc += addFeature(v, k.begin("SH31-").append(spqp1).append(c0).append(c1), sLabel, 1.0, bAdd, w);
 			
 			// additional features to incorporate word-class information (original)
 			if (m_bCharType)
 			{
-				sc += addFeature(v, "SH90-" + (s0.sent.charTypeAt(curidx) == 4 ? "1" : "0"), sLabel, 1.0, bAdd, w);
-				sc += addFeature(v, "SH91-" + s0.sent.charTypeAt(curidx - 1) + SEP + s0.sent.charTypeAt(curidx), sLabel, 1.0, bAdd, w);
-				sc += addFeature(v, "SH92-" + s0.sent.charTypeAt(curidx - 2) + SEP + s0.sent.charTypeAt(curidx - 1) + SEP + s0.sent.charTypeAt(curidx), sLabel, 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH90-").append(s0.sent.charTypeAt(curidx) == 4 ? "1" : "0"), sLabel, 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH91-").append(s0.sent.charTypeAt(curidx - 1)).append(SEP).append(s0.sent.charTypeAt(curidx)), sLabel, 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH92-").append(s0.sent.charTypeAt(curidx - 2)).append(SEP).append(s0.sent.charTypeAt(curidx - 1)).append(SEP).append(s0.sent.charTypeAt(curidx)), sLabel, 1.0, bAdd, w);
 			}
 		}
 		else
@@ -767,10 +829,14 @@ public class SRParserCharBasedHandler extends SRParserHandler
 				String sLabel = "";
 				
 				if (cache != null && !bAdd && cache.wordScore().containsKey(s0))
+				{
 					sc += cache.wordScore().get(s0);
+					if (v != null) v.append(cache.wordFeatures().get(s0));
+				}
 				else
 				{
 					double _sc = 0.0;
+					IntFeatVector vw = v != null && cache != null && !bAdd ? new IntFeatVector(32, false) : v;
 					
 					/*
 					 * Features from external lexicon
@@ -778,81 +844,86 @@ public class SRParserCharBasedHandler extends SRParserHandler
 					
 					if (m_wordlists != null)
 					{
+						int iFlags = getWordlistFlags(annot, curidx, sfqp1);
 						for (int i = 0; i < m_wordlists.length; ++i)
 						{
-							if (m_wordlists[i].contains(sfqp1))
+							if ((iFlags & 1 << i) != 0)
 							{
-								_sc += addFeature(v, "DD00-" + (i + 1) + SEP + ln_sfqp1s, sLabel, 1.0, bAdd, w);
-								_sc += addFeature(v, "DD01-" + (i + 1) + SEP + ln_sfqp1s + SEP + spqp1, sLabel, 1.0, bAdd, w);
+								_sc += addFeature(vw, k.begin("DD00-").append(i + 1).append(SEP).append(ln_sfqp1s), sLabel, 1.0, bAdd, w);
+								_sc += addFeature(vw, k.begin("DD01-").append(i + 1).append(SEP).append(ln_sfqp1s).append(SEP).append(spqp1), sLabel, 1.0, bAdd, w);
 							}
 							else
 							{
-								_sc += addFeature(v, "DN00-" + (i + 1) + SEP + ln_sfqp1s, sLabel, 1.0, bAdd, w);
-								_sc += addFeature(v, "DN01-" + (i + 1) + SEP + ln_sfqp1s + SEP + spqp1, sLabel, 1.0, bAdd, w);
+								_sc += addFeature(vw, k.begin("DN00-").append(i + 1).append(SEP).append(ln_sfqp1s), sLabel, 1.0, bAdd, w);
+								_sc += addFeature(vw, k.begin("DN01-").append(i + 1).append(SEP).append(ln_sfqp1s).append(SEP).append(spqp1), sLabel, 1.0, bAdd, w);
 							}
 						}
 					}
 					
 					// word unigram
-					_sc += addFeature(v, "SH01-" + sfqp1, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH01-").append(sfqp1), sLabel, 1.0, bAdd, w);
 					// word bigram
-					_sc += addFeature(v, "SH02-" + sfqp2 + SEP + sfqp1, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH02-").append(sfqp2).append(SEP).append(sfqp1), sLabel, 1.0, bAdd, w);
 					// single-character word
 					if (ln_sfqp1 == 1)
-						_sc += addFeature(v, "SH03-" + sfqp1, sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH03-").append(sfqp1), sLabel, 1.0, bAdd, w);
 					// lemma and length with starting character
-					_sc += addFeature(v, "SH04-" + c_sfqp1_b + ln_sfqp1s, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH04-").append(c_sfqp1_b).append(ln_sfqp1s), sLabel, 1.0, bAdd, w);
 					// lemma and length with ending character
-					_sc += addFeature(v, "SH05-" + c_sfqp1_e + ln_sfqp1s, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH05-").append(c_sfqp1_e).append(ln_sfqp1s), sLabel, 1.0, bAdd, w);
 					// space-separater characters
-					_sc += addFeature(v, "SH06-" + c_sfqp1_e + c0, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH06-").append(c_sfqp1_e).append(c0), sLabel, 1.0, bAdd, w);
 					// the first and last character of the word
-					_sc += addFeature(v, "SH08-" + c_sfqp1_b + c_sfqp1_e, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH08-").append(c_sfqp1_b).append(c_sfqp1_e), sLabel, 1.0, bAdd, w);
 					// word and next character
-					_sc += addFeature(v, "SH09-" + sfqp1 + c0, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH09-").append(sfqp1).append(c0), sLabel, 1.0, bAdd, w);
 					// word and previous character
-					_sc += addFeature(v, "SH10-" + c_sfqp2_e + sfqp1, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH10-").append(c_sfqp2_e).append(sfqp1), sLabel, 1.0, bAdd, w);
 					// the starting characters of two consecutive words
-					_sc += addFeature(v, "SH11-" + c_sfqp1_b + c0, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH11-").append(c_sfqp1_b).append(c0), sLabel, 1.0, bAdd, w);
 					// the ending characters of two consecutive words
-					_sc += addFeature(v, "SH12-" + c_sfqp2_e + c_sfqp1_e, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH12-").append(c_sfqp2_e).append(c_sfqp1_e), sLabel, 1.0, bAdd, w);
 					// word length with previous word
-					_sc += addFeature(v, "SH13-" + sfqp2 + ln_sfqp1s, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH13-").append(sfqp2).append(ln_sfqp1s), sLabel, 1.0, bAdd, w);
 					// word length with next word
-					_sc += addFeature(v, "SH14-" + ln_sfqp2s + sfqp1, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH14-").append(ln_sfqp2s).append(sfqp1), sLabel, 1.0, bAdd, w);
 					
 					// tag and word
-					_sc += addFeature(v, "SH15-" + sfqp1 + SEP + spqp1, sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH15-").append(sfqp1).append(SEP).append(spqp1), sLabel, 1.0, bAdd, w);
 					
 					if (!m_bLemmaFilter || ln_sfqp1 < 3)
 					{
-						_sc += addFeature(v, "SH19-" + spqp2 + SEP + sfqp1, sLabel, 1.0, bAdd, w);
-						_sc += addFeature(v, "SH20-" + sfqp1 + SEP + spqp1 + c_sfqp2_e, sLabel, 1.0, bAdd, w);
-						_sc += addFeature(v, "SH21-" + sfqp1 + SEP + spqp1 + c0, sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH19-").append(spqp2).append(SEP).append(sfqp1), sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH20-").append(sfqp1).append(SEP).append(spqp1).append(c_sfqp2_e), sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH21-").append(sfqp1).append(SEP).append(spqp1).append(c0), sLabel, 1.0, bAdd, w);
 					}
 					if (ln_sfqp1 == 1)
-						_sc += addFeature(v, "SH22-" + c_sfqp2_e + sfqp1 + c0 + spqp1, sLabel, 1.0, bAdd, w);
-					_sc += addFeature(v, "SH24-" + spqp1 + c_sfqp1_e, sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH22-").append(c_sfqp2_e).append(sfqp1).append(c0).append(spqp1), sLabel, 1.0, bAdd, w);
+					_sc += addFeature(vw, k.begin("SH24-").append(spqp1).append(c_sfqp1_e), sLabel, 1.0, bAdd, w);
 					
 					for (int i = 0; i < sfqp1.length() - 1; ++i)
-						_sc += addFeature(v, "SH27-" + spqp1 + sfqp1.charAt(i) + c_sfqp1_e, sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH27-").append(spqp1).append(sfqp1.charAt(i)).append(c_sfqp1_e), sLabel, 1.0, bAdd, w);
 
-					String sCat = m_dict.getCharType(c_sfqp1_e.charAt(0));
+					String sCat = getCharType(annot, curidx - 1, c_sfqp1_e);
 					for (int i = 0; i < sfqp1.length() - 1; ++i)
-						_sc += addFeature(v, "SH29-" + spqp1 + sfqp1.charAt(i) + SEP + sCat, sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH29-").append(spqp1).append(sfqp1.charAt(i)).append(SEP).append(sCat), sLabel, 1.0, bAdd, w);
 
 					if (m_bCharType)
 					{
-						_sc += addFeature(v, "SH90-" + (s0.sent.charTypeAt(curidx) == 4 ? "1" : "0"), sLabel, 1.0, bAdd, w);
-						_sc += addFeature(v, "SH91-" + s0.sent.charTypeAt(curidx - 1) + SEP + s0.sent.charTypeAt(curidx), sLabel, 1.0, bAdd, w);
-						_sc += addFeature(v, "SH92-" + s0.sent.charTypeAt(curidx - 2) + SEP + s0.sent.charTypeAt(curidx - 1) + SEP + s0.sent.charTypeAt(curidx), sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH90-").append(s0.sent.charTypeAt(curidx) == 4 ? "1" : "0"), sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH91-").append(s0.sent.charTypeAt(curidx - 1)).append(SEP).append(s0.sent.charTypeAt(curidx)), sLabel, 1.0, bAdd, w);
+						_sc += addFeature(vw, k.begin("SH92-").append(s0.sent.charTypeAt(curidx - 2)).append(SEP).append(s0.sent.charTypeAt(curidx - 1)).append(SEP).append(s0.sent.charTypeAt(curidx)), sLabel, 1.0, bAdd, w);
 					}
 					
 					/* Evaluate partial score and put it to cache */
 					
 					sc += _sc;
 					if (cache != null && !bAdd)
+					{
 						cache.wordScore().put(s0, _sc);
+						if (vw != v) cache.wordFeatures().put(s0, vw);
+					}
+					if (vw != v) v.append(vw);
 				}
 			}
 			
@@ -861,13 +932,13 @@ public class SRParserCharBasedHandler extends SRParserHandler
 				String sLabel = "";
 				String spqf1 = act.getTag();
 				
-				sc += addFeature(v, "SH16-" + spqp1 + SEP + spqf1, sLabel, 1.0, bAdd, w);
-				sc += addFeature(v, "SH17-" + spqp2 + SEP + spqp1 + SEP + spqf1, sLabel, 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH16-").append(spqp1).append(SEP).append(spqf1), sLabel, 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH17-").append(spqp2).append(SEP).append(spqp1).append(SEP).append(spqf1), sLabel, 1.0, bAdd, w);
 				if (!m_bLemmaFilter || ln_sfqp1 < 3)
-					sc += addFeature(v, "SH18-" + sfqp1 + SEP + spqf1, sLabel, 1.0, bAdd, w);
-				sc += addFeature(v, "SH23-" + spqf1 + c0, sLabel, 1.0, bAdd, w);
-				sc += addFeature(v, "SH25-" + spqf1 + c0, "", 1.0, bAdd, w); // shared with append action
-				sc += addFeature(v, "SH30-" + spqf1 + c0 + SEP + spqp1 + c_sfqp1_e, sLabel, 1.0, bAdd, w);
+					sc += addFeature(v, k.begin("SH18-").append(sfqp1).append(SEP).append(spqf1), sLabel, 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH23-").append(spqf1).append(c0), sLabel, 1.0, bAdd, w);
+				sc += addFeature(v, k.begin("SH25-").append(spqf1).append(c0), "", 1.0, bAdd, w); // shared with append action
+				sc += addFeature(v, k.begin("SH30-").append(spqf1).append(c0).append(SEP).append(spqp1).append(c_sfqp1_e), sLabel, 1.0, bAdd, w);
 			}
 		}
 
@@ -36,13 +36,16 @@ import java.util.Set;
 
 import corbit.commons.Vocab;
 import corbit.commons.dict.TagDictionary;
+import corbit.commons.ml.FeatureKey;
 import corbit.commons.ml.IntFeatVector;
 import corbit.commons.ml.WeightVector;
 import corbit.commons.transition.SDAction;
 import corbit.commons.util.Pair;
 import corbit.commons.util.Statics;
+import corbit.commons.util.SymbolTable;
 import corbit.commons.word.DepChunk;
 import corbit.commons.word.DepChunkTree;
+import corbit.commons.word.UnsegmentedSentence;
 import corbit.segdep.SRParserState;
 import corbit.segdep.handler.DelayedFeature.DelayedFeatureType;
 import corbit.segdep.transition.SRParserTransition;
@@ -53,9 +56,13 @@ public abstract class SRParserHandler
 	protected Set<String> m_flist;
 	protected TagDictionary m_dict;
 	protected Vocab[] m_wordlists;
+	protected final SymbolTable m_symbols = new SymbolTable(SYMBOL_TABLE_SIZE);
+
+	private static final int SYMBOL_TABLE_SIZE = 1 << 20;
 
 	protected static final String SEP = "-";
 	protected static final String OOR = "$";
+	protected static final char OOR_CHAR = '$';
 	protected static final String NA = "NA";
 
 	public Vocab getVocabulary()
@@ -63,6 +70,27 @@ public abstract class SRParserHandler
 		return m_fvocab;
 	}
 
+	/**
+	 * attaches the current generation of the symbols to the sentence, so that
+	 * the atomic features of its states are interned in the same generation
+	 * until the sentence is decoded and its annotations are dropped
+	 */
+	public void beginSentence(UnsegmentedSentence sent)
+	{
+		sent.setAnnotation(m_symbols, m_symbols.acquire());
+	}
+
+	protected SymbolTable.Generation getSymbols(UnsegmentedSentence sent)
+	{
+		SymbolTable.Generation g = (SymbolTable.Generation)sent.getAnnotation(m_symbols);
+		if (g == null)
+		{
+			g = m_symbols.acquire();
+			sent.setAnnotation(m_symbols, g);
+		}
+		return g;
+	}
+
 	public void setFeatureList(Set<String> v)
 	{
 		m_flist = v;
@@ -78,6 +106,24 @@ public abstract class SRParserHandler
 		m_wordlists = v;
 	}
 
+	private final ThreadLocal<FeatureKey> m_key = new ThreadLocal<FeatureKey>()
+	{
+		@Override
+		protected FeatureKey initialValue()
+		{
+			return new FeatureKey();
+		}
+	};
+
+	private final ThreadLocal<IntFeatVector> m_logVector = new ThreadLocal<IntFeatVector>()
+	{
+		@Override
+		protected IntFeatVector initialValue()
+		{
+			return new IntFeatVector(256, false);
+		}
+	};
+
 	public SRParserHandler(Vocab vocab)
 	{
 		m_fvocab = vocab;
@@ -100,7 +146,14 @@ public abstract class SRParserHandler
 
 	public abstract AtomicFeatures getAtomicFeatures(SRParserState s);
 
-	public abstract Pair<IntFeatVector,Double> getFeatures(SRParserState s, SDAction act, List<DelayedFeature> vd, boolean bAdd, WeightVector w, SRParserTransition.SRParserCache cache);
+	/**
+	 * @param bAdd
+	 *            add the features to the vocabulary and return them in a new vector
+	 * @param bLog
+	 *            return the features in the vector of getLogVector() for logging,
+	 *            without adding unknown features to the vocabulary
+	 */
+	public abstract Pair<IntFeatVector,Double> getFeatures(SRParserState s, SDAction act, List<DelayedFeature> vd, boolean bAdd, boolean bLog, WeightVector w, SRParserTransition.SRParserCache cache);
 
 	/*
 	 *  utility functions
@@ -208,19 +261,22 @@ public abstract class SRParserHandler
 		if (bAdd)
 		{
 			int idx = m_fvocab.getIndex(sFeature);
-			if (v.containsKey(idx))
-				v.put(idx, v.get(idx) + dValue);
-			else
-				v.put(idx, dValue);
+			v.add(idx, dValue);
 			return w.getWithCheck(idx) * dValue;
 		}
 		else
 		{
 			Integer idx = m_fvocab.getBoxed(sFeature);
 			if (idx != null)
-				return w.get(idx) * dValue;
+			{
+				if (v != null) v.add(idx, dValue);
+				return w.getWithCheck(idx) * dValue;
+			}
 			else
+			{
+				if (v != null) v.addPending(sFeature, dValue);
 				return 0.0;
+			}
 		}
 	}
 
@@ -229,6 +285,51 @@ public abstract class SRParserHandler
 		return addFeature(v, sFeature + SEP + sLabel, dValue, bAdd, w);
 	}
 
+	/**
+	 * The key is materialized into a string only when the feature is to be added
+	 * or logged as unknown; otherwise it is looked up by its hash without allocation.
+	 */
+	protected double addFeature(IntFeatVector v, FeatureKey k, double dValue, boolean bAdd, WeightVector w)
+	{
+		if (bAdd)
+			return addFeature(v, k.toString(), dValue, bAdd, w);
+		else
+		{
+			int idx = m_fvocab.lookup(k);
+			if (v != null)
+			{
+				if (idx >= 0) v.add(idx, dValue);
+				else v.addPending(k, dValue);
+			}
+			return idx >= 0 ? w.getWithCheck(idx) * dValue : 0.0;
+		}
+	}
+
+	protected double addFeature(IntFeatVector v, FeatureKey k, String sLabel, double dValue, boolean bAdd, WeightVector w)
+	{
+		return addFeature(v, k.append(SEP).append(sLabel), dValue, bAdd, w);
+	}
+
+	/**
+	 * returns the feature key builder for the current thread
+	 */
+	protected final FeatureKey getFeatureKey()
+	{
+		return m_key.get();
+	}
+
+	/**
+	 * returns the cleared vector of the current thread that collects the features
+	 * to be logged; it is overwritten by the next call on the same thread, so the
+	 * caller must copy it into a FeatureLog before extracting features again
+	 */
+	protected final IntFeatVector getLogVector()
+	{
+		IntFeatVector v = m_logVector.get();
+		v.clear();
+		return v;
+	}
+
 	protected static int[] getValencies(DepChunkTree w)
 	{
 		int[] vals = new int[2];
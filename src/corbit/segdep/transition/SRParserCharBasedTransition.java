@@ -31,20 +31,22 @@
 package corbit.segdep.transition;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import corbit.commons.dict.TagDictionary;
+import corbit.commons.dict.TagTrie;
 import corbit.commons.io.Console;
+import corbit.commons.ml.FeatureLog;
 import corbit.commons.ml.IntFeatVector;
 import corbit.commons.ml.WeightVector;
 import corbit.commons.transition.SDAction;
 import corbit.commons.util.GlobalConf;
 import corbit.commons.util.Pair;
+import corbit.commons.util.PersistentSeq;
 import corbit.commons.word.ArcLabel;
 import corbit.commons.word.DepChunkTree;
 import corbit.commons.word.IndexWord;
@@ -79,22 +81,33 @@ public class SRParserCharBasedTransition extends SRParserTransition
 	}
 
 	@Override
-	protected List<SRParserState> moveNext(SRParserState s, SDAction act, boolean isGoldAct, boolean bAdd, SRParserCache cache)
+	void scoreNext(SRParserState s, SDAction act, boolean isGoldAct, boolean bAdd, SRParserCache cache, List<Candidate> l)
 	{
-		List<SRParserState> l = new ArrayList<SRParserState>();
 		if (act.isShiftTagAction())
-			l.add(shiftWithPos(s, act.getTag(), isGoldAct, bAdd, cache));
+			shiftWithPos(s, act.getTag(), isGoldAct, bAdd, cache, l);
 		else if (act == SDAction.APPEND)
-			l.add(append(s, isGoldAct, bAdd, cache));
+			append(s, isGoldAct, bAdd, cache, l);
 		else if (act == SDAction.REDUCE_LEFT)
-			l.addAll(reduce(s, false, null, isGoldAct, bAdd, cache));
+			reduce(s, false, null, isGoldAct, bAdd, cache, l);
 		else if (act == SDAction.REDUCE_RIGHT)
-			l.addAll(reduce(s, true, null, isGoldAct, bAdd, cache));
+			reduce(s, true, null, isGoldAct, bAdd, cache, l);
 		else if (act == SDAction.END_STATE)
-			l.add(s);
+			l.add(new Candidate(s, act, null, s.scprf, s.scins, s.curstep, s.gold, 0.0d, null, s.fvdelay));
 		else
 			throw new UnsupportedOperationException(act.toString());
-		return l;
+	}
+
+	@Override
+	public SRParserState build(Candidate c)
+	{
+		if (c.act.isShiftTagAction())
+			return buildShift(c);
+		else if (c.act == SDAction.APPEND)
+			return buildAppend(c);
+		else if (c.act == SDAction.END_STATE)
+			return c.state;
+		else
+			return buildReduce(c);
 	}
 
 	protected SDAction getGoldAction(SRParserState s, ParsedSentence gsent, boolean bCheckGoldState)
@@ -144,6 +157,23 @@ public class SRParserCharBasedTransition extends SRParserTransition
 			return SDAction.APPEND;
 	}
 
+	/**
+	 * returns the tag candidates of the words starting at each position; they
+	 * are looked up once per sentence, and kept in the sentence until it is
+	 * decoded or the dictionary is changed
+	 */
+	private TagTrie.CandidateTable getCandidateTable(UnsegmentedSentence sent)
+	{
+		TagTrie trie = m_dict.getTrie();
+		TagTrie.CandidateTable t = (TagTrie.CandidateTable)sent.getAnnotation(this);
+		if (t == null || t.getTrie() != trie)
+		{
+			t = trie.getCandidateTable(sent.toString());
+			sent.setAnnotation(this, t);
+		}
+		return t;
+	}
+
 	GlobalConf conf = GlobalConf.getInstance();
 	
 	
@@ -185,15 +215,14 @@ public class SRParserCharBasedTransition extends SRParserTransition
 			Decision ds = s.decision != null && s.curidx > 0 ? s.decision[s.curidx - 1] : Decision.NA;
 
 			if (ds != Decision.SEGMENT && !ws0.isRoot() && ws0c_size == 0)
-				if (!m_bValidateTag || m_dict.validateTagForSequence(sent.substring(s.idbgn, sent_len), ws0.tag, s.idend - s.idbgn + 1))
+				if (!m_bValidateTag || getCandidateTable(sent).validateTag(s.idbgn, ws0.tag, s.idend - s.idbgn + 1))
 					l.add(SDAction.APPEND);
 			if (ds != Decision.IN_WORD && (!m_bGoldArc || goldAct.isShiftTagAction() || goldAct == SDAction.APPEND || goldAct == SDAction.NOT_AVAILABLE))
 			{
 				if (ws0c_size > 0 || ws0.isRoot() ||
 						(!m_bValidateTag || (bValidated = true) && (bValid = m_dict.validateTagForChunk(ws0.form, ws0.tag))))
 				{
-					String seq = sent.substring(s.curidx, sent_len);
-					for (String spqf1: m_dict.getTagCandidatesForSequence(seq))
+					for (String spqf1: getCandidateTable(sent).getTagCandidates(s.curidx))
 						l.add(SDAction.getShiftTagAction(spqf1));
 				}
 			}
@@ -221,121 +250,143 @@ public class SRParserCharBasedTransition extends SRParserTransition
 		return l;
 	}
 
-	private List<SRParserState> reduce(SRParserState s, boolean bRight, String sLabel, boolean bGoldAct, boolean bAdd, SRParserCache cache)
+	private void reduce(SRParserState s, boolean bRight, String sLabel, boolean bGoldAct, boolean bAdd, SRParserCache cache, List<Candidate> l)
 	{
-		List<SRParserState> l = new ArrayList<SRParserState>();
-		if (!s.pstck[0].isRoot() && s.pstck[0].tag == null) return l;
+		if (!s.pstck[0].isRoot() && s.pstck[0].tag == null) return;
 
 		SDAction act = sLabel != null ?
 				SDAction.getLabeledReduceAction(bRight, sLabel) :
 				bRight ? SDAction.REDUCE_RIGHT : SDAction.REDUCE_LEFT;
 		List<DelayedFeature> _fvdelay = s.fvdelay != null ? new LinkedList<DelayedFeature>(s.fvdelay) : null;
-		Pair<IntFeatVector, Double> vsc = m_fhandler.getFeatures(s, act, _fvdelay, bAdd, m_weight, cache);
+		final boolean bLog = bAdd || m_bLogFeatures;
+		Pair<IntFeatVector, Double> vsc = m_fhandler.getFeatures(s, act, _fvdelay, bAdd, bLog, m_weight, cache);
 		double sr = vsc.second;
 
-		assert (vsc.first == null || m_weight.score(vsc.first) == vsc.second);
+		assert (!bAdd || m_weight.score(vsc.first) == vsc.second);
+
+		final FeatureLog fvl = bLog ? FeatureLog.of(vsc.first) : null;
+		int _curstep = m_bAlignArcChar ? s.curstep + 1 : s.curstep;
 		
 		for (SRParserState p : s.preds)
 		{
 			if (p.pstck[0].isRoot() && (!bRight || s.curidx < s.sent.length())) continue;
 
-			Pair<List<IntFeatVector>, Double> t = s.trans.get(p);
-
-			double scdlt = t.second + sr;
-
-			List<IntFeatVector> _fvins = null;
-			if (bAdd)
-			{
-				// This linked-list structure might seem odd, but quite efficient in practice,
-				// avoiding frequent addition of two vectors.
-				_fvins = new LinkedList<IntFeatVector>(s.fvins);
-				_fvins.addAll(p.fvins);
-				_fvins.addAll(t.first);
-				_fvins.add(vsc.first);
-			}
+			double scdlt = s.trans.get(p).second + sr;
 			double _scprf = p.scprf + s.scins + scdlt;
 			double _scins = p.scins + s.scins + scdlt;
 
-			DepChunkTree[] _pstck = p.cloneStack();
-			DepChunkTree h = new DepChunkTree(bRight ? p.pstck[0] : s.pstck[0]);
-			DepChunkTree c = new DepChunkTree(bRight ? s.pstck[0] : p.pstck[0]);
-			_pstck[0] = h;
-
-			h.children.add(c);
-			c.headBegin = h.begin;
-			c.headEnd = h.end;
-			c.arcLabel = sLabel != null ? ArcLabel.getLabel(sLabel) : null;
-
-			List<SDAction> _lstact = new LinkedList<SDAction>(p.lstact);
-			_lstact.addAll(s.lstact);
-			_lstact.add(act);
-
-			assert (c.form.length() == c.end - c.begin);
-			int _curstep = m_bAlignArcChar ? s.curstep + 1 : s.curstep;
-			l.add(m_generator.generate(s.sent, _pstck, s.curidx, _curstep, Math.max(p.idbgn, 0), s.idend,
-					_scprf, _scins, _fvins, _fvdelay, p.preds, p.pred0, p.trans, p.decision,
-					_lstact, s.gold && p.gold && bGoldAct, s.nstates));
+			l.add(new Candidate(s, act, p, _scprf, _scins, _curstep, s.gold && p.gold && bGoldAct, sr, fvl, _fvdelay));
 		}
-		return l;
 	}
 
-	@SuppressWarnings("serial")
-	private SRParserState append(final SRParserState s, boolean bGoldAct, boolean bAdd, SRParserCache cache)
+	private SRParserState buildReduce(Candidate cd)
+	{
+		final SRParserState s = cd.state;
+		final SRParserState p = cd.pred;
+		final SDAction act = cd.act;
+		final boolean bRight = act == SDAction.REDUCE_RIGHT || act.isLabeledReduceRight();
+		final String sLabel = act.getTag();
+		Pair<FeatureLog, Double> t = s.trans.get(p);
+
+		// the logs are shared rather than copied, avoiding frequent addition of two vectors
+		FeatureLog _fvins = cd.fvl != null ? FeatureLog.join(s.fvins, p.fvins, t.first, cd.fvl) : null;
+
+		// the children of the dependent are never modified, and thus shared
+		DepChunkTree th = bRight ? p.pstck[0] : s.pstck[0];
+		DepChunkTree tc = bRight ? s.pstck[0] : p.pstck[0];
+		DepChunkTree c = new DepChunkTree(tc, tc.children);
+		List<DepChunkTree> _children = new ArrayList<DepChunkTree>(th.children.size() + 1);
+		_children.addAll(th.children);
+		_children.add(c);
+		DepChunkTree h = new DepChunkTree(th, _children);
+		DepChunkTree[] _pstck = p.replaceStackTop(h);
+
+		c.headBegin = h.begin;
+		c.headEnd = h.end;
+		c.arcLabel = sLabel != null ? ArcLabel.getLabel(sLabel) : null;
+
+		PersistentSeq<SDAction> _lstact = PersistentSeq.concat(p.lstact, s.lstact, act);
+
+		assert (c.form.length() == c.end - c.begin);
+		return m_generator.generate(s.sent, _pstck, s.curidx, cd.curstep, Math.max(p.idbgn, 0), s.idend,
+				cd.scprf, cd.scins, _fvins, cd.fvdelay, p.preds, p.pred0, p.trans, p.decision,
+				_lstact, cd.gold, s.nstates);
+	}
+
+	private void append(final SRParserState s, boolean bGoldAct, boolean bAdd, SRParserCache cache, List<Candidate> l)
 	{
 		assert (!isEnd(s));
 
 		List<DelayedFeature> _fvdelay = s.fvdelay != null ? new LinkedList<DelayedFeature>(s.fvdelay) : null;
-		final Pair<IntFeatVector, Double> vsc = m_fhandler.getFeatures(s, SDAction.APPEND, _fvdelay, bAdd, m_weight, cache);
+		final boolean bLog = bAdd || m_bLogFeatures;
+		final Pair<IntFeatVector, Double> vsc = m_fhandler.getFeatures(s, SDAction.APPEND, _fvdelay, bAdd, bLog, m_weight, cache);
 		
-		assert (vsc.first == null || m_weight.score(vsc.first) == vsc.second);
+		assert (!bAdd || m_weight.score(vsc.first) == vsc.second);
 		
 		double scdlt = vsc.second;
 		double _scprf = s.scprf + scdlt;
 		double _scins = s.scins + scdlt;
+		int _curstep = m_bAlignArcChar ? s.curstep + 2 : s.curstep + 1;
 
-		DepChunkTree[] _pstck = s.cloneStack();
-		DepChunkTree dt = _pstck[0];
-		_pstck[0] = new DepChunkTree(dt.sent, dt.begin, dt.end + 1, dt.tag, dt.headBegin, dt.headEnd, dt.arcLabel);
-		
-		List<IntFeatVector> _fvins = bAdd ? new LinkedList<IntFeatVector>(s.fvins) {{ add(vsc.first); }}: null;
-		List<SDAction> _lstact = new LinkedList<SDAction>(s.lstact) {{ add(SDAction.APPEND); }};
+		// the log vector is reused by the handler, and thus copied here
+		final FeatureLog fvl = bLog ? FeatureLog.of(vsc.first) : null;
+
+		// the delayed features of the successor are those of s
+		l.add(new Candidate(s, SDAction.APPEND, null, _scprf, _scins, _curstep, s.gold && bGoldAct,
+				scdlt, fvl, s.fvdelay));
+	}
+
+	private SRParserState buildAppend(Candidate cd)
+	{
+		final SRParserState s = cd.state;
+		DepChunkTree dt = s.pstck[0];
+		DepChunkTree[] _pstck = s.replaceStackTop(
+				new DepChunkTree(dt.sent, dt.begin, dt.end + 1, dt.tag, dt.headBegin, dt.headEnd, dt.arcLabel));
 		
-		int _curstep = m_bAlignArcChar ? s.curstep + 2 : s.curstep + 1;
+		FeatureLog _fvins = cd.fvl != null ? FeatureLog.join(cd.fvl, s.fvins) : null;
+		PersistentSeq<SDAction> _lstact = s.lstact.append(SDAction.APPEND);
 		
-		return m_generator.generate(s.sent, _pstck, s.curidx + 1, _curstep, dt.begin, dt.end + 1,
-				_scprf, _scins, _fvins, s.fvdelay, s.preds, s.pred0,
-				s.trans, s.decision, _lstact, s.gold && bGoldAct, s.nstates);
+		return m_generator.generate(s.sent, _pstck, s.curidx + 1, cd.curstep, dt.begin, dt.end + 1,
+				cd.scprf, cd.scins, _fvins, cd.fvdelay, s.preds, s.pred0,
+				s.trans, s.decision, _lstact, cd.gold, s.nstates);
 	}
 	
-	@SuppressWarnings("serial")
-	private SRParserState shiftWithPos(final SRParserState s, String sPos, boolean bGoldAct, boolean bAdd, SRParserCache cache)
+	private void shiftWithPos(final SRParserState s, String sPos, boolean bGoldAct, boolean bAdd, SRParserCache cache, List<Candidate> l)
 	{
 		assert (!isEnd(s));
 		
 		final SDAction act = SDAction.getShiftTagAction(sPos);
 		List<DelayedFeature> _fvdelay = s.fvdelay != null ? new LinkedList<DelayedFeature>(s.fvdelay) : null;
-		final Pair<IntFeatVector, Double> vsc = m_fhandler.getFeatures(s, act, _fvdelay, bAdd, m_weight, cache);
-		final List<IntFeatVector> _vc = bAdd ? new LinkedList<IntFeatVector>() {{ add(vsc.first); }} : null;
+		final boolean bLog = bAdd || m_bLogFeatures;
+		final Pair<IntFeatVector, Double> vsc = m_fhandler.getFeatures(s, act, _fvdelay, bAdd, bLog, m_weight, cache);
 		
-		assert (vsc.first == null || m_weight.score(vsc.first) == vsc.second);
+		assert (!bAdd || m_weight.score(vsc.first) == vsc.second);
 		
 		final double scdlt = vsc.second;
 		double _scprf = s.scprf + scdlt;
 		double _scins = 0.0d;
+		final FeatureLog _vc = bLog ? FeatureLog.of(vsc.first) : null;
+
+		l.add(new Candidate(s, act, null, _scprf, _scins, s.curstep + 1, s.gold && bGoldAct,
+				scdlt, _vc, _fvdelay));
+	}
+
+	private SRParserState buildShift(Candidate cd)
+	{
+		final SRParserState s = cd.state;
+		final SDAction act = cd.act;
+		final FeatureLog _vc = cd.fvl;
 		
-		DepChunkTree[] _pstck = s.pushStack(new DepChunkTree(s.sent, s.curidx, s.curidx + 1, sPos, -2, -2, null));
-		Set<SRParserState> _preds = new HashSet<SRParserState>() {{ add(s); }};
-		Map<SRParserState, Pair<List<IntFeatVector>, Double>> _trans =
-			new LinkedHashMap<SRParserState, Pair<List<IntFeatVector>, Double>>()
-			{{ put(s, new Pair<List<IntFeatVector>, Double>(_vc, scdlt)); }};
-		List<IntFeatVector> _fvins = bAdd ? new LinkedList<IntFeatVector>() {{ add (vsc.first); }}: null;
-		List<SDAction> _lstact = new LinkedList<SDAction>() {{ add(act); }};
-
-		int _curstep = s.curstep + 1;
-		
-		return m_generator.generate(s.sent, _pstck, s.curidx + 1, _curstep, s.curidx, s.curidx + 1,
-				_scprf, _scins, _fvins, _fvdelay, _preds, s,
-				_trans, s.decision, _lstact, s.gold && bGoldAct, s.nstates);
+		DepChunkTree[] _pstck = s.pushStack(new DepChunkTree(s.sent, s.curidx, s.curidx + 1, act.getTag(), -2, -2, null));
+		Set<SRParserState> _preds = Collections.singleton(s);
+		Map<SRParserState, Pair<FeatureLog, Double>> _trans =
+			Collections.singletonMap(s, new Pair<FeatureLog, Double>(_vc, cd.scact));
+		FeatureLog _fvins = _vc;
+		PersistentSeq<SDAction> _lstact = PersistentSeq.of(act);
+
+		return m_generator.generate(s.sent, _pstck, s.curidx + 1, cd.curstep, s.curidx, s.curidx + 1,
+				cd.scprf, cd.scins, _fvins, cd.fvdelay, _preds, s,
+				_trans, s.decision, _lstact, cd.gold, s.nstates);
 	}
 
 }
@@ -35,7 +35,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import corbit.commons.Vocab;
 import corbit.commons.dict.TagDictionary;
+import corbit.commons.ml.FeatureLog;
 import corbit.commons.ml.IntFeatVector;
 import corbit.commons.ml.WeightVector;
 import corbit.commons.transition.SDAction;
@@ -45,6 +47,7 @@ import corbit.commons.word.ParsedSentence;
 import corbit.segdep.SRParserState;
 import corbit.segdep.SRParserStateGenerator;
 import corbit.segdep.SRParserStats;
+import corbit.segdep.handler.DelayedFeature;
 import corbit.segdep.handler.SRParserHandler;
 
 public abstract class SRParserTransition
@@ -57,8 +60,9 @@ public abstract class SRParserTransition
 		final boolean bParse;
 		final boolean bCache;
 		final boolean bValidateTag;
+		final boolean bLogFeatures;
 
-		public SRParserTransitionParameter(boolean bGoldSeg, boolean bGoldTag, boolean bGoldArc, boolean bParse, boolean bCache, boolean bValidateTag)
+		public SRParserTransitionParameter(boolean bGoldSeg, boolean bGoldTag, boolean bGoldArc, boolean bParse, boolean bCache, boolean bValidateTag, boolean bLogFeatures)
 		{
 			this.bGoldSeg = bGoldSeg;
 			this.bGoldTag = bGoldTag;
@@ -66,6 +70,7 @@ public abstract class SRParserTransition
 			this.bParse = bParse;
 			this.bCache = bCache;
 			this.bValidateTag = bValidateTag;
+			this.bLogFeatures = bLogFeatures;
 		}
 	}
 
@@ -80,6 +85,8 @@ public abstract class SRParserTransition
 	protected final boolean m_bParse;
 	protected final boolean m_bUseCache;
 	protected final boolean m_bValidateTag;
+	/** whether to log the features of each state for getPrefixFeatures() */
+	protected final boolean m_bLogFeatures;
 	protected final SRParserStats m_stats;
 
 	public static enum Decision {
@@ -88,6 +95,47 @@ public abstract class SRParserTransition
 
 	protected static final int numMaxWordLength = 32;
 
+	/**
+	 * A successor of a state that is scored but not yet built, so that only
+	 * the successors entering the beam are built with build().
+	 */
+	public static final class Candidate
+	{
+		/** the state expanded */
+		public final SRParserState state;
+		public final SDAction act;
+		/** the predictor state reduced with, or null for the other actions */
+		final SRParserState pred;
+
+		/** prefix and inside scores of the successor */
+		public final double scprf;
+		public final double scins;
+		/** step of the successor */
+		public final int curstep;
+		/** whether the successor is on the gold derivation */
+		public final boolean gold;
+
+		/* the score and the logged features of the action, shared by the successors of a reduce action */
+		final double scact;
+		final FeatureLog fvl;
+		final List<DelayedFeature> fvdelay;
+
+		Candidate(SRParserState state, SDAction act, SRParserState pred, double scprf, double scins, int curstep, boolean gold,
+				double scact, FeatureLog fvl, List<DelayedFeature> fvdelay)
+		{
+			this.state = state;
+			this.act = act;
+			this.pred = pred;
+			this.scprf = scprf;
+			this.scins = scins;
+			this.curstep = curstep;
+			this.gold = gold;
+			this.scact = scact;
+			this.fvl = fvl;
+			this.fvdelay = fvdelay;
+		}
+	}
+
 	protected SRParserTransition(
 			SRParserStateGenerator sg,
 			SRParserHandler fh,
@@ -108,6 +156,7 @@ public abstract class SRParserTransition
 		m_bParse = params.bParse;
 		m_bUseCache = params.bCache;
 		m_bValidateTag = params.bValidateTag;
+		m_bLogFeatures = params.bLogFeatures;
 
 		assert (!m_bGoldTag || m_bGoldSeg);
 	}
@@ -116,13 +165,22 @@ public abstract class SRParserTransition
 
 	protected abstract SDAction getGoldAction(SRParserState s, ParsedSentence gsent, boolean bGoldStateCHeck);
 
-	abstract List<SRParserState> moveNext(SRParserState s, SDAction act, boolean isGoldAct, boolean bAdd, SRParserCache cache);
+	/**
+	 * scores the successors of s by act, and adds them to l
+	 */
+	abstract void scoreNext(SRParserState s, SDAction act, boolean isGoldAct, boolean bAdd, SRParserCache cache, List<Candidate> l);
+
+	/**
+	 * builds the successor state of a candidate
+	 */
+	public abstract SRParserState build(Candidate c);
 
 	public abstract boolean isEnd(SRParserState s);
 
 	public class SRParserCache
 	{
 		private Map<SRParserState,Double> wordScoreCache = new HashMap<SRParserState,Double>();
+		private Map<SRParserState,IntFeatVector> wordFeatureCache = new HashMap<SRParserState,IntFeatVector>();
 
 //		private Map<SRParserState, Double> shiftCharCache = new HashMap<SRParserState, Double>();
 
@@ -131,15 +189,42 @@ public abstract class SRParserTransition
 			return wordScoreCache;
 		}
 
+		public Map<SRParserState,IntFeatVector> wordFeatures()
+		{
+			return wordFeatureCache;
+		}
+
 //		public Map<SRParserState, Double> charScore()
 //		{
 //			return shiftCharCache;
 //		}
 	}
 
+	List<SRParserState> moveNext(SRParserState s, SDAction act, boolean isGoldAct, boolean bAdd, SRParserCache cache)
+	{
+		List<Candidate> lc = new ArrayList<Candidate>();
+		scoreNext(s, act, isGoldAct, bAdd, cache, lc);
+		List<SRParserState> l = new ArrayList<SRParserState>(lc.size());
+		for (Candidate c: lc)
+			l.add(build(c));
+		return l;
+	}
+
 	public List<Pair<SDAction,SRParserState>> moveNext(SRParserState s, ParsedSentence gsent, boolean bAdd)
 	{
-		List<Pair<SDAction,SRParserState>> l = new ArrayList<Pair<SDAction,SRParserState>>();
+		List<Candidate> lc = scoreNext(s, gsent, bAdd);
+		List<Pair<SDAction,SRParserState>> l = new ArrayList<Pair<SDAction,SRParserState>>(lc.size());
+		for (Candidate c: lc)
+			l.add(new Pair<SDAction,SRParserState>(c.act, build(c)));
+		return l;
+	}
+
+	/**
+	 * scores the successors of s without building them
+	 */
+	public List<Candidate> scoreNext(SRParserState s, ParsedSentence gsent, boolean bAdd)
+	{
+		List<Candidate> l = new ArrayList<Candidate>();
 		SDAction goldAct = gsent != null ? getGoldAction(s, gsent, !m_bGoldArc) : SDAction.NOT_AVAILABLE;
 		boolean bGoldFound = false;
 		boolean bGoldSegFound = false;
@@ -154,16 +239,15 @@ public abstract class SRParserTransition
 			bGoldFound = bGoldFound || act == goldAct;
 			assert (goldAct != null);
 			bGoldSegFound = bGoldSegFound || act.getLength() == goldAct.getLength();
-			for (SRParserState sNext: moveNext(s, act, act == goldAct, bAdd, cache))
-				l.add(new Pair<SDAction,SRParserState>(act, sNext));
+			scoreNext(s, act, act == goldAct, bAdd, cache, l);
 		}
 
 		if (s.gold)
-			m_stats.numGoldMoves++;
+			m_stats.numGoldMoves.increment();
 		if (s.gold && bGoldFound)
-			m_stats.numGoldMovesCovered++;
+			m_stats.numGoldMovesCovered.increment();
 		if (s.gold && bGoldSegFound)
-			m_stats.numGoldMovesSegCovered++;
+			m_stats.numGoldMovesSegCovered.increment();
 //		if (s.gold && bGoldSegFound && !bGoldFound)
 //			Console.writeLine(goldAct.toString() + s.sent.substringIgnoreRange(s.curidx, s.curidx + goldAct.m_length) + " was pruned.");
 
@@ -190,21 +274,23 @@ public abstract class SRParserTransition
 		return new Pair<SDAction,SRParserState>(act, sGold);
 	}
 
+	/**
+	 * collects the features of the best derivation of s from the feature logs
+	 * recorded during decoding, instead of replaying the derivation.
+	 */
 	public IntFeatVector getPrefixFeatures(SRParserState s)
 	{
+		if (s.fvins == null)
+			throw new IllegalStateException("Features of the state were not logged.");
+
 		IntFeatVector fvprf = new IntFeatVector();
-		List<SDAction> lAct = s.getActionSequence();
-		SRParserState s3 = m_generator.create(s.sent, s.decision);
-		for (SDAction act: lAct)
-			s3 = moveNext(s3, act, false, true, null).get(0);
-		SRParserState sss1 = s3;
+		Vocab vocab = m_fhandler.getVocabulary();
+		SRParserState sss1 = s;
 		for (SRParserState sss2 = sss1; sss2 != null; sss2 = sss2.pred0)
 		{
-			for (IntFeatVector v: sss2.fvins)
-				fvprf.append(v);
+			sss2.fvins.appendTo(fvprf, vocab);
 			if (sss2 != sss1)
-				for (IntFeatVector v: sss1.trans.get(sss2).first)
-					fvprf.append(v);
+				sss1.trans.get(sss2).first.appendTo(fvprf, vocab);
 			sss1 = sss2;
 		}
 
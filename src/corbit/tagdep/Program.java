@@ -36,6 +36,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import corbit.commons.io.Console;
+import corbit.commons.ml.WeightStorage;
 import corbit.commons.util.GlobalConf;
 import corbit.tagdep.dict.MaltTagDictionary;
 import corbit.tagdep.dict.TagDictionary;
@@ -105,6 +106,11 @@ class Program
 			lArgs.remove(i);
 			parser.m_bDebug = true;
 		}
+		else if (lArgs.get(i).equals("--text-model"))
+		{
+			lArgs.remove(i);
+			parser.m_bTextModel = true;
+		}
 		else if (lArgs.get(i).equals("--no-compress"))
 		{
 			lArgs.remove(i);
@@ -115,12 +121,30 @@ class Program
 			lArgs.remove(i);
 			parser.m_bShowStats = true;
 		}
+		else if (lArgs.get(i).equals("--weight-snapshot"))
+		{
+			lArgs.remove(i);
+			parser.m_sWeightSnapshot = lArgs.get(i);
+			lArgs.remove(i);
+		}
+		else if (lArgs.get(i).equals("--weight-storage"))
+		{
+			lArgs.remove(i);
+			parser.m_weightStorage = WeightStorage.valueOf(lArgs.get(i).toUpperCase());
+			lArgs.remove(i);
+		}
 		else if (lArgs.get(i).equals("--parallel"))
 		{
 			lArgs.remove(i);
 			parser.m_iParallel = Integer.parseInt(lArgs.get(i));
 			lArgs.remove(i);
 		}
+		else if (lArgs.get(i).equals("--corpus-cache"))
+		{
+			lArgs.remove(i);
+			parser.m_sCorpusCacheDir = lArgs.get(i);
+			lArgs.remove(i);
+		}
 		else return false;
 		return true;
 	}
@@ -148,6 +172,8 @@ class Program
 			String sDictFile = null;
 			int iDictThreshold = 0;
 			boolean bResume = false;
+			int iHashBits = 0;
+			boolean bHashReport = false;
 			System.err.println("In training....:"+lArgs.toString());
 			for (int i = 1; i < lArgs.size();)
 			{
@@ -249,6 +275,17 @@ class Program
 					parser.m_bUseTrie = true;
 					parser.setUseTrie();
 				}
+				else if (lArgs.get(i).equals("--hash-features"))
+				{
+					lArgs.remove(i);
+					iHashBits = Integer.parseInt(lArgs.get(i));
+					lArgs.remove(i);
+				}
+				else if (lArgs.get(i).equals("--hash-report"))
+				{
+					lArgs.remove(i);
+					bHashReport = true;
+				}
 				else if (lArgs.get(i).equals("--rebuild-vocab"))
 				{
 					lArgs.remove(i);
@@ -298,6 +335,8 @@ class Program
 					else
 						System.err.println(sModelFile + " already exists. Will be overwritten.");
 				}
+				if (iHashBits > 0 && !bResume)
+					parser.setFeatureHashing(iHashBits, bHashReport);
 				if (sDictFile != null)
 					parser.loadDictFromFile(sDictFile, iDictThreshold);
 				if (!parser.m_bParse)
@@ -310,7 +349,7 @@ class Program
 			if (lArgs.size() < 2) usage();
 			else
 			{
-				parser.loadModel(lArgs.get(1));
+				parser.loadModel(lArgs.get(1), true);
 				
 				boolean bPrintParams = false;
 				for (int i = 1; i < lArgs.size();)
@@ -331,6 +370,7 @@ class Program
 				}
 				if (bPrintParams)
 					parser.printProperties();
+				parser.shareDecodingWeight(lArgs.get(1));
 				System.err.println("\nReady.");
 				parser.run();
 			}
@@ -340,7 +380,7 @@ class Program
 			if (lArgs.size() < 3) usage();
 			else
 			{
-				parser.loadModel(lArgs.get(1));
+				parser.loadModel(lArgs.get(1), true);
 				
 				String sParseFile = null;
 				String sRefFile = null;
@@ -383,9 +423,29 @@ class Program
 				}
 				if (bPrintParams)
 					parser.printProperties();
+				parser.shareDecodingWeight(lArgs.get(1));
 				parser.test(lArgs.get(2), sRefFile, sParseFile);
 			}
 		}
+		else if (lArgs.get(0).equals("ConvertModel"))
+		{
+			if (lArgs.size() < 3) usage();
+			else
+			{
+				parser.loadModel(lArgs.get(1));
+				for (int i = 3; i < lArgs.size();)
+				{
+					if (evalCommonOpt(parser, i, lArgs));
+					else if (lArgs.get(i).startsWith("-"))
+					{
+						System.err.println("Unknown option: " + lArgs.get(i));
+						System.exit(-1);
+					}
+					else ++i;
+				}
+				parser.saveModel(lArgs.get(2));
+			}
+		}
 		else if (lArgs.get(0).equals("CreateDict"))
 		{
 			if (lArgs.size() < 3) usage();
@@ -433,8 +493,11 @@ class Program
 		System.err.println("    feature-type <1|2> 2: use additional feature templates from Zhang and Nivre (2011)");
 		System.err.println("  --rebuild-vocab      remove unnecessary items in the vocabulary at the end of each iteration");
 		System.err.println("  --use-trie           use Patricia trie to store the feature index (default: HashMap)");
+		System.err.println("  --hash-features (b)  hash features into 2^b dimensions instead of storing feature strings");
+		System.err.println("  --hash-report        report the rate of hash collisions after each iteration");
 		System.err.println("  --load (file)        load a model file and continue training");
 		System.err.println("  --resume             resume training if a temporary file is availale");
+		System.err.println("  --text-model         save the model in the text format (default: binary format that can be mapped into memory)");
 		System.err.println("  --no-shuffle         disable shuffling of training instances");
 		System.err.println("  --no-closed-tags     do not use closed-set tags information");
 		System.err.println("  --no-early           disable early update");
@@ -449,6 +512,13 @@ class Program
 		System.err.println();
 		System.err.println("  (options below can also be used for Test command)");
 		System.err.println("  --parallel (int)     specified the number of CPUs to use for decoding");
+		System.err.println("  --corpus-cache (dir) save and load the pre-tokenized cache of the training and test files in the directory");
+		System.err.println("                       (default: the files are parsed every time)");
+		System.err.println("  --weight-storage <double|float|int16|int8|direct>");
+		System.err.println("                       store the weights for decoding in a compact form (default: double)");
+		System.err.println("  --weight-snapshot (file)");
+		System.err.println("                       share the weights for decoding among processes through the file, which is made if absent;");
+		System.err.println("                       only with the double weight storage");
 		System.err.println("  --print-params       print the list of model and program parameters");
 		System.err.println("  --show-stats         show statistics during decoding");
 		System.err.println("  --debug              print outputs");
@@ -457,6 +527,9 @@ class Program
 		System.err.println("  --save-pos (file)    save the output POS tags to the file");
 		System.err.println("  --save-parse (file)  save the output POS tags and parse trees to the file");
 		System.err.println();
+		System.err.println("ConvertModel (model-file-to-load) (model-file-to-save) [--text-model] [--no-compress]");
+		System.err.println("  convert a model between the binary and the text format");
+		System.err.println();
 //		System.err.println("CreateDict (target-file) (dict-file-to-save)");
 	}
 
@@ -40,6 +40,8 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -51,11 +53,16 @@ import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import corbit.commons.Vocab;
+import corbit.commons.io.BinaryModelFile;
 import corbit.commons.io.Console;
+import corbit.commons.io.CorpusCache;
 import corbit.commons.ml.AveragedWeight;
 import corbit.commons.ml.IntFeatVector;
+import corbit.commons.ml.WeightStorage;
+import corbit.commons.ml.WeightSnapshot;
 import corbit.commons.ml.WeightVector;
 import corbit.commons.transition.PDAction;
+import corbit.commons.util.OrderedPipeline;
 import corbit.commons.util.Pair;
 import corbit.commons.util.Statics;
 import corbit.commons.util.StepCounter;
@@ -76,6 +83,8 @@ import corbit.tagdep.word.DepTreeSentence;
 
 public class SRParser extends SRParserParameters
 {
+	private static final int RUN_WINDOW_PER_THREAD = 16; // sentences in flight per worker in run()
+
 	public enum FeatureType
 	{
 		HS10, ZC11, ZC08
@@ -83,6 +92,14 @@ public class SRParser extends SRParserParameters
 
 	final Vocab m_vocab;
 	AveragedWeight m_weight;
+	WeightVector m_mappedWeight; // weights for decoding mapped from a binary model
+	WeightVector m_mappedRawWeight; // raw weights mapped from a binary model, used if averaging is disabled
+	WeightVector m_sharedWeight; // weights for decoding shared by all decoders
+
+	/* the compact weights for decoding, converted once for each step of m_weight */
+	private WeightVector m_compactWeight = null;
+	private AveragedWeight m_compactSource = null;
+	private int m_iCompactStep = -1;
 	SRParserHandler m_fhandler;
 	final SRParserStateGenerator m_generator;
 	TagDictionary m_dict;
@@ -98,6 +115,68 @@ public class SRParser extends SRParserParameters
 		m_dict = new MaltTagDictionary();
 	}
 
+	/**
+	 * @return the full-precision weights for decoding, mapped from a binary
+	 *         model if so, and averaged unless averaging is disabled
+	 */
+	private WeightVector getSourceWeight()
+	{
+		if (m_mappedWeight != null)
+			return m_bAveraged ? m_mappedWeight : m_mappedRawWeight;
+		return m_bAveraged ? m_weight.getAveragedWeight() : m_weight;
+	}
+
+	/**
+	 * @return the weight to be used for decoding, in the storage given by the
+	 *         program option; a compact copy is made once for each weight
+	 *         step and shared by the decoders, and the full-precision averaged
+	 *         weight is released afterwards
+	 */
+	synchronized WeightVector getDecodingWeight()
+	{
+		if (m_sharedWeight != null)
+			return m_sharedWeight;
+		if (m_weightStorage == WeightStorage.DOUBLE)
+			return getSourceWeight();
+		if (m_compactWeight == null || m_compactSource != m_weight || m_iCompactStep != m_weight.getStep())
+		{
+			WeightVector w = getSourceWeight();
+			m_compactWeight = m_weightStorage.convert(w);
+			m_compactSource = m_weight;
+			m_iCompactStep = m_weight.getStep();
+			m_weight.releaseAveragedWeight();
+		}
+		return m_compactWeight;
+	}
+
+	/**
+	 * makes all decoders share one read-only copy of the weights for decoding,
+	 * mapped from the snapshot file if given, and releases the weights kept
+	 * for training; training cannot be continued afterwards. The snapshot
+	 * holds the weights in double precision, and is used as it is mapped.
+	 */
+	public void shareDecodingWeight(String sModelFile) throws IOException
+	{
+		WeightVector w;
+		if (m_sWeightSnapshot != null)
+		{
+			if (m_weightStorage != WeightStorage.DOUBLE)
+				throw new IllegalArgumentException("The weight snapshot cannot be used with the weight storage: " + m_weightStorage);
+			w = WeightSnapshot.open(m_sWeightSnapshot, sModelFile, m_bAveraged ? "averaged" : "raw", getSourceWeight());
+		}
+		else
+			w = getDecodingWeight();
+		if (w != m_weight)
+		{
+			m_weight.clear();
+			m_weight.getAverageWeight().clear();
+			m_weight.trimToSize();
+		}
+		m_mappedWeight = null;
+		m_mappedRawWeight = null;
+		m_sharedWeight = w;
+	}
+
 	public void setUseClosedTags(boolean b)
 	{
 		throw new RuntimeException("CTB Tag Dictionary is already disabled");
@@ -147,31 +226,66 @@ public class SRParser extends SRParserParameters
 		m_vocab.setUseTrie();
 	}
 
+	public void setFeatureHashing(int iBits, boolean bReport)
+	{
+		m_vocab.setHashed(iBits, bReport);
+	}
+
 	double iterateOnce(String sFile, String sRefFile, boolean bTrain, String sParseFile) throws IOException
 	{
-		ParseReader ct = m_iInputFormat == 0 ? new MaltReader(sFile) : null;
-		if(ct==null){
+		List<DepTreeSentence> lt = loadCorpus(sFile);
+		List<DepTreeSentence> lr = sRefFile != null ? loadCorpus(sRefFile) : null;
+
+		if (bTrain && m_bShuffle)
+			Statics.shuffle(lt);
+
+		return parallelIterateOnce(lt, lr, bTrain, sParseFile);
+	}
+
+	/**
+	 * reads the corpus, from its pre-tokenized cache if available; this is
+	 * called for every iteration, so the cache saves parsing the file again
+	 */
+	private List<DepTreeSentence> loadCorpus(String sFile) throws IOException
+	{
+		if (m_iInputFormat != 0)
 			throw new RuntimeException("The CTB Tag dictionary is already disabled");
+
+		String sKey = null;
+		if (m_sCorpusCacheDir != null)
+		{
+			sKey = CorpusCache.getKey(sFile, "tagdep\tmalt");
+			List<CorpusCache.Sentence> lc = CorpusCache.load(m_sCorpusCacheDir, sFile, sKey);
+			if (lc != null)
+			{
+				List<DepTreeSentence> lt = new ArrayList<DepTreeSentence>(lc.size());
+				for (CorpusCache.Sentence c : lc)
+					lt.add(ParseReader.fromCache(c));
+				return lt;
+			}
 		}
+
+		ParseReader ct = new MaltReader(sFile);
 		List<DepTreeSentence> lt = new ArrayList<DepTreeSentence>();
 		for (DepTreeSentence p : ct)
 			if (p != null) lt.add(p);
 		ct.shutdown();
-		
-		List<DepTreeSentence> lr = null;
-		if (sRefFile != null)
+
+		if (m_sCorpusCacheDir != null)
 		{
-			lr = new ArrayList<DepTreeSentence>();
-			ParseReader cr = m_iInputFormat == 0 ? new MaltReader(sFile) : null;
-			for (DepTreeSentence p : cr)
-				if (p != null) lr.add(p);
-			cr.shutdown();
+			List<CorpusCache.Sentence> lc = new ArrayList<CorpusCache.Sentence>(lt.size());
+			for (DepTreeSentence p : lt)
+				lc.add(ParseReader.toCache(p));
+			try
+			{
+				CorpusCache.save(m_sCorpusCacheDir, sFile, sKey, lc);
+			}
+			catch (IOException e)
+			{
+				Console.writeLine("Failed to save the corpus cache: " + e.getMessage());
+			}
 		}
-
-		if (bTrain && m_bShuffle)
-			Statics.shuffle(lt);
-
-		return parallelIterateOnce(lt, lr, bTrain, sParseFile);
+		return lt;
 	}
 
 	private final class SentenceParser
@@ -187,8 +301,9 @@ public class SRParser extends SRParserParameters
 			this.bTrain = bTrain;
 			this.bParallelMove = bParallelMove;
 			
-			w = (!bTrain && m_bAveraged) ? m_weight.getAveragedWeight() : m_weight;
+			w = bTrain ? m_weight : getDecodingWeight();
 			trans = new SRParserTransitionStd(m_generator, m_fhandler, w, m_dict, m_bParse, m_bAssignPosFollowsShift, m_bAssignGoldPos, m_bShiftWithPos);
+			trans.setLogFeatures(bTrain);
 			execMove = bParallelMove ? Executors.newFixedThreadPool(bParallelMove ? m_iParallel : 1) : null;
 		}
 		
@@ -204,9 +319,21 @@ public class SRParser extends SRParserParameters
 		
 		ParseResult parseSentence(DepTreeSentence gsent)
 		{
-			// initialization
 			DepTreeSentence sent = createSentenceToProcess(gsent);
+			m_fhandler.beginSentence(sent);
+			try
+			{
+				return decode(sent, gsent);
+			}
+			finally
+			{
+				m_fhandler.endSentence(sent);
+			}
+		}
 
+		private ParseResult decode(DepTreeSentence sent, DepTreeSentence gsent)
+		{
+			// initialization
 			SRParserState sg = m_generator.create(sent);
 			SRParserState sr = m_generator.create(sent);
 
@@ -412,42 +539,65 @@ public class SRParser extends SRParserParameters
 	 */
 	public void run() throws IOException
 	{
-		SentenceParser sp = new SentenceParser(false, m_iParallel > 1);
-		BufferedReader br = new BufferedReader(new InputStreamReader(System.in, "UTF8"));
+		// sentences are decoded in parallel, so each of them runs on a single thread
+		final SentenceParser sp = new SentenceParser(false, false);
+		final BufferedReader br = new BufferedReader(new InputStreamReader(System.in, "UTF8"));
 
-		String buf;
-		int n = 0;
 		System.err.println("buf: running in the sr parser");
-		main: while ((buf = br.readLine()) != null)
+		new OrderedPipeline<String,ParseResult>(m_iParallel, m_iParallel * RUN_WINDOW_PER_THREAD)
 		{
-			
-			buf = Statics.trimSpecial(buf);
-			if (buf.length() == 0)
+			int n = 0;
+
+			@Override
+			protected String read() throws IOException
 			{
-				Console.writeLine();
-				continue main;
+				return br.readLine();
 			}
-			String[] words = buf.split(" +");
-			
-			DepTreeSentence sent = new DepTreeSentence();
-			
-			for (int i = 0; i < words.length; ++i)
+
+			@Override
+			protected ParseResult process(String buf)
 			{
-				String[] word = words[i].split("/");
-				if (m_bAssignGoldPos && word.length < 2)
+				buf = Statics.trimSpecial(buf);
+				if (buf.length() == 0)
+					return null;
+				String[] words = buf.split(" +");
+				
+				DepTreeSentence sent = new DepTreeSentence();
+				
+				for (int i = 0; i < words.length; ++i)
 				{
-					System.err.println("POS tags are required when --assign-gold option is used.");
-					continue main;
+					String[] word = words[i].split("/");
+					if (m_bAssignGoldPos && word.length < 2)
+						throw new IllegalArgumentException("POS tags are required when --assign-gold option is used.");
+					sent.add(new DepTree(sent, i, word[0], m_bAssignGoldPos && word.length > 1 ? word[1] : null, word[2], -2));
 				}
-				sent.add(new DepTree(sent, i, word[0], m_bAssignGoldPos && word.length > 1 ? word[1] : null, word[2], -2));
+				return sp.parseSentence(sent);
 			}
-			ParseResult pr = sp.parseSentence(sent);
-			DepTreeSentence osent = SRParserState.getParsedResult(pr.parsedState);
-			for (DepTree dw : osent)
-				Console.writeLine(String.format("%d\t%s\t%s\t%d", dw.index, dw.form, dw.pos, dw.head));
-			Console.writeLine();
-			if (++n % 100 == 0) System.err.println(n + " sentences processed.");
-		}
+
+			@Override
+			protected void write(String buf, ParseResult pr)
+			{
+				if (pr == null)
+				{
+					Console.writeLine();
+					return;
+				}
+				DepTreeSentence osent = SRParserState.getParsedResult(pr.parsedState);
+				for (DepTree dw : osent)
+					Console.writeLine(String.format("%d\t%s\t%s\t%d", dw.index, dw.form, dw.pos, dw.head));
+				Console.writeLine();
+				if (++n % 100 == 0) System.err.println(n + " sentences processed.");
+			}
+
+			@Override
+			protected void fail(String buf, Throwable t) throws IOException
+			{
+				if (t instanceof IllegalArgumentException)
+					System.err.println(t.getMessage());
+				else
+					super.fail(buf, t);
+			}
+		}.run();
 		System.err.println("done.");
 
 		sp.shutdown();
@@ -478,6 +628,8 @@ public class SRParser extends SRParserParameters
 				m_vocab.rebuild(m_weight);
 				sw.lap();
 			}
+			if (m_vocab.getCollisionReport() != null)
+				Console.writeLine(m_vocab.getCollisionReport());
 			gc();
 
 			// development
@@ -648,6 +800,19 @@ public class SRParser extends SRParserParameters
 		sw.start();
 		File ftmp = File.createTempFile("~segdep", ".model", new File("."));
 		ftmp.deleteOnExit();
+		if (m_bTextModel)
+			saveTextModel(ftmp);
+		else
+			saveBinaryModel(ftmp);
+		File fout = new File(sFile);
+		if (fout.exists()) fout.delete();
+		if (!ftmp.renameTo(fout))
+			throw new IOException("Renaming of a temporary file failed.");
+		sw.lap();
+	}
+
+	private void saveTextModel(File ftmp) throws IOException
+	{
 		OutputStream os = m_bCompressedModel ?
 				new GZIPOutputStream(new FileOutputStream(ftmp)) :
 				new FileOutputStream(ftmp);
@@ -658,16 +823,49 @@ public class SRParser extends SRParserParameters
 		if (m_dict != null) m_dict.saveToStream(pw);
 		m_weight.save(pw);
 		pw.close();
-		File fout = new File(sFile);
-		if (fout.exists()) fout.delete();
-		if (!ftmp.renameTo(fout))
-			throw new IOException("Renaming of a temporary file failed.");
-		sw.lap();
+	}
+
+	/**
+	 * saves the model in the binary format, where the vocabulary and the
+	 * weights are laid out to be mapped and used without parsing
+	 */
+	private void saveBinaryModel(File ftmp) throws IOException
+	{
+		StringWriter s = new StringWriter();
+		PrintWriter pw = new PrintWriter(s);
+		saveProperties(pw);
+		pw.println(m_dict != null);
+		if (m_dict != null) m_dict.saveToStream(pw);
+		pw.close();
+
+		BinaryModelFile.Writer out = new BinaryModelFile.Writer(ftmp);
+		out.putTextSection(s.toString());
+		m_vocab.saveBinary(out);
+		m_weight.saveBinary(out, m_bAveraged);
+		out.close();
 	}
 
 	public void loadModel(String sFile) throws IOException
+	{
+		loadModel(sFile, false);
+	}
+
+	/**
+	 * @param bReadOnly
+	 *            if the model is binary, map the vocabulary and the weights
+	 *            for decoding instead of loading them; training cannot be
+	 *            resumed from a model loaded in this way
+	 */
+	public void loadModel(String sFile, boolean bReadOnly) throws IOException
 	{
 		System.err.println("Loading model..");
+		if (BinaryModelFile.isBinaryModel(sFile))
+		{
+			loadBinaryModel(sFile, bReadOnly);
+			return;
+		}
+		m_mappedWeight = null;
+		m_mappedRawWeight = null;
 		InputStream is = m_bCompressedModel ?
 				new GZIPInputStream(new FileInputStream(sFile)) :
 				new FileInputStream(sFile);
@@ -684,7 +882,42 @@ public class SRParser extends SRParserParameters
 			m_fhandler.setTagDictionary(m_dict);
 		}
 		m_weight.load(sr);
+		m_weight.trimToSize();
 		sr.close();
 	}
 
+	private void loadBinaryModel(String sFile, boolean bReadOnly) throws IOException
+	{
+		BinaryModelFile.Reader in = new BinaryModelFile.Reader(sFile);
+		BufferedReader sr = new BufferedReader(new StringReader(in.nextTextSection()));
+		loadProperties(sr);
+		m_vocab.loadBinary(in.nextSection(), bReadOnly);
+		if (m_bUseTrie && !bReadOnly) setUseTrie();
+		setFeatureHandler(m_iFeatureType);
+		if (Boolean.parseBoolean(sr.readLine()) == true)
+		{
+			m_dict = new MaltTagDictionary();
+			m_dict.clear();
+			m_dict.loadFromStream(sr);
+			m_fhandler.setTagDictionary(m_dict);
+		}
+		if (bReadOnly)
+		{
+			m_weight.clear();
+			m_weight.getAverageWeight().clear();
+			m_weight.trimToSize();
+			Pair<WeightVector,WeightVector> p = AveragedWeight.mapBinary(in);
+			m_mappedWeight = p.first;
+			m_mappedRawWeight = p.second;
+		}
+		else
+		{
+			m_weight.loadBinary(in);
+			m_weight.trimToSize();
+			m_mappedWeight = null;
+			m_mappedRawWeight = null;
+		}
+		in.close();
+	}
+
 }
@@ -34,6 +34,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 
+import corbit.commons.ml.WeightStorage;
+
 public class SRParserParameters
 {
 	final int m_numOpts = 24;
@@ -72,15 +74,19 @@ public class SRParserParameters
 	
 	int m_iParallel = 1;
 	int m_iInputFormat = 0; // 0: Malt, 1: CTB
+	WeightStorage m_weightStorage = WeightStorage.DOUBLE;
+	String m_sWeightSnapshot = null;
 	
 	boolean m_bDebug = false;
 	boolean m_bLoadOnMemory = true;
 	boolean m_bSaveEach = false;
 	boolean m_bCheckOpts = false;
 	boolean m_bCompressedModel = true;
+	boolean m_bTextModel = false;
 	boolean m_bSaveOnlyPos = false;
 	boolean m_bShowStats = false;
 	boolean m_bRebuildVocab = true;
+	String m_sCorpusCacheDir = null;
 
 	void saveProperties(PrintWriter pw)
 	{
@@ -194,6 +200,9 @@ public class SRParserParameters
 		System.err.println("bSaveEachTime = " + m_bSaveEach);
 		System.err.println("bCheckOpts = " + m_bCheckOpts);
 		System.err.println("bCompressedModel = " + m_bCompressedModel);
+		System.err.println("bTextModel = " + m_bTextModel);
+		System.err.println("weightStorage = " + m_weightStorage);
+		System.err.println("sWeightSnapshot = " + m_sWeightSnapshot);
 		System.err.println("bSaveOnlyPos = " + m_bSaveOnlyPos);
 		System.err.println("bShowStats = " + m_bShowStats);
 		System.err.println("bRebuildVocab = " + m_bRebuildVocab);
@@ -31,14 +31,15 @@
 package corbit.tagdep;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import corbit.commons.ml.FeatureLog;
 import corbit.commons.ml.IntFeatVector;
 import corbit.commons.transition.PDAction;
 import corbit.commons.util.Pair;
+import corbit.commons.util.PersistentSeq;
 import corbit.tagdep.handler.AtomicFeatures;
 import corbit.tagdep.handler.SRParserHandler;
 import corbit.tagdep.word.DepTree;
@@ -58,12 +59,12 @@ public class SRParserState implements Comparable<SRParserState>
 	public double scins; // inside score
 	public double scdlt; // delta score
 	public IntFeatVector fvprf; // prefix feature vector
-	public List<IntFeatVector> fvins; // inside feature vector
+	public FeatureLog fvins; // inside feature log
 	public IntFeatVector fvdlt; // delta feature vector
 	public Set<SRParserState> preds; // predictor states
 
 	public SRParserState pred0; // predictor state with the highest prefix score
-	public Map<SRParserState, Pair<IntFeatVector, Double>> trans; // transitions from predictor states; work as a cache
+	public Map<SRParserState, Pair<FeatureLog, Double>> trans; // transitions from predictor states; work as a cache
 
 	public AtomicFeatures atoms;
 
@@ -75,7 +76,7 @@ public class SRParserState implements Comparable<SRParserState>
 
 	public double scbonus;
 
-	public final List<PDAction> lstact; // inside action sequence
+	public final PersistentSeq<PDAction> lstact; // inside action sequence
 
 	public boolean gold; // if the state contains the gold derivation
 	public long nstates; // the number of packed instances
@@ -89,15 +90,15 @@ public class SRParserState implements Comparable<SRParserState>
 			double scprf,
 			double scins,
 			double scdlt,
-			List<IntFeatVector> fvins,
+			FeatureLog fvins,
 			IntFeatVector fvdlt,
 			Set<SRParserState> preds,
 			SRParserState pred0,
-			Map<SRParserState, Pair<IntFeatVector, Double>> trans,
+			Map<SRParserState, Pair<FeatureLog, Double>> trans,
 			int[] heads,
 			String[] pos,
 			List<String> fvdelay,
-			List<PDAction> lstact,
+			PersistentSeq<PDAction> lstact,
 			boolean gold,
 			long states)
 	{
@@ -134,11 +135,14 @@ public class SRParserState implements Comparable<SRParserState>
 		return _pstck;
 	}
 
-	public DepTree[] cloneStack()
+	/**
+	 * The trees on the stack are never modified once pushed, so the other
+	 * elements are shared with this state.
+	 */
+	public DepTree[] replaceStackTop(DepTree t)
 	{
-		DepTree[] _pstck = new DepTree[pstck.length];
-		for (int i = 0; i < pstck.length; ++i)
-			_pstck[i] = (i == 0 && pstck[i] != null) ? new DepTree(pstck[i]) : pstck[i];
+		DepTree[] _pstck = pstck.clone();
+		_pstck[0] = t;
 		return _pstck;
 	}
 
@@ -159,9 +163,12 @@ public class SRParserState implements Comparable<SRParserState>
 
 	public static List<PDAction> getActionSequence(SRParserState s)
 	{
-		List<PDAction> l = new LinkedList<PDAction>();
+		List<SRParserState> ls = new ArrayList<SRParserState>();
 		for (; s != null; s = s.pred0)
-			l.addAll(0, s.lstact);
+			ls.add(s);
+		List<PDAction> l = new ArrayList<PDAction>();
+		for (int i = ls.size() - 1; i >= 0; --i)
+			ls.get(i).lstact.addTo(l);
 		return l;
 	}
 
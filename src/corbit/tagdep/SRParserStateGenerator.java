@@ -30,7 +30,6 @@
 
 package corbit.tagdep;
 
-import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -39,9 +38,11 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
 
+import corbit.commons.ml.FeatureLog;
 import corbit.commons.ml.IntFeatVector;
 import corbit.commons.transition.PDAction;
 import corbit.commons.util.Pair;
+import corbit.commons.util.PersistentSeq;
 import corbit.commons.util.Statics;
 import corbit.tagdep.handler.SRParserHandler;
 import corbit.tagdep.word.DepTree;
@@ -72,27 +73,27 @@ public class SRParserStateGenerator
 						sent,
 						new DepTree[m_szStack],
 						0, -1, -1, 0.0d, 0.0d, 0.0d,
-						new LinkedList<IntFeatVector>(),
+						FeatureLog.EMPTY,
 						new IntFeatVector(),
 						new TreeSet<SRParserState>(), null,
-						new LinkedHashMap<SRParserState, Pair<IntFeatVector, Double>>(),
+						new LinkedHashMap<SRParserState, Pair<FeatureLog, Double>>(),
 						new int[sent.size()],
 						new String[sent.size()],
 						m_params.m_bEvalDelay ? new LinkedList<String>() : null,
-						new LinkedList<PDAction>(),
+						PersistentSeq.<PDAction>empty(),
 						true, 1) :
 				new SRParserState(
 						sent,
 						new DepTree[m_szStack],
 						0, -1, -1, 0.0d, 0.0d, 0.0d,
-						new LinkedList<IntFeatVector>(),
+						FeatureLog.EMPTY,
 						new IntFeatVector(),
 						new TreeSet<SRParserState>(), null,
-						new LinkedHashMap<SRParserState, Pair<IntFeatVector, Double>>(),
+						new LinkedHashMap<SRParserState, Pair<FeatureLog, Double>>(),
 						new int[sent.size()],
 						new String[sent.size()],
 						m_params.m_bEvalDelay ? new LinkedList<String>() : null,
-						new LinkedList<PDAction>(),
+						PersistentSeq.<PDAction>empty(),
 						true, 1);
 
 		s.pstck[0] = new DepTree(s.sent, -1, "ROOT", "O", "ROOT", -2);
@@ -105,35 +106,39 @@ public class SRParserStateGenerator
 		return s;
 	}
 
+	/**
+	 * copies the predictor states and transitions to be merged with another
+	 * state; the other components are immutable and shared
+	 */
 	public SRParserState copy(SRParserState s)
 	{
 		SRParserState sNew = m_params.m_bDP ?
 				new SRParserDPState(
 						s.sent,
-						s.cloneStack(),
+						s.pstck,
 						s.curidx, s.idbgn, s.idend, s.scprf, s.scins, s.scdlt,
-						s.fvins != null ? new LinkedList<IntFeatVector>(s.fvins) : null,
-						s.fvdlt != null ? new IntFeatVector(s.fvdlt) : null,
+						s.fvins,
+						s.fvdlt,
 						new TreeSet<SRParserState>(s.preds), s.pred0,
-						new LinkedHashMap<SRParserState, Pair<IntFeatVector, Double>>(s.trans),
-						Arrays.copyOf(s.heads, s.heads.length),
-						Arrays.copyOf(s.pos, s.pos.length),
-						m_params.m_bEvalDelay ? new LinkedList<String>(s.fvdelay) : null,
-						new LinkedList<PDAction>(s.lstact),
+						new LinkedHashMap<SRParserState, Pair<FeatureLog, Double>>(s.trans),
+						s.heads,
+						s.pos,
+						s.fvdelay,
+						s.lstact,
 						s.gold,
 						s.nstates) :
 				new SRParserState(
 						s.sent,
-						s.cloneStack(),
+						s.pstck,
 						s.curidx, s.idbgn, s.idend, s.scprf, s.scins, s.scdlt,
-						s.fvins != null ? new LinkedList<IntFeatVector>(s.fvins) : null,
-						s.fvdlt != null ? new IntFeatVector(s.fvdlt) : null,
+						s.fvins,
+						s.fvdlt,
 						new TreeSet<SRParserState>(s.preds), s.pred0,
-						new LinkedHashMap<SRParserState, Pair<IntFeatVector, Double>>(s.trans),
-						Arrays.copyOf(s.heads, s.heads.length),
-						Arrays.copyOf(s.pos, s.pos.length),
-						m_params.m_bEvalDelay ? new LinkedList<String>(s.fvdelay) : null,
-						new LinkedList<PDAction>(s.lstact),
+						new LinkedHashMap<SRParserState, Pair<FeatureLog, Double>>(s.trans),
+						s.heads,
+						s.pos,
+						s.fvdelay,
+						s.lstact,
 						s.gold,
 						s.nstates);
 
@@ -150,15 +155,15 @@ public class SRParserStateGenerator
 			double scprf,
 			double scins,
 			double scdlt,
-			List<IntFeatVector> fvins,
+			FeatureLog fvins,
 			IntFeatVector fvdlt,
 			Set<SRParserState> preds,
 			SRParserState pred0,
-			Map<SRParserState, Pair<IntFeatVector, Double>> trans,
+			Map<SRParserState, Pair<FeatureLog, Double>> trans,
 			int[] heads,
 			String[] pos,
 			List<String> fvdelay,
-			List<PDAction> lstact,
+			PersistentSeq<PDAction> lstact,
 			boolean gold,
 			long states)
 	{
@@ -199,7 +204,7 @@ public class SRParserStateGenerator
 			if (!ps.preds.contains(_ps))
 				ps.preds.add(_ps);
 
-		for (Entry<SRParserState, Pair<IntFeatVector, Double>> p : ps2.trans.entrySet())
+		for (Entry<SRParserState, Pair<FeatureLog, Double>> p : ps2.trans.entrySet())
 		{
 			SRParserState sk = p.getKey();
 			if (!ps.trans.containsKey(sk))
@@ -30,17 +30,22 @@
 
 package corbit.tagdep.handler;
 
-import java.util.Set;
+import java.util.Arrays;
 import java.util.TreeSet;
 
-import corbit.commons.util.Statics;
+import corbit.commons.util.SymbolTable;
 
+/*
+ * The feature strings are kept for feature extraction, while the equivalence of states
+ * is decided over the ids of the strings in the symbol table of the handler.
+ */
 public abstract class AtomicFeatures
 {
 	public final TreeSet<String> fvdelay;
 
 	protected final int numFeatures;
 	protected String[] features;
+	protected long[] sig;
 	protected int hash;
 
 	protected AtomicFeatures(int n, TreeSet<String> _fvdelay)
@@ -69,49 +74,21 @@ public abstract class AtomicFeatures
 		if (obj == null || !(obj instanceof AtomicFeatures))
 			return false;
 		AtomicFeatures atoms = (AtomicFeatures)obj;
-
-		// return hash == atoms.hash;
-
-		// check the equality of features
-		for (int i = 0; i < features.length; ++i)
-		{
-			String s1 = features[i];
-			String s2 = atoms.features[i];
-			if ((s1 == null ^ s1 == null) || s1 != null && !s1.equals(s2)) return false;
-		}
-		// check the equality of delayed features
-		Set<String> fvdelay2 = atoms.fvdelay;
-		if (fvdelay != null)
-		{
-			if (fvdelay == null) return false;
-			return (Statics.setEquals(fvdelay, fvdelay2));
-		}
-		else if (fvdelay2 != null) return false;
-		return true;
-	}
-
-	protected void setHash()
-	{
-		hash = hash();
+		if (hash != atoms.hash) return false;
+		return Arrays.equals(sig, atoms.sig);
 	}
 
-	protected int hash()
+	protected void setSignature(SymbolTable.Generation symbols)
 	{
-		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < features.length; ++i)
-		{
-			sb.append(features[i]);
-			sb.append(' ');
-		}
+		int n = features.length;
+		sig = new long[n + 1 + (fvdelay != null ? fvdelay.size() : 0)];
+		for (int i = 0; i < n; ++i)
+			sig[i] = symbols.getId(features[i]);
+		sig[n++] = fvdelay != null ? fvdelay.size() : -1;
 		if (fvdelay != null)
-		{
 			for (String s : fvdelay)
-			{
-				sb.append(s);
-				sb.append(' ');
-			}
-		}
-		return sb.toString().hashCode();
+				sig[n++] = symbols.getId(s);
+		hash = Arrays.hashCode(sig);
 	}
 
-}
\ No newline at end of file
+}
@@ -36,6 +36,7 @@ import java.util.TreeSet;
 import corbit.commons.Vocab;
 import corbit.commons.ml.IntFeatVector;
 import corbit.commons.transition.PDAction;
+import corbit.commons.util.SymbolTable;
 import corbit.tagdep.SRParserParameters;
 import corbit.tagdep.SRParserState;
 import corbit.tagdep.word.DepTree;
@@ -75,6 +76,7 @@ public class SRParserCtbHandlerHS10 extends SRParserHandler
 		static final int NUM_FEATURE = 24;
 
 		AtomsHS10(
+				SymbolTable.Generation symbols,
 				int curidx,
 				int span_bgn,
 				int span_end,
@@ -127,7 +129,7 @@ public class SRParserCtbHandlerHS10 extends SRParserHandler
 			features[F_prevEntity] = p_prevEntity;
 			features[F_adjoin] = Boolean.toString(adjoin);
 			features[F_npos] = npos;
-			setHash();
+			setSignature(symbols);
 		}
 	}
 
@@ -202,6 +204,7 @@ public class SRParserCtbHandlerHS10 extends SRParserHandler
 		// ad-hoc modification
 
 		return new AtomsHS10(
+				getSymbols(s0.sent),
 				s0.curidx,
 				s0.idbgn,
 				s0.idend,
@@ -230,7 +233,7 @@ public class SRParserCtbHandlerHS10 extends SRParserHandler
 	}
 
 	@Override
-	public IntFeatVector getFeatures(SRParserState s0, PDAction act, List<String> vd, boolean bAdd)
+	public IntFeatVector getFeatures(SRParserState s0, PDAction act, List<String> vd, boolean bAdd, boolean bLog)
 	{
 		IntFeatVector v = new IntFeatVector();
 
@@ -285,7 +288,7 @@ public class SRParserCtbHandlerHS10 extends SRParserHandler
 		 */
 		
 		if (act == PDAction.REDUCE_LEFT || act == PDAction.REDUCE_RIGHT || act == PDAction.SHIFT || act.isShiftPosAction())
-			SRParserCtbHandlerHS10.setParseFeaturesHS10(v, vd, m_vocab, bAdd, sAct, sfst0, sfst1, sfqf1, spst0, spst1, spst2, spqf1, spqf2, spst0rc, spst0lc, spst1rc, spst1lc, sAdjoin, curidx, szSent, m_params.m_bUseLookAhead);
+			SRParserCtbHandlerHS10.setParseFeaturesHS10(v, vd, m_vocab, bAdd, bLog, sAct, sfst0, sfst1, sfqf1, spst0, spst1, spst2, spqf1, spqf2, spst0rc, spst0lc, spst1rc, spst1lc, sAdjoin, curidx, szSent, m_params.m_bUseLookAhead);
 
 		/*
 		 *  evaluate delayed features
@@ -294,7 +297,7 @@ public class SRParserCtbHandlerHS10 extends SRParserHandler
 		if (vd != null && (act.isPosAction() || act.isShiftPosAction()))
 		{
 			//System.err.println("adding the delayed features");
-			//evaluateDelayedFeatures(v, vd, curidx + 1, spqf1, bAdd);
+			//evaluateDelayedFeatures(v, vd, curidx + 1, spqf1, bAdd, bLog);
 			assert (curidx + 1 < szSent || vd.size() == 0);
 		}
 		
@@ -304,16 +307,16 @@ public class SRParserCtbHandlerHS10 extends SRParserHandler
 		
 		if (m_params.m_bUseTagFeature && act.isShiftPosAction())
 		{
-			//SRParserCtbHandlerZC08.setTagFeaturesZC08(v, m_vocab, m_dict, bAdd, sAct, sfqp1, sfqf1, sfqf2, spqp1, spqp2);
+			//SRParserCtbHandlerZC08.setTagFeaturesZC08(v, m_vocab, m_dict, bAdd, bLog, sAct, sfqp1, sfqf1, sfqf2, spqp1, spqp2);
 //			if (m_params.m_bUseSyntax)
-//				SRParserCtbHandlerHS10.setTagSyntacticFeatures(v, m_vocab, bAdd, sAct, sfst0, sfqf1, spst0, spst1, spst0lc);
+//				SRParserCtbHandlerHS10.setTagSyntacticFeatures(v, m_vocab, bAdd, bLog, sAct, sfst0, sfqf1, spst0, spst1, spst0lc);
 		}
 		
 		//use the spqp to construct the entity features
 		if(act == PDAction.REDUCE_LEFT || act == PDAction.REDUCE_RIGHT  || act.isShiftPosAction()){
 //			System.err.println(s0.toString());
 //			System.err.println(act.toString());
-			setEntityFeatures(v, m_vocab, bAdd, sAct, sfst0, spst0, spst0lc, spst0rc, sfqf1, spqf1, sfqp1, spqp1, sfqf2, spqf2, prevEntity);
+			setEntityFeatures(v, m_vocab, bAdd, bLog, sAct, sfst0, spst0, spst0lc, spst0rc, sfqf1, spqf1, sfqp1, spqp1, sfqf2, spqf2, prevEntity);
 		}
 		
 		
@@ -326,7 +329,7 @@ public class SRParserCtbHandlerHS10 extends SRParserHandler
 			IntFeatVector v,
 			List<String> vd,
 			Vocab vocab,
-			boolean bAdd,
+			boolean bAdd, boolean bLog,
 			String sAct,
 			String sfst0, String sfst1, String sfqf1, String spst0,
 			String spst1, String spst2, String spqf1, String spqf2,
@@ -335,23 +338,23 @@ public class SRParserCtbHandlerHS10 extends SRParserHandler
 			final int curidx, final int szSent,
 			boolean bUseLookAhead)
 	{
-		addFeature(v, "FP01-" + sfst0, sAct, 1.0, bAdd, vocab); //s0w
-		addFeature(v, "FP02-" + spst0, sAct, 1.0, bAdd, vocab); //s0t
-		addFeature(v, "FP03-" + sfst0 + SEP + spst0, sAct, 1.0, bAdd, vocab); //s0w+s0t
+		addFeature(v, "FP01-" + sfst0, sAct, 1.0, bAdd, bLog, vocab); //s0w
+		addFeature(v, "FP02-" + spst0, sAct, 1.0, bAdd, bLog, vocab); //s0t
+		addFeature(v, "FP03-" + sfst0 + SEP + spst0, sAct, 1.0, bAdd, bLog, vocab); //s0w+s0t
 
-		addFeature(v, "FP04-" + sfst1, sAct, 1.0, bAdd, vocab); //s1w
-		addFeature(v, "FP05-" + spst1, sAct, 1.0, bAdd, vocab); //s1t
-		addFeature(v, "FP06-" + sfst1 + SEP + spst1, sAct, 1.0, bAdd, vocab); //s1w+s1t
+		addFeature(v, "FP04-" + sfst1, sAct, 1.0, bAdd, bLog, vocab); //s1w
+		addFeature(v, "FP05-" + spst1, sAct, 1.0, bAdd, bLog, vocab); //s1t
+		addFeature(v, "FP06-" + sfst1 + SEP + spst1, sAct, 1.0, bAdd, bLog, vocab); //s1w+s1t
 
-		addFeature(v, "FP07-" + sfqf1, sAct, 1.0, bAdd, vocab); //q0w
+		addFeature(v, "FP07-" + sfqf1, sAct, 1.0, bAdd, bLog, vocab); //q0w
 
-		addFeature(v, "FP10-" + sfst0 + SEP + sfst1, sAct, 1.0, bAdd, vocab); //s0w+s1w
-		addFeature(v, "FP11-" + spst0 + SEP + spst1, sAct, 1.0, bAdd, vocab); //s0t+s1t
-		addFeature(v, "FP13-" + sfst0 + SEP + spst0 + SEP + spst1, sAct, 1.0, bAdd, vocab); //S0W+S0t+s1t
-		addFeature(v, "FP14-" + sfst0 + SEP + spst0 + SEP + sfst1, sAct, 1.0, bAdd, vocab); //s0w+s0t+s1w
-		addFeature(v, "FP15-" + sfst0 + SEP + sfst1 + SEP + spst1, sAct, 1.0, bAdd, vocab); //s0w+s1w+s1t
-		addFeature(v, "FP16-" + spst0 + SEP + sfst1 + SEP + spst1, sAct, 1.0, bAdd, vocab); //s0t + s1w+s1t
-		addFeature(v, "FP17-" + sfst0 + SEP + spst0 + SEP + sfst1 + SEP + spst1, sAct, 1.0, bAdd, vocab); //s0w+s0t+s1w+s1t
+		addFeature(v, "FP10-" + sfst0 + SEP + sfst1, sAct, 1.0, bAdd, bLog, vocab); //s0w+s1w
+		addFeature(v, "FP11-" + spst0 + SEP + spst1, sAct, 1.0, bAdd, bLog, vocab); //s0t+s1t
+		addFeature(v, "FP13-" + sfst0 + SEP + spst0 + SEP + spst1, sAct, 1.0, bAdd, bLog, vocab); //S0W+S0t+s1t
+		addFeature(v, "FP14-" + sfst0 + SEP + spst0 + SEP + sfst1, sAct, 1.0, bAdd, bLog, vocab); //s0w+s0t+s1w
+		addFeature(v, "FP15-" + sfst0 + SEP + sfst1 + SEP + spst1, sAct, 1.0, bAdd, bLog, vocab); //s0w+s1w+s1t
+		addFeature(v, "FP16-" + spst0 + SEP + sfst1 + SEP + spst1, sAct, 1.0, bAdd, bLog, vocab); //s0t + s1w+s1t
+		addFeature(v, "FP17-" + sfst0 + SEP + spst0 + SEP + sfst1 + SEP + spst1, sAct, 1.0, bAdd, bLog, vocab); //s0w+s0t+s1w+s1t
 
 		if (bUseLookAhead)
 		{
@@ -380,11 +383,11 @@ public class SRParserCtbHandlerHS10 extends SRParserHandler
 				}
 				else
 				{
-					addFeature(v, "FP08d-" + spqf1, sAct, 1.0, bAdd, vocab); // q0t
-					addFeature(v, "FP09d-" + sfqf1 + SEP + spqf1, sAct, 1.0, bAdd, vocab);
-					addFeature(v, "FP12d-" + spst0 + SEP + spqf1, sAct, 1.0, bAdd, vocab);
-					addFeature(v, "FP19d-" + spst0 + SEP + spst1 + SEP + spqf1, sAct, 1.0, bAdd, vocab);
-					addFeature(v, "FP21d-" + sfst0 + SEP + spst1 + SEP + spqf1, sAct, 1.0, bAdd, vocab);
+					addFeature(v, "FP08d-" + spqf1, sAct, 1.0, bAdd, bLog, vocab); // q0t
+					addFeature(v, "FP09d-" + sfqf1 + SEP + spqf1, sAct, 1.0, bAdd, bLog, vocab);
+					addFeature(v, "FP12d-" + spst0 + SEP + spqf1, sAct, 1.0, bAdd, bLog, vocab);
+					addFeature(v, "FP19d-" + spst0 + SEP + spst1 + SEP + spqf1, sAct, 1.0, bAdd, bLog, vocab);
+					addFeature(v, "FP21d-" + sfst0 + SEP + spst1 + SEP + spqf1, sAct, 1.0, bAdd, bLog, vocab);
 				}
 				if (bAddToDelay1 || bAddToDelay2)
 				{
@@ -393,62 +396,62 @@ public class SRParserCtbHandlerHS10 extends SRParserHandler
 				}
 				else
 				{
-					addFeature(v, "FP18d-" + spst0 + SEP + spqf1 + SEP + spqf2, sAct, 1.0, bAdd, vocab);
-					addFeature(v, "FP20d-" + sfst0 + SEP + spqf1 + SEP + spqf2, sAct, 1.0, bAdd, vocab);
+					addFeature(v, "FP18d-" + spst0 + SEP + spqf1 + SEP + spqf2, sAct, 1.0, bAdd, bLog, vocab);
+					addFeature(v, "FP20d-" + sfst0 + SEP + spqf1 + SEP + spqf2, sAct, 1.0, bAdd, bLog, vocab);
 				}
 			}
 			else
 			{
 				if (spqf1 != null)
 				{
-					addFeature(v, "FP08-" + spqf1, sAct, 1.0, bAdd, vocab); //q0t
-					addFeature(v, "FP09-" + sfqf1 + SEP + spqf1, sAct, 1.0, bAdd, vocab);
-					addFeature(v, "FP12-" + spst0 + SEP + spqf1, sAct, 1.0, bAdd, vocab);
-					addFeature(v, "FP19-" + spst0 + SEP + spst1 + SEP + spqf1, sAct, 1.0, bAdd, vocab);
-					addFeature(v, "FP21-" + sfst0 + SEP + spst1 + SEP + spqf1, sAct, 1.0, bAdd, vocab);
+					addFeature(v, "FP08-" + spqf1, sAct, 1.0, bAdd, bLog, vocab); //q0t
+					addFeature(v, "FP09-" + sfqf1 + SEP + spqf1, sAct, 1.0, bAdd, bLog, vocab);
+					addFeature(v, "FP12-" + spst0 + SEP + spqf1, sAct, 1.0, bAdd, bLog, vocab);
+					addFeature(v, "FP19-" + spst0 + SEP + spst1 + SEP + spqf1, sAct, 1.0, bAdd, bLog, vocab);
+					addFeature(v, "FP21-" + sfst0 + SEP + spst1 + SEP + spqf1, sAct, 1.0, bAdd, bLog, vocab);
 
 					if (spqf2 != null)
 					{
-						addFeature(v, "FP18-" + spst0 + SEP + spqf1 + SEP + spqf2, sAct, 1.0, bAdd, vocab);
-						addFeature(v, "FP20-" + sfst0 + SEP + spqf1 + SEP + spqf2, sAct, 1.0, bAdd, vocab);
+						addFeature(v, "FP18-" + spst0 + SEP + spqf1 + SEP + spqf2, sAct, 1.0, bAdd, bLog, vocab);
+						addFeature(v, "FP20-" + sfst0 + SEP + spqf1 + SEP + spqf2, sAct, 1.0, bAdd, bLog, vocab);
 					}
 				}
 			}
 		}
 
-		addFeature(v, "FP22-" + spst0 + SEP + spst1 + SEP + spst1lc, sAct, 1.0, bAdd, vocab);  //s0t+s1t+s1.lc.t
-		addFeature(v, "FP23-" + spst0 + SEP + spst1 + SEP + spst1rc, sAct, 1.0, bAdd, vocab); //s0t+s1t+s1.rc.t
-		addFeature(v, "FP24-" + spst0 + SEP + spst0rc + SEP + spst1, sAct, 1.0, bAdd, vocab);  //s0t+s0.rc.t+s1t
-		addFeature(v, "FP25-" + spst0 + SEP + spst0lc + SEP + spst1, sAct, 1.0, bAdd, vocab);  //s0t+s0.lc.t+s1t not presented in paper  it should be 
-//		addFeature(v, "FP25-" + spst0 + SEP + spst1lc + SEP + spst1, sAct, 1.0, bAdd, vocab); // compatible with run0818--run0905
-		addFeature(v, "FP26-" + sfst0 + SEP + spst1 + SEP + spst1rc, sAct, 1.0, bAdd, vocab);  //s0w+s1t+s1.rc.t
-		addFeature(v, "FP27-" + sfst0 + SEP + spst1 + SEP + spst0lc, sAct, 1.0, bAdd, vocab); //s0w+s1t+s1.lc.t
-		addFeature(v, "FP28-" + spst0 + SEP + spst1 + SEP + spst2, sAct, 1.0, bAdd, vocab);  //s0t+s1t+s2t
-
-		addFeature(v, "FP29-", sAct, sAdjoin.equals("true") ? 1.0 : 0.0, bAdd, vocab);
-		addFeature(v, "FP30-" + spst0 + SEP + spst1, sAct, sAdjoin.equals("true") ? 1.0 : 0.0, bAdd, vocab);
+		addFeature(v, "FP22-" + spst0 + SEP + spst1 + SEP + spst1lc, sAct, 1.0, bAdd, bLog, vocab);  //s0t+s1t+s1.lc.t
+		addFeature(v, "FP23-" + spst0 + SEP + spst1 + SEP + spst1rc, sAct, 1.0, bAdd, bLog, vocab); //s0t+s1t+s1.rc.t
+		addFeature(v, "FP24-" + spst0 + SEP + spst0rc + SEP + spst1, sAct, 1.0, bAdd, bLog, vocab);  //s0t+s0.rc.t+s1t
+		addFeature(v, "FP25-" + spst0 + SEP + spst0lc + SEP + spst1, sAct, 1.0, bAdd, bLog, vocab);  //s0t+s0.lc.t+s1t not presented in paper  it should be 
+//		addFeature(v, "FP25-" + spst0 + SEP + spst1lc + SEP + spst1, sAct, 1.0, bAdd, bLog, vocab); // compatible with run0818--run0905
+		addFeature(v, "FP26-" + sfst0 + SEP + spst1 + SEP + spst1rc, sAct, 1.0, bAdd, bLog, vocab);  //s0w+s1t+s1.rc.t
+		addFeature(v, "FP27-" + sfst0 + SEP + spst1 + SEP + spst0lc, sAct, 1.0, bAdd, bLog, vocab); //s0w+s1t+s1.lc.t
+		addFeature(v, "FP28-" + spst0 + SEP + spst1 + SEP + spst2, sAct, 1.0, bAdd, bLog, vocab);  //s0t+s1t+s2t
+
+		addFeature(v, "FP29-", sAct, sAdjoin.equals("true") ? 1.0 : 0.0, bAdd, bLog, vocab);
+		addFeature(v, "FP30-" + spst0 + SEP + spst1, sAct, sAdjoin.equals("true") ? 1.0 : 0.0, bAdd, bLog, vocab);
 		
 		//remove the punctuation features
-		//addFeature(v, "FP31-" + sPunct, sAct, 1.0, bAdd, vocab); 
-		//addFeature(v, "FP32-" + spst0 + SEP + spst1 + SEP + sPunct, sAct, 1.0, bAdd, vocab);
+		//addFeature(v, "FP31-" + sPunct, sAct, 1.0, bAdd, bLog, vocab); 
+		//addFeature(v, "FP32-" + spst0 + SEP + spst1 + SEP + sPunct, sAct, 1.0, bAdd, bLog, vocab);
 		return spqf1;
 	}
 
 	static void setTagSyntacticFeatures(
-			IntFeatVector v, Vocab vocab, boolean bAdd, String sAct,
+			IntFeatVector v, Vocab vocab, boolean bAdd, boolean bLog, String sAct,
 			String sfst0, String sfqf1, String spst0, String spst1, String spst0lc)
 	{
 		final int ln_sfst0 = sfst0.length();
 		final char c_sfst0_b = sfst0.charAt(0); //s0w first char
 		final char c_sfst0_e = sfst0.charAt(ln_sfst0 - 1); //s0w last char
 		
-		addFeature(v, "SF01-" + sfst0 + SEP + sfqf1, sAct, 1.0, bAdd, vocab); //s0w+q0w
-		addFeature(v, "SF02-" + spst0 + SEP + sfqf1, sAct, 1.0, bAdd, vocab); //s0t+q0w
-		addFeature(v, "SF03-" + spst0 + SEP + spst0lc + sfqf1, sAct, 1.0, bAdd, vocab); //s0t+s0.lc.t+q0w
-		addFeature(v, "SF04-" + c_sfst0_b, sAct, 1.0, bAdd, vocab); // s0w.b
-		addFeature(v, "SF05-" + c_sfst0_e, sAct, 1.0, bAdd, vocab); //s0w.e
-		addFeature(v, "SF06-" + c_sfst0_e + sfqf1, sAct, 1.0, bAdd, vocab); //s0w.e+q0w
-		addFeature(v, "SF07-" + spst1 + SEP + spst0 + SEP + sfqf1, sAct, 1.0, bAdd, vocab); // s1t+s0t+q0w
+		addFeature(v, "SF01-" + sfst0 + SEP + sfqf1, sAct, 1.0, bAdd, bLog, vocab); //s0w+q0w
+		addFeature(v, "SF02-" + spst0 + SEP + sfqf1, sAct, 1.0, bAdd, bLog, vocab); //s0t+q0w
+		addFeature(v, "SF03-" + spst0 + SEP + spst0lc + sfqf1, sAct, 1.0, bAdd, bLog, vocab); //s0t+s0.lc.t+q0w
+		addFeature(v, "SF04-" + c_sfst0_b, sAct, 1.0, bAdd, bLog, vocab); // s0w.b
+		addFeature(v, "SF05-" + c_sfst0_e, sAct, 1.0, bAdd, bLog, vocab); //s0w.e
+		addFeature(v, "SF06-" + c_sfst0_e + sfqf1, sAct, 1.0, bAdd, bLog, vocab); //s0w.e+q0w
+		addFeature(v, "SF07-" + spst1 + SEP + spst0 + SEP + sfqf1, sAct, 1.0, bAdd, bLog, vocab); // s1t+s0t+q0w
 	}
 	
 	/**
@@ -456,6 +459,7 @@ public class SRParserCtbHandlerHS10 extends SRParserHandler
 	 * @param v
 	 * @param vocab
 	 * @param bAdd
+	 * @param bLog
 	 * @param sAct
 	 * @param sfqf1: q0w
 	 * @param spqf1: q0t
@@ -464,46 +468,46 @@ public class SRParserCtbHandlerHS10 extends SRParserHandler
 	 * @param sfqf2: q_{idx+1}w
 	 * @param spqf2: q_{idx+1}t
 	 */
-	static void setEntityFeatures(IntFeatVector v, Vocab vocab, boolean bAdd, String sAct,
+	static void setEntityFeatures(IntFeatVector v, Vocab vocab, boolean bAdd, boolean bLog, String sAct,
 			String sfst0, String spst0, String spst0lc, String spst0rc,
 			String sfqf1, String spqf1, String sfqp1, String spqp1, String sfqf2, String spqf2, String prevEntity){
-		addFeature(v, "EN01-" + sfqf1, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN02-" + spqf1, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN03-" + sfqp1, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN04-" + spqp1, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN05-" + sfqf2, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN06-" + spqf2, sAct, 1.0, bAdd, vocab);
+		addFeature(v, "EN01-" + sfqf1, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN02-" + spqf1, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN03-" + sfqp1, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN04-" + spqp1, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN05-" + sfqf2, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN06-" + spqf2, sAct, 1.0, bAdd, bLog, vocab);
 		
-		addFeature(v, "EN07-" + spqp1 + SEP + spqf1, sAct, 1.0, bAdd, vocab);
+		addFeature(v, "EN07-" + spqp1 + SEP + spqf1, sAct, 1.0, bAdd, bLog, vocab);
 		
 		for(int plen = 1;plen<=6;plen++){
 			if(sfqf1.length()>=plen){
 				String suff = sfqf1.substring(sfqf1.length()-plen, sfqf1.length());
-				addFeature(v, "EN08-"+ "LEN:"+ plen + SEP + suff, sAct, 1.0, bAdd, vocab);
+				addFeature(v, "EN08-"+ "LEN:"+ plen + SEP + suff, sAct, 1.0, bAdd, bLog, vocab);
 				String pref = sfqf1.substring(0,plen);
-				addFeature(v, "EN09-"+ "LEN:"+ plen + SEP + pref, sAct, 1.0, bAdd, vocab);
+				addFeature(v, "EN09-"+ "LEN:"+ plen + SEP + pref, sAct, 1.0, bAdd, bLog, vocab);
 			}
 		}
-		addFeature(v, "EN10-"+ prevEntity, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN11-"+ sfqf1 + SEP + prevEntity, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN12-"+ sfqp1 + SEP + prevEntity, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN13-"+ sfqf2 + SEP + prevEntity, sAct, 1.0, bAdd, vocab);
+		addFeature(v, "EN10-"+ prevEntity, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN11-"+ sfqf1 + SEP + prevEntity, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN12-"+ sfqp1 + SEP + prevEntity, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN13-"+ sfqf2 + SEP + prevEntity, sAct, 1.0, bAdd, bLog, vocab);
 		
-		addFeature(v, "EN14-"+ spqf1 + SEP + prevEntity, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN15-"+ spqp1 + SEP + prevEntity, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN16-"+ spqf2 + SEP + prevEntity, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN17-"+ spqp1 + SEP + spqf1 + SEP + prevEntity, sAct, 1.0, bAdd, vocab);
+		addFeature(v, "EN14-"+ spqf1 + SEP + prevEntity, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN15-"+ spqp1 + SEP + prevEntity, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN16-"+ spqf2 + SEP + prevEntity, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN17-"+ spqp1 + SEP + spqf1 + SEP + prevEntity, sAct, 1.0, bAdd, bLog, vocab);
 		
 		
-		addFeature(v, "EN18-" + sfst0, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN19-" + spst0, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN20-" + sfst0 + SEP + sfqf1, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN21-" + spst0 + SEP + sfqf1, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN22-" + spst0 + SEP + spst0rc, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN23-" + spst0 + SEP + spst0lc, sAct, 1.0, bAdd, vocab);
+		addFeature(v, "EN18-" + sfst0, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN19-" + spst0, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN20-" + sfst0 + SEP + sfqf1, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN21-" + spst0 + SEP + sfqf1, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN22-" + spst0 + SEP + spst0rc, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN23-" + spst0 + SEP + spst0lc, sAct, 1.0, bAdd, bLog, vocab);
 		
-		addFeature(v, "EN24-" + sfst0 + SEP + spst0 + SEP + spst0rc, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "EN25-" + sfst0 + SEP + spst0 + SEP + spst0lc, sAct, 1.0, bAdd, vocab);
+		addFeature(v, "EN24-" + sfst0 + SEP + spst0 + SEP + spst0rc, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "EN25-" + sfst0 + SEP + spst0 + SEP + spst0lc, sAct, 1.0, bAdd, bLog, vocab);
 	}
 	
 	
@@ -37,6 +37,7 @@ import java.util.Set;
 import corbit.commons.Vocab;
 import corbit.commons.ml.IntFeatVector;
 import corbit.commons.transition.PDAction;
+import corbit.commons.util.SymbolTable;
 import corbit.tagdep.SRParserParameters;
 import corbit.tagdep.SRParserState;
 import corbit.tagdep.dict.TagDictionary;
@@ -57,6 +58,7 @@ public class SRParserCtbHandlerZC08 extends SRParserHandler
 		public static final int NUM_FEATURE = 5;
 
 		AtomsZC08(
+				SymbolTable.Generation symbols,
 				int curidx,
 				String f_qp1,
 				String f_qf1,
@@ -70,7 +72,7 @@ public class SRParserCtbHandlerZC08 extends SRParserHandler
 			features[F_f_qf1] = f_qf1;
 			features[F_p_qp2] = p_qp2;
 			features[F_p_qp1] = p_qp1;
-			setHash();
+			setSignature(symbols);
 		}
 	}
 
@@ -100,6 +102,7 @@ public class SRParserCtbHandlerZC08 extends SRParserHandler
 		// ad-hoc modification
 
 		return new AtomsZC08(
+				getSymbols(s0.sent),
 				s0.curidx,
 				sfqp1,
 				sfqf1,
@@ -108,7 +111,7 @@ public class SRParserCtbHandlerZC08 extends SRParserHandler
 	}
 
 	@Override
-	public IntFeatVector getFeatures(SRParserState s0, PDAction act, List<String> vd, boolean bAdd)
+	public IntFeatVector getFeatures(SRParserState s0, PDAction act, List<String> vd, boolean bAdd, boolean bLog)
 	{
 		IntFeatVector v = new IntFeatVector();
 
@@ -121,7 +124,7 @@ public class SRParserCtbHandlerZC08 extends SRParserHandler
 		String sAct = act.toString();
 
 		if (m_params.m_bUseTagFeature && act.isShiftPosAction())
-			SRParserCtbHandlerZC08.setTagFeaturesZC08(v, m_vocab, m_dict, bAdd, sAct, sfqp1, sfqf1, sfqf2, spqp1, spqp2);
+			SRParserCtbHandlerZC08.setTagFeaturesZC08(v, m_vocab, m_dict, bAdd, bLog, sAct, sfqp1, sfqf1, sfqf2, spqp1, spqp2);
 
 		return v;
 	}
@@ -129,7 +132,7 @@ public class SRParserCtbHandlerZC08 extends SRParserHandler
 	// tagging features described in Zhang and Clark (2008)
 
 	static void setTagFeaturesZC08(
-			IntFeatVector v, Vocab vocab, TagDictionary dict, boolean bAdd, String sAct,
+			IntFeatVector v, Vocab vocab, TagDictionary dict, boolean bAdd, boolean bLog, String sAct,
 			String sfqp1, String sfqf1, String sfqf2, String spqp1, String spqp2)
 	{
 		final int ln_sfqp1 = sfqp1.length();
@@ -143,28 +146,28 @@ public class SRParserCtbHandlerZC08 extends SRParserHandler
 		final char c_sfqf1_e = c_sfqf1[ln_sfqf1 - 1];
 		final char c_sfqf2_b = sfqf2.charAt(0);
 
-		addFeature(v, "RF00-" + sfqf1, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "RF00a-", sAct, 1.0, bAdd, vocab);
-		addFeature(v, "RF01-" + spqp1, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "RF02-" + spqp2 + SEP + spqp1, sAct, 1.0, bAdd, vocab);
+		addFeature(v, "RF00-" + sfqf1, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "RF00a-", sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "RF01-" + spqp1, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "RF02-" + spqp2 + SEP + spqp1, sAct, 1.0, bAdd, bLog, vocab);
 
 		if (ln_sfqp1 < 3)
-			addFeature(v, "RF03-" + sfqp1, sAct, 1.0, bAdd, vocab);
+			addFeature(v, "RF03-" + sfqp1, sAct, 1.0, bAdd, bLog, vocab);
 
 		if (ln_sfqf2 < 3)
-			addFeature(v, "RF04-" + sfqf2, sAct, 1.0, bAdd, vocab);
+			addFeature(v, "RF04-" + sfqf2, sAct, 1.0, bAdd, bLog, vocab);
 
 		if (ln_sfqf1 < 3)
 		{
-			addFeature(v, "RF05-" + sfqf1 + SEP + c_sfqp1_e, sAct, 1.0, bAdd, vocab);
-			addFeature(v, "RF06-" + sfqf1 + SEP + c_sfqf2_b, sAct, 1.0, bAdd, vocab);
+			addFeature(v, "RF05-" + sfqf1 + SEP + c_sfqp1_e, sAct, 1.0, bAdd, bLog, vocab);
+			addFeature(v, "RF06-" + sfqf1 + SEP + c_sfqf2_b, sAct, 1.0, bAdd, bLog, vocab);
 		}
 
 		if (ln_sfqf1 == 1)
-			addFeature(v, "RF07-" + c_sfqp1_e + sfqf1 + c_sfqf2_b, sAct, 1.0, bAdd, vocab);
+			addFeature(v, "RF07-" + c_sfqp1_e + sfqf1 + c_sfqf2_b, sAct, 1.0, bAdd, bLog, vocab);
 
-		addFeature(v, "RF08-" + c_sfqf1_b, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "RF09-" + c_sfqf1_e, sAct, 1.0, bAdd, vocab);
+		addFeature(v, "RF08-" + c_sfqf1_b, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "RF09-" + c_sfqf1_e, sAct, 1.0, bAdd, bLog, vocab);
 
 		Set<Character> sc = new HashSet<Character>();
 		for (int i = 0; i < ln_sfqf1; ++i)
@@ -173,13 +176,13 @@ public class SRParserCtbHandlerZC08 extends SRParserHandler
 
 			sc.add(c_sfqf1[i]);
 			// if (i > 0 && i < sfqf1.length() - 1) // modified from Zhang (2008)
-			addFeature(v, "RF10a-" + c_sfqf1[i], sAct, 1.0, bAdd, vocab);
+			addFeature(v, "RF10a-" + c_sfqf1[i], sAct, 1.0, bAdd, bLog, vocab);
 			if (i > 0)
-				addFeature(v, "RF11-" + c_sfqf1[i] + SEP + c_sfqf1_b, sAct, 1.0, bAdd, vocab);
+				addFeature(v, "RF11-" + c_sfqf1[i] + SEP + c_sfqf1_b, sAct, 1.0, bAdd, bLog, vocab);
 			if (i < ln_sfqf1 - 1)
-				addFeature(v, "RF12-" + c_sfqf1[i] + SEP + c_sfqf1_e, sAct, 1.0, bAdd, vocab);
+				addFeature(v, "RF12-" + c_sfqf1[i] + SEP + c_sfqf1_e, sAct, 1.0, bAdd, bLog, vocab);
 			if (i < ln_sfqf1 - 1 && c_sfqf1[i] == c_sfqf1[i + 1])
-				addFeature(v, "RF13-" + c_sfqf1[i], sAct, 1.0, bAdd, vocab);
+				addFeature(v, "RF13-" + c_sfqf1[i], sAct, 1.0, bAdd, bLog, vocab);
 		}
 
 		if (dict != null)
@@ -188,10 +191,10 @@ public class SRParserCtbHandlerZC08 extends SRParserHandler
 			String _s2 = Character.toString(c_sfqf1_e);
 			if (dict.inDictionary(_s1))
 				for (String s : dict.getSeenTags(_s1))
-					addFeature(v, "RF14-" + s, sAct, 1.0, bAdd, vocab);
+					addFeature(v, "RF14-" + s, sAct, 1.0, bAdd, bLog, vocab);
 			if (dict.inDictionary(_s2))
 				for (String s : dict.getSeenTags(_s2))
-					addFeature(v, "RF15-" + s, sAct, 1.0, bAdd, vocab);
+					addFeature(v, "RF15-" + s, sAct, 1.0, bAdd, bLog, vocab);
 		}
 	}
 
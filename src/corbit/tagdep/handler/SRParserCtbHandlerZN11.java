@@ -36,6 +36,7 @@ import java.util.TreeSet;
 import corbit.commons.Vocab;
 import corbit.commons.ml.IntFeatVector;
 import corbit.commons.transition.PDAction;
+import corbit.commons.util.SymbolTable;
 import corbit.tagdep.SRParserParameters;
 import corbit.tagdep.SRParserState;
 import corbit.tagdep.word.DepTree;
@@ -89,6 +90,7 @@ public class SRParserCtbHandlerZN11 extends SRParserHandler
 		static final int NUM_FEATURE = 37;
 
 		AtomsZN11(
+				SymbolTable.Generation symbols,
 				int curidx,
 				int span_bgn,
 				int span_end,
@@ -166,7 +168,7 @@ public class SRParserCtbHandlerZN11 extends SRParserHandler
 			features[F_p_st0lc2] = p_st0lc2;
 			features[F_p_st1lc2] = p_st1lc2;
 			features[F_p_st1rc2] = p_st1rc2;
-			setHash();
+			setSignature(symbols);
 		}
 
 	}
@@ -256,6 +258,7 @@ public class SRParserCtbHandlerZN11 extends SRParserHandler
 		// ad-hoc modification
 
 		return new AtomsZN11(
+				getSymbols(s0.sent),
 				s0.curidx,
 				s0.idbgn,
 				s0.idend,
@@ -297,7 +300,7 @@ public class SRParserCtbHandlerZN11 extends SRParserHandler
 	}
 
 	@Override
-	public IntFeatVector getFeatures(SRParserState s0, PDAction act, List<String> vd, boolean bAdd)
+	public IntFeatVector getFeatures(SRParserState s0, PDAction act, List<String> vd, boolean bAdd, boolean bLog)
 	{
 		IntFeatVector v = new IntFeatVector();
 
@@ -348,8 +351,8 @@ public class SRParserCtbHandlerZN11 extends SRParserHandler
 		
 		if (act == PDAction.REDUCE_LEFT || act == PDAction.REDUCE_RIGHT || act == PDAction.SHIFT || act.isShiftPosAction())
 		{
-			SRParserCtbHandlerHS10.setParseFeaturesHS10(v, vd, m_vocab, bAdd, sAct, sfst0, sfst1, sfqf1, spst0, spst1, spst2, spqf1, spqf2, spst0rc, spst0lc, spst1rc, spst1lc, sAdjoin, curidx, szSent, m_params.m_bUseLookAhead);
-			SRParserCtbHandlerZN11.setParseFeaturesZN11(v, m_vocab, sAct, bAdd, sfst0, sfst1, spst0, spst1, spst0lc, spst1rc, spst1lc, sDist, sVal0l, sVal1l, sVal1r, sfst0lc, sfst1lc, sfst1rc, sfst0lc2, sfst1lc2, sfst1rc2,
+			SRParserCtbHandlerHS10.setParseFeaturesHS10(v, vd, m_vocab, bAdd, bLog, sAct, sfst0, sfst1, sfqf1, spst0, spst1, spst2, spqf1, spqf2, spst0rc, spst0lc, spst1rc, spst1lc, sAdjoin, curidx, szSent, m_params.m_bUseLookAhead);
+			SRParserCtbHandlerZN11.setParseFeaturesZN11(v, m_vocab, sAct, bAdd, bLog, sfst0, sfst1, spst0, spst1, spst0lc, spst1rc, spst1lc, sDist, sVal0l, sVal1l, sVal1r, sfst0lc, sfst1lc, sfst1rc, sfst0lc2, sfst1lc2, sfst1rc2,
 					spst0lc2, spst1lc2, spst1rc2);
 		}
 
@@ -359,7 +362,7 @@ public class SRParserCtbHandlerZN11 extends SRParserHandler
 		
 		if (vd != null && (act.isPosAction() || act.isShiftPosAction()))
 		{
-			evaluateDelayedFeatures(v, vd, curidx + 1, spqf1, bAdd);
+			evaluateDelayedFeatures(v, vd, curidx + 1, spqf1, bAdd, bLog);
 			assert (curidx + 1 < szSent || vd.size() == 0);
 		}
 		
@@ -369,9 +372,9 @@ public class SRParserCtbHandlerZN11 extends SRParserHandler
 		
 		if (m_params.m_bUseTagFeature && act.isShiftPosAction())
 		{
-			SRParserCtbHandlerZC08.setTagFeaturesZC08(v, m_vocab, m_dict, bAdd, sAct, sfqp1, sfqf1, sfqf2, spqp1, spqp2);
+			SRParserCtbHandlerZC08.setTagFeaturesZC08(v, m_vocab, m_dict, bAdd, bLog, sAct, sfqp1, sfqf1, sfqf2, spqp1, spqp2);
 			if (m_params.m_bUseSyntax)
-				SRParserCtbHandlerHS10.setTagSyntacticFeatures(v, m_vocab, bAdd, sAct, sfst0, sfqf1, spst0, spst1, spst0lc);
+				SRParserCtbHandlerHS10.setTagSyntacticFeatures(v, m_vocab, bAdd, bLog, sAct, sfst0, sfqf1, spst0, spst1, spst0lc);
 		}
 
 		return v;
@@ -383,7 +386,7 @@ public class SRParserCtbHandlerZN11 extends SRParserHandler
 			IntFeatVector v,
 			Vocab vocab,
 			String sAct,
-			boolean bAdd,
+			boolean bAdd, boolean bLog,
 			String sfst0, String sfst1, String spst0, String spst1,
 			String spst0lc, String spst1rc, String spst1lc, String sDist,
 			String sVal0l, String sVal1l, String sVal1r,
@@ -392,39 +395,39 @@ public class SRParserCtbHandlerZN11 extends SRParserHandler
 			String spst1rc2)
 	{
 		// distance
-		addFeature(v, "FP20-" + sfst1 + SEP + sDist, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP21-" + spst1 + SEP + sDist, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP22-" + sfst0 + SEP + sDist, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP23-" + spst0 + SEP + sDist, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP24-" + sfst1 + SEP + sfst0 + SEP + sDist, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP25-" + spst1 + SEP + spst0 + SEP + sDist, sAct, 1.0, bAdd, vocab);
+		addFeature(v, "FP20-" + sfst1 + SEP + sDist, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP21-" + spst1 + SEP + sDist, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP22-" + sfst0 + SEP + sDist, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP23-" + spst0 + SEP + sDist, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP24-" + sfst1 + SEP + sfst0 + SEP + sDist, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP25-" + spst1 + SEP + spst0 + SEP + sDist, sAct, 1.0, bAdd, bLog, vocab);
 		
 		// valency
-		addFeature(v, "FP30-" + sfst1 + SEP + sVal1r, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP31-" + spst1 + SEP + sVal1r, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP32-" + sfst1 + SEP + sVal1l, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP33-" + spst1 + SEP + sVal1l, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP34-" + sfst0 + SEP + sVal0l, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP35-" + spst0 + SEP + sVal0l, sAct, 1.0, bAdd, vocab);
+		addFeature(v, "FP30-" + sfst1 + SEP + sVal1r, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP31-" + spst1 + SEP + sVal1r, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP32-" + sfst1 + SEP + sVal1l, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP33-" + spst1 + SEP + sVal1l, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP34-" + sfst0 + SEP + sVal0l, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP35-" + spst0 + SEP + sVal0l, sAct, 1.0, bAdd, bLog, vocab);
 		
 		// unigrams
-		addFeature(v, "FP40-" + sfst1lc, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP41-" + spst1lc, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP42-" + sfst1rc, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP43-" + spst1rc, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP44-" + sfst0lc, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP45-" + spst0lc, sAct, 1.0, bAdd, vocab);
+		addFeature(v, "FP40-" + sfst1lc, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP41-" + spst1lc, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP42-" + sfst1rc, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP43-" + spst1rc, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP44-" + sfst0lc, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP45-" + spst0lc, sAct, 1.0, bAdd, bLog, vocab);
 		
 		// third-order
-		addFeature(v, "FP50-" + sfst1rc2, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP51-" + spst1rc2, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP52-" + sfst1lc2, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP53-" + spst1lc2, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP54-" + sfst0lc2, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP55-" + spst0lc2, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP56-" + spst1 + SEP + spst1lc + SEP + spst1lc2, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP57-" + spst1 + SEP + spst1rc + SEP + spst1rc2, sAct, 1.0, bAdd, vocab);
-		addFeature(v, "FP58-" + spst0 + SEP + spst0lc + SEP + spst0lc2, sAct, 1.0, bAdd, vocab);
+		addFeature(v, "FP50-" + sfst1rc2, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP51-" + spst1rc2, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP52-" + sfst1lc2, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP53-" + spst1lc2, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP54-" + sfst0lc2, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP55-" + spst0lc2, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP56-" + spst1 + SEP + spst1lc + SEP + spst1lc2, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP57-" + spst1 + SEP + spst1rc + SEP + spst1rc2, sAct, 1.0, bAdd, bLog, vocab);
+		addFeature(v, "FP58-" + spst0 + SEP + spst0lc + SEP + spst0lc2, sAct, 1.0, bAdd, bLog, vocab);
 	}
 
 }
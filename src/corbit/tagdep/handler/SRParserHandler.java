@@ -37,10 +37,12 @@ import corbit.commons.Vocab;
 import corbit.commons.ml.IntFeatVector;
 import corbit.commons.transition.PDAction;
 import corbit.commons.util.Statics;
+import corbit.commons.util.SymbolTable;
 import corbit.tagdep.SRParserParameters;
 import corbit.tagdep.SRParserState;
 import corbit.tagdep.dict.TagDictionary;
 import corbit.tagdep.word.DepTree;
+import corbit.tagdep.word.DepTreeSentence;
 import corbit.tagdep.word.DepWord;
 
 public abstract class SRParserHandler
@@ -53,6 +55,9 @@ public abstract class SRParserHandler
 	protected Set<String> m_flist;
 	protected TagDictionary m_dict;
 	protected SRParserParameters m_params;
+	protected final SymbolTable m_symbols = new SymbolTable(SYMBOL_TABLE_SIZE);
+
+	private static final int SYMBOL_TABLE_SIZE = 1 << 20;
 
 	protected static final String SEP = "-";
 	protected static final String OOR = "$";
@@ -67,6 +72,30 @@ public abstract class SRParserHandler
 		return m_vocab;
 	}
 
+	/**
+	 * attaches the current generation of the symbols to the sentence, so that
+	 * the atomic features of its states are interned in the same generation
+	 * until the sentence is decoded; every call must be followed by
+	 * endSentence()
+	 */
+	public void beginSentence(DepTreeSentence sent)
+	{
+		sent.symbols = m_symbols.acquire();
+	}
+
+	public void endSentence(DepTreeSentence sent)
+	{
+		sent.symbols = null;
+	}
+
+	protected SymbolTable.Generation getSymbols(DepTreeSentence sent)
+	{
+		SymbolTable.Generation g = sent.symbols;
+		if (g == null)
+			sent.symbols = g = m_symbols.acquire();
+		return g;
+	}
+
 	public void setFeatureList(Set<String> v)
 	{
 		m_flist = v;
@@ -91,7 +120,15 @@ public abstract class SRParserHandler
 
 	public abstract AtomicFeatures getAtomicFeatures(SRParserState s);
 
-	public abstract IntFeatVector getFeatures(SRParserState s, PDAction act, List<String> vd, boolean bAdd);
+	/**
+	 * @param bAdd
+	 *            whether to add the features missing from the vocabulary
+	 * @param bLog
+	 *            whether the vector is kept for a later update, in which case
+	 *            the missing features are recorded to be added then; otherwise
+	 *            the vector is only scored, and they are skipped
+	 */
+	public abstract IntFeatVector getFeatures(SRParserState s, PDAction act, List<String> vd, boolean bAdd, boolean bLog);
 
 	/*
 	 * utility functions
@@ -107,7 +144,7 @@ public abstract class SRParserHandler
 		return "@@@POS[";
 	}
 
-	protected void evaluateDelayedFeatures(IntFeatVector vn, List<String> vd, int curidx, String sPos, boolean bAdd)
+	protected void evaluateDelayedFeatures(IntFeatVector vn, List<String> vd, int curidx, String sPos, boolean bAdd, boolean bLog)
 	{
 		String sArg = SRParserHandler.getPosArgString(curidx - 1);
 		String sPref = SRParserHandler.getPosArgPrefix();
@@ -120,13 +157,13 @@ public abstract class SRParserHandler
 			while (sTemplate.indexOf(sArg) != -1)
 				sTemplate = Statics.strReplace(sTemplate, sArg, sPos);
 			if (sTemplate.indexOf(sPref) == -1)
-				addFeature(vn, sTemplate, 1.0d, bAdd);
+				addFeature(vn, sTemplate, 1.0d, bAdd, bLog);
 			else
 				vd.add(sTemplate);
 		}
 	}
 
-	protected static void addFeature(IntFeatVector v, String sFeature, double dValue, boolean bAdd, Vocab vocab)
+	protected static void addFeature(IntFeatVector v, String sFeature, double dValue, boolean bAdd, boolean bLog, Vocab vocab)
 	{
 		if (bAdd)
 			v.put(vocab.getIndex(sFeature), dValue);
@@ -135,22 +172,24 @@ public abstract class SRParserHandler
 			Integer idx = vocab.getBoxed(sFeature);
 			if (idx != null)
 				v.put(idx, dValue);
+			else if (bLog)
+				v.addPending(sFeature, dValue);
 		}
 	}
 
-	protected static void addFeature(IntFeatVector v, String sFeature, String sLabel, double dValue, boolean bAdd, Vocab vocab)
+	protected static void addFeature(IntFeatVector v, String sFeature, String sLabel, double dValue, boolean bAdd, boolean bLog, Vocab vocab)
 	{
-		addFeature(v, sFeature + SEP + sLabel, dValue, bAdd, vocab);
+		addFeature(v, sFeature + SEP + sLabel, dValue, bAdd, bLog, vocab);
 	}
 
-	protected void addFeature(IntFeatVector v, String sFeature, double dValue, boolean bAdd)
+	protected void addFeature(IntFeatVector v, String sFeature, double dValue, boolean bAdd, boolean bLog)
 	{
-		addFeature(v, sFeature, dValue, bAdd, m_vocab);
+		addFeature(v, sFeature, dValue, bAdd, bLog, m_vocab);
 	}
 
-	protected void addFeature(IntFeatVector v, String sFeature, String sLabel, double dValue, boolean bAdd)
+	protected void addFeature(IntFeatVector v, String sFeature, String sLabel, double dValue, boolean bAdd, boolean bLog)
 	{
-		addFeature(v, sFeature, sLabel, dValue, bAdd, m_vocab);
+		addFeature(v, sFeature, sLabel, dValue, bAdd, bLog, m_vocab);
 	}
 
 	protected static int[] getValencies(DepTree w)
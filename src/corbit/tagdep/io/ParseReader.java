@@ -38,9 +38,11 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 
+import corbit.commons.io.CorpusCache;
 import corbit.commons.util.Generator;
 import corbit.tagdep.SRParserEvaluator;
 import corbit.tagdep.dict.TagDictionary;
+import corbit.tagdep.word.DepTree;
 import corbit.tagdep.word.DepTreeSentence;
 import corbit.tagdep.word.DepWord;
 
@@ -64,6 +66,31 @@ public abstract class ParseReader extends Generator<DepTreeSentence>
 		}
 	}
 
+	public static CorpusCache.Sentence toCache(DepTreeSentence s)
+	{
+		CorpusCache.Sentence c = new CorpusCache.Sentence(s.size());
+		for (int i = 0; i < s.size(); ++i)
+		{
+			DepWord dw = s.get(i);
+			c.forms[i] = dw.form;
+			c.tags[i] = dw.pos;
+			c.labels[i] = dw.entity;
+			c.heads[i] = dw.head;
+		}
+		return c;
+	}
+
+	public static DepTreeSentence fromCache(CorpusCache.Sentence c)
+	{
+		DepTreeSentence s = new DepTreeSentence();
+		for (int i = 0; i < c.size(); ++i)
+			s.add(new DepTree(s, i, c.forms[i], c.tags[i], c.labels[i], c.heads[i]));
+		for (int i = 0; i < c.size(); ++i)
+			if (c.heads[i] != -1)
+				s.get(c.heads[i]).children.add(s.get(i));
+		return s;
+	}
+
 	/***
 	 * CTB reader and dictionary are already disabled
 	public static void ctbToPlain(String sFile, String sOutFile) throws IOException
@@ -50,6 +50,7 @@ public abstract class SRParserTransition
 	protected SRParserHandler m_fhandler;
 	protected WeightVector m_weight;
 	protected TagDictionary m_dict;
+	protected boolean m_bLogFeatures = false;
 
 	protected SRParserTransition(SRParserStateGenerator sg, SRParserHandler fh, WeightVector w, TagDictionary d, boolean bParse)
 	{
@@ -65,6 +66,15 @@ public abstract class SRParserTransition
 		m_bParse = b;
 	}
 
+	/**
+	 * keeps the features of each state in its log during decoding, from which
+	 * getPrefixFeatures() collects the features for an update
+	 */
+	public void setLogFeatures(boolean b)
+	{
+		m_bLogFeatures = b;
+	}
+
 	public abstract List<Pair<PDAction, SRParserState>> moveNext(SRParserState s, DepTreeSentence gsent, boolean bAdd);
 
 	public abstract Pair<PDAction, SRParserState> moveNextGold(SRParserState s, DepTreeSentence gsent, boolean bAdd);
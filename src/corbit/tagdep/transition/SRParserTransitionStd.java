@@ -32,18 +32,20 @@ package corbit.tagdep.transition;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import corbit.commons.Vocab;
 import corbit.commons.io.Console;
+import corbit.commons.ml.FeatureLog;
 import corbit.commons.ml.IntFeatVector;
 import corbit.commons.ml.WeightVector;
 import corbit.commons.transition.PDAction;
 import corbit.commons.util.Pair;
+import corbit.commons.util.PersistentSeq;
 import corbit.tagdep.SRParserState;
 import corbit.tagdep.SRParserStateGenerator;
 import corbit.tagdep.dict.TagDictionary;
@@ -240,26 +242,25 @@ public class SRParserTransitionStd extends SRParserTransition
 		assert (!(s.curidx == s.sent.size() || s.pstck[0].index != -1 && s.pos[s.pstck[0].index] == null));
 
 		List<String> _fvdelay = s.fvdelay != null ? new LinkedList<String>(s.fvdelay) : null;
-		IntFeatVector vs = m_fhandler.getFeatures(s, PDAction.getShiftPosAction(sPos), _fvdelay, bAdd);
+		IntFeatVector vs = m_fhandler.getFeatures(s, PDAction.getShiftPosAction(sPos), _fvdelay, bAdd, bAdd || m_bLogFeatures);
 		double scdlt = m_weight.score(vs);
+		final FeatureLog fvl = bAdd || m_bLogFeatures ? FeatureLog.of(vs) : null;
 		if (!bAdd) vs = null;
-		List<IntFeatVector> _fvins = bAdd ? new LinkedList<IntFeatVector>() : null;
+		FeatureLog _fvins = fvl != null ? FeatureLog.EMPTY : null;
 		double _scprf = s.scprf + scdlt;
 		double _scins = 0.0d;
 
 		DepTree[] _pstck = s.pushStack(new DepTree(s.sent.get(s.curidx)));
-		Set<SRParserState> _preds = new HashSet<SRParserState>();
-		_preds.add(s);
-		Map<SRParserState, Pair<IntFeatVector, Double>> _trans = new LinkedHashMap<SRParserState, Pair<IntFeatVector, Double>>();
-		_trans.put(s, new Pair<IntFeatVector, Double>(vs, scdlt));
+		Set<SRParserState> _preds = Collections.singleton(s);
+		Map<SRParserState, Pair<FeatureLog, Double>> _trans =
+			Collections.singletonMap(s, new Pair<FeatureLog, Double>(fvl, scdlt));
 		int[] _heads = new int[s.sent.size()];
 		Arrays.fill(_heads, -2);
 		String[] _pos = new String[s.sent.size()];
 		_pos[_pstck[0].index] = sPos;
 		_pstck[0].pos = sPos;
 
-		List<PDAction> _lstact = new LinkedList<PDAction>();
-		_lstact.add(PDAction.getShiftPosAction(sPos));
+		PersistentSeq<PDAction> _lstact = PersistentSeq.of(PDAction.getShiftPosAction(sPos));
 
 		return m_generator.generate(s.sent, _pstck, s.curidx + 1, s.idend + 1, s.idend + 1,
 				_scprf, _scins, scdlt, _fvins, vs, _preds, s, _trans, _heads, _pos, _fvdelay,
@@ -271,18 +272,18 @@ public class SRParserTransitionStd extends SRParserTransition
 		assert (!(s.curidx == s.sent.size() || s.pstck[0].index != -1 && s.pos[s.pstck[0].index] == null));
 
 		List<String> _fvdelay = s.fvdelay != null ? new LinkedList<String>(s.fvdelay) : null;
-		IntFeatVector vs = m_fhandler.getFeatures(s, PDAction.SHIFT, _fvdelay, bAdd);
+		IntFeatVector vs = m_fhandler.getFeatures(s, PDAction.SHIFT, _fvdelay, bAdd, bAdd || m_bLogFeatures);
 		double scdlt = m_weight.score(vs);
+		final FeatureLog fvl = bAdd || m_bLogFeatures ? FeatureLog.of(vs) : null;
 		if (!bAdd) vs = null;
-		List<IntFeatVector> _fvins = bAdd ? new LinkedList<IntFeatVector>() : null;
+		FeatureLog _fvins = fvl != null ? FeatureLog.EMPTY : null;
 		double _scprf = s.scprf + scdlt;
 		double _scins = 0.0;
 
 		DepTree[] _pstck = s.pushStack(new DepTree(s.sent.get(s.curidx)));
-		Set<SRParserState> _preds = new HashSet<SRParserState>();
-		_preds.add(s);
-		Map<SRParserState, Pair<IntFeatVector, Double>> _trans = new LinkedHashMap<SRParserState, Pair<IntFeatVector, Double>>();
-		_trans.put(s, new Pair<IntFeatVector, Double>(vs, scdlt));
+		Set<SRParserState> _preds = Collections.singleton(s);
+		Map<SRParserState, Pair<FeatureLog, Double>> _trans =
+			Collections.singletonMap(s, new Pair<FeatureLog, Double>(fvl, scdlt));
 		int[] _heads = new int[s.sent.size()];
 		Arrays.fill(_heads, -2);
 		String[] _pos = new String[s.sent.size()];
@@ -292,8 +293,7 @@ public class SRParserTransitionStd extends SRParserTransition
 		if (_pstck[0].pos != null)
 			_pos[s.curidx] = _pstck[0].pos;
 
-		List<PDAction> _lstact = new LinkedList<PDAction>();
-		_lstact.add(PDAction.SHIFT);
+		PersistentSeq<PDAction> _lstact = PersistentSeq.of(PDAction.SHIFT);
 
 		return m_generator.generate(s.sent, _pstck, s.curidx + 1, s.idend + 1, s.idend + 1,
 				_scprf, _scins, scdlt, _fvins, vs, _preds, s, _trans, _heads, _pos, _fvdelay,
@@ -307,11 +307,10 @@ public class SRParserTransitionStd extends SRParserTransition
 		// update feature vector and scores
 
 		List<String> _fvdelay = s.fvdelay != null ? new LinkedList<String>(s.fvdelay) : null;
-		IntFeatVector vr = m_fhandler.getFeatures(s, PDAction.getPosAction(sPos), _fvdelay, bAdd);
+		IntFeatVector vr = m_fhandler.getFeatures(s, PDAction.getPosAction(sPos), _fvdelay, bAdd, bAdd || m_bLogFeatures);
 		double scdlt = m_weight.score(vr);
+		FeatureLog _fvins = bAdd || m_bLogFeatures ? s.fvins.append(vr) : null;
 		if (!bAdd) vr = null;
-		List<IntFeatVector> _fvins = bAdd ? new LinkedList<IntFeatVector>(s.fvins) : null;
-		if (bAdd) _fvins.add(vr);
 		double _scprf = s.scprf + scdlt;
 		double _scins = s.scins + scdlt;
 
@@ -319,11 +318,11 @@ public class SRParserTransitionStd extends SRParserTransition
 		String[] _pos = Arrays.copyOf(s.pos, s.pos.length);
 		_pos[s.pstck[0].index] = sPos;
 
-		DepTree[] _pstck = s.cloneStack();
-		_pstck[0].pos = sPos;
+		DepTree t = new DepTree(s.pstck[0], s.pstck[0].children);
+		t.pos = sPos;
+		DepTree[] _pstck = s.replaceStackTop(t);
 
-		List<PDAction> _lstact = new LinkedList<PDAction>(s.lstact);
-		_lstact.add(PDAction.getPosAction(sPos));
+		PersistentSeq<PDAction> _lstact = s.lstact.append(PDAction.getPosAction(sPos));
 
 		return m_generator.generate(s.sent, _pstck, s.curidx, s.idbgn, s.idend,
 				_scprf, _scins, scdlt, _fvins, vr, s.preds, s.pred0, s.trans, s.heads, _pos, _fvdelay,
@@ -337,8 +336,9 @@ public class SRParserTransitionStd extends SRParserTransition
 			return l;
 
 		List<String> _fvdelay = s.fvdelay != null ? new LinkedList<String>(s.fvdelay) : null;
-		IntFeatVector vr = m_fhandler.getFeatures(s, PDAction.REDUCE_RIGHT, _fvdelay, bAdd);
+		IntFeatVector vr = m_fhandler.getFeatures(s, PDAction.REDUCE_RIGHT, _fvdelay, bAdd, bAdd || m_bLogFeatures);
 		double sr = m_weight.score(vr);
+		final FeatureLog fvl = bAdd || m_bLogFeatures ? FeatureLog.of(vr) : null;
 		if (!bAdd) vr = null;
 
 		for (SRParserState p : s.preds)
@@ -347,27 +347,21 @@ public class SRParserTransitionStd extends SRParserTransition
 				continue;
 
 			assert (s.trans.containsKey(p));
-			Pair<IntFeatVector, Double> t = s.trans.get(p);
+			Pair<FeatureLog, Double> t = s.trans.get(p);
 
 			double scdlt = t.second + sr;
 
-			List<IntFeatVector> _fvins = null;
-			if (bAdd)
-			{
-				_fvins = new LinkedList<IntFeatVector>(s.fvins);
-				_fvins.addAll(p.fvins);
-				_fvins.add(t.first);
-				_fvins.add(vr);
-			}
+			FeatureLog _fvins = fvl != null ? FeatureLog.join(s.fvins, p.fvins, t.first, fvl) : null;
 			double _scprf = p.scprf + s.scins + scdlt;
 			double _scins = p.scins + s.scins + scdlt;
 
-			DepTree[] _pstck = p.cloneStack();
-			DepTree h = new DepTree(p.pstck[0]);
-			DepTree c = new DepTree(s.pstck[0]);
-			_pstck[0] = h;
+			DepTree c = new DepTree(s.pstck[0], s.pstck[0].children);
+			List<DepTree> _children = new ArrayList<DepTree>(p.pstck[0].children.size() + 1);
+			_children.addAll(p.pstck[0].children);
+			_children.add(c);
+			DepTree h = new DepTree(p.pstck[0], _children);
+			DepTree[] _pstck = p.replaceStackTop(h);
 
-			h.children.add(c);
 			c.head = h.index;
 
 			int[] _heads = Arrays.copyOf(s.heads, s.heads.length);
@@ -381,9 +375,7 @@ public class SRParserTransitionStd extends SRParserTransition
 				if (p.pos[i] != null)
 					_pos[i] = p.pos[i];
 
-			List<PDAction> _lstact = new LinkedList<PDAction>(p.lstact);
-			_lstact.addAll(s.lstact);
-			_lstact.add(PDAction.REDUCE_RIGHT);
+			PersistentSeq<PDAction> _lstact = PersistentSeq.concat(p.lstact, s.lstact, PDAction.REDUCE_RIGHT);
 
 			l.add(m_generator.generate(s.sent, _pstck, s.curidx, Math.max(p.idbgn, 0), s.idend,
 					_scprf, _scins, scdlt, _fvins, vr, p.preds, p.pred0, p.trans, _heads, _pos, _fvdelay,
@@ -399,34 +391,29 @@ public class SRParserTransitionStd extends SRParserTransition
 			return l;
 
 		List<String> _fvdelay = s.fvdelay != null ? new LinkedList<String>(s.fvdelay) : null;
-		IntFeatVector vr = m_fhandler.getFeatures(s, PDAction.REDUCE_LEFT, _fvdelay, bAdd);
+		IntFeatVector vr = m_fhandler.getFeatures(s, PDAction.REDUCE_LEFT, _fvdelay, bAdd, bAdd || m_bLogFeatures);
 		double sr = m_weight.score(vr);
+		final FeatureLog fvl = bAdd || m_bLogFeatures ? FeatureLog.of(vr) : null;
 		if (!bAdd) vr = null;
 
 		for (SRParserState p : s.preds)
 		{
 			if (p.pstck[0].index == -1) continue;
 
-			Pair<IntFeatVector, Double> t = s.trans.get(p);
+			Pair<FeatureLog, Double> t = s.trans.get(p);
 
 			double scdlt = t.second + sr;
-			List<IntFeatVector> _fvins = null;
-			if (bAdd)
-			{
-				_fvins = new LinkedList<IntFeatVector>(s.fvins);
-				_fvins.addAll(p.fvins);
-				_fvins.add(t.first);
-				_fvins.add(vr);
-			}
+			FeatureLog _fvins = fvl != null ? FeatureLog.join(s.fvins, p.fvins, t.first, fvl) : null;
 			double _scprf = p.scprf + s.scins + scdlt;
 			double _scins = p.scins + s.scins + scdlt;
 
-			DepTree[] _pstck = p.cloneStack();
-			DepTree h = new DepTree(s.pstck[0]);
-			DepTree c = new DepTree(p.pstck[0]);
-			_pstck[0] = h;
+			DepTree c = new DepTree(p.pstck[0], p.pstck[0].children);
+			List<DepTree> _children = new ArrayList<DepTree>(s.pstck[0].children.size() + 1);
+			_children.addAll(s.pstck[0].children);
+			_children.add(c);
+			DepTree h = new DepTree(s.pstck[0], _children);
+			DepTree[] _pstck = p.replaceStackTop(h);
 
-			h.children.add(c);
 			c.head = h.index;
 
 			int[] _heads = Arrays.copyOf(s.heads, s.heads.length);
@@ -440,9 +427,7 @@ public class SRParserTransitionStd extends SRParserTransition
 				if (p.pos[i] != null)
 					_pos[i] = p.pos[i];
 
-			List<PDAction> _lstact = new LinkedList<PDAction>(p.lstact);
-			_lstact.addAll(s.lstact);
-			_lstact.add(PDAction.REDUCE_LEFT);
+			PersistentSeq<PDAction> _lstact = PersistentSeq.concat(p.lstact, s.lstact, PDAction.REDUCE_LEFT);
 
 			l.add(m_generator.generate(s.sent, _pstck, s.curidx, Math.max(p.idbgn, 0), s.idend,
 					_scprf, _scins, scdlt, _fvins, vr, p.preds, p.pred0, p.trans, _heads, _pos, _fvdelay,
@@ -468,17 +453,15 @@ public class SRParserTransitionStd extends SRParserTransition
 		// }
 
 		IntFeatVector fvprf2 = new IntFeatVector();
-		List<PDAction> lAct = s.getActionSequence();
-		SRParserState s3 = m_generator.create(s.sent);
-		for (PDAction act : lAct)
-			s3 = moveNext(s3, act, false, true).get(0);
-		SRParserState sss1 = s3;
+		if (s.fvins == null)
+			throw new IllegalStateException("Features of the state were not logged.");
+		Vocab vocab = m_fhandler.getVocabulary();
+		SRParserState sss1 = s;
 		for (SRParserState sss2 = sss1; sss2 != null; sss2 = sss2.pred0)
 		{
-			for (IntFeatVector v : sss2.fvins)
-				fvprf2.append(v);
+			sss2.fvins.appendTo(fvprf2, vocab);
 			if (sss2 != sss1)
-				fvprf2.append(sss1.trans.get(sss2).first);
+				sss1.trans.get(sss2).first.appendTo(fvprf2, vocab);
 			sss1 = sss2;
 		}
 
@@ -496,7 +479,7 @@ public class SRParserTransitionStd extends SRParserTransition
 
 	public static boolean isJustShifted(SRParserState s)
 	{
-		return s.fvins.size() == 0;
+		return s.fvins == FeatureLog.EMPTY;
 	}
 
 }
@@ -57,6 +57,12 @@ public class DepTree extends DepWord
 		children = new ArrayList<DepTree>();
 	}
 
+	public DepTree(DepWord w, List<DepTree> children)
+	{
+		super(w);
+		this.children = children;
+	}
+
 	public DepTree()
 	{
 		super();
@@ -32,10 +32,15 @@ package corbit.tagdep.word;
 
 import java.util.ArrayList;
 
+import corbit.commons.util.SymbolTable;
+
 public class DepTreeSentence extends ArrayList<DepTree>
 {
 	private static final long serialVersionUID = 1L;
 
+	/* the symbols the atomic features are interned in while the sentence is decoded */
+	public transient SymbolTable.Generation symbols = null;
+
 	public DepTreeSentence()
 	{
 		super();